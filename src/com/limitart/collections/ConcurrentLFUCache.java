@@ -0,0 +1,821 @@
+package com.limitart.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.limitart.collections.LRUHashMap.LRUListener;
+
+/**
+ * 线程安全的限容缓存(W-TinyLFU淘汰)
+ * 
+ * 读取不加锁，访问记录先写入分段的有损环形缓冲，由写入或缓冲满时批量回放；写入和淘汰在同一把锁内完成
+ * 
+ * 新元素先进入窗口LRU(1%)，被挤出窗口后与主区(SLRU)的淘汰候选比较访问频率(Count-Min Sketch)，频率高的留下
+ * 
+ * @author hank
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentLFUCache<K, V> {
+	private static Logger log = LogManager.getLogger();
+	private static final byte WINDOW = 0;
+	private static final byte PROBATION = 1;
+	private static final byte PROTECTED = 2;
+	private static final byte DEAD = 3;
+	private static final int READ_BUFFER_SIZE = 32;
+	private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+	private final ConcurrentHashMap<K, Node<K, V>> data;
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final long maximumWeight;
+	private final LFUWeigher<K, V> weigher;
+	private final long expireAfterWriteNanos;
+	private final long expireAfterAccessNanos;
+	private final LRUListener listener;
+	private final Executor listenerExecutor;
+	private final FrequencySketch sketch;
+	private final ReadBuffer[] readBuffers;
+	// 以下由evictionLock保护
+	private final AccessDeque<K, V> window = new AccessDeque<>();
+	private final AccessDeque<K, V> probation = new AccessDeque<>();
+	private final AccessDeque<K, V> protect = new AccessDeque<>();
+	private final WriteDeque<K, V> writeOrder = new WriteDeque<>();
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private long windowWeight;
+	private long protectedWeight;
+	private volatile long weightedSize;
+	// 统计
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expireCount = new LongAdder();
+
+	private ConcurrentLFUCache(ConcurrentLFUCacheBuilder<K, V> builder) {
+		this.maximumWeight = builder.maximumWeight;
+		this.weigher = builder.weigher;
+		this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+		this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+		this.listener = builder.listener;
+		this.listenerExecutor = builder.listenerExecutor;
+		this.data = new ConcurrentHashMap<>(builder.initialCapacity);
+		this.sketch = new FrequencySketch(maximumWeight);
+		this.windowMaximum = Math.max(1, maximumWeight / 100);
+		this.protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors()) {
+			stripes <<= 1;
+		}
+		this.readBuffers = new ReadBuffer[stripes];
+		for (int i = 0; i < stripes; ++i) {
+			readBuffers[i] = new ReadBuffer();
+		}
+	}
+
+	/**
+	 * 按数量限容的缓存
+	 * 
+	 * @param maximumSize
+	 */
+	public ConcurrentLFUCache(int maximumSize) {
+		this(new ConcurrentLFUCacheBuilder<K, V>().maximumWeight(maximumSize));
+	}
+
+	/**
+	 * 按数量限容的缓存
+	 * 
+	 * @param maximumSize
+	 * @param listener
+	 *            移除监听(在线程池中异步回调)
+	 */
+	public ConcurrentLFUCache(int maximumSize, LRUListener listener) {
+		this(new ConcurrentLFUCacheBuilder<K, V>().maximumWeight(maximumSize).listener(listener));
+	}
+
+	public V get(K key) {
+		Node<K, V> node = data.get(key);
+		if (node == null) {
+			missCount.increment();
+			return null;
+		}
+		long now = System.nanoTime();
+		if (isExpired(node, now)) {
+			missCount.increment();
+			tryMaintenance();
+			return null;
+		}
+		hitCount.increment();
+		if (expireAfterAccessNanos > 0) {
+			node.accessTime = now;
+		}
+		afterRead(node);
+		return node.value;
+	}
+
+	public boolean containsKey(K key) {
+		Node<K, V> node = data.get(key);
+		return node != null && !isExpired(node, System.nanoTime());
+	}
+
+	public V put(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		int weight = weigher == null ? 1 : weigher.weigh(key, value);
+		if (weight < 0) {
+			throw new IllegalArgumentException("weight < 0");
+		}
+		long now = System.nanoTime();
+		evictionLock.lock();
+		try {
+			V oldValue = null;
+			Node<K, V> node = data.get(key);
+			if (node != null) {
+				if (!isExpired(node, now)) {
+					oldValue = node.value;
+				}
+				node.value = value;
+				node.writeTime = now;
+				node.accessTime = now;
+				setWeight(node, weight);
+				onAccess(node);
+				writeOrder.moveToBack(node);
+			} else {
+				node = new Node<>(key, value, weight, now);
+				data.put(key, node);
+				node.queue = WINDOW;
+				window.addLast(node);
+				writeOrder.addLast(node);
+				windowWeight += weight;
+				weightedSize += weight;
+				sketch.increment(key);
+			}
+			maintenance(now);
+			return oldValue;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public V remove(K key) {
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.get(key);
+			if (node == null) {
+				return null;
+			}
+			V value = node.value;
+			removeNode(node);
+			return isExpired(node, System.nanoTime()) ? null : value;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void clear() {
+		evictionLock.lock();
+		try {
+			for (ReadBuffer buffer : readBuffers) {
+				buffer.drain(null);
+			}
+			for (Node<K, V> node : new ArrayList<>(data.values())) {
+				removeNode(node);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * 立即回放访问记录并清理过期元素
+	 */
+	public void cleanUp() {
+		evictionLock.lock();
+		try {
+			maintenance(System.nanoTime());
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * 元素数量(可能包含未清理的过期元素)
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * 当前总权重
+	 * 
+	 * @return
+	 */
+	public long weightedSize() {
+		return weightedSize;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * 命中率
+	 * 
+	 * @return
+	 */
+	public double getHitRate() {
+		long hit = hitCount.sum();
+		long total = hit + missCount.sum();
+		return total == 0 ? 1.0 : (double) hit / total;
+	}
+
+	/**
+	 * 因容量淘汰的数量
+	 * 
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * 因过期移除的数量
+	 * 
+	 * @return
+	 */
+	public long getExpireCount() {
+		return expireCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrentLFUCache [size=" + size() + ", weightedSize=" + weightedSize + ", maximumWeight="
+				+ maximumWeight + ", hitRate=" + getHitRate() + ", evictionCount=" + getEvictionCount() + "]";
+	}
+
+	private boolean isExpired(Node<K, V> node, long now) {
+		return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+				|| (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+	}
+
+	private void afterRead(Node<K, V> node) {
+		int index = (int) (Thread.currentThread().getId() * 0x9E3779B9L) & (readBuffers.length - 1);
+		if (!readBuffers[index].offer(node)) {
+			// 缓冲满了，抢到锁的线程负责回放
+			tryMaintenance();
+		}
+	}
+
+	private void tryMaintenance() {
+		if (evictionLock.tryLock()) {
+			try {
+				maintenance(System.nanoTime());
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	private void maintenance(long now) {
+		for (ReadBuffer buffer : readBuffers) {
+			buffer.drain(this);
+		}
+		expire(now);
+		evict();
+	}
+
+	/**
+	 * 命中一次(持有锁)
+	 * 
+	 * @param node
+	 */
+	private void onAccess(Node<K, V> node) {
+		if (node.queue == DEAD) {
+			return;
+		}
+		sketch.increment(node.key);
+		if (node.queue == WINDOW) {
+			window.moveToBack(node);
+		} else if (node.queue == PROBATION) {
+			// 试用区再次命中晋升到保护区
+			probation.remove(node);
+			node.queue = PROTECTED;
+			protect.addLast(node);
+			protectedWeight += node.weight;
+			while (protectedWeight > protectedMaximum) {
+				Node<K, V> demote = protect.pollFirst();
+				protectedWeight -= demote.weight;
+				demote.queue = PROBATION;
+				probation.addLast(demote);
+			}
+		} else {
+			protect.moveToBack(node);
+		}
+	}
+
+	private void setWeight(Node<K, V> node, int weight) {
+		int diff = weight - node.weight;
+		node.weight = weight;
+		weightedSize += diff;
+		if (node.queue == WINDOW) {
+			windowWeight += diff;
+		} else if (node.queue == PROTECTED) {
+			protectedWeight += diff;
+		}
+	}
+
+	private void expire(long now) {
+		if (expireAfterAccessNanos > 0) {
+			expireAccess(window, now);
+			expireAccess(probation, now);
+			expireAccess(protect, now);
+		}
+		if (expireAfterWriteNanos > 0) {
+			Node<K, V> node;
+			while ((node = writeOrder.first) != null && now - node.writeTime >= expireAfterWriteNanos) {
+				removeNode(node);
+				expireCount.increment();
+			}
+		}
+	}
+
+	private void expireAccess(AccessDeque<K, V> deque, long now) {
+		Node<K, V> node;
+		while ((node = deque.first) != null && now - node.accessTime >= expireAfterAccessNanos) {
+			removeNode(node);
+			expireCount.increment();
+		}
+	}
+
+	private void evict() {
+		// 挤出窗口的元素成为候选，排在试用区末尾
+		Node<K, V> candidate = null;
+		while (windowWeight > windowMaximum) {
+			Node<K, V> node = window.pollFirst();
+			windowWeight -= node.weight;
+			node.queue = PROBATION;
+			probation.addLast(node);
+			if (candidate == null) {
+				candidate = node;
+			}
+		}
+		while (weightedSize > maximumWeight) {
+			Node<K, V> victim = probation.first;
+			if (victim == null) {
+				// 试用区为空时依次从保护区和窗口淘汰
+				victim = protect.first != null ? protect.first : window.first;
+				evictNode(victim);
+				continue;
+			}
+			if (candidate == null || victim == candidate) {
+				if (victim == candidate) {
+					candidate = candidate.next;
+				}
+				evictNode(victim);
+				continue;
+			}
+			Node<K, V> next = candidate.next;
+			if (candidate.weight > maximumWeight || !admit(candidate.key, victim.key)) {
+				evictNode(candidate);
+				candidate = next;
+			} else {
+				evictNode(victim);
+			}
+		}
+		if (listener != null && weightedSize > 0) {
+			// 与LRUHashMap一致，询问最老的元素能否提前移除(同步调用)
+			Node<K, V> eldest = probation.first != null ? probation.first : window.first;
+			if (eldest != null && listener.canRemoveWithoutLRU(eldest.key, eldest.value)) {
+				removeNode(eldest);
+			}
+		}
+	}
+
+	private boolean admit(K candidateKey, K victimKey) {
+		int candidateFreq = sketch.frequency(candidateKey);
+		int victimFreq = sketch.frequency(victimKey);
+		if (candidateFreq > victimFreq) {
+			return true;
+		}
+		// 频率较高的候选偶尔放行，防止被刻意构造的哈希冲突长期挡在外面
+		return candidateFreq > 5 && (ThreadLocalRandom.current().nextInt() & 127) == 0;
+	}
+
+	private void evictNode(Node<K, V> node) {
+		removeNode(node);
+		evictionCount.increment();
+	}
+
+	/**
+	 * 移除元素并通知监听(持有锁)
+	 * 
+	 * @param node
+	 */
+	private void removeNode(Node<K, V> node) {
+		data.remove(node.key, node);
+		if (node.queue == WINDOW) {
+			window.remove(node);
+			windowWeight -= node.weight;
+		} else if (node.queue == PROBATION) {
+			probation.remove(node);
+		} else if (node.queue == PROTECTED) {
+			protect.remove(node);
+			protectedWeight -= node.weight;
+		} else {
+			return;
+		}
+		writeOrder.remove(node);
+		weightedSize -= node.weight;
+		node.queue = DEAD;
+		if (listener != null) {
+			final Object key = node.key;
+			final Object value = node.value;
+			listenerExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						listener.onRemove(key, value);
+					} catch (Exception e) {
+						log.error(e, e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * 元素权重计算
+	 * 
+	 * @author hank
+	 * 
+	 * @param <K>
+	 * @param <V>
+	 */
+	public interface LFUWeigher<K, V> {
+		public int weigh(K key, V value);
+	}
+
+	private static class Node<K, V> {
+		private final K key;
+		private volatile V value;
+		private int weight;
+		private volatile long writeTime;
+		private volatile long accessTime;
+		private byte queue;
+		private Node<K, V> prev;
+		private Node<K, V> next;
+		private Node<K, V> writePrev;
+		private Node<K, V> writeNext;
+
+		private Node(K key, V value, int weight, long now) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.writeTime = now;
+			this.accessTime = now;
+		}
+	}
+
+	/**
+	 * 按访问顺序排列的链表
+	 */
+	private static class AccessDeque<K, V> {
+		private Node<K, V> first;
+		private Node<K, V> last;
+
+		private void addLast(Node<K, V> node) {
+			node.prev = last;
+			node.next = null;
+			if (last == null) {
+				first = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+		}
+
+		private void remove(Node<K, V> node) {
+			if (node.prev == null) {
+				first = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				last = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+		}
+
+		private Node<K, V> pollFirst() {
+			Node<K, V> node = first;
+			if (node != null) {
+				remove(node);
+			}
+			return node;
+		}
+
+		private void moveToBack(Node<K, V> node) {
+			if (node != last) {
+				remove(node);
+				addLast(node);
+			}
+		}
+	}
+
+	/**
+	 * 按写入顺序排列的链表
+	 */
+	private static class WriteDeque<K, V> {
+		private Node<K, V> first;
+		private Node<K, V> last;
+
+		private void addLast(Node<K, V> node) {
+			node.writePrev = last;
+			node.writeNext = null;
+			if (last == null) {
+				first = node;
+			} else {
+				last.writeNext = node;
+			}
+			last = node;
+		}
+
+		private void remove(Node<K, V> node) {
+			if (node.writePrev == null) {
+				first = node.writeNext;
+			} else {
+				node.writePrev.writeNext = node.writeNext;
+			}
+			if (node.writeNext == null) {
+				last = node.writePrev;
+			} else {
+				node.writeNext.writePrev = node.writePrev;
+			}
+			node.writePrev = null;
+			node.writeNext = null;
+		}
+
+		private void moveToBack(Node<K, V> node) {
+			if (node != last) {
+				remove(node);
+				addLast(node);
+			}
+		}
+	}
+
+	/**
+	 * 有损的访问记录环形缓冲(多写单读，满了直接丢弃)
+	 */
+	private static class ReadBuffer {
+		private final AtomicReferenceArray<Node<?, ?>> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+		private final AtomicLong writeCounter = new AtomicLong();
+		private volatile long readCounter;
+
+		private boolean offer(Node<?, ?> node) {
+			long tail = writeCounter.get();
+			if (tail - readCounter >= READ_BUFFER_SIZE) {
+				return false;
+			}
+			if (writeCounter.compareAndSet(tail, tail + 1)) {
+				buffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+			}
+			// 竞争失败的记录直接丢掉
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <K, V> void drain(ConcurrentLFUCache<K, V> cache) {
+			long head = readCounter;
+			long tail = writeCounter.get();
+			for (; head < tail; ++head) {
+				int index = (int) (head & READ_BUFFER_MASK);
+				Node<?, ?> node = buffer.get(index);
+				if (node == null) {
+					// 写入方还没来得及放入
+					break;
+				}
+				buffer.lazySet(index, null);
+				if (cache != null) {
+					cache.onAccess((Node<K, V>) node);
+				}
+			}
+			readCounter = head;
+		}
+	}
+
+	/**
+	 * 4位计数的Count-Min Sketch，总计数达到采样数后全体减半(老化)
+	 */
+	private static class FrequencySketch {
+		private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+		private static final long RESET_MASK = 0x7777777777777777L;
+		private static final long ONE_MASK = 0x1111111111111111L;
+		private final long[] table;
+		private final int tableMask;
+		private final int sampleSize;
+		private int size;
+
+		private FrequencySketch(long maximum) {
+			int length = 16;
+			long target = Math.min(maximum, 1 << 20);
+			while (length < target) {
+				length <<= 1;
+			}
+			this.table = new long[length];
+			this.tableMask = length - 1;
+			this.sampleSize = length * 10;
+		}
+
+		private int frequency(Object e) {
+			int hash = spread(e.hashCode());
+			int start = (hash & 3) << 2;
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < 4; ++i) {
+				int index = indexOf(hash, i);
+				int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+				frequency = Math.min(frequency, count);
+			}
+			return frequency;
+		}
+
+		private void increment(Object e) {
+			int hash = spread(e.hashCode());
+			int start = (hash & 3) << 2;
+			boolean added = false;
+			for (int i = 0; i < 4; ++i) {
+				added |= incrementAt(indexOf(hash, i), start + i);
+			}
+			if (added && ++size >= sampleSize) {
+				reset();
+			}
+		}
+
+		private boolean incrementAt(int i, int j) {
+			int offset = j << 2;
+			long mask = 0xfL << offset;
+			if ((table[i] & mask) != mask) {
+				table[i] += 1L << offset;
+				return true;
+			}
+			return false;
+		}
+
+		private void reset() {
+			int odd = 0;
+			for (int i = 0; i < table.length; ++i) {
+				odd += Long.bitCount(table[i] & ONE_MASK);
+				table[i] = (table[i] >>> 1) & RESET_MASK;
+			}
+			size = (size - (odd >>> 2)) >>> 1;
+		}
+
+		private int indexOf(int item, int i) {
+			long hash = (item + SEED[i]) * SEED[i];
+			hash += hash >>> 32;
+			return ((int) hash) & tableMask;
+		}
+
+		private static int spread(int x) {
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			return (x >>> 16) ^ x;
+		}
+	}
+
+	public static class ConcurrentLFUCacheBuilder<K, V> {
+		private long maximumWeight;
+		private LFUWeigher<K, V> weigher;
+		private long expireAfterWriteNanos;
+		private long expireAfterAccessNanos;
+		private LRUListener listener;
+		private Executor listenerExecutor;
+		private int initialCapacity;
+
+		public ConcurrentLFUCacheBuilder() {
+			this.maximumWeight = 10000;
+			this.listenerExecutor = ForkJoinPool.commonPool();
+			this.initialCapacity = 16;
+		}
+
+		/**
+		 * 构建缓存
+		 * 
+		 * @return
+		 */
+		public ConcurrentLFUCache<K, V> build() {
+			return new ConcurrentLFUCache<>(this);
+		}
+
+		/**
+		 * 容量(不设置权重计算时为最大数量)
+		 * 
+		 * @param maximumWeight
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> maximumWeight(long maximumWeight) {
+			if (maximumWeight > 0) {
+				this.maximumWeight = maximumWeight;
+			}
+			return this;
+		}
+
+		/**
+		 * 权重计算
+		 * 
+		 * @param weigher
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> weigher(LFUWeigher<K, V> weigher) {
+			this.weigher = weigher;
+			return this;
+		}
+
+		/**
+		 * 写入后多久过期
+		 * 
+		 * @param duration
+		 * @param unit
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+			this.expireAfterWriteNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/**
+		 * 最后一次访问后多久过期
+		 * 
+		 * @param duration
+		 * @param unit
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+			this.expireAfterAccessNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/**
+		 * 移除监听(onRemove在listenerExecutor中异步回调)
+		 * 
+		 * @param listener
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> listener(LRUListener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		/**
+		 * 移除监听的回调线程池
+		 * 
+		 * @param executor
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> listenerExecutor(Executor executor) {
+			if (executor != null) {
+				this.listenerExecutor = executor;
+			}
+			return this;
+		}
+
+		/**
+		 * 初始容量
+		 * 
+		 * @param initialCapacity
+		 * @return
+		 */
+		public ConcurrentLFUCacheBuilder<K, V> initialCapacity(int initialCapacity) {
+			if (initialCapacity > 0) {
+				this.initialCapacity = initialCapacity;
+			}
+			return this;
+		}
+	}
+}
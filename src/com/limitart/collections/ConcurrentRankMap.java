@@ -0,0 +1,356 @@
+package com.limitart.collections;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+import com.limitart.collections.define.IRankMap;
+import com.limitart.collections.define.IRankObj;
+
+/**
+ * 并发排行结构(带跨度的跳表) 读写都是O(log n)，读取为乐观读不阻塞写入
+ * 
+ * 比较结果相同的元素按放入的先后排列
+ * 
+ * @author hank
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentRankMap<K, V extends IRankObj<K>> implements IRankMap<K, V> {
+	private static final int MAX_LEVEL = 32;
+	private final Comparator<V> comparator;
+	private final int capacity;
+	private final StampedLock lock = new StampedLock();
+	private final ConcurrentHashMap<K, Node<V>> map;
+	private final Node<V> head = new Node<>(null, 0, MAX_LEVEL);
+	private int level = 1;
+	private volatile int size;
+	// 放入序号，比较结果相同时区分先后
+	private long seq;
+
+	public ConcurrentRankMap(Comparator<V> comparator, int capacity) {
+		this.comparator = comparator;
+		this.capacity = capacity;
+		this.map = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+	}
+
+	@Override
+	public void put(K key, V value) {
+		long stamp = lock.writeLock();
+		try {
+			Node<V> old = map.get(key);
+			if (old != null) {
+				// 比较新数据与老数据大小
+				if (comparator.compare(value, old.value) == 0) {
+					return;
+				}
+				delete(old);
+			}
+			map.put(key, insert(value, ++seq));
+			// 清理排行最后的数据
+			while (size > capacity) {
+				Node<V> last = nodeAt(size);
+				delete(last);
+				map.remove(last.value.key());
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getIndex(K key) {
+		// 节点在写锁内替换，查找节点也要在同一次校验范围内
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				Node<V> node = map.get(key);
+				int rank = node == null ? 0 : rankOf(node);
+				if (lock.validate(stamp)) {
+					return rank - 1;
+				}
+			} catch (RuntimeException e) {
+				// 读到了写入的中间状态，加锁重读
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			Node<V> node = map.get(key);
+			if (node == null) {
+				return -1;
+			}
+			return rankOf(node) - 1;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public List<V> getRange(int start, int end) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				List<V> range = range(start, end);
+				if (lock.validate(stamp)) {
+					return range;
+				}
+			} catch (RuntimeException e) {
+				// 读到了写入的中间状态，加锁重读
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return range(start, end);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public List<V> getAll() {
+		long stamp = lock.readLock();
+		try {
+			List<V> result = new ArrayList<>(size);
+			for (Node<V> x = head.next[0]; x != null; x = x.next[0]) {
+				result.add(x.value);
+			}
+			return result;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public V getAt(int index) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				V at = at(index);
+				if (lock.validate(stamp)) {
+					return at;
+				}
+			} catch (RuntimeException e) {
+				// 读到了写入的中间状态，加锁重读
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return at(index);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			for (int i = 0; i < MAX_LEVEL; ++i) {
+				head.next[i] = null;
+				head.span[i] = 0;
+			}
+			level = 1;
+			size = 0;
+			map.clear();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getAll().toString();
+	}
+
+	private V at(int index) {
+		int size = this.size;
+		if (size == 0) {
+			return null;
+		}
+		if (index < 0) {
+			index = 0;
+		}
+		if (index >= size) {
+			index = size - 1;
+		}
+		Node<V> node = nodeAt(index + 1);
+		return node == null ? null : node.value;
+	}
+
+	private List<V> range(int start, int end) {
+		List<V> temp = new ArrayList<>();
+		int size = this.size;
+		if (size == 0) {
+			return temp;
+		}
+		if (start < 0) {
+			start = 0;
+		}
+		if (end < start) {
+			end = start;
+		}
+		if (end >= size) {
+			end = size - 1;
+		}
+		// 与其他IRankMap一致：start==end时取一个，否则取[start,end)
+		int count = start == end ? 1 : end - start;
+		Node<V> x = nodeAt(start + 1);
+		for (int i = 0; i < count && x != null; ++i) {
+			temp.add(x.value);
+			x = x.next[0];
+		}
+		return temp;
+	}
+
+	/**
+	 * 按名次(从1开始)查找节点
+	 * 
+	 * @param rank
+	 * @return
+	 */
+	private Node<V> nodeAt(int rank) {
+		Node<V> x = head;
+		int traversed = 0;
+		for (int i = level - 1; i >= 0; --i) {
+			while (x.next[i] != null && traversed + x.span[i] <= rank) {
+				traversed += x.span[i];
+				x = x.next[i];
+			}
+			if (traversed == rank) {
+				return x;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 节点的名次(从1开始)，不在表中返回0
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private int rankOf(Node<V> node) {
+		Node<V> x = head;
+		int rank = 0;
+		for (int i = level - 1; i >= 0; --i) {
+			while (x.next[i] != null && compare(x.next[i], node.value, node.seq) <= 0) {
+				rank += x.span[i];
+				x = x.next[i];
+			}
+			if (x == node) {
+				return rank;
+			}
+		}
+		return 0;
+	}
+
+	private Node<V> insert(V value, long seq) {
+		Node<V>[] update = newNodeArray(MAX_LEVEL);
+		int[] rank = new int[MAX_LEVEL];
+		Node<V> x = head;
+		for (int i = level - 1; i >= 0; --i) {
+			rank[i] = i == level - 1 ? 0 : rank[i + 1];
+			while (x.next[i] != null && compare(x.next[i], value, seq) < 0) {
+				rank[i] += x.span[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		int newLevel = randomLevel();
+		if (newLevel > level) {
+			for (int i = level; i < newLevel; ++i) {
+				rank[i] = 0;
+				update[i] = head;
+				head.span[i] = size;
+			}
+			level = newLevel;
+		}
+		Node<V> node = new Node<>(value, seq, newLevel);
+		for (int i = 0; i < newLevel; ++i) {
+			node.next[i] = update[i].next[i];
+			node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+			update[i].span[i] = (rank[0] - rank[i]) + 1;
+			update[i].next[i] = node;
+		}
+		for (int i = newLevel; i < level; ++i) {
+			++update[i].span[i];
+		}
+		++size;
+		return node;
+	}
+
+	private void delete(Node<V> node) {
+		Node<V>[] update = newNodeArray(MAX_LEVEL);
+		Node<V> x = head;
+		for (int i = level - 1; i >= 0; --i) {
+			while (x.next[i] != null && compare(x.next[i], node.value, node.seq) < 0) {
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		for (int i = 0; i < level; ++i) {
+			if (update[i].next[i] == node) {
+				update[i].span[i] += node.span[i] - 1;
+				update[i].next[i] = node.next[i];
+			} else {
+				--update[i].span[i];
+			}
+		}
+		while (level > 1 && head.next[level - 1] == null) {
+			head.span[level - 1] = 0;
+			--level;
+		}
+		--size;
+	}
+
+	private int compare(Node<V> node, V value, long seq) {
+		int compare = comparator.compare(node.value, value);
+		if (compare != 0) {
+			return compare;
+		}
+		return Long.compare(node.seq, seq);
+	}
+
+	private static int randomLevel() {
+		int level = 1;
+		// 每层1/4的概率晋升
+		while (level < MAX_LEVEL && (ThreadLocalRandom.current().nextInt() & 3) == 0) {
+			++level;
+		}
+		return level;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <V> Node<V>[] newNodeArray(int length) {
+		return new Node[length];
+	}
+
+	private static class Node<V> {
+		private final V value;
+		private final long seq;
+		private final Node<V>[] next;
+		// 到下一个节点跨过的节点数
+		private final int[] span;
+
+		private Node(V value, long seq, int level) {
+			this.value = value;
+			this.seq = seq;
+			this.next = newNodeArray(level);
+			this.span = new int[level];
+		}
+	}
+}
@@ -1,7 +1,11 @@
 package com.limitart.collections;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -12,142 +16,253 @@ import com.limitart.util.StringUtil;
 /**
  * String键约束型Map
  * 
+ * 开放寻址存储，整数和浮点数以原始类型存放不装箱，类型一致时读取只查找一次且不经过字符串转换。
+ * 子类可以指定Map存放(值装箱存放)，如ConcurrentConstraintMap
+ * 
  * @author hank
  *
  */
 public class ConstraintMap<K> {
-	private Map<K, Object> map;
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final Object NULL_KEY = new Object();
+	private static final byte TYPE_BYTE = 1;
+	private static final byte TYPE_SHORT = 2;
+	private static final byte TYPE_INT = 3;
+	private static final byte TYPE_LONG = 4;
+	private static final byte TYPE_FLOAT = 5;
+	private static final byte TYPE_DOUBLE = 6;
+	private static final byte TYPE_OBJECT = 7;
+	// 首次写入时才分配
+	private Object[] keys;
+	private byte[] types;
+	// 整数直接存放，浮点数存放位模式
+	private long[] primitives;
+	private Object[] objects;
+	private int size;
+	private int mask;
+	// 指定了Map时使用Map存放
+	private final Map<K, Object> map;
 
 	protected ConstraintMap(Map<K, Object> map) {
+		if (map == null) {
+			throw new NullPointerException("map");
+		}
 		this.map = map;
 	}
 
 	public ConstraintMap() {
-		map = new HashMap<>();
+		this.map = null;
 	}
 
 	public boolean hasKey(K key) {
-		return map.containsKey(key);
+		if (map != null) {
+			return map.containsKey(key);
+		}
+		return indexOf(key) >= 0;
 	}
 
 	public void clear() {
-		map.clear();
+		if (map != null) {
+			map.clear();
+			return;
+		}
+		if (keys == null) {
+			return;
+		}
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = null;
+			objects[i] = null;
+			types[i] = 0;
+		}
+		size = 0;
 	}
 
 	public boolean removeKey(K key) {
-		return map.remove(key) != null;
+		if (map != null) {
+			return map.remove(key) != null;
+		}
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		}
+		boolean notNull = types[index] != TYPE_OBJECT || objects[index] != null;
+		removeAt(index);
+		return notNull;
 	}
 
 	public int size() {
-		return map.size();
+		if (map != null) {
+			return map.size();
+		}
+		return size;
 	}
 
 	public void putByte(K key, byte value) {
-		map.put(key, value);
+		putPrimitive(key, TYPE_BYTE, value);
 	}
 
 	public Byte getByte(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? null : objToByte(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return Byte.valueOf(map.get(key).toString());
+		return toByte(index);
 	}
 
 	public byte getByte2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? 0 : objToByte(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return 0;
 		}
-		return getByte(key);
+		return toByte(index);
 	}
 
 	public void putShort(K key, short value) {
-		map.put(key, value);
+		putPrimitive(key, TYPE_SHORT, value);
 	}
 
 	public Short getShort(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? null : objToShort(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return Short.valueOf(map.get(key).toString());
+		return toShort(index);
 	}
 
 	public short getShort2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? 0 : objToShort(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return 0;
 		}
-		return getShort(key);
+		return toShort(index);
 	}
 
 	public void putInt(K key, int value) {
-		map.put(key, value);
+		putPrimitive(key, TYPE_INT, value);
 	}
 
 	public Integer getInt(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? null : objToInt(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return Integer.valueOf(map.get(key).toString());
+		return toInt(index);
 	}
 
 	public int getInt2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? 0 : objToInt(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return 0;
 		}
-		return getInt(key);
+		return toInt(index);
 	}
 
 	public void putLong(K key, long value) {
-		map.put(key, value);
+		putPrimitive(key, TYPE_LONG, value);
 	}
 
 	public Long getLong(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? null : objToLong(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return Long.valueOf(map.get(key).toString());
+		return toLong(index);
 	}
 
 	public long getLong2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? 0 : objToLong(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return 0;
 		}
-		return getLong(key);
+		return toLong(index);
 	}
 
 	public void putFloat(K key, float value) {
-		map.put(key, value);
+		putPrimitive(key, TYPE_FLOAT, Double.doubleToRawLongBits(value));
 	}
 
 	public Float getFloat(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? null : objToFloat(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return Float.valueOf(map.get(key).toString());
+		return toFloat(index);
 	}
 
 	public float getFloat2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? 0F : objToFloat(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return 0F;
 		}
-		return getFloat(key);
+		return toFloat(index);
 	}
 
 	public void putDouble(K key, double value) {
-		map.put(key, value);
+		putPrimitive(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
 	}
 
 	public Double getDouble(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? null : objToDouble(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return Double.valueOf(map.get(key).toString());
+		return toDouble(index);
 	}
 
 	public double getDouble2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? 0D : objToDouble(value);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return 0D;
 		}
-		return getDouble(key);
+		return toDouble(index);
 	}
 
 	public void putBoolean(K key, boolean value) {
@@ -160,67 +275,155 @@ public class ConstraintMap<K> {
 
 	public void putString(K key, String value) {
 		if (value == null) {
-			map.put(key, "");
+			putObject2(key, "");
 		} else {
-			map.put(key, value);
+			putObject2(key, value);
 		}
 	}
 
 	public String getString(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			return (String) map.get(key);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return null;
 		}
-		return (String) map.get(key);
+		return (String) valueAt(index);
 	}
 
 	public String getString2(K key) {
-		if (!hasKey(key)) {
+		if (map != null) {
+			Object value = map.get(key);
+			return value == null ? "" : (String) value;
+		}
+		int index = indexOf(key);
+		if (index < 0) {
 			return "";
 		}
-		return getString(key);
+		return (String) valueAt(index);
 	}
 
 	public <T> void putObject(K key, T value) {
-		map.put(key, value);
+		putObject2(key, value);
 	}
 
 	public void putObject2(K key, Object value) {
-		map.put(key, value);
+		if (map != null) {
+			map.put(key, value);
+			return;
+		}
+		int index = insert(key);
+		types[index] = TYPE_OBJECT;
+		objects[index] = value;
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> T getObject(K key) {
-		if (!hasKey(key)) {
-			return null;
-		}
-		return (T) map.get(key);
+		return (T) getObject2(key);
 	}
 
 	public Object getObject2(K key) {
-		return map.get(key);
+		if (map != null) {
+			return map.get(key);
+		}
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		return valueAt(index);
 	}
 
+	/**
+	 * 键集合
+	 * <p>
+	 * 指定了Map时为Map的视图(可通过它删除)；开放寻址存放时为只读快照，修改会抛出UnsupportedOperationException，
+	 * 删除请用{@link #removeKey(Object)}
+	 * 
+	 * @return
+	 */
 	public Set<K> keySet() {
-		return map.keySet();
+		if (map != null) {
+			return map.keySet();
+		}
+		Set<K> result = new HashSet<>();
+		if (keys != null) {
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != null) {
+					result.add(keyAt(i));
+				}
+			}
+		}
+		return Collections.unmodifiableSet(result);
 	}
 
+	/**
+	 * 值集合
+	 * <p>
+	 * 指定了Map时为Map的视图；开放寻址存放时为只读快照(原始类型会装箱)
+	 * 
+	 * @return
+	 */
 	public Collection<Object> values() {
-		return map.values();
+		if (map != null) {
+			return map.values();
+		}
+		Collection<Object> result = new ArrayList<>(size);
+		if (keys != null) {
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != null) {
+					result.add(valueAt(i));
+				}
+			}
+		}
+		return Collections.unmodifiableCollection(result);
 	}
 
+	/**
+	 * 键值集合
+	 * <p>
+	 * 指定了Map时为Map的视图(Entry.setValue会写回)；开放寻址存放时为只读快照(原始类型会装箱)，
+	 * Entry.setValue会抛出UnsupportedOperationException，修改请用put系列方法
+	 * 
+	 * @return
+	 */
 	public Set<Entry<K, Object>> entrySet() {
-		return map.entrySet();
+		if (map != null) {
+			return map.entrySet();
+		}
+		Set<Entry<K, Object>> result = new HashSet<>();
+		if (keys != null) {
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != null) {
+					result.add(new SimpleImmutableEntry<K, Object>(keyAt(i), valueAt(i)));
+				}
+			}
+		}
+		return Collections.unmodifiableSet(result);
 	}
 
 	public String toJSON() {
-		return JSON.toJSONString(this.map);
+		if (map != null) {
+			return JSON.toJSONString(map);
+		}
+		Map<K, Object> result = new HashMap<>();
+		if (keys != null) {
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != null) {
+					result.put(keyAt(i), valueAt(i));
+				}
+			}
+		}
+		return JSON.toJSONString(result);
 	}
 
 	private void fromJSON(String jsonContent) {
 		if (!StringUtil.isEmptyOrNull(jsonContent)) {
 			@SuppressWarnings("unchecked")
 			HashMap<K, Object> object = StringUtil.toObject(jsonContent, HashMap.class);
-			map.putAll(object);
+			for (Entry<K, Object> entry : object.entrySet()) {
+				putBoxed(entry.getKey(), entry.getValue());
+			}
 		}
 	}
 
@@ -229,4 +432,271 @@ public class ConstraintMap<K> {
 		map.fromJSON(jsonContent);
 		return map;
 	}
+
+	/**
+	 * 装箱的数值按原始类型存放
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	private void putBoxed(K key, Object value) {
+		if (value instanceof Integer) {
+			putInt(key, (Integer) value);
+		} else if (value instanceof Long) {
+			putLong(key, (Long) value);
+		} else if (value instanceof Double) {
+			putDouble(key, (Double) value);
+		} else if (value instanceof Float) {
+			putFloat(key, (Float) value);
+		} else if (value instanceof Short) {
+			putShort(key, (Short) value);
+		} else if (value instanceof Byte) {
+			putByte(key, (Byte) value);
+		} else {
+			putObject2(key, value);
+		}
+	}
+
+	private void putPrimitive(K key, byte type, long value) {
+		if (map != null) {
+			map.put(key, box(type, value, null));
+			return;
+		}
+		int index = insert(key);
+		types[index] = type;
+		primitives[index] = value;
+		objects[index] = null;
+	}
+
+	// 类型一致时直接返回，否则与原来一样经过字符串转换(保持溢出、格式错误时的异常行为)
+
+	private byte toByte(int index) {
+		byte type = types[index];
+		if (type == TYPE_BYTE) {
+			return (byte) primitives[index];
+		}
+		return objToByte(valueAt(index));
+	}
+
+	private static byte objToByte(Object value) {
+		if (value instanceof Byte) {
+			return (Byte) value;
+		}
+		return Byte.parseByte(value.toString());
+	}
+
+	private short toShort(int index) {
+		byte type = types[index];
+		if (type == TYPE_SHORT || type == TYPE_BYTE) {
+			return (short) primitives[index];
+		}
+		return objToShort(valueAt(index));
+	}
+
+	private static short objToShort(Object value) {
+		if (value instanceof Short) {
+			return (Short) value;
+		}
+		return Short.parseShort(value.toString());
+	}
+
+	private int toInt(int index) {
+		byte type = types[index];
+		if (type >= TYPE_BYTE && type <= TYPE_INT) {
+			return (int) primitives[index];
+		}
+		return objToInt(valueAt(index));
+	}
+
+	private static int objToInt(Object value) {
+		if (value instanceof Integer) {
+			return (Integer) value;
+		}
+		return Integer.parseInt(value.toString());
+	}
+
+	private long toLong(int index) {
+		byte type = types[index];
+		if (type >= TYPE_BYTE && type <= TYPE_LONG) {
+			return primitives[index];
+		}
+		return objToLong(valueAt(index));
+	}
+
+	private static long objToLong(Object value) {
+		if (value instanceof Long) {
+			return (Long) value;
+		}
+		return Long.parseLong(value.toString());
+	}
+
+	private float toFloat(int index) {
+		byte type = types[index];
+		if (type == TYPE_FLOAT) {
+			return (float) Double.longBitsToDouble(primitives[index]);
+		}
+		return objToFloat(valueAt(index));
+	}
+
+	private static float objToFloat(Object value) {
+		if (value instanceof Float) {
+			return (Float) value;
+		}
+		return Float.parseFloat(value.toString());
+	}
+
+	private double toDouble(int index) {
+		byte type = types[index];
+		if (type == TYPE_DOUBLE) {
+			return Double.longBitsToDouble(primitives[index]);
+		}
+		return objToDouble(valueAt(index));
+	}
+
+	private static double objToDouble(Object value) {
+		if (value instanceof Double) {
+			return (Double) value;
+		}
+		return Double.parseDouble(value.toString());
+	}
+
+	private Object valueAt(int index) {
+		return box(types[index], primitives[index], objects[index]);
+	}
+
+	private static Object box(byte type, long value, Object object) {
+		switch (type) {
+		case TYPE_BYTE:
+			return (byte) value;
+		case TYPE_SHORT:
+			return (short) value;
+		case TYPE_INT:
+			return (int) value;
+		case TYPE_LONG:
+			return value;
+		case TYPE_FLOAT:
+			return (float) Double.longBitsToDouble(value);
+		case TYPE_DOUBLE:
+			return Double.longBitsToDouble(value);
+		default:
+			return object;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private K keyAt(int index) {
+		Object key = keys[index];
+		return key == NULL_KEY ? null : (K) key;
+	}
+
+	private int indexOf(Object key) {
+		if (keys == null) {
+			return -1;
+		}
+		if (key == null) {
+			key = NULL_KEY;
+		}
+		int index = hash(key) & mask;
+		Object k;
+		while ((k = keys[index]) != null) {
+			if (k == key || k.equals(key)) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * 找到键所在的槽位，不存在则占用一个空槽
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private int insert(Object key) {
+		if (keys == null) {
+			allocate(DEFAULT_CAPACITY);
+		}
+		if (key == null) {
+			key = NULL_KEY;
+		}
+		int index = hash(key) & mask;
+		Object k;
+		while ((k = keys[index]) != null) {
+			if (k == key || k.equals(key)) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		// 负载因子0.5
+		if ((size + 1) << 1 > keys.length) {
+			rehash(keys.length << 1);
+			return insert(key);
+		}
+		keys[index] = key;
+		++size;
+		return index;
+	}
+
+	/**
+	 * 删除槽位，后面同一探测链上的元素前移(不使用墓碑)
+	 * 
+	 * @param index
+	 */
+	private void removeAt(int index) {
+		int hole = index;
+		int next = (hole + 1) & mask;
+		Object k;
+		while ((k = keys[next]) != null) {
+			int home = hash(k) & mask;
+			// home不在(hole,next]之间的元素可以移到hole
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = k;
+				types[hole] = types[next];
+				primitives[hole] = primitives[next];
+				objects[hole] = objects[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[hole] = null;
+		types[hole] = 0;
+		objects[hole] = null;
+		--size;
+	}
+
+	private void allocate(int capacity) {
+		keys = new Object[capacity];
+		types = new byte[capacity];
+		primitives = new long[capacity];
+		objects = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+		Object[] oldKeys = keys;
+		byte[] oldTypes = types;
+		long[] oldPrimitives = primitives;
+		Object[] oldObjects = objects;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			Object k = oldKeys[i];
+			if (k == null) {
+				continue;
+			}
+			int index = hash(k) & mask;
+			while (keys[index] != null) {
+				index = (index + 1) & mask;
+			}
+			keys[index] = k;
+			types[index] = oldTypes[i];
+			primitives[index] = oldPrimitives[i];
+			objects[index] = oldObjects[i];
+		}
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
 }
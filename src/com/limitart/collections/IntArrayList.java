@@ -0,0 +1,115 @@
+package com.limitart.collections;
+
+import java.util.Arrays;
+
+/**
+ * int可增长数组(无装箱，非线程安全)
+ * 
+ * @author hank
+ *
+ */
+public class IntArrayList {
+	private static final int[] EMPTY = new int[0];
+	private int[] elements;
+	private int size;
+
+	public IntArrayList() {
+		this.elements = EMPTY;
+	}
+
+	public IntArrayList(int capacity) {
+		this.elements = capacity == 0 ? EMPTY : new int[capacity];
+	}
+
+	public void add(int value) {
+		if (size == elements.length) {
+			ensureCapacity(size + 1);
+		}
+		elements[size++] = value;
+	}
+
+	public int get(int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	public int set(int index, int value) {
+		checkIndex(index);
+		int old = elements[index];
+		elements[index] = value;
+		return old;
+	}
+
+	public int removeAt(int index) {
+		checkIndex(index);
+		int old = elements[index];
+		int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(elements, index + 1, elements, index, moved);
+		}
+		--size;
+		return old;
+	}
+
+	public int indexOf(int value) {
+		for (int i = 0; i < size; ++i) {
+			if (elements[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(int value) {
+		return indexOf(value) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * 清空(保留容量以便复用)
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * 保证容量
+	 * 
+	 * @param capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > elements.length) {
+			int newCapacity = Math.max(capacity, elements.length + (elements.length >> 1) + 1);
+			elements = Arrays.copyOf(elements, newCapacity);
+		}
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index:" + index + ",size:" + size);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; ++i) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(elements[i]);
+		}
+		return sb.append(']').toString();
+	}
+}
@@ -0,0 +1,115 @@
+package com.limitart.collections;
+
+import java.util.Arrays;
+
+/**
+ * long可增长数组(无装箱，非线程安全)
+ * 
+ * @author hank
+ *
+ */
+public class LongArrayList {
+	private static final long[] EMPTY = new long[0];
+	private long[] elements;
+	private int size;
+
+	public LongArrayList() {
+		this.elements = EMPTY;
+	}
+
+	public LongArrayList(int capacity) {
+		this.elements = capacity == 0 ? EMPTY : new long[capacity];
+	}
+
+	public void add(long value) {
+		if (size == elements.length) {
+			ensureCapacity(size + 1);
+		}
+		elements[size++] = value;
+	}
+
+	public long get(int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	public long set(int index, long value) {
+		checkIndex(index);
+		long old = elements[index];
+		elements[index] = value;
+		return old;
+	}
+
+	public long removeAt(int index) {
+		checkIndex(index);
+		long old = elements[index];
+		int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(elements, index + 1, elements, index, moved);
+		}
+		--size;
+		return old;
+	}
+
+	public int indexOf(long value) {
+		for (int i = 0; i < size; ++i) {
+			if (elements[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(long value) {
+		return indexOf(value) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * 清空(保留容量以便复用)
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * 保证容量
+	 * 
+	 * @param capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > elements.length) {
+			int newCapacity = Math.max(capacity, elements.length + (elements.length >> 1) + 1);
+			elements = Arrays.copyOf(elements, newCapacity);
+		}
+	}
+
+	public long[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index:" + index + ",size:" + size);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; ++i) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(elements[i]);
+		}
+		return sb.append(']').toString();
+	}
+}
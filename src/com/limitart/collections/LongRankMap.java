@@ -0,0 +1,582 @@
+package com.limitart.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.limitart.collections.define.DefaultRankObj;
+import com.limitart.collections.define.IRankMap;
+
+/**
+ * long型排行结构 唯一Id加最多三个long排序值(从大到小，相同时Id小的在前)
+ * 
+ * 数据存放在平行的基础类型数组中(带子树大小的treap)，不创建对象，每条约40~50字节
+ * 
+ * @author hank
+ *
+ */
+public class LongRankMap implements IRankMap<Long, DefaultRankObj> {
+	private static final int NIL = 0;
+	private final int capacity;
+	// 节点数据，下标0为空节点
+	private long[] ids;
+	private long[] params1;
+	private long[] params2;
+	private long[] params3;
+	private int[] lefts;
+	private int[] rights;
+	// 子树大小
+	private int[] counts;
+	// 已分配的节点数(含空节点)
+	private int allocated = 1;
+	// 回收节点链表(借用lefts存放下一个)
+	private int freeList = NIL;
+	private int root = NIL;
+	// Id索引(开放地址，存节点下标)
+	private int[] table;
+	private int tableMask;
+	// split的结果
+	private int splitLeft;
+	private int splitRight;
+
+	public LongRankMap(int paramCount, int capacity) {
+		if (paramCount < 1 || paramCount > 3) {
+			throw new IllegalArgumentException("paramCount must be 1~3");
+		}
+		this.capacity = capacity;
+		int init = Math.max(16, Math.min(capacity, 1024) + 1);
+		this.ids = new long[init];
+		this.params1 = new long[init];
+		this.params2 = paramCount > 1 ? new long[init] : null;
+		this.params3 = paramCount > 2 ? new long[init] : null;
+		this.lefts = new int[init];
+		this.rights = new int[init];
+		this.counts = new int[init];
+		this.table = new int[tableSizeFor(init)];
+		this.tableMask = table.length - 1;
+	}
+
+	/**
+	 * 放入一个元素(只比较一个排序值)
+	 * 
+	 * @param id
+	 * @param param1
+	 */
+	public void put(long id, long param1) {
+		put(id, param1, 0, 0);
+	}
+
+	/**
+	 * 放入一个元素(比较两个排序值)
+	 * 
+	 * @param id
+	 * @param param1
+	 * @param param2
+	 */
+	public void put(long id, long param1, long param2) {
+		put(id, param1, param2, 0);
+	}
+
+	/**
+	 * 放入一个元素
+	 * 
+	 * @param id
+	 * @param param1
+	 * @param param2
+	 * @param param3
+	 */
+	public synchronized void put(long id, long param1, long param2, long param3) {
+		int node = find(id);
+		if (node != NIL) {
+			if (params1[node] == param1 && (params2 == null || params2[node] == param2)
+					&& (params3 == null || params3[node] == param3)) {
+				return;
+			}
+			// 排序值变了，先摘下来再重新放入
+			removeFromTree(node);
+			setParams(node, param1, param2, param3);
+			insertToTree(node);
+		} else {
+			node = allocate();
+			ids[node] = id;
+			setParams(node, param1, param2, param3);
+			insertToTree(node);
+			index(node);
+		}
+		// 清理排行最后的数据
+		while (counts[root] > capacity) {
+			int last = nodeAt(counts[root] - 1);
+			removeFromTree(last);
+			unindex(last);
+			release(last);
+		}
+	}
+
+	/**
+	 * 是否包含一个Id
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public synchronized boolean containsKey(long id) {
+		return find(id) != NIL;
+	}
+
+	/**
+	 * 找到此Id在排行榜的名次(从0开始)，不存在返回-1
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public synchronized int getIndex(long id) {
+		int node = find(id);
+		if (node == NIL) {
+			return -1;
+		}
+		return rankOf(node);
+	}
+
+	/**
+	 * 获取指定位置的Id(越界时取最近的位置)，为空返回-1
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public synchronized long getIdAt(int index) {
+		int size = counts[root];
+		if (size == 0) {
+			return -1;
+		}
+		return ids[nodeAt(clamp(index, size))];
+	}
+
+	/**
+	 * 获取一个范围的Id(规则与getRange相同)
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public synchronized LongArrayList getRangeIds(int start, int end) {
+		LongArrayList result = new LongArrayList();
+		int[] range = toRange(start, end);
+		if (range != null) {
+			result.ensureCapacity(range[1] - range[0]);
+			collectIds(root, 0, range[0], range[1], result);
+		}
+		return result;
+	}
+
+	/**
+	 * 获取某个Id的排序值
+	 * 
+	 * @param id
+	 * @param paramIndex
+	 *            1~3
+	 * @return
+	 */
+	public synchronized long getParam(long id, int paramIndex) {
+		int node = find(id);
+		if (node == NIL) {
+			return 0;
+		}
+		return param(node, paramIndex);
+	}
+
+	/**
+	 * 移除一个Id
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public synchronized boolean remove(long id) {
+		int node = find(id);
+		if (node == NIL) {
+			return false;
+		}
+		removeFromTree(node);
+		unindex(node);
+		release(node);
+		return true;
+	}
+
+	@Override
+	public void put(Long key, DefaultRankObj value) {
+		put(key, value.getParam1(), value.getParam2(), value.getParam3());
+	}
+
+	@Override
+	public boolean containsKey(Long key) {
+		return containsKey(key.longValue());
+	}
+
+	@Override
+	public synchronized int size() {
+		return counts[root];
+	}
+
+	@Override
+	public int getIndex(Long key) {
+		return getIndex(key.longValue());
+	}
+
+	@Override
+	public synchronized List<DefaultRankObj> getRange(int start, int end) {
+		List<DefaultRankObj> result = new ArrayList<>();
+		int[] range = toRange(start, end);
+		if (range != null) {
+			collectObjs(root, 0, range[0], range[1], result);
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized List<DefaultRankObj> getAll() {
+		List<DefaultRankObj> result = new ArrayList<>(counts[root]);
+		collectObjs(root, 0, 0, counts[root], result);
+		return result;
+	}
+
+	@Override
+	public synchronized DefaultRankObj getAt(int index) {
+		int size = counts[root];
+		if (size == 0) {
+			return null;
+		}
+		return toObj(nodeAt(clamp(index, size)));
+	}
+
+	@Override
+	public synchronized void clear() {
+		root = NIL;
+		allocated = 1;
+		freeList = NIL;
+		Arrays.fill(table, NIL);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return getAll().toString();
+	}
+
+	private static int clamp(int index, int size) {
+		if (index < 0) {
+			return 0;
+		}
+		if (index >= size) {
+			return size - 1;
+		}
+		return index;
+	}
+
+	/**
+	 * 与其他IRankMap一致：start==end时取一个，否则取[start,end)
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private int[] toRange(int start, int end) {
+		int size = counts[root];
+		if (size == 0) {
+			return null;
+		}
+		if (start < 0) {
+			start = 0;
+		}
+		if (end < start) {
+			end = start;
+		}
+		if (end >= size) {
+			end = size - 1;
+		}
+		if (start == end) {
+			return new int[] { start, start + 1 };
+		}
+		if (end < start) {
+			return null;
+		}
+		return new int[] { start, end };
+	}
+
+	private DefaultRankObj toObj(int node) {
+		return new DefaultRankObj(ids[node], params1[node], param(node, 2), param(node, 3));
+	}
+
+	private long param(int node, int paramIndex) {
+		switch (paramIndex) {
+		case 1:
+			return params1[node];
+		case 2:
+			return params2 == null ? 0 : params2[node];
+		case 3:
+			return params3 == null ? 0 : params3[node];
+		default:
+			throw new IllegalArgumentException("paramIndex must be 1~3");
+		}
+	}
+
+	private void setParams(int node, long param1, long param2, long param3) {
+		params1[node] = param1;
+		if (params2 != null) {
+			params2[node] = param2;
+		}
+		if (params3 != null) {
+			params3[node] = param3;
+		}
+	}
+
+	/**
+	 * a是否排在b前面
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private boolean before(int a, int b) {
+		if (params1[a] != params1[b]) {
+			return params1[a] > params1[b];
+		}
+		if (params2 != null && params2[a] != params2[b]) {
+			return params2[a] > params2[b];
+		}
+		if (params3 != null && params3[a] != params3[b]) {
+			return params3[a] > params3[b];
+		}
+		return ids[a] < ids[b];
+	}
+
+	private static int priority(int node) {
+		int h = node * 0x9E3779B9;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private void update(int node) {
+		counts[node] = counts[lefts[node]] + counts[rights[node]] + 1;
+	}
+
+	/**
+	 * 按node拆分t，结果放在splitLeft(排在node前面的)和splitRight(其余的)
+	 * 
+	 * @param t
+	 * @param node
+	 */
+	private void split(int t, int node) {
+		if (t == NIL) {
+			splitLeft = NIL;
+			splitRight = NIL;
+			return;
+		}
+		if (before(t, node)) {
+			split(rights[t], node);
+			rights[t] = splitLeft;
+			update(t);
+			splitLeft = t;
+		} else {
+			split(lefts[t], node);
+			lefts[t] = splitRight;
+			update(t);
+			splitRight = t;
+		}
+	}
+
+	private int merge(int a, int b) {
+		if (a == NIL) {
+			return b;
+		}
+		if (b == NIL) {
+			return a;
+		}
+		if (priority(a) > priority(b)) {
+			rights[a] = merge(rights[a], b);
+			update(a);
+			return a;
+		}
+		lefts[b] = merge(a, lefts[b]);
+		update(b);
+		return b;
+	}
+
+	private void insertToTree(int node) {
+		lefts[node] = NIL;
+		rights[node] = NIL;
+		counts[node] = 1;
+		split(root, node);
+		int right = splitRight;
+		root = merge(merge(splitLeft, node), right);
+	}
+
+	private void removeFromTree(int node) {
+		split(root, node);
+		int left = splitLeft;
+		// splitRight的第一个就是node
+		int right = splitRight;
+		root = merge(left, removeFirst(right));
+	}
+
+	private int removeFirst(int t) {
+		if (lefts[t] == NIL) {
+			return rights[t];
+		}
+		lefts[t] = removeFirst(lefts[t]);
+		update(t);
+		return t;
+	}
+
+	private int rankOf(int node) {
+		int rank = 0;
+		int t = root;
+		while (t != NIL && t != node) {
+			if (before(node, t)) {
+				t = lefts[t];
+			} else {
+				rank += counts[lefts[t]] + 1;
+				t = rights[t];
+			}
+		}
+		return rank + counts[lefts[node]];
+	}
+
+	private int nodeAt(int index) {
+		int t = root;
+		while (t != NIL) {
+			int leftCount = counts[lefts[t]];
+			if (index < leftCount) {
+				t = lefts[t];
+			} else if (index == leftCount) {
+				return t;
+			} else {
+				index -= leftCount + 1;
+				t = rights[t];
+			}
+		}
+		return NIL;
+	}
+
+	private void collectIds(int t, int offset, int start, int end, LongArrayList result) {
+		if (t == NIL || offset >= end || offset + counts[t] <= start) {
+			return;
+		}
+		int leftCount = counts[lefts[t]];
+		collectIds(lefts[t], offset, start, end, result);
+		int index = offset + leftCount;
+		if (index >= start && index < end) {
+			result.add(ids[t]);
+		}
+		collectIds(rights[t], index + 1, start, end, result);
+	}
+
+	private void collectObjs(int t, int offset, int start, int end, List<DefaultRankObj> result) {
+		if (t == NIL || offset >= end || offset + counts[t] <= start) {
+			return;
+		}
+		int leftCount = counts[lefts[t]];
+		collectObjs(lefts[t], offset, start, end, result);
+		int index = offset + leftCount;
+		if (index >= start && index < end) {
+			result.add(toObj(t));
+		}
+		collectObjs(rights[t], index + 1, start, end, result);
+	}
+
+	private int allocate() {
+		if (freeList != NIL) {
+			int node = freeList;
+			freeList = lefts[node];
+			return node;
+		}
+		if (allocated == ids.length) {
+			int newLength = ids.length + (ids.length >> 1);
+			ids = Arrays.copyOf(ids, newLength);
+			params1 = Arrays.copyOf(params1, newLength);
+			if (params2 != null) {
+				params2 = Arrays.copyOf(params2, newLength);
+			}
+			if (params3 != null) {
+				params3 = Arrays.copyOf(params3, newLength);
+			}
+			lefts = Arrays.copyOf(lefts, newLength);
+			rights = Arrays.copyOf(rights, newLength);
+			counts = Arrays.copyOf(counts, newLength);
+		}
+		return allocated++;
+	}
+
+	private void release(int node) {
+		lefts[node] = freeList;
+		freeList = node;
+	}
+
+	private static int tableSizeFor(int count) {
+		// 装载因子0.75
+		int size = 16;
+		while (size * 3 < count * 4) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private static int hash(long id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int find(long id) {
+		int i = hash(id) & tableMask;
+		int node;
+		while ((node = table[i]) != NIL) {
+			if (ids[node] == id) {
+				return node;
+			}
+			i = (i + 1) & tableMask;
+		}
+		return NIL;
+	}
+
+	private void index(int node) {
+		if (counts[root] * 4 > table.length * 3) {
+			int[] old = table;
+			table = new int[old.length << 1];
+			tableMask = table.length - 1;
+			for (int n : old) {
+				if (n != NIL) {
+					insertIndex(n);
+				}
+			}
+		}
+		insertIndex(node);
+	}
+
+	private void insertIndex(int node) {
+		int i = hash(ids[node]) & tableMask;
+		while (table[i] != NIL) {
+			i = (i + 1) & tableMask;
+		}
+		table[i] = node;
+	}
+
+	private void unindex(int node) {
+		int i = hash(ids[node]) & tableMask;
+		while (table[i] != node) {
+			i = (i + 1) & tableMask;
+		}
+		// 后移删除，保持探测链连续
+		int j = i;
+		while (true) {
+			j = (j + 1) & tableMask;
+			int n = table[j];
+			if (n == NIL) {
+				break;
+			}
+			int home = hash(ids[n]) & tableMask;
+			if ((j > i && (home <= i || home > j)) || (j < i && (home <= i && home > j))) {
+				table[i] = n;
+				i = j;
+			}
+		}
+		table[i] = NIL;
+	}
+}
@@ -0,0 +1,381 @@
+package com.limitart.collections;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.limitart.collections.define.IRankMap;
+import com.limitart.collections.define.IRankObj;
+import com.limitart.collections.define.IRankObjCodec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 可持久化的排行结构(包装任意IRankMap)
+ * 
+ * 元素由IRankObjCodec编码(MessageMeta格式可用MessageMetaRankObjCodec)，全量快照加追加写的变更日志都通过内存映射文件读写，启动时顺序加载快照再重放日志。
+ * 快照先写临时文件再原子替换，末尾带CRC32校验
+ * 
+ * @author hank
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class PersistentRankMap<K, V extends IRankObj<K>> implements IRankMap<K, V> {
+	private static Logger log = LogManager.getLogger();
+	private static final int SNAPSHOT_MAGIC = 0x524B5331;
+	private static final String SNAPSHOT_FILE_NAME = "rank.snapshot";
+	private static final String SNAPSHOT_TEMP_FILE_NAME = "rank.snapshot.tmp";
+	private static final String LOG_FILE_NAME = "rank.log";
+	// 快照:[int 魔数][long 代数][int 数量][元素...][int CRC32]
+	private static final int SNAPSHOT_HEADER_SIZE = 16;
+	// 日志头:[long 代数]
+	private static final int LOG_HEADER_SIZE = 8;
+	// 每条变更:[int 长度][int CRC32][内容]
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final byte OP_PUT = 1;
+	private static final byte OP_CLEAR = 2;
+	private final IRankMap<K, V> rankMap;
+	private final IRankObjCodec<V> codec;
+	private final File dir;
+	private final int logSize;
+	private RandomAccessFile logFile;
+	private MappedByteBuffer logBuffer;
+	private int logPosition;
+	// 快照与日志的代数，不一致的日志已经包含在快照里
+	private long generation;
+	private ByteBuf encodeBuffer = Unpooled.buffer(256);
+
+	/**
+	 * @param rankMap
+	 *            实际的排行结构
+	 * @param codec
+	 *            元素编解码
+	 * @param dir
+	 *            存放目录
+	 * @param logSize
+	 *            变更日志大小，写满时自动做一次快照
+	 */
+	public PersistentRankMap(IRankMap<K, V> rankMap, IRankObjCodec<V> codec, File dir, int logSize) {
+		this.rankMap = rankMap;
+		this.codec = codec;
+		this.dir = dir;
+		this.logSize = logSize;
+	}
+
+	/**
+	 * 打开并恢复数据
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	public synchronized PersistentRankMap<K, V> open() throws Exception {
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("can not create rank dir:" + dir.getAbsolutePath());
+		}
+		rankMap.clear();
+		generation = loadSnapshot();
+		logFile = new RandomAccessFile(new File(dir, LOG_FILE_NAME), "rw");
+		logBuffer = logFile.getChannel().map(MapMode.READ_WRITE, 0, logSize);
+		if (logBuffer.getLong(0) == generation) {
+			replayLog(true);
+		} else {
+			// 快照已包含此日志(做快照后还没来得及重置日志)
+			replayLog(false);
+			resetLog();
+		}
+		return this;
+	}
+
+	/**
+	 * 做一次全量快照并清空变更日志
+	 * 
+	 * @throws Exception
+	 */
+	public synchronized void snapshot() throws Exception {
+		List<V> all = rankMap.getAll();
+		ByteBuf buffer = Unpooled.buffer(64 + all.size() * 32);
+		try {
+			buffer.writeInt(SNAPSHOT_MAGIC);
+			buffer.writeLong(generation + 1);
+			buffer.writeInt(all.size());
+			for (V v : all) {
+				codec.encode(buffer, v);
+			}
+			buffer.writeInt(checksum(buffer, buffer.readableBytes()));
+			File temp = new File(dir, SNAPSHOT_TEMP_FILE_NAME);
+			try {
+				try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+					file.setLength(buffer.readableBytes());
+					MappedByteBuffer mapped = file.getChannel().map(MapMode.READ_WRITE, 0, buffer.readableBytes());
+					buffer.getBytes(buffer.readerIndex(), mapped);
+					mapped.force();
+				}
+				Files.move(temp.toPath(), new File(dir, SNAPSHOT_FILE_NAME).toPath(),
+						StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (Exception e) {
+				// 没换上的临时快照不能留下，之后的变更还在旧代数的日志里
+				Files.deleteIfExists(temp.toPath());
+				throw e;
+			}
+		} finally {
+			buffer.release();
+		}
+		++generation;
+		resetLog();
+	}
+
+	/**
+	 * 把变更日志刷到磁盘
+	 */
+	public synchronized void sync() {
+		if (logBuffer != null) {
+			logBuffer.force();
+		}
+	}
+
+	/**
+	 * 关闭(不做快照，下次打开时重放日志)
+	 */
+	public synchronized void close() {
+		if (logFile == null) {
+			return;
+		}
+		logBuffer.force();
+		try {
+			logFile.close();
+		} catch (IOException e) {
+			log.error(e, e);
+		}
+		logFile = null;
+		logBuffer = null;
+	}
+
+	@Override
+	public synchronized void put(K key, V value) {
+		rankMap.put(key, value);
+		append(OP_PUT, value);
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return rankMap.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return rankMap.size();
+	}
+
+	@Override
+	public int getIndex(K key) {
+		return rankMap.getIndex(key);
+	}
+
+	@Override
+	public List<V> getRange(int start, int end) {
+		return rankMap.getRange(start, end);
+	}
+
+	@Override
+	public List<V> getAll() {
+		return rankMap.getAll();
+	}
+
+	@Override
+	public V getAt(int index) {
+		return rankMap.getAt(index);
+	}
+
+	@Override
+	public synchronized void clear() {
+		rankMap.clear();
+		append(OP_CLEAR, null);
+	}
+
+	@Override
+	public String toString() {
+		return rankMap.toString();
+	}
+
+	/**
+	 * 写一条变更:[int 长度][int CRC32][byte 操作][元素]
+	 * 
+	 * @param op
+	 * @param value
+	 */
+	private void append(byte op, V value) {
+		if (logBuffer == null) {
+			log.error("rank map not opened,change lost:" + value);
+			return;
+		}
+		try {
+			encodeBuffer.clear();
+			encodeBuffer.writeByte(op);
+			if (value != null) {
+				codec.encode(encodeBuffer, value);
+			}
+			int len = encodeBuffer.readableBytes();
+			int next = logPosition + RECORD_HEADER_SIZE + len;
+			if (next + 4 > logSize) {
+				// 日志写满，快照已包含本次修改
+				snapshot();
+				return;
+			}
+			logBuffer.putInt(logPosition + 4, checksum(encodeBuffer, len));
+			logBuffer.position(logPosition + RECORD_HEADER_SIZE);
+			logBuffer.put(encodeBuffer.nioBuffer());
+			// 清掉下一条的长度，上次中断留下的旧数据不会被当成下一条
+			logBuffer.putInt(next, 0);
+			// 长度最后写(断电时页的落盘顺序不保证，重放还要校验CRC)
+			logBuffer.putInt(logPosition, len);
+			logPosition = next;
+		} catch (Exception e) {
+			log.error(e, e);
+		}
+	}
+
+	/**
+	 * 加载快照，返回快照代数
+	 * <p>
+	 * 做快照时中断会留下临时快照，完整的话说明它已包含旧快照与当时的日志，以它为准
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	private long loadSnapshot() throws Exception {
+		File snapshot = new File(dir, SNAPSHOT_FILE_NAME);
+		File temp = new File(dir, SNAPSHOT_TEMP_FILE_NAME);
+		if (temp.exists()) {
+			if (snapshotGeneration(temp) > snapshotGeneration(snapshot)) {
+				log.info("rank snapshot recovered from:" + temp.getAbsolutePath());
+				Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				Files.delete(temp.toPath());
+			}
+		}
+		if (!snapshot.exists()) {
+			return 0;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(snapshot, "r")) {
+			MappedByteBuffer mapped = file.getChannel().map(MapMode.READ_ONLY, 0, file.length());
+			ByteBuf buffer = Unpooled.wrappedBuffer(mapped);
+			if (!isComplete(buffer)) {
+				throw new IOException("bad rank snapshot:" + snapshot.getAbsolutePath());
+			}
+			buffer.skipBytes(4);
+			long snapshotGeneration = buffer.readLong();
+			int count = buffer.readInt();
+			for (int i = 0; i < count; ++i) {
+				V v = codec.decode(buffer);
+				rankMap.put(v.key(), v);
+			}
+			if (buffer.readableBytes() != 4) {
+				throw new IOException("bad rank snapshot:" + snapshot.getAbsolutePath());
+			}
+			return snapshotGeneration;
+		}
+	}
+
+	/**
+	 * 完整快照的代数，不存在或不完整返回-1
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static long snapshotGeneration(File file) throws IOException {
+		if (!file.exists()) {
+			return -1;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			ByteBuf buffer = Unpooled.wrappedBuffer(raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length()));
+			if (!isComplete(buffer)) {
+				return -1;
+			}
+			return buffer.getLong(buffer.readerIndex() + 4);
+		}
+	}
+
+	/**
+	 * 校验快照的魔数与CRC32
+	 * 
+	 * @param buffer
+	 * @return
+	 */
+	private static boolean isComplete(ByteBuf buffer) {
+		int length = buffer.readableBytes();
+		if (length < SNAPSHOT_HEADER_SIZE + 4 || buffer.getInt(buffer.readerIndex()) != SNAPSHOT_MAGIC) {
+			return false;
+		}
+		return buffer.getInt(buffer.readerIndex() + length - 4) == checksum(buffer, length - 4);
+	}
+
+	private static int checksum(ByteBuf buffer, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer.nioBuffer(buffer.readerIndex(), length));
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * 顺序读取变更日志，定位到写入位置
+	 * <p>
+	 * 遇到长度越界或CRC不符的记录即停止(中断时没写完的变更)，之后从这里继续写
+	 * 
+	 * @param apply
+	 *            是否应用到排行结构
+	 * @throws Exception
+	 */
+	private void replayLog(boolean apply) throws Exception {
+		logPosition = LOG_HEADER_SIZE;
+		ByteBuf buffer = Unpooled.wrappedBuffer(logBuffer.duplicate());
+		int count = 0;
+		while (logPosition + 4 <= logSize) {
+			int len = logBuffer.getInt(logPosition);
+			if (len <= 0 || len > logSize - logPosition - RECORD_HEADER_SIZE) {
+				break;
+			}
+			buffer.readerIndex(logPosition + RECORD_HEADER_SIZE);
+			if (logBuffer.getInt(logPosition + 4) != checksum(buffer, len)) {
+				log.warn("rank log record broken at:" + logPosition + ",discard the rest");
+				break;
+			}
+			byte op = buffer.readByte();
+			if (!apply) {
+				// 只定位
+			} else if (op == OP_PUT) {
+				V v = codec.decode(buffer);
+				rankMap.put(v.key(), v);
+			} else if (op == OP_CLEAR) {
+				rankMap.clear();
+			}
+			logPosition += RECORD_HEADER_SIZE + len;
+			++count;
+		}
+		if (apply) {
+			log.info("rank log replayed:" + count + ",size:" + rankMap.size());
+		}
+	}
+
+	private void resetLog() {
+		// 只需清掉写过的部分(包括当前位置的长度)
+		int end = Math.min(logSize, Math.max(logPosition, LOG_HEADER_SIZE) + 4);
+		for (int i = LOG_HEADER_SIZE; i < end; ++i) {
+			logBuffer.put(i, (byte) 0);
+		}
+		logBuffer.putLong(0, generation);
+		logBuffer.force();
+		logPosition = LOG_HEADER_SIZE;
+	}
+}
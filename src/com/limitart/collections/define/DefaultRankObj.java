@@ -21,6 +21,22 @@ public class DefaultRankObj implements IRankObj<Long> {
 		return uniqueId;
 	}
 
+	public long getUniqueId() {
+		return uniqueId;
+	}
+
+	public long getParam1() {
+		return param1;
+	}
+
+	public long getParam2() {
+		return param2;
+	}
+
+	public long getParam3() {
+		return param3;
+	}
+
 	@Override
 	public String toString() {
 		return "DefaultRankObj [uniqueId=" + uniqueId + ", param1=" + param1 + ", param2=" + param2 + ", param3="
@@ -0,0 +1,26 @@
+package com.limitart.collections.define;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * DefaultRankObj编解码(与MessageMeta依次写四个long的格式相同)
+ * 
+ * @author hank
+ *
+ */
+public class DefaultRankObjCodec implements IRankObjCodec<DefaultRankObj> {
+	public static final DefaultRankObjCodec INSTANCE = new DefaultRankObjCodec();
+
+	@Override
+	public void encode(ByteBuf buffer, DefaultRankObj value) throws Exception {
+		buffer.writeLong(value.getUniqueId());
+		buffer.writeLong(value.getParam1());
+		buffer.writeLong(value.getParam2());
+		buffer.writeLong(value.getParam3());
+	}
+
+	@Override
+	public DefaultRankObj decode(ByteBuf buffer) throws Exception {
+		return new DefaultRankObj(buffer.readLong(), buffer.readLong(), buffer.readLong(), buffer.readLong());
+	}
+}
@@ -0,0 +1,30 @@
+package com.limitart.collections.define;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 排行元素编解码(持久化排行用)
+ * 
+ * @author hank
+ *
+ * @param <V>
+ */
+public interface IRankObjCodec<V> {
+	/**
+	 * 编码元素
+	 * 
+	 * @param buffer
+	 * @param value
+	 * @throws Exception
+	 */
+	void encode(ByteBuf buffer, V value) throws Exception;
+
+	/**
+	 * 解码元素
+	 * 
+	 * @param buffer
+	 * @return
+	 * @throws Exception
+	 */
+	V decode(ByteBuf buffer) throws Exception;
+}
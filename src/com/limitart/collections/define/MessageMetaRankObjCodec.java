@@ -0,0 +1,43 @@
+package com.limitart.collections.define;
+
+import com.limitart.net.binary.message.MessageMeta;
+import com.limitart.reflectasm.ConstructorAccess;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 用MessageMeta的二进制格式编解码排行元素(元素需要无参构造)
+ * 
+ * @author hank
+ *
+ * @param <V>
+ */
+public class MessageMetaRankObjCodec<V extends MessageMeta> implements IRankObjCodec<V> {
+	private final ConstructorAccess<V> constructor;
+
+	public MessageMetaRankObjCodec(Class<V> valueClass) {
+		this.constructor = ConstructorAccess.get(valueClass);
+	}
+
+	@Override
+	public void encode(ByteBuf buffer, V value) throws Exception {
+		value.buffer(buffer);
+		try {
+			value.encode();
+		} finally {
+			value.buffer(null);
+		}
+	}
+
+	@Override
+	public V decode(ByteBuf buffer) throws Exception {
+		V value = constructor.newInstance();
+		value.buffer(buffer);
+		try {
+			value.decode();
+		} finally {
+			value.buffer(null);
+		}
+		return value;
+	}
+}
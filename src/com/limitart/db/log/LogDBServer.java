@@ -1,33 +1,52 @@
 package com.limitart.db.log;
 
-import java.lang.reflect.Field;
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.limitart.db.log.anotation.LogColumn;
 import com.limitart.db.log.config.LogDBServerConfig;
 import com.limitart.db.log.define.IDataSourceFactory;
 import com.limitart.db.log.define.ILog;
+import com.limitart.db.log.define.ILogQueryCallback;
+import com.limitart.db.log.define.ILogTableQueryBuilder;
+import com.limitart.db.log.journal.LogSpillJournal;
+import com.limitart.db.log.struct.SpillLogRow;
 import com.limitart.db.log.tablecheck.LogStructChecker;
 import com.limitart.db.log.util.LogDBUtil;
 import com.limitart.db.log.util.LogDBUtil.QueryConditionBuilder;
-import com.limitart.reflectasm.FieldAccess;
+import com.limitart.db.log.util.LogRowBinder;
+import com.limitart.util.StringUtil;
 
 
 /**
@@ -38,14 +57,39 @@ import com.limitart.reflectasm.FieldAccess;
  */
 public class LogDBServer {
 	private static Logger log = LogManager.getLogger();
+	// 单条插入语句最多的参数个数(mysql上限为65535)
+	private static final int MAX_INSERT_PARAMS = 60000;
+	// 检查连接是否可用的超时时间(秒)
+	private static final int CONNECTION_VALID_TIMEOUT = 3;
 	private LogDBServerConfig config;
 	private ThreadPoolExecutor threadPool;
 	private BlockingQueue<Runnable> logTaskQueue;
 	private IDataSourceFactory dataSourceFactory;
 	private LogStructChecker checker = new LogStructChecker();
-	private boolean isStop = true;
+	private volatile boolean isStop = true;
 	private LongAdder doneLogNum = new LongAdder();
 	private LongAdder lostLogNum = new LongAdder();
+	private LongAdder spillLogNum = new LongAdder();
+	// 表名-->攒批中的日志
+	private ConcurrentHashMap<String, LogBatch> batches = new ConcurrentHashMap<>();
+	// 已确认存在的表
+	private Set<String> existTables = ConcurrentHashMap.newKeySet();
+	// 尚未入库的日志条数
+	private AtomicLong pendingLogNum = new AtomicLong();
+	// 定时提交未攒满的批次
+	private ScheduledThreadPoolExecutor flushTimer;
+	// 滚动表并发查询线程池
+	private ThreadPoolExecutor queryThreadPool;
+	// 数据库表名缓存
+	private volatile Set<String> tableNameCache;
+	private volatile long tableNameCacheTime;
+	private AtomicInteger tableNameVersion = new AtomicInteger();
+	// 溢出文件(队列满或数据库不可用时写入)
+	private LogSpillJournal spillJournal;
+	// 溢出文件重放线程
+	private Thread spillDrainer;
+	// 类名-->日志类(重放用)
+	private ConcurrentHashMap<String, Class<? extends ILog>> spillLogClasses = new ConcurrentHashMap<>();
 
 	public LogDBServer(LogDBServerConfig config, IDataSourceFactory dataSourceFactory) {
 		this.config = config;
@@ -99,7 +143,51 @@ public class LogDBServer {
 			checker.executeCheck(connection);
 			connection.close();
 		}
+		this.queryThreadPool = new ThreadPoolExecutor(this.config.getQueryThreadCount(),
+				this.config.getQueryThreadCount(), 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private AtomicInteger threadIndex = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r);
+						thread.setName("LogDBServer-Query-" + threadIndex.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		if (this.config.getSpillDir() != null) {
+			this.spillJournal = new LogSpillJournal(new File(this.config.getSpillDir()),
+					this.config.getSpillSegmentSize());
+			this.spillJournal.open();
+		}
+		this.flushTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r);
+				thread.setName("LogDBServer-Flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.flushTimer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					flushBatches(threadPool);
+				} catch (Exception e) {
+					log.error(e, e);
+				}
+			}
+		}, config.getBatchFlushInterval(), config.getBatchFlushInterval(), TimeUnit.MILLISECONDS);
 		this.isStop = false;
+		if (this.spillJournal != null) {
+			this.spillDrainer = new Thread(new SpillDrainTask(), "LogDBServer-Spill");
+			this.spillDrainer.setDaemon(true);
+			this.spillDrainer.start();
+		}
 		return this;
 	}
 
@@ -114,6 +202,8 @@ public class LogDBServer {
 			throw new Exception("server already stopped!");
 		}
 		this.isStop = true;
+		flushTimer.shutdownNow();
+		queryThreadPool.shutdownNow();
 		List<Runnable> shutdownNow = threadPool.shutdownNow();
 		// 完成剩余的任务
 		for (Runnable task : shutdownNow) {
@@ -125,6 +215,18 @@ public class LogDBServer {
 			}
 		}
 		shutdownNow.clear();
+		// 等待正在执行的入库任务结束，失败的日志还需要写入溢出文件，之后才能关闭
+		while (!threadPool.awaitTermination(1, TimeUnit.SECONDS)) {
+			log.info("等待日志入库任务结束...");
+		}
+		// 未攒满的批次直接在当前线程入库
+		flushBatches(null);
+		if (spillJournal != null) {
+			// 没来得及重放的日志留在溢出文件中，下次启动继续
+			spillDrainer.join();
+			spillJournal.close();
+			spillJournal = null;
+		}
 		log.info("日志系统关闭完成");
 		return this;
 	}
@@ -142,15 +244,83 @@ public class LogDBServer {
 		}
 
 		if (alog != null) {
+			String tableName = LogDBUtil.getLogTableName(alog, System.currentTimeMillis());
 			if (getTaksCount() > this.config.getTaskMaxSize()) {
+				if (spillJournal != null && spill(tableName, alog.getClass(), LogDBUtil.getLogParams(alog))) {
+					return this;
+				}
 				increaseLostLogNum();
 				throw new Exception("task count is overload,drop task:" + LogDBUtil.log2JSON(alog));
 			}
-			threadPool.execute(new LogInsertTask(alog));
+			LogBatch batch;
+			do {
+				batch = batches.get(tableName);
+				if (batch == null) {
+					batch = new LogBatch(tableName, alog.getClass());
+					LogBatch old = batches.putIfAbsent(tableName, batch);
+					if (old != null) {
+						batch = old;
+					}
+				}
+			} while (!batch.add(alog));
+			pendingLogNum.incrementAndGet();
+			List<ILog> rows = batch.drain(this.config.getBatchSize());
+			if (rows != null) {
+				threadPool.execute(new LogInsertTask(tableName, batch.getLogClass(), rows));
+			}
 		}
 		return this;
 	}
 
+	/**
+	 * 写入溢出文件
+	 * 
+	 * @param tableName
+	 * @param logClass
+	 * @param params
+	 * @return
+	 */
+	private boolean spill(String tableName, Class<? extends ILog> logClass, Object[] params) {
+		LogSpillJournal journal = this.spillJournal;
+		if (journal == null) {
+			return false;
+		}
+		try {
+			journal.append(tableName, logClass.getName(), params);
+			spillLogNum.increment();
+			return true;
+		} catch (IOException e) {
+			log.error(e, e);
+			return false;
+		}
+	}
+
+	/**
+	 * 提交所有未攒满的批次
+	 * 
+	 * @param executor
+	 *            为null时在当前线程执行
+	 */
+	private void flushBatches(ThreadPoolExecutor executor) {
+		for (Entry<String, LogBatch> entry : batches.entrySet()) {
+			LogBatch batch = entry.getValue();
+			List<ILog> rows = batch.drain(1);
+			if (rows == null) {
+				// 空闲的批次(多为已滚动过去的表)移除掉
+				if (batch.closeIfEmpty()) {
+					batches.remove(entry.getKey(), batch);
+				}
+				continue;
+			}
+			LogInsertTask task = new LogInsertTask(entry.getKey(), batch.getLogClass(), rows);
+			if (executor == null) {
+				task.run();
+			} else {
+				executor.execute(task);
+			}
+		}
+	}
+
 	public Class<? extends ILog> getTableClassByName(String tableName) {
 		return this.getChecker().getTableClass(tableName);
 	}
@@ -209,12 +379,10 @@ public class LogDBServer {
 		Set<String> relativeTableNames = LogDBUtil.getRelativeTableNames(clss, startTime, endTime);
 		// 筛选不存在的表
 		Iterator<String> iterator2 = relativeTableNames.iterator();
-		Connection connection = this.dataSourceFactory.getDataSource().getConnection();
-		if (connection == null) {
+		Set<String> tableNames = getTableNames();
+		if (tableNames == null) {
 			return null;
 		}
-		List<String> tableNames = LogDBUtil.getTableNames(connection);
-		connection.close();
 		for (; iterator2.hasNext();) {
 			if (!tableNames.contains(iterator2.next())) {
 				iterator2.remove();
@@ -223,6 +391,107 @@ public class LogDBServer {
 		return relativeTableNames;
 	}
 
+	/**
+	 * 获取数据库中的表名(缓存，建表时或超过缓存时间后重新读取)
+	 * 
+	 * @return
+	 * @throws SQLException
+	 */
+	private Set<String> getTableNames() throws SQLException {
+		Set<String> tableNames = this.tableNameCache;
+		long now = System.currentTimeMillis();
+		if (tableNames != null && now - this.tableNameCacheTime < this.config.getTableNameCacheInterval()) {
+			return tableNames;
+		}
+		int version = this.tableNameVersion.get();
+		Connection connection = this.dataSourceFactory.getDataSource().getConnection();
+		if (connection == null) {
+			return null;
+		}
+		try {
+			tableNames = new HashSet<>(LogDBUtil.getTableNames(connection));
+		} finally {
+			connection.close();
+		}
+		// 读取期间有新建表则不缓存这次的结果
+		if (this.tableNameVersion.get() == version) {
+			this.tableNameCache = tableNames;
+			this.tableNameCacheTime = now;
+		}
+		return tableNames;
+	}
+
+	/**
+	 * 表名缓存失效
+	 */
+	private void invalidateTableNames() {
+		this.tableNameVersion.incrementAndGet();
+		this.tableNameCache = null;
+	}
+
+	/**
+	 * 并发查询一段时间内所有滚动表的日志，按比较器归并后分页
+	 * 
+	 * @param clss
+	 * @param startTime
+	 * @param endTime
+	 * @param builder
+	 *            每张表的查询构造
+	 * @param comparator
+	 *            与每张表查询的排序一致，为null时按表的时间顺序拼接
+	 * @param offset
+	 * @param limit
+	 *            小于等于0时不分页
+	 * @return
+	 * @throws Exception
+	 */
+	public <T extends ILog> List<T> queryRolled(final Class<T> clss, long startTime, long endTime,
+			ILogTableQueryBuilder builder, Comparator<? super T> comparator, int offset, int limit)
+			throws Exception {
+		if (isStop) {
+			throw new Exception("server is stopped!");
+		}
+		Collection<String> relativeTables = queryRelativeTables(clss, startTime, endTime);
+		if (relativeTables == null || relativeTables.isEmpty()) {
+			return new ArrayList<>();
+		}
+		List<String> tableNames = new ArrayList<>(relativeTables);
+		// 表名带日期，排序即时间顺序
+		Collections.sort(tableNames);
+		// 每张表最多只需要取到offset+limit
+		int rowLimit = limit > 0 ? Math.max(0, offset) + limit : 0;
+		List<Future<List<T>>> futures = new ArrayList<>(tableNames.size());
+		try {
+			for (String tableName : tableNames) {
+				final QueryConditionBuilder tableQuery = builder.build(tableName);
+				if (rowLimit > 0) {
+					tableQuery.limit(0, rowLimit);
+				}
+				futures.add(queryThreadPool.submit(new Callable<List<T>>() {
+
+					@Override
+					public List<T> call() throws Exception {
+						return query(clss, tableQuery);
+					}
+				}));
+			}
+			List<List<T>> results = new ArrayList<>(futures.size());
+			for (Future<List<T>> future : futures) {
+				results.add(future.get());
+			}
+			return LogDBUtil.mergeSorted(results, comparator, offset, limit);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			for (Future<List<T>> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
 	/**
 	 * 查询某段日期的日志
 	 * 
@@ -254,58 +523,85 @@ public class LogDBServer {
 	 * @throws Exception
 	 */
 	public <T extends ILog> List<T> query(Class<T> clss, QueryConditionBuilder builder) throws Exception {
+		final List<T> result = new ArrayList<>();
+		query(clss, builder, new ILogQueryCallback<T>() {
+
+			@Override
+			public boolean onLog(T alog) {
+				result.add(alog);
+				return true;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * 逐行查询日志(不在内存中保留整个结果)
+	 * 
+	 * @param tableName
+	 * @param builder
+	 * @param callback
+	 * @return 读取的行数
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public int query(String tableName, QueryConditionBuilder builder, ILogQueryCallback<? extends ILog> callback)
+			throws Exception {
+		Class<? extends ILog> tableClass = getTableClassByName(tableName);
+		if (tableClass == null) {
+			return 0;
+		}
+		return query((Class) tableClass, builder, (ILogQueryCallback) callback);
+	}
+
+	/**
+	 * 逐行查询日志(不在内存中保留整个结果)
+	 * 
+	 * @param clss
+	 * @param builder
+	 * @param callback
+	 * @return 读取的行数
+	 * @throws Exception
+	 */
+	public <T extends ILog> int query(Class<T> clss, QueryConditionBuilder builder, ILogQueryCallback<T> callback)
+			throws Exception {
 		if (isStop) {
 			throw new Exception("server is stopped!");
 		}
-		List<T> result = new ArrayList<>();
 		Connection connection = this.dataSourceFactory.getDataSource().getConnection();
 		if (connection == null) {
-			return result;
+			return 0;
 		}
+		int count = 0;
 		try {
 			String buildSelectTableSql = LogDBUtil.buildSelectTableSql_MYSQL(builder);
-			PreparedStatement prepareStatement = null;
-			prepareStatement = connection.prepareStatement(buildSelectTableSql);
-			ResultSet executeQuery = prepareStatement.executeQuery();
-			while (executeQuery.next()) {
-				T newInstance = clss.newInstance();
-				FieldAccess logFields = LogDBUtil.getLogFields(clss);
-				for (int index = 0; index < logFields.getFieldCount(); ++index) {
-					Field field = logFields.getFields()[index];
-					LogColumn annotation = field.getAnnotation(LogColumn.class);
-					if (annotation == null) {
-						continue;
-					}
-					String name = logFields.getFieldNames()[index];
-					Object object = executeQuery.getObject(name);
-					if (object == null) {
-						continue;
+			LogRowBinder<T> binder = LogRowBinder.get(clss);
+			try (PreparedStatement prepareStatement = connection.prepareStatement(buildSelectTableSql,
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+				prepareStatement.setFetchSize(this.config.getQueryFetchSize());
+				try (ResultSet executeQuery = prepareStatement.executeQuery()) {
+					int[] columnMapping = binder.mapColumns(executeQuery.getMetaData());
+					while (executeQuery.next()) {
+						++count;
+						if (!callback.onLog(binder.bind(executeQuery, columnMapping))) {
+							break;
+						}
 					}
-					logFields.set(newInstance, index, object);
 				}
-				result.add(newInstance);
-			}
-			if (executeQuery != null) {
-				executeQuery.close();
-			}
-			if (prepareStatement != null) {
-				prepareStatement.close();
 			}
 		} finally {
-			if (connection != null) {
-				connection.close();
-			}
+			connection.close();
 		}
-		return result;
+		return count;
 	}
 
 	/**
-	 * 获取当前队列中日志任务的数量
+	 * 获取当前尚未入库的日志数量
 	 * 
 	 * @return
 	 */
 	public long getTaksCount() {
-		return logTaskQueue.size();
+		return pendingLogNum.get();
 	}
 
 	/**
@@ -333,6 +629,15 @@ public class LogDBServer {
 		return lostLogNum.longValue();
 	}
 
+	/**
+	 * 写入过溢出文件的日志数量
+	 * 
+	 * @return
+	 */
+	public long getSpillLogNum() {
+		return spillLogNum.longValue();
+	}
+
 	public void increaseDoneLogNum() {
 		this.doneLogNum.increment();
 	}
@@ -342,68 +647,450 @@ public class LogDBServer {
 	}
 
 	/**
-	 * 日志插入任务
+	 * 确认表存在，不存在则创建
+	 * 
+	 * @param con
+	 * @param tableName
+	 * @param logClass
+	 * @throws Exception
+	 */
+	private void ensureTable(Connection con, String tableName, Class<? extends ILog> logClass) throws Exception {
+		if (existTables.contains(tableName)) {
+			return;
+		}
+		try (PreparedStatement existStatement = con
+				.prepareStatement(LogDBUtil.buildExistTableSql_MYSQL(tableName));
+				ResultSet executeQuery = existStatement.executeQuery()) {
+			if (!executeQuery.next()) {
+				String buildCreateTableSql = LogDBUtil.buildCreateTableSql_MYSQL(logClass.newInstance(), tableName,
+						getConfig().getDbEngine(), getConfig().getCharset());
+				try (PreparedStatement createStatement = con.prepareStatement(buildCreateTableSql)) {
+					// 执行创建表
+					createStatement.executeUpdate();
+				}
+				invalidateTableNames();
+			}
+		}
+		existTables.add(tableName);
+	}
+
+	/**
+	 * 单条插入语句最多插入的行数
+	 * 
+	 * @param logClass
+	 * @return
+	 */
+	private static int getMaxInsertRows(Class<? extends ILog> logClass) {
+		return Math.max(1, MAX_INSERT_PARAMS / Math.max(1, LogDBUtil.getLogFields(logClass).getFieldCount()));
+	}
+
+	/**
+	 * 用一条多行插入语句插入[start,end)的日志
+	 * 
+	 * @param con
+	 * @param tableName
+	 * @param logClass
+	 * @param rows
+	 *            按列顺序的插入参数
+	 * @param start
+	 * @param end
+	 * @param ignore
+	 *            是否使用insert ignore
+	 * @return 实际插入的行数
+	 * @throws SQLException
+	 */
+	private static int insertRows(Connection con, String tableName, Class<? extends ILog> logClass,
+			List<Object[]> rows, int start, int end, boolean ignore) throws SQLException {
+		String sql = LogDBUtil.buildBatchInsertTableSql_MYSQL(tableName, logClass, end - start, ignore);
+		try (PreparedStatement insertStatement = con.prepareStatement(sql)) {
+			int paramIndex = 1;
+			for (int i = start; i < end; ++i) {
+				for (Object param : rows.get(i)) {
+					insertStatement.setObject(paramIndex++, param);
+				}
+			}
+			return insertStatement.executeUpdate();
+		}
+	}
+
+	/**
+	 * 在一个事务中插入[start,end)的日志，失败时回滚，不会留下部分写入的行
+	 * 
+	 * @param con
+	 * @param tableName
+	 * @param logClass
+	 * @param rows
+	 * @param start
+	 * @param end
+	 * @throws SQLException
+	 */
+	private static void insertInTransaction(Connection con, String tableName, Class<? extends ILog> logClass,
+			List<Object[]> rows, int start, int end) throws SQLException {
+		boolean autoCommit = con.getAutoCommit();
+		con.setAutoCommit(false);
+		try {
+			insertRows(con, tableName, logClass, rows, start, end, false);
+			con.commit();
+		} catch (SQLException e) {
+			try {
+				con.rollback();
+			} catch (SQLException e1) {
+				e.addSuppressed(e1);
+			}
+			throw e;
+		} finally {
+			try {
+				con.setAutoCommit(autoCommit);
+			} catch (SQLException e) {
+				log.error(e, e);
+			}
+		}
+	}
+
+	/**
+	 * 插入[start,end)的日志
+	 * <p>
+	 * 事务引擎下每批在事务中插入，数据错误时逐条重试，只丢弃出错的日志；非事务引擎(如myisam)多行插入中途出错会保留出错行之前的行，
+	 * 重试会重复写入，所以改用insert ignore让出错的行不中断语句，语句执行中断线时无法知道写入了多少，这批日志不再重试
+	 * 
+	 * @param con
+	 * @param tableName
+	 * @param logClass
+	 * @param rows
+	 * @param start
+	 * @param end
+	 * @return 完成到的位置，小于end说明遇到了连接或临时错误且[返回值,end)的日志确定没有写入，可以稍后重试
+	 */
+	private int insertOrSkip(Connection con, String tableName, Class<? extends ILog> logClass, List<Object[]> rows,
+			int start, int end) {
+		if (!LogDBUtil.isTransactionalEngine_MYSQL(getConfig().getDbEngine())) {
+			return insertIgnore(con, tableName, logClass, rows, start, end);
+		}
+		try {
+			insertInTransaction(con, tableName, logClass, rows, start, end);
+			this.doneLogNum.add(end - start);
+			return end;
+		} catch (SQLException e) {
+			log.error(e, e);
+			if (isTransient(e)) {
+				return start;
+			}
+		}
+		for (int i = start; i < end; ++i) {
+			try {
+				insertInTransaction(con, tableName, logClass, rows, i, i + 1);
+				this.doneLogNum.increment();
+			} catch (SQLException e) {
+				if (isTransient(e)) {
+					log.error(e, e);
+					return i;
+				}
+				log.error("drop bad log of " + tableName + ":" + StringUtil.toJSON(rows.get(i)) + "," + e);
+				increaseLostLogNum();
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * 非事务引擎下用insert ignore插入[start,end)的日志，只在确定一行都没写入时返回start
+	 * 
+	 * @param con
+	 * @param tableName
+	 * @param logClass
+	 * @param rows
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private int insertIgnore(Connection con, String tableName, Class<? extends ILog> logClass, List<Object[]> rows,
+			int start, int end) {
+		try {
+			if (!con.isValid(CONNECTION_VALID_TIMEOUT)) {
+				log.error("connection is invalid,retry " + tableName + " later");
+				return start;
+			}
+		} catch (SQLException e) {
+			log.error(e, e);
+			return start;
+		}
+		try {
+			int inserted = insertRows(con, tableName, logClass, rows, start, end, true);
+			this.doneLogNum.add(inserted);
+			if (inserted < end - start) {
+				log.error("drop " + (end - start - inserted) + " bad logs of " + tableName);
+				this.lostLogNum.add(end - start - inserted);
+			}
+		} catch (SQLException e) {
+			log.error(e, e);
+			// 可能已经写入了一部分，重试会重复写入
+			for (int i = start; i < end; ++i) {
+				log.error("drop log of " + tableName + "(may be partially written):" + StringUtil.toJSON(rows.get(i)));
+				increaseLostLogNum();
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * 是否为连接或临时错误(稍后重试可能成功)
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private static boolean isTransient(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof SQLTransientException || t instanceof SQLRecoverableException
+					|| t instanceof SQLNonTransientConnectionException || t instanceof IOException) {
+				return true;
+			}
+			if (t instanceof SQLException) {
+				String state = ((SQLException) t).getSQLState();
+				// 08:连接错误 40:事务回滚(死锁等)
+				if (state != null && (state.startsWith("08") || state.startsWith("40"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 某张表攒批中的日志
+	 * 
+	 * @author hank
+	 * 
+	 */
+	private static class LogBatch {
+		private String tableName;
+		private Class<? extends ILog> logClass;
+		private List<ILog> rows = new ArrayList<>();
+		private boolean closed;
+
+		public LogBatch(String tableName, Class<? extends ILog> logClass) {
+			this.tableName = tableName;
+			this.logClass = logClass;
+		}
+
+		public Class<? extends ILog> getLogClass() {
+			return logClass;
+		}
+
+		/**
+		 * 加入一条日志
+		 * 
+		 * @param alog
+		 * @return 批次已关闭返回false
+		 */
+		public synchronized boolean add(ILog alog) {
+			if (closed) {
+				return false;
+			}
+			if (alog.getClass() != logClass) {
+				throw new IllegalArgumentException("table " + tableName + " is mapped to " + logClass.getName()
+						+ ",not " + alog.getClass().getName());
+			}
+			rows.add(alog);
+			return true;
+		}
+
+		/**
+		 * 取出当前攒下的日志
+		 * 
+		 * @param minSize
+		 *            不足此数量返回null
+		 * @return
+		 */
+		public synchronized List<ILog> drain(int minSize) {
+			if (rows.isEmpty() || rows.size() < minSize) {
+				return null;
+			}
+			List<ILog> result = rows;
+			rows = new ArrayList<>(result.size());
+			return result;
+		}
+
+		/**
+		 * 为空时关闭批次
+		 * 
+		 * @return
+		 */
+		public synchronized boolean closeIfEmpty() {
+			if (rows.isEmpty()) {
+				closed = true;
+			}
+			return closed;
+		}
+	}
+
+	/**
+	 * 日志插入任务(同一张表的一批日志)
 	 * 
 	 * @author hank
-	 *
+	 * 
 	 */
 	private class LogInsertTask implements Runnable {
-		private ILog alog;
+		private String tableName;
+		private Class<? extends ILog> logClass;
+		private List<ILog> rows;
 
-		public LogInsertTask(ILog alog) {
-			this.alog = alog;
+		public LogInsertTask(String tableName, Class<? extends ILog> logClass, List<ILog> rows) {
+			this.tableName = tableName;
+			this.logClass = logClass;
+			this.rows = rows;
 		}
 
 		public void run() {
 			Connection con = null;
-			PreparedStatement existStatement = null;
-			PreparedStatement createStatement = null;
-			PreparedStatement insertStatement = null;
+			List<Object[]> params = new ArrayList<>(rows.size());
+			int done = 0;
 			try {
-				con = LogDBServer.this.getDataSourceFactory().getDataSource().getConnection();
-				long now = System.currentTimeMillis();
-				if (this.alog == null) {
-					return;
+				for (ILog alog : rows) {
+					params.add(LogDBUtil.getLogParams(alog));
 				}
-				String buildExistTableSql_MYSQL = LogDBUtil
-						.buildExistTableSql_MYSQL(LogDBUtil.getLogTableName(alog, now));
-				existStatement = con.prepareStatement(buildExistTableSql_MYSQL);
-				ResultSet executeQuery = existStatement.executeQuery();
-				if (!executeQuery.next()) {
-					String buildCreateTableSql = LogDBUtil.buildCreateTableSql_MYSQL(alog,
-							LogDBServer.this.getConfig().getDbEngine(), LogDBServer.this.getConfig().getCharset());
-					createStatement = con.prepareStatement(buildCreateTableSql);
-					// 执行创建表
-					createStatement.executeUpdate();
+				con = LogDBServer.this.getDataSourceFactory().getDataSource().getConnection();
+				ensureTable(con, tableName, logClass);
+				int maxRows = getMaxInsertRows(logClass);
+				while (done < params.size()) {
+					int end = Math.min(params.size(), done + maxRows);
+					// 执行插入
+					done = insertOrSkip(con, tableName, logClass, params, done, end);
+					if (done < end) {
+						break;
+					}
 				}
-				String buildInsertTableSql = LogDBUtil.buildInsertTableSql_MYSQL(alog);
-				// 执行插入
-				insertStatement = con.prepareStatement(buildInsertTableSql);
-				if (insertStatement.executeUpdate() > 0) {
-					LogDBServer.this.increaseDoneLogNum();
-				} else {
-					log.error(LogDBUtil.log2JSON(alog));
-					LogDBServer.this.increaseLostLogNum();
+				if (done < rows.size()) {
+					// 连接或临时错误
+					failRows(params, done, true);
 				}
 			} catch (Exception e) {
 				log.error(e, e);
-				log.error(LogDBUtil.log2JSON(alog));
-				LogDBServer.this.increaseLostLogNum();
+				// 表可能已被删除，下次重新检查
+				existTables.remove(tableName);
+				// 取不到连接或临时错误才写入溢出文件，数据错误重放也不会成功
+				failRows(params, done, params.size() == rows.size() && (con == null || isTransient(e)));
 			} finally {
+				pendingLogNum.addAndGet(-rows.size());
 				try {
-					if (createStatement != null) {
-						createStatement.close();
+					if (con != null) {
+						con.close();
 					}
 				} catch (SQLException e) {
 					log.error(e, e);
 				}
-				try {
-					if (insertStatement != null) {
-						insertStatement.close();
+			}
+		}
+
+		/**
+		 * 处理没有插入的日志
+		 * 
+		 * @param params
+		 * @param from
+		 * @param spill
+		 *            是否写入溢出文件等待重放
+		 */
+		private void failRows(List<Object[]> params, int from, boolean spill) {
+			for (int i = from; i < rows.size(); ++i) {
+				if (spill && spill(tableName, logClass, params.get(i))) {
+					continue;
+				}
+				log.error(LogDBUtil.log2JSON(rows.get(i)));
+				LogDBServer.this.increaseLostLogNum();
+			}
+		}
+	}
+
+	/**
+	 * 溢出文件重放任务(按写入顺序)
+	 * 
+	 * @author hank
+	 * 
+	 */
+	private class SpillDrainTask implements Runnable {
+
+		@Override
+		public void run() {
+			while (!isStop) {
+				List<SpillLogRow> rows = spillJournal.read(config.getBatchSize());
+				long sleep = 0;
+				if (rows.isEmpty()) {
+					sleep = config.getBatchFlushInterval();
+				} else if (!replay(rows)) {
+					// 数据库不可用，回到提交位置稍后重试(出错的日志已经跳过，不会卡住后面的日志)
+					spillJournal.rewind();
+					sleep = config.getSpillRetryInterval();
+				}
+				if (sleep > 0) {
+					try {
+						Thread.sleep(sleep);
+					} catch (InterruptedException e) {
+						break;
 					}
-				} catch (SQLException e) {
-					log.error(e, e);
 				}
+			}
+		}
+
+		/**
+		 * 重放一批日志，连续的同表日志合并插入
+		 * <p>
+		 * 数据错误的日志逐条重试后丢弃并提交过去，只有确定没有写入的日志遇到连接或临时错误才停下等待重试(非事务引擎规则见insertOrSkip)
+		 * 
+		 * @param rows
+		 * @return 是否全部完成
+		 */
+		private boolean replay(List<SpillLogRow> rows) {
+			Connection con = null;
+			try {
+				con = LogDBServer.this.getDataSourceFactory().getDataSource().getConnection();
+				int start = 0;
+				while (start < rows.size()) {
+					SpillLogRow first = rows.get(start);
+					int end = start + 1;
+					while (end < rows.size() && rows.get(end).getTableName().equals(first.getTableName())
+							&& rows.get(end).getLogClassName().equals(first.getLogClassName())) {
+						++end;
+					}
+					Class<? extends ILog> logClass = getSpillLogClass(first.getLogClassName());
+					if (logClass == null) {
+						for (int i = start; i < end; ++i) {
+							log.error("unknown spill log class:" + first.getLogClassName() + ","
+									+ StringUtil.toJSON(rows.get(i).getParams()));
+							LogDBServer.this.increaseLostLogNum();
+						}
+					} else {
+						try {
+							ensureTable(con, first.getTableName(), logClass);
+						} catch (Exception e) {
+							if (isTransient(e)) {
+								throw e;
+							}
+							// 建表失败时仍逐条尝试，插不进去的日志会被丢弃
+							log.error(e, e);
+						}
+						List<Object[]> params = new ArrayList<>(end - start);
+						for (int i = start; i < end; ++i) {
+							params.add(rows.get(i).getParams());
+						}
+						int maxRows = getMaxInsertRows(logClass);
+						for (int from = 0; from < params.size(); from += maxRows) {
+							int to = Math.min(params.size(), from + maxRows);
+							int done = insertOrSkip(con, first.getTableName(), logClass, params, from, to);
+							if (done > from) {
+								spillJournal.commit(rows.get(start + done - 1));
+							}
+							if (done < to) {
+								return false;
+							}
+						}
+					}
+					spillJournal.commit(rows.get(end - 1));
+					start = end;
+				}
+				return true;
+			} catch (Exception e) {
+				log.error(e, e);
+				return false;
+			} finally {
 				try {
 					if (con != null) {
 						con.close();
@@ -412,7 +1099,26 @@ public class LogDBServer {
 					log.error(e, e);
 				}
 			}
+		}
 
+		@SuppressWarnings("unchecked")
+		private Class<? extends ILog> getSpillLogClass(String className) {
+			Class<? extends ILog> logClass = spillLogClasses.get(className);
+			if (logClass != null) {
+				return logClass;
+			}
+			try {
+				Class<?> clazz = Class.forName(className);
+				if (!ILog.class.isAssignableFrom(clazz)) {
+					return null;
+				}
+				logClass = (Class<? extends ILog>) clazz;
+				spillLogClasses.put(className, logClass);
+				return logClass;
+			} catch (ClassNotFoundException e) {
+				log.error(e, e);
+				return null;
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -28,6 +28,22 @@ public final class LogDBServerConfig {
 	private String charset;
 	// 自定义线程池
 	private ThreadPoolExecutor customInsertThreadPool;
+	// 每张表攒够多少条日志批量插入一次
+	private int batchSize;
+	// 未攒满的日志最长等待多久插入(毫秒)
+	private int batchFlushInterval;
+	// 溢出文件目录(为空则不启用，队列满时直接丢弃)
+	private String spillDir;
+	// 溢出文件每段大小
+	private int spillSegmentSize;
+	// 数据库不可用时溢出文件重放的重试间隔(毫秒)
+	private int spillRetryInterval;
+	// 查询每次从数据库取的行数(mysql下Integer.MIN_VALUE为逐行流式读取)
+	private int queryFetchSize;
+	// 滚动表并发查询线程数
+	private int queryThreadCount;
+	// 表名缓存时间(毫秒)
+	private int tableNameCacheInterval;
 
 	private LogDBServerConfig(LogDBServerConfigBuilder builder) {
 		this.scanPackages = builder.scanPackages.toArray(new String[0]);
@@ -37,6 +53,14 @@ public final class LogDBServerConfig {
 		this.dbEngine = builder.dbEngine;
 		this.charset = builder.charset;
 		this.customInsertThreadPool = builder.customInsertThreadPool;
+		this.batchSize = builder.batchSize;
+		this.batchFlushInterval = builder.batchFlushInterval;
+		this.spillDir = builder.spillDir;
+		this.spillSegmentSize = builder.spillSegmentSize;
+		this.spillRetryInterval = builder.spillRetryInterval;
+		this.queryFetchSize = builder.queryFetchSize;
+		this.queryThreadCount = builder.queryThreadCount;
+		this.tableNameCacheInterval = builder.tableNameCacheInterval;
 	}
 
 	public int getThreadCorePoolSize() {
@@ -67,6 +91,38 @@ public final class LogDBServerConfig {
 		return taskMaxSize;
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getBatchFlushInterval() {
+		return batchFlushInterval;
+	}
+
+	public String getSpillDir() {
+		return spillDir;
+	}
+
+	public int getSpillSegmentSize() {
+		return spillSegmentSize;
+	}
+
+	public int getSpillRetryInterval() {
+		return spillRetryInterval;
+	}
+
+	public int getQueryFetchSize() {
+		return queryFetchSize;
+	}
+
+	public int getQueryThreadCount() {
+		return queryThreadCount;
+	}
+
+	public int getTableNameCacheInterval() {
+		return tableNameCacheInterval;
+	}
+
 	public static class LogDBServerConfigBuilder {
 		// 扫描项目包名(日志结构检查)
 		private Set<String> scanPackages = new HashSet<>();
@@ -82,6 +138,22 @@ public final class LogDBServerConfig {
 		private String charset;
 		// 自定义线程池
 		private ThreadPoolExecutor customInsertThreadPool;
+		// 每张表攒够多少条日志批量插入一次
+		private int batchSize;
+		// 未攒满的日志最长等待多久插入(毫秒)
+		private int batchFlushInterval;
+		// 溢出文件目录(为空则不启用，队列满时直接丢弃)
+		private String spillDir;
+		// 溢出文件每段大小
+		private int spillSegmentSize;
+		// 数据库不可用时溢出文件重放的重试间隔(毫秒)
+		private int spillRetryInterval;
+		// 查询每次从数据库取的行数(mysql下Integer.MIN_VALUE为逐行流式读取)
+		private int queryFetchSize;
+		// 滚动表并发查询线程数
+		private int queryThreadCount;
+		// 表名缓存时间(毫秒)
+		private int tableNameCacheInterval;
 
 		public LogDBServerConfigBuilder() {
 			this.taskMaxSize = 8000;
@@ -93,6 +165,20 @@ public final class LogDBServerConfig {
 			this.dbEngine = "myisam";
 			// 编码
 			this.charset = "utf8";
+			// 批量插入条数
+			this.batchSize = 200;
+			// 批量插入间隔
+			this.batchFlushInterval = 500;
+			// 溢出文件每段64M
+			this.spillSegmentSize = 64 * 1024 * 1024;
+			// 重放重试间隔
+			this.spillRetryInterval = 1000;
+			// mysql流式读取
+			this.queryFetchSize = Integer.MIN_VALUE;
+			// 滚动表并发查询线程数
+			this.queryThreadCount = 4;
+			// 表名缓存1分钟
+			this.tableNameCacheInterval = 60 * 1000;
 		}
 
 		/**
@@ -198,5 +284,108 @@ public final class LogDBServerConfig {
 			this.customInsertThreadPool = threadPool;
 			return this;
 		}
+
+		/**
+		 * 每张表攒够多少条日志批量插入一次
+		 * 
+		 * @param size
+		 * @return
+		 */
+		public LogDBServerConfigBuilder batchSize(int size) {
+			if (size > 0) {
+				this.batchSize = size;
+			}
+			return this;
+		}
+
+		/**
+		 * 未攒满的日志最长等待多久插入(毫秒)
+		 * 
+		 * @param interval
+		 * @return
+		 */
+		public LogDBServerConfigBuilder batchFlushInterval(int interval) {
+			if (interval > 0) {
+				this.batchFlushInterval = interval;
+			}
+			return this;
+		}
+
+		/**
+		 * 溢出文件目录，启用后队列满或数据库不可用时日志写入此目录，由后台线程按顺序重放
+		 * 
+		 * @param dir
+		 * @return
+		 */
+		public LogDBServerConfigBuilder spillDir(String dir) {
+			if (StringUtil.isEmptyOrNull(dir)) {
+				throw new NullPointerException("spillDir");
+			}
+			this.spillDir = dir;
+			return this;
+		}
+
+		/**
+		 * 溢出文件每段大小
+		 * 
+		 * @param size
+		 * @return
+		 */
+		public LogDBServerConfigBuilder spillSegmentSize(int size) {
+			if (size > 0) {
+				this.spillSegmentSize = size;
+			}
+			return this;
+		}
+
+		/**
+		 * 数据库不可用时溢出文件重放的重试间隔(毫秒)
+		 * 
+		 * @param interval
+		 * @return
+		 */
+		public LogDBServerConfigBuilder spillRetryInterval(int interval) {
+			if (interval > 0) {
+				this.spillRetryInterval = interval;
+			}
+			return this;
+		}
+
+		/**
+		 * 查询每次从数据库取的行数(mysql下Integer.MIN_VALUE为逐行流式读取，非mysql驱动需改为正数)
+		 * 
+		 * @param size
+		 * @return
+		 */
+		public LogDBServerConfigBuilder queryFetchSize(int size) {
+			this.queryFetchSize = size;
+			return this;
+		}
+
+		/**
+		 * 滚动表并发查询线程数(同时占用的数据库连接数)
+		 * 
+		 * @param count
+		 * @return
+		 */
+		public LogDBServerConfigBuilder queryThreadCount(int count) {
+			if (count > 0) {
+				this.queryThreadCount = count;
+			}
+			return this;
+		}
+
+		/**
+		 * 表名缓存时间(毫秒)，本服务器建表时会立即刷新
+		 * 
+		 * @param interval
+		 * @return
+		 */
+		public LogDBServerConfigBuilder tableNameCacheInterval(int interval) {
+			if (interval >= 0) {
+				this.tableNameCacheInterval = interval;
+			}
+			return this;
+		}
 	}
-}
+}
\ No newline at end of file
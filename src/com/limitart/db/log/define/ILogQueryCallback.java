@@ -0,0 +1,18 @@
+package com.limitart.db.log.define;
+
+/**
+ * 日志查询逐行回调
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public interface ILogQueryCallback<T extends ILog> {
+	/**
+	 * 读到一行日志
+	 * 
+	 * @param alog
+	 * @return 返回false停止读取
+	 */
+	public boolean onLog(T alog);
+}
@@ -0,0 +1,20 @@
+package com.limitart.db.log.define;
+
+import com.limitart.db.log.util.LogDBUtil.QueryConditionBuilder;
+
+/**
+ * 滚动表分表查询构造(每张相关表构造一次)
+ * 
+ * @author hank
+ *
+ */
+public interface ILogTableQueryBuilder {
+	/**
+	 * 构造某张表的查询(排序需与合并用的比较器一致，分页由服务器处理)
+	 * 
+	 * @param tableName
+	 * @return
+	 * @throws Exception
+	 */
+	public QueryConditionBuilder build(String tableName) throws Exception;
+}
@@ -0,0 +1,422 @@
+package com.limitart.db.log.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.limitart.db.log.struct.SpillLogRow;
+
+/**
+ * 日志溢出文件(内存映射的追加写分段文件)
+ * 
+ * 记录格式:[int 长度][int CRC32][表名][日志类名][short 列数][列值...]，长度为0表示后面尚未写入，-1表示本段结束。
+ * 长度越界或CRC不符的记录视为中断时没写完，与未写入同样处理
+ * 
+ * @author hank
+ *
+ */
+public class LogSpillJournal {
+	private static Logger log = LogManager.getLogger();
+	private static final String SEGMENT_SUFFIX = ".spill";
+	private static final String COMMIT_FILE_NAME = "commit.offset";
+	private static final int END_OF_SEGMENT = -1;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_INT = 1;
+	private static final byte TYPE_LONG = 2;
+	private static final byte TYPE_SHORT = 3;
+	private static final byte TYPE_BYTE = 4;
+	private static final byte TYPE_BOOLEAN = 5;
+	private static final byte TYPE_FLOAT = 6;
+	private static final byte TYPE_DOUBLE = 7;
+	private static final byte TYPE_STRING = 8;
+	private static final byte TYPE_TIMESTAMP = 9;
+	private File dir;
+	private int segmentSize;
+	// 段序号-->段
+	private TreeMap<Long, Segment> segments = new TreeMap<>();
+	private Segment writeSegment;
+	private int writePosition;
+	private long readSeq;
+	private int readPosition;
+	private long committedSeq;
+	private int committedPosition;
+	private RandomAccessFile commitFile;
+	private MappedByteBuffer commitBuffer;
+
+	public LogSpillJournal(File dir, int segmentSize) {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * 打开溢出文件，从上次提交的位置继续
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException {
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("can not create spill dir:" + dir.getAbsolutePath());
+		}
+		commitFile = new RandomAccessFile(new File(dir, COMMIT_FILE_NAME), "rw");
+		commitBuffer = commitFile.getChannel().map(MapMode.READ_WRITE, 0, 12);
+		committedSeq = commitBuffer.getLong(0);
+		committedPosition = commitBuffer.getInt(8);
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (!name.endsWith(SEGMENT_SUFFIX)) {
+					continue;
+				}
+				long seq = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+				if (seq < committedSeq) {
+					// 已经全部入库
+					if (!file.delete()) {
+						log.error("delete spill segment failed:" + file.getAbsolutePath());
+					}
+					continue;
+				}
+				segments.put(seq, openSegment(seq));
+			}
+		}
+		if (segments.isEmpty()) {
+			writeSegment = newSegment(Math.max(committedSeq, 1));
+			writePosition = 0;
+		} else {
+			writeSegment = segments.lastEntry().getValue();
+			writePosition = 0;
+			while (writePosition + 4 <= segmentSize) {
+				int len = recordLength(writeSegment.buffer, writePosition);
+				if (len == END_OF_SEGMENT) {
+					writeSegment = newSegment(writeSegment.seq + 1);
+					writePosition = 0;
+					break;
+				}
+				if (len <= 0) {
+					if (writeSegment.buffer.getInt(writePosition) != 0) {
+						log.error("discard broken spill record at " + writeSegment.seq + ":" + writePosition);
+					}
+					break;
+				}
+				writePosition += RECORD_HEADER_SIZE + len;
+			}
+		}
+		Entry<Long, Segment> first = segments.firstEntry();
+		if (committedSeq < first.getKey()) {
+			committedSeq = first.getKey();
+			committedPosition = 0;
+		}
+		rewind();
+	}
+
+	/**
+	 * 关闭溢出文件
+	 */
+	public synchronized void close() {
+		for (Segment segment : segments.values()) {
+			segment.close();
+		}
+		segments.clear();
+		writeSegment = null;
+		if (commitFile != null) {
+			commitBuffer.force();
+			try {
+				commitFile.close();
+			} catch (IOException e) {
+				log.error(e, e);
+			}
+			commitFile = null;
+		}
+	}
+
+	/**
+	 * 追加一行日志
+	 * 
+	 * @param tableName
+	 * @param logClassName
+	 * @param params
+	 * @throws IOException
+	 */
+	public void append(String tableName, String logClassName, Object[] params) throws IOException {
+		byte[] record = encode(tableName, logClassName, params);
+		if (RECORD_HEADER_SIZE + record.length + 4 > segmentSize) {
+			throw new IOException("spill record too large:" + record.length);
+		}
+		synchronized (this) {
+			if (writeSegment == null) {
+				throw new IOException("spill journal closed");
+			}
+			int next = writePosition + RECORD_HEADER_SIZE + record.length;
+			if (next + 4 > segmentSize) {
+				writeSegment.buffer.putInt(writePosition, END_OF_SEGMENT);
+				writeSegment.buffer.force();
+				writeSegment = newSegment(writeSegment.seq + 1);
+				writePosition = 0;
+				next = RECORD_HEADER_SIZE + record.length;
+			}
+			MappedByteBuffer buffer = writeSegment.buffer;
+			CRC32 crc = new CRC32();
+			crc.update(record);
+			buffer.putInt(writePosition + 4, (int) crc.getValue());
+			buffer.position(writePosition + RECORD_HEADER_SIZE);
+			buffer.put(record);
+			// 清掉下一条的长度，上次中断留下的旧数据不会被当成下一条
+			buffer.putInt(next, 0);
+			// 长度最后写(断电时页的落盘顺序不保证，读取时还要校验CRC)
+			buffer.putInt(writePosition, record.length);
+			writePosition = next;
+		}
+	}
+
+	/**
+	 * 从读取位置往后读取日志(不提交)
+	 * 
+	 * @param maxSize
+	 * @return
+	 */
+	public synchronized List<SpillLogRow> read(int maxSize) {
+		List<SpillLogRow> result = new ArrayList<>();
+		while (result.size() < maxSize) {
+			Segment segment = segments.get(readSeq);
+			if (segment == null) {
+				break;
+			}
+			int len = readPosition + 4 <= segmentSize ? recordLength(segment.buffer, readPosition) : END_OF_SEGMENT;
+			// 旧段中没写完的记录之后不会再有数据
+			if (len == END_OF_SEGMENT || (len <= 0 && segment != writeSegment)) {
+				Long next = segments.higherKey(readSeq);
+				if (next == null) {
+					break;
+				}
+				readSeq = next;
+				readPosition = 0;
+				continue;
+			}
+			if (len <= 0) {
+				break;
+			}
+			byte[] record = new byte[len];
+			segment.buffer.position(readPosition + RECORD_HEADER_SIZE);
+			segment.buffer.get(record);
+			readPosition += RECORD_HEADER_SIZE + len;
+			try {
+				SpillLogRow row = decode(record);
+				row.setSegmentSeq(readSeq);
+				row.setEndPosition(readPosition);
+				result.add(row);
+			} catch (IOException e) {
+				log.error("broken spill record at " + readSeq + ":" + (readPosition - RECORD_HEADER_SIZE - len), e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 读取位置回到上次提交的位置
+	 */
+	public synchronized void rewind() {
+		this.readSeq = committedSeq;
+		this.readPosition = committedPosition;
+	}
+
+	/**
+	 * 提交到某行(包含)，之前的记录不会再被读取
+	 * 
+	 * @param row
+	 */
+	public synchronized void commit(SpillLogRow row) {
+		if (commitFile == null) {
+			return;
+		}
+		committedSeq = row.getSegmentSeq();
+		committedPosition = row.getEndPosition();
+		commitBuffer.putLong(0, committedSeq);
+		commitBuffer.putInt(8, committedPosition);
+		commitBuffer.force();
+		Iterator<Segment> iterator = segments.headMap(committedSeq).values().iterator();
+		while (iterator.hasNext()) {
+			Segment segment = iterator.next();
+			iterator.remove();
+			segment.close();
+			if (!segment.file.delete()) {
+				log.error("delete spill segment failed:" + segment.file.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * 读取某位置记录的长度
+	 * 
+	 * @param buffer
+	 * @param position
+	 * @return 段结束返回-1，尚未写入或没写完(长度越界、CRC不符)返回0
+	 */
+	private int recordLength(MappedByteBuffer buffer, int position) {
+		int len = buffer.getInt(position);
+		if (len == END_OF_SEGMENT) {
+			return END_OF_SEGMENT;
+		}
+		if (len <= 0 || len > segmentSize - position - RECORD_HEADER_SIZE) {
+			return 0;
+		}
+		ByteBuffer content = buffer.duplicate();
+		content.limit(position + RECORD_HEADER_SIZE + len).position(position + RECORD_HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+			return 0;
+		}
+		return len;
+	}
+
+	private Segment newSegment(long seq) throws IOException {
+		Segment segment = openSegment(seq);
+		segments.put(seq, segment);
+		return segment;
+	}
+
+	private Segment openSegment(long seq) throws IOException {
+		File file = new File(dir, String.format("%020d", seq) + SEGMENT_SUFFIX);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		FileChannel channel = raf.getChannel();
+		Segment segment = new Segment();
+		segment.seq = seq;
+		segment.file = file;
+		segment.raf = raf;
+		segment.buffer = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+		return segment;
+	}
+
+	private static byte[] encode(String tableName, String logClassName, Object[] params) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + params.length * 8);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(tableName);
+		out.writeUTF(logClassName);
+		out.writeShort(params.length);
+		for (Object param : params) {
+			if (param == null) {
+				out.writeByte(TYPE_NULL);
+			} else if (param instanceof Integer) {
+				out.writeByte(TYPE_INT);
+				out.writeInt((Integer) param);
+			} else if (param instanceof Long) {
+				out.writeByte(TYPE_LONG);
+				out.writeLong((Long) param);
+			} else if (param instanceof Short) {
+				out.writeByte(TYPE_SHORT);
+				out.writeShort((Short) param);
+			} else if (param instanceof Byte) {
+				out.writeByte(TYPE_BYTE);
+				out.writeByte((Byte) param);
+			} else if (param instanceof Boolean) {
+				out.writeByte(TYPE_BOOLEAN);
+				out.writeBoolean((Boolean) param);
+			} else if (param instanceof Float) {
+				out.writeByte(TYPE_FLOAT);
+				out.writeFloat((Float) param);
+			} else if (param instanceof Double) {
+				out.writeByte(TYPE_DOUBLE);
+				out.writeDouble((Double) param);
+			} else if (param instanceof Timestamp) {
+				out.writeByte(TYPE_TIMESTAMP);
+				out.writeLong(((Timestamp) param).getTime());
+			} else {
+				// writeUTF有64K限制，长文本按字节写
+				byte[] str = param.toString().getBytes("UTF-8");
+				out.writeByte(TYPE_STRING);
+				out.writeInt(str.length);
+				out.write(str);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static SpillLogRow decode(byte[] record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		SpillLogRow row = new SpillLogRow();
+		row.setTableName(in.readUTF());
+		row.setLogClassName(in.readUTF());
+		Object[] params = new Object[in.readShort()];
+		for (int i = 0; i < params.length; ++i) {
+			byte type = in.readByte();
+			switch (type) {
+			case TYPE_NULL:
+				break;
+			case TYPE_INT:
+				params[i] = in.readInt();
+				break;
+			case TYPE_LONG:
+				params[i] = in.readLong();
+				break;
+			case TYPE_SHORT:
+				params[i] = in.readShort();
+				break;
+			case TYPE_BYTE:
+				params[i] = in.readByte();
+				break;
+			case TYPE_BOOLEAN:
+				params[i] = in.readBoolean();
+				break;
+			case TYPE_FLOAT:
+				params[i] = in.readFloat();
+				break;
+			case TYPE_DOUBLE:
+				params[i] = in.readDouble();
+				break;
+			case TYPE_TIMESTAMP:
+				params[i] = new Timestamp(in.readLong());
+				break;
+			case TYPE_STRING:
+				byte[] str = new byte[in.readInt()];
+				in.readFully(str);
+				params[i] = new String(str, "UTF-8");
+				break;
+			default:
+				throw new IOException("unknown spill param type:" + type);
+			}
+		}
+		row.setParams(params);
+		return row;
+	}
+
+	/**
+	 * 一个分段文件
+	 * 
+	 * @author hank
+	 * 
+	 */
+	private static class Segment {
+		private long seq;
+		private File file;
+		private RandomAccessFile raf;
+		private MappedByteBuffer buffer;
+
+		private void close() {
+			buffer.force();
+			try {
+				raf.close();
+			} catch (IOException e) {
+				log.error(e, e);
+			}
+		}
+	}
+}
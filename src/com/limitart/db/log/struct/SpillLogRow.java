@@ -0,0 +1,58 @@
+package com.limitart.db.log.struct;
+
+/**
+ * 溢出日志中的一行记录
+ * 
+ * @author hank
+ *
+ */
+public class SpillLogRow {
+	private String tableName;
+	private String logClassName;
+	// 按列顺序排列的插入参数
+	private Object[] params;
+	// 记录所在的段
+	private long segmentSeq;
+	// 记录结束的位置
+	private int endPosition;
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public void setTableName(String tableName) {
+		this.tableName = tableName;
+	}
+
+	public String getLogClassName() {
+		return logClassName;
+	}
+
+	public void setLogClassName(String logClassName) {
+		this.logClassName = logClassName;
+	}
+
+	public Object[] getParams() {
+		return params;
+	}
+
+	public void setParams(Object[] params) {
+		this.params = params;
+	}
+
+	public long getSegmentSeq() {
+		return segmentSeq;
+	}
+
+	public void setSegmentSeq(long segmentSeq) {
+		this.segmentSeq = segmentSeq;
+	}
+
+	public int getEndPosition() {
+		return endPosition;
+	}
+
+	public void setEndPosition(int endPosition) {
+		this.endPosition = endPosition;
+	}
+}
@@ -6,17 +6,21 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -166,7 +170,7 @@ public class LogDBUtil {
 		Calendar startCal = Calendar.getInstance(Locale.SIMPLIFIED_CHINESE);
 		startCal.setTimeInMillis(start);
 		startCal.set(Calendar.DAY_OF_MONTH, 1);
-		startCal.clear(Calendar.HOUR_OF_DAY);
+		startCal.set(Calendar.HOUR_OF_DAY, 0);
 		startCal.clear(Calendar.MINUTE);
 		startCal.clear(Calendar.SECOND);
 		startCal.clear(Calendar.MILLISECOND);
@@ -176,7 +180,8 @@ public class LogDBUtil {
 			String logTableName = getLogTableName(newInstance, startCal.getTimeInMillis());
 			LogRollType logRollType = newInstance.getLogRollType();
 			if (logRollType == LogRollType.DAY_ROLL) {
-				if (startCal.getTimeInMillis() >= start) {
+				// 开始时间所在的那天也算
+				if (startCal.getTimeInMillis() + TimeUnit.DAYS.toMillis(1) > start) {
 					result.add(logTableName);
 				}
 				startCal.add(Calendar.DAY_OF_YEAR, 1);
@@ -247,8 +252,22 @@ public class LogDBUtil {
 	 */
 	public static String buildCreateTableSql_MYSQL(ILog alog, String dbEngine, String charset)
 			throws UnsupportedEncodingException {
+		return buildCreateTableSql_MYSQL(alog, getLogTableName(alog, System.currentTimeMillis()), dbEngine, charset);
+	}
+
+	/**
+	 * 创建指定表名的建表Sql
+	 * 
+	 * @param alog
+	 * @param tableName
+	 * @param dbEngine
+	 * @param charset
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	public static String buildCreateTableSql_MYSQL(ILog alog, String tableName, String dbEngine, String charset)
+			throws UnsupportedEncodingException {
 		StringBuilder createTableBuffer = new StringBuilder();
-		String tableName = getLogTableName(alog, System.currentTimeMillis());
 		FieldAccess fieldAccessV2 = getLogFields(alog.getClass());
 		createTableBuffer.append("create table if not exists ").append(tableName).append(" (").append(line());
 		createTableBuffer.append(PRIMARY_KEY_FIELD_NAME + " int primary key not null auto_increment");
@@ -310,6 +329,72 @@ public class LogDBUtil {
 		return sql;
 	}
 
+	/**
+	 * 创建多行参数化插入Sql(每行的占位符顺序与getLogFields一致)
+	 * 
+	 * @param tableName
+	 * @param logClass
+	 * @param rowCount
+	 * @return
+	 */
+	public static String buildBatchInsertTableSql_MYSQL(String tableName, Class<? extends ILog> logClass,
+			int rowCount) {
+		return buildBatchInsertTableSql_MYSQL(tableName, logClass, rowCount, false);
+	}
+
+	/**
+	 * 创建多行参数化插入Sql(每行的占位符顺序与getLogFields一致)
+	 * 
+	 * @param tableName
+	 * @param logClass
+	 * @param rowCount
+	 * @param ignore
+	 *            是否使用insert ignore(出错的行降级为警告，不会中断整条语句)
+	 * @return
+	 */
+	public static String buildBatchInsertTableSql_MYSQL(String tableName, Class<? extends ILog> logClass,
+			int rowCount, boolean ignore) {
+		FieldAccess fieldAccessV2 = getLogFields(logClass);
+		StringBuilder insertTableBuffer = new StringBuilder();
+		insertTableBuffer.append(ignore ? "insert ignore into `" : "insert into `").append(tableName).append("`(");
+		StringBuilder rowBuffer = new StringBuilder("(");
+		for (int i = 0; i < fieldAccessV2.getFieldCount(); ++i) {
+			if (i > 0) {
+				insertTableBuffer.append(",");
+				rowBuffer.append(",");
+			}
+			insertTableBuffer.append("`").append(LogDBUtil.getTableFieldName(fieldAccessV2.getFieldNames()[i]))
+					.append("`");
+			rowBuffer.append("?");
+		}
+		rowBuffer.append(")");
+		insertTableBuffer.append(") values ");
+		for (int i = 0; i < rowCount; ++i) {
+			if (i > 0) {
+				insertTableBuffer.append(",");
+			}
+			insertTableBuffer.append(rowBuffer);
+		}
+		String sql = insertTableBuffer.toString();
+		log.debug(sql);
+		return sql;
+	}
+
+	/**
+	 * 数据库引擎是否支持事务(不支持事务的引擎多行插入中途出错时，出错行之前的行会保留)
+	 * 
+	 * @param dbEngine
+	 * @return
+	 */
+	public static boolean isTransactionalEngine_MYSQL(String dbEngine) {
+		if (dbEngine == null) {
+			return false;
+		}
+		String engine = dbEngine.trim().toLowerCase();
+		return engine.equals("innodb") || engine.equals("xtradb") || engine.equals("ndb")
+				|| engine.equals("ndbcluster") || engine.equals("tokudb") || engine.equals("rocksdb");
+	}
+
 	/**
 	 * 创建列增加Sql
 	 * 
@@ -375,6 +460,104 @@ public class LogDBUtil {
 		return result;
 	}
 
+	/**
+	 * 把日志相应的字段转换为Sql参数
+	 * 
+	 * @param object
+	 * @return
+	 */
+	public static Object parseLogField2Param(Object object) {
+		if (object == null) {
+			return null;
+		}
+		if (object instanceof Date) {
+			return new Timestamp(((Date) object).getTime());
+		}
+		if ((object instanceof Integer) || (object instanceof String) || (object instanceof Long)
+				|| (object instanceof Short) || (object instanceof Byte) || (object instanceof Boolean)
+				|| (object instanceof Float) || (object instanceof Double)) {
+			return object;
+		}
+		return StringUtil.toJSON(object);
+	}
+
+	/**
+	 * 获取日志按列顺序的插入参数
+	 * 
+	 * @param alog
+	 * @return
+	 */
+	public static Object[] getLogParams(ILog alog) {
+		FieldAccess fieldAccessV2 = getLogFields(alog.getClass());
+		Object[] params = new Object[fieldAccessV2.getFieldCount()];
+		for (int i = 0; i < params.length; ++i) {
+			params[i] = parseLogField2Param(fieldAccessV2.get(alog, i));
+		}
+		return params;
+	}
+
+	/**
+	 * k路归并多个已排序的结果并分页
+	 * 
+	 * @param sources
+	 *            各自已按comparator排序
+	 * @param comparator
+	 *            为null时按顺序拼接
+	 * @param offset
+	 * @param limit
+	 *            小于等于0时不分页
+	 * @return
+	 */
+	public static <T> List<T> mergeSorted(final List<List<T>> sources, final Comparator<? super T> comparator,
+			int offset, int limit) {
+		int skip = Math.max(0, offset);
+		int max = limit > 0 ? limit : Integer.MAX_VALUE;
+		List<T> result = new ArrayList<>();
+		if (comparator == null) {
+			for (List<T> source : sources) {
+				for (T t : source) {
+					if (skip > 0) {
+						--skip;
+						continue;
+					}
+					if (result.size() >= max) {
+						return result;
+					}
+					result.add(t);
+				}
+			}
+			return result;
+		}
+		// [来源序号,来源中的位置]
+		PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sources.size()), new Comparator<int[]>() {
+
+			@Override
+			public int compare(int[] o1, int[] o2) {
+				int result = comparator.compare(sources.get(o1[0]).get(o1[1]), sources.get(o2[0]).get(o2[1]));
+				// 相等时保持表的时间顺序
+				return result != 0 ? result : Integer.compare(o1[0], o2[0]);
+			}
+		});
+		for (int i = 0; i < sources.size(); ++i) {
+			if (!sources.get(i).isEmpty()) {
+				heads.add(new int[] { i, 0 });
+			}
+		}
+		while (!heads.isEmpty() && result.size() < max) {
+			int[] head = heads.poll();
+			List<T> source = sources.get(head[0]);
+			if (skip > 0) {
+				--skip;
+			} else {
+				result.add(source.get(head[1]));
+			}
+			if (++head[1] < source.size()) {
+				heads.add(head);
+			}
+		}
+		return result;
+	}
+
 	private static String line() {
 		return System.getProperty("line.separator");
 	}
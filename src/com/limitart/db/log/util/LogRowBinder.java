@@ -0,0 +1,247 @@
+package com.limitart.db.log.util;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.limitart.db.log.define.ILog;
+import com.limitart.reflectasm.ConstructorAccess;
+import com.limitart.reflectasm.FieldAccess;
+import com.limitart.util.StringUtil;
+
+/**
+ * 日志行绑定器(结果集的列-->日志字段，每个日志类只解析一次)
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public class LogRowBinder<T extends ILog> {
+	private static ConcurrentHashMap<Class<? extends ILog>, LogRowBinder<?>> binderCache = new ConcurrentHashMap<>();
+	private static final byte KIND_INT = 1;
+	private static final byte KIND_LONG = 2;
+	private static final byte KIND_SHORT = 3;
+	private static final byte KIND_BYTE = 4;
+	private static final byte KIND_BOOLEAN = 5;
+	private static final byte KIND_FLOAT = 6;
+	private static final byte KIND_DOUBLE = 7;
+	private static final byte KIND_STRING = 8;
+	private static final byte KIND_DATE = 9;
+	// 写入时被转成了JSON
+	private static final byte KIND_JSON = 10;
+	private Class<T> logClass;
+	private ConstructorAccess<T> constructor;
+	private FieldAccess fieldAccess;
+	private Class<?>[] fieldTypes;
+	// 字段序号-->读取方式
+	private byte[] fieldKinds;
+	// 字段是否为包装类型
+	private boolean[] boxed;
+	// 小写列名-->字段序号
+	private HashMap<String, Integer> columnFields = new HashMap<>();
+
+	/**
+	 * 获取日志类的绑定器
+	 * 
+	 * @param logClass
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends ILog> LogRowBinder<T> get(Class<T> logClass) {
+		LogRowBinder<?> binder = binderCache.get(logClass);
+		if (binder == null) {
+			binder = new LogRowBinder<>(logClass);
+			LogRowBinder<?> old = binderCache.putIfAbsent(logClass, binder);
+			if (old != null) {
+				binder = old;
+			}
+		}
+		return (LogRowBinder<T>) binder;
+	}
+
+	private LogRowBinder(Class<T> logClass) {
+		this.logClass = logClass;
+		this.constructor = ConstructorAccess.get(logClass);
+		this.fieldAccess = LogDBUtil.getLogFields(logClass);
+		this.fieldTypes = fieldAccess.getFieldTypes();
+		this.fieldKinds = new byte[fieldAccess.getFieldCount()];
+		this.boxed = new boolean[fieldAccess.getFieldCount()];
+		for (int index = 0; index < fieldAccess.getFieldCount(); ++index) {
+			Field field = fieldAccess.getFields()[index];
+			fieldKinds[index] = kindOf(field.getType());
+			boxed[index] = !field.getType().isPrimitive();
+			columnFields.put(LogDBUtil.getTableFieldName(fieldAccess.getFieldNames()[index]).toLowerCase(), index);
+		}
+	}
+
+	private static byte kindOf(Class<?> type) {
+		if (type == int.class || type == Integer.class) {
+			return KIND_INT;
+		} else if (type == long.class || type == Long.class) {
+			return KIND_LONG;
+		} else if (type == short.class || type == Short.class) {
+			return KIND_SHORT;
+		} else if (type == byte.class || type == Byte.class) {
+			return KIND_BYTE;
+		} else if (type == boolean.class || type == Boolean.class) {
+			return KIND_BOOLEAN;
+		} else if (type == float.class || type == Float.class) {
+			return KIND_FLOAT;
+		} else if (type == double.class || type == Double.class) {
+			return KIND_DOUBLE;
+		} else if (type == String.class) {
+			return KIND_STRING;
+		} else if (type == Date.class || type == Timestamp.class) {
+			return KIND_DATE;
+		}
+		return KIND_JSON;
+	}
+
+	/**
+	 * 计算结果集每一列对应的字段序号(没有对应字段为-1)，每次查询调用一次
+	 * 
+	 * @param metaData
+	 * @return
+	 * @throws SQLException
+	 */
+	public int[] mapColumns(ResultSetMetaData metaData) throws SQLException {
+		int[] result = new int[metaData.getColumnCount()];
+		for (int i = 0; i < result.length; ++i) {
+			Integer fieldIndex = columnFields.get(metaData.getColumnLabel(i + 1).toLowerCase());
+			result[i] = fieldIndex == null ? -1 : fieldIndex;
+		}
+		return result;
+	}
+
+	/**
+	 * 把结果集当前行绑定为日志
+	 * 
+	 * @param rs
+	 * @param columnMapping
+	 *            mapColumns的结果
+	 * @return
+	 * @throws Exception
+	 */
+	public T bind(ResultSet rs, int[] columnMapping) throws Exception {
+		T alog = constructor.newInstance();
+		for (int i = 0; i < columnMapping.length; ++i) {
+			int index = columnMapping[i];
+			if (index < 0) {
+				continue;
+			}
+			int column = i + 1;
+			// 数据库为null时保留字段默认值
+			switch (fieldKinds[index]) {
+			case KIND_INT: {
+				int value = rs.getInt(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setInt(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_LONG: {
+				long value = rs.getLong(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setLong(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_SHORT: {
+				short value = rs.getShort(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setShort(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_BYTE: {
+				byte value = rs.getByte(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setByte(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_BOOLEAN: {
+				boolean value = rs.getBoolean(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setBoolean(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_FLOAT: {
+				float value = rs.getFloat(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setFloat(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_DOUBLE: {
+				double value = rs.getDouble(column);
+				if (!rs.wasNull()) {
+					if (boxed[index]) {
+						fieldAccess.set(alog, index, value);
+					} else {
+						fieldAccess.setDouble(alog, index, value);
+					}
+				}
+				break;
+			}
+			case KIND_STRING: {
+				String value = rs.getString(column);
+				if (value != null) {
+					fieldAccess.set(alog, index, value);
+				}
+				break;
+			}
+			case KIND_DATE: {
+				Timestamp value = rs.getTimestamp(column);
+				if (value != null) {
+					fieldAccess.set(alog, index,
+							fieldTypes[index] == Date.class ? new Date(value.getTime()) : value);
+				}
+				break;
+			}
+			default: {
+				String value = rs.getString(column);
+				if (value != null) {
+					fieldAccess.set(alog, index, StringUtil.toObject(value, fieldTypes[index]));
+				}
+				break;
+			}
+			}
+		}
+		return alog;
+	}
+
+	public Class<T> getLogClass() {
+		return logClass;
+	}
+}
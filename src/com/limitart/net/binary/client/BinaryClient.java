@@ -8,15 +8,26 @@ import org.apache.logging.log4j.Logger;
 
 import com.limitart.net.binary.client.config.BinaryClientConfig;
 import com.limitart.net.binary.client.listener.BinaryClientEventListener;
+import com.limitart.net.binary.codec.BatchFrameWriter;
 import com.limitart.net.binary.codec.ByteDecoder;
+import com.limitart.net.binary.codec.ChunkedFrameWriter;
+import com.limitart.net.binary.codec.FrameCompressor;
+import com.limitart.net.binary.codec.FrameDecompressor;
 import com.limitart.net.binary.handler.IHandler;
 import com.limitart.net.binary.message.Message;
 import com.limitart.net.binary.message.MessageFactory;
 import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.message.constant.WireFeature;
 import com.limitart.net.binary.message.impl.validate.ConnectionValidateClientMessage;
 import com.limitart.net.binary.message.impl.validate.ConnectionValidateServerMessage;
 import com.limitart.net.binary.message.impl.validate.ConnectionValidateSuccessServerMessage;
+import com.limitart.net.binary.outbound.OutboundConfig;
+import com.limitart.net.binary.outbound.OutboundQueue;
+import com.limitart.net.binary.transport.TransportConfig;
+import com.limitart.net.binary.util.FrameUtil;
 import com.limitart.net.binary.util.SendMessageUtil;
+import com.limitart.net.binary.util.TransportUtil;
+import com.limitart.net.binary.util.WireFeatureUtil;
 import com.limitart.util.SymmetricEncryptionUtil;
 
 import io.netty.bootstrap.Bootstrap;
@@ -31,12 +42,9 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.CorruptedFrameException;
 
 /**
  * 二进制通信客户端
@@ -47,20 +55,19 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 @Sharable
 public class BinaryClient extends ChannelInboundHandlerAdapter {
 	private static Logger log = LogManager.getLogger();
+	private static final short BATCH_ID = InnerMessageEnum.BatchFrame.getValue();
 	private BinaryClientEventListener clientEventListener;
 	private MessageFactory messageFactory;
 	private BinaryClientConfig clientConfig;
-	private static EventLoopGroup group;
+	private EventLoopGroup group;
 	private Bootstrap bootstrap;
 	private Channel channel;
 	private SymmetricEncryptionUtil decodeUtil;
-	static {
-		if (Epoll.isAvailable()) {
-			group = new EpollEventLoopGroup();
-		} else {
-			group = new NioEventLoopGroup();
-		}
-	}
+	// 与服务器协商的传输特性(验证成功后生效)
+	private int wireFeatures;
+	// 帧压缩与解压(未开启压缩时为null)
+	private FrameCompressor compressor;
+	private FrameDecompressor decompressor;
 
 	public BinaryClient(BinaryClientConfig config, BinaryClientEventListener clientEventListener,
 			MessageFactory messageFactory) throws Exception {
@@ -82,16 +89,23 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 				.registerMsg(InnerMessageEnum.ConnectionValidateSuccessServerMessage.getValue(),
 						ConnectionValidateSuccessServerMessage.class, new ConnectionValidateSuccessServerHandler());
 		decodeUtil = SymmetricEncryptionUtil.getDecodeInstance(clientConfig.getConnectionPass());
-		bootstrap = new Bootstrap();
-		if (Epoll.isAvailable()) {
-			bootstrap.channel(EpollServerSocketChannel.class);
-		} else {
-			bootstrap.channel(NioSocketChannel.class);
-			log.info(clientConfig.getClientName() + " nio init");
+		if (clientConfig.getCompressThreshold() > 0) {
+			compressor = new FrameCompressor(clientConfig.getCompressThreshold(), clientConfig.getCompressLevel());
+			decompressor = new FrameDecompressor(clientConfig.getDataMaxLength());
 		}
-
+		TransportConfig transport = clientConfig.getTransport();
+		group = TransportUtil.workerGroup(transport, clientConfig.getClientName());
+		bootstrap = new Bootstrap();
+		TransportUtil.configure(bootstrap, transport);
+		log.info(clientConfig.getClientName() + (TransportUtil.isEpoll(transport) ? " epoll init" : " nio init")
+				+ (transport.isSharedLoop() ? ",shared loop" : ""));
 		bootstrap.group(group).option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
 				.handler(new ChannelInitializerImpl(this));
+		OutboundConfig outbound = clientConfig.getOutbound();
+		if (outbound != null) {
+			bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK,
+					new WriteBufferWaterMark(outbound.getLowWaterMark(), outbound.getHighWaterMark()));
+		}
 	}
 
 	private class ChannelInitializerImpl extends ChannelInitializer<SocketChannel> {
@@ -103,7 +117,21 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 
 		@Override
 		protected void initChannel(SocketChannel ch) throws Exception {
+			if (this.client.clientConfig.getChunkSize() > 0) {
+				ch.pipeline().addLast(new ChunkedFrameWriter(this.client.clientConfig.getChunkSize(),
+						this.client.clientConfig.getDataMaxLength()));
+			}
+			if (this.client.clientConfig.getBatchSize() > 0) {
+				ch.pipeline().addLast(new BatchFrameWriter(this.client.clientConfig.getBatchSize()));
+			}
+			if (this.client.clientConfig.getOutbound() != null) {
+				ch.pipeline().addLast(new OutboundQueue(this.client.clientConfig.getOutbound()));
+			}
 			ch.pipeline().addLast(new ByteDecoder(this.client.clientConfig.getDataMaxLength()));
+			if (this.client.compressor != null) {
+				FrameCompressor.set(ch, this.client.compressor);
+				ch.pipeline().addLast(this.client.decompressor);
+			}
 			ch.pipeline().addLast(this.client);
 		}
 
@@ -118,7 +146,8 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 	}
 
 	public BinaryClient disConnect() {
-		group.shutdownGracefully();
+		// 共享的事件循环还有其他客户端在用，不关闭
+		TransportUtil.shutdown(clientConfig.getTransport(), group);
 		if (channel != null) {
 			channel.close();
 			channel = null;
@@ -177,12 +206,30 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 		}, waitSeconds, TimeUnit.SECONDS);
 	}
 
-	private void decodeConnectionValidateData(String validateStr) {
+	private void decodeConnectionValidateData(String validateStr, int serverWireFeatures) {
 		try {
 			String decode = decodeUtil.decode(validateStr);
 			int validateRandom = Integer.parseInt(decode);
+			this.wireFeatures = 0;
+			if (clientConfig.isCompactWire()) {
+				this.wireFeatures |= WireFeature.COMPACT_WIRE.getValue();
+			}
+			if (clientConfig.isVarintFrame()) {
+				this.wireFeatures |= WireFeature.VARINT_FRAME.getValue();
+			}
+			if (clientConfig.getChunkSize() > 0) {
+				this.wireFeatures |= WireFeature.CHUNKED_FRAME.getValue();
+			}
+			if (compressor != null) {
+				this.wireFeatures |= WireFeature.COMPRESSED_FRAME.getValue();
+			}
+			if (clientConfig.getBatchSize() > 0) {
+				this.wireFeatures |= WireFeature.BATCH_FRAME.getValue();
+			}
+			this.wireFeatures &= serverWireFeatures;
 			ConnectionValidateClientMessage msg = new ConnectionValidateClientMessage();
 			msg.setValidateRandom(validateRandom);
+			msg.setWireFeatures(this.wireFeatures);
 			SendMessageUtil.sendMessage(channel, msg, null);
 			log.info(clientConfig.getClientName() + " parse validate code success，return result：" + validateRandom);
 		} catch (Exception e) {
@@ -192,6 +239,7 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 
 	private void onConnectionValidateSeccuss(String remote) {
 		log.info("server validate success,remote:" + remote);
+		WireFeatureUtil.setFeatures(channel, this.wireFeatures);
 		this.clientEventListener.onConnectionEffective(this);
 	}
 
@@ -215,32 +263,65 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 	public void channelRead(ChannelHandlerContext ctx, Object arg) throws Exception {
 		ByteBuf buffer = (ByteBuf) arg;
 		try {
-			// 消息id
-			short messageId = buffer.readShort();
-			Message msg = BinaryClient.this.messageFactory.getMessage(messageId);
-			if (msg == null) {
-				throw new Exception(clientConfig.getClientName() + " message empty,id:" + messageId);
-			}
-			msg.buffer(buffer);
-			msg.decode();
-			IHandler handler = BinaryClient.this.messageFactory.getHandler(messageId);
-			if (handler == null) {
-				throw new Exception(clientConfig.getClientName() + " can not find handler for message,id:" + messageId);
-			}
-			msg.setHandler(handler);
-			msg.setChannel(ctx.channel());
-			msg.setClient(this);
-			// 如果是内部消息，则自己消化
-			if (InnerMessageEnum.getTypeByValue(messageId) != null) {
-				handler.handle(msg);
+			if (buffer.readableBytes() >= 2 && buffer.getShort(buffer.readerIndex()) == BATCH_ID
+					&& WireFeatureUtil.isEnabled(ctx.channel(), WireFeature.BATCH_FRAME)) {
+				readBatch(ctx, buffer);
 			} else {
-				this.clientEventListener.dispatchMessage(msg);
+				readMessage(ctx, buffer);
 			}
 		} finally {
 			buffer.release();
 		}
 	}
 
+	/**
+	 * 依次分发合并帧中的消息，每条消息使用各自的切片，单条出错不影响后续消息
+	 * 
+	 * @param ctx
+	 * @param buffer
+	 * @throws Exception
+	 */
+	private void readBatch(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
+		buffer.skipBytes(2);
+		while (buffer.isReadable()) {
+			int length = FrameUtil.readVarint(buffer);
+			if (length > buffer.readableBytes()) {
+				throw new CorruptedFrameException(clientConfig.getClientName() + " bad batch frame,length:" + length);
+			}
+			try {
+				readMessage(ctx, buffer.slice(buffer.readerIndex(), length));
+			} catch (Exception e) {
+				exceptionCaught(ctx, e);
+			}
+			buffer.skipBytes(length);
+		}
+	}
+
+	private void readMessage(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
+		// 消息id
+		short messageId = buffer.readShort();
+		Message msg = BinaryClient.this.messageFactory.getMessage(messageId);
+		if (msg == null) {
+			throw new Exception(clientConfig.getClientName() + " message empty,id:" + messageId);
+		}
+		msg.buffer(buffer);
+		msg.compactWire(WireFeatureUtil.isEnabled(ctx.channel(), WireFeature.COMPACT_WIRE));
+		msg.decode();
+		IHandler handler = BinaryClient.this.messageFactory.getHandler(messageId);
+		if (handler == null) {
+			throw new Exception(clientConfig.getClientName() + " can not find handler for message,id:" + messageId);
+		}
+		msg.setHandler(handler);
+		msg.setChannel(ctx.channel());
+		msg.setClient(this);
+		// 如果是内部消息，则自己消化
+		if (InnerMessageEnum.getTypeByValue(messageId) != null) {
+			handler.handle(msg);
+		} else {
+			this.clientEventListener.dispatchMessage(msg);
+		}
+	}
+
 	@Override
 	public void channelActive(ChannelHandlerContext ctx) throws Exception {
 		this.clientEventListener.onChannelActive(this);
@@ -275,7 +356,7 @@ public class BinaryClient extends ChannelInboundHandlerAdapter {
 		public void handle(Message message) {
 			ConnectionValidateServerMessage msg = (ConnectionValidateServerMessage) message;
 			String validateStr = msg.getValidateStr();
-			msg.getClient().decodeConnectionValidateData(validateStr);
+			msg.getClient().decodeConnectionValidateData(validateStr, msg.getWireFeatures());
 		}
 
 	}
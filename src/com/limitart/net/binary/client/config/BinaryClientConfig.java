@@ -1,5 +1,13 @@
 package com.limitart.net.binary.client.config;
 
+import java.util.zip.Deflater;
+
+import com.limitart.net.binary.codec.BatchFrameWriter;
+import com.limitart.net.binary.codec.ChunkedFrameWriter;
+import com.limitart.net.binary.outbound.OutboundConfig;
+import com.limitart.net.binary.transport.TransportConfig;
+import com.limitart.net.binary.transport.TransportConfig.TransportConfigBuilder;
+
 /**
  * 二进制通信客户端配置
  * 
@@ -13,6 +21,14 @@ public final class BinaryClientConfig {
 	private int autoReconnect;
 	private int dataMaxLength;
 	private String connectionPass;
+	private boolean compactWire;
+	private boolean varintFrame;
+	private int chunkSize;
+	private int compressThreshold;
+	private int compressLevel;
+	private int batchSize;
+	private TransportConfig transport;
+	private OutboundConfig outbound;
 
 	private BinaryClientConfig(BinaryClientConfigBuilder builder) {
 		this.clientName = builder.clientName;
@@ -21,6 +37,14 @@ public final class BinaryClientConfig {
 		this.autoReconnect = builder.autoReconnect;
 		this.dataMaxLength = builder.dataMaxLength;
 		this.connectionPass = builder.connectionPass;
+		this.compactWire = builder.compactWire;
+		this.varintFrame = builder.varintFrame;
+		this.chunkSize = builder.chunkSize;
+		this.compressThreshold = builder.compressThreshold;
+		this.compressLevel = builder.compressLevel;
+		this.batchSize = builder.batchSize;
+		this.transport = builder.transport;
+		this.outbound = builder.outbound;
 	}
 
 	public String getClientName() {
@@ -47,6 +71,38 @@ public final class BinaryClientConfig {
 		return connectionPass;
 	}
 
+	public boolean isCompactWire() {
+		return compactWire;
+	}
+
+	public boolean isVarintFrame() {
+		return varintFrame;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	public int getCompressLevel() {
+		return compressLevel;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public TransportConfig getTransport() {
+		return transport;
+	}
+
+	public OutboundConfig getOutbound() {
+		return outbound;
+	}
+
 	public static class BinaryClientConfigBuilder {
 		private String clientName;
 		private String remoteIp;
@@ -54,6 +110,14 @@ public final class BinaryClientConfig {
 		private int autoReconnect;
 		private int dataMaxLength;
 		private String connectionPass;
+		private boolean compactWire;
+		private boolean varintFrame;
+		private int chunkSize;
+		private int compressThreshold;
+		private int compressLevel;
+		private int batchSize;
+		private TransportConfig transport;
+		private OutboundConfig outbound;
 
 		public BinaryClientConfigBuilder() {
 			this.clientName = "Binary-Client";
@@ -62,6 +126,10 @@ public final class BinaryClientConfig {
 			this.autoReconnect = 0;
 			this.dataMaxLength = 20 * 1024 * 1024;
 			this.connectionPass = "limitart-core";
+			this.varintFrame = true;
+			this.compressLevel = Deflater.BEST_SPEED;
+			// 客户端默认共用一套事件循环
+			this.transport = new TransportConfigBuilder().sharedLoop(true).build();
 		}
 
 		/**
@@ -132,5 +200,100 @@ public final class BinaryClientConfig {
 			this.connectionPass = connectionPass;
 			return this;
 		}
+
+		/**
+		 * 是否使用紧凑编码(varint/zigzag)，需服务器同样开启
+		 * 
+		 * @param compactWire
+		 * @return
+		 */
+		public BinaryClientConfigBuilder compactWire(boolean compactWire) {
+			this.compactWire = compactWire;
+			return this;
+		}
+
+		/**
+		 * 是否允许varint帧长度(突破64K)，需对端同样开启
+		 * 
+		 * @param varintFrame
+		 * @return
+		 */
+		public BinaryClientConfigBuilder varintFrame(boolean varintFrame) {
+			this.varintFrame = varintFrame;
+			return this;
+		}
+
+		/**
+		 * 大消息分片大小，超过此大小的消息分片发送(小于等于0则不分片，默认不分片)，需对端同样开启。
+		 * 开启后分片之间可能插入较小的消息，大消息与小消息的先后顺序不再保证
+		 * 
+		 * @param chunkSize
+		 * @return
+		 */
+		public BinaryClientConfigBuilder chunkSize(int chunkSize) {
+			this.chunkSize = Math.min(chunkSize, ChunkedFrameWriter.MAX_CHUNK_SIZE);
+			return this;
+		}
+
+		/**
+		 * 压缩阈值，编码后超过此大小的消息压缩发送(小于等于0则不压缩，默认不压缩)，需对端同样开启。
+		 * 开启后会增加两端CPU开销，可从4K左右开始尝试
+		 * 
+		 * @param compressThreshold
+		 * @return
+		 */
+		public BinaryClientConfigBuilder compressThreshold(int compressThreshold) {
+			this.compressThreshold = compressThreshold;
+			return this;
+		}
+
+		/**
+		 * deflate压缩级别(1~9，越大压缩率越高越耗CPU)
+		 * 
+		 * @param compressLevel
+		 * @return
+		 */
+		public BinaryClientConfigBuilder compressLevel(int compressLevel) {
+			if (compressLevel >= Deflater.BEST_SPEED && compressLevel <= Deflater.BEST_COMPRESSION) {
+				this.compressLevel = compressLevel;
+			}
+			return this;
+		}
+
+		/**
+		 * 合并帧大小，同一轮事件循环内不超过此大小的小消息合并成一帧发送(小于等于0则不合并，默认不合并)，需对端同样开启。
+		 * 开启后flush推迟到当前事件循环已排队的任务之后，可从4K左右开始尝试
+		 * 
+		 * @param batchSize
+		 * @return
+		 */
+		public BinaryClientConfigBuilder batchSize(int batchSize) {
+			this.batchSize = Math.min(batchSize, BatchFrameWriter.MAX_BATCH_SIZE);
+			return this;
+		}
+
+		/**
+		 * 传输配置(事件循环线程、epoll、缓冲区)
+		 * 
+		 * @param transport
+		 * @return
+		 */
+		public BinaryClientConfigBuilder transport(TransportConfig transport) {
+			if (transport != null) {
+				this.transport = transport;
+			}
+			return this;
+		}
+
+		/**
+		 * 链接发送队列(水位、优先级与溢出策略)，null为不排队(不可写时直接发送失败)
+		 * 
+		 * @param outbound
+		 * @return
+		 */
+		public BinaryClientConfigBuilder outbound(OutboundConfig outbound) {
+			this.outbound = outbound;
+			return this;
+		}
 	}
 }
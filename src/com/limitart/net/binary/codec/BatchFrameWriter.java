@@ -0,0 +1,213 @@
+package com.limitart.net.binary.codec;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+
+import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.message.constant.WireFeature;
+import com.limitart.net.binary.util.FrameUtil;
+import com.limitart.net.binary.util.WireFeatureUtil;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 小消息合并写出
+ * <p>
+ * 协商了合并帧的链接上，小消息先攒起来，flush推迟到当前EventLoop已排队的任务之后，把这一轮攒下的消息合并成一个合并帧:
+ * [short 合并帧id]([varint 消息长度][消息id+消息体])*，只攒到一条时按原帧写出。超过合并大小的消息、分片与压缩帧不参与合并，
+ * 写出它们之前先写出已攒的消息以保持顺序
+ * 
+ * @author hank
+ *
+ */
+public class BatchFrameWriter extends ChannelOutboundHandlerAdapter {
+	/**
+	 * 合并帧大小上限(合并帧需能用2字节长度表示)
+	 */
+	public static final int MAX_BATCH_SIZE = FrameUtil.SHORT_FRAME_MAX_LENGTH;
+	private static final short BATCH_ID = InnerMessageEnum.BatchFrame.getValue();
+	private static final short CHUNK_ID = InnerMessageEnum.ChunkFrame.getValue();
+	private static final short COMPRESSED_ID = InnerMessageEnum.CompressedFrame.getValue();
+	private final int batchSize;
+	// 攒下的原帧与对应的写出结果
+	private final ArrayList<ByteBuf> frames = new ArrayList<>();
+	private final ArrayList<ChannelPromise> promises = new ArrayList<>();
+	// 攒下的帧的编码特性
+	private int features;
+	// 合并帧数据部分的字节数
+	private int batchBytes;
+	private ChannelHandlerContext ctx;
+	private boolean flushScheduled;
+	private final Runnable flushTask = new Runnable() {
+
+		@Override
+		public void run() {
+			flushScheduled = false;
+			writeBatch();
+			ctx.flush();
+		}
+	};
+
+	/**
+	 * @param batchSize
+	 *            合并帧大小(消息id+消息体超过此大小的消息不参与合并)
+	 */
+	public BatchFrameWriter(int batchSize) {
+		if (batchSize <= 0 || batchSize > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("batchSize:" + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof ByteBuf) {
+			int features = WireFeatureUtil.getFeatures(ctx.channel());
+			if (WireFeature.BATCH_FRAME.isEnabled(features)) {
+				ByteBuf frame = (ByteBuf) msg;
+				int headerLength = FrameUtil.headerLength(frame, features);
+				int length = frame.readableBytes() - headerLength;
+				int size = FrameUtil.varintSize(length) + length;
+				if (length >= 2 && 2 + size <= batchSize
+						&& batchable(frame.getShort(frame.readerIndex() + headerLength))) {
+					if (!frames.isEmpty() && (features != this.features || 2 + batchBytes + size > batchSize)) {
+						writeBatch();
+					}
+					frames.add(frame);
+					promises.add(promise);
+					this.features = features;
+					batchBytes += size;
+					return;
+				}
+			}
+		}
+		writeBatch();
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		if (frames.isEmpty()) {
+			ctx.flush();
+			return;
+		}
+		// 推迟到已排队的任务之后，让这一轮的其他消息也合并进来
+		if (!flushScheduled) {
+			flushScheduled = true;
+			ctx.executor().execute(flushTask);
+		}
+	}
+
+	/**
+	 * 内部帧不参与合并
+	 * 
+	 * @param messageId
+	 * @return
+	 */
+	private static boolean batchable(short messageId) {
+		return messageId != BATCH_ID && messageId != CHUNK_ID && messageId != COMPRESSED_ID;
+	}
+
+	/**
+	 * 写出攒下的消息
+	 */
+	private void writeBatch() {
+		if (frames.isEmpty()) {
+			return;
+		}
+		if (frames.size() == 1) {
+			ctx.write(frames.get(0), promises.get(0));
+			clear();
+			return;
+		}
+		ByteBuf batch = ctx.alloc().ioBuffer(FrameUtil.VARINT_MAX_BYTES + 2 + batchBytes);
+		FrameUtil.writeLength(batch, 2 + batchBytes, features);
+		batch.writeShort(BATCH_ID);
+		ArrayList<ChannelPromise> notify = null;
+		for (int i = 0; i < frames.size(); ++i) {
+			ByteBuf frame = frames.get(i);
+			int headerLength = FrameUtil.headerLength(frame, features);
+			int length = frame.readableBytes() - headerLength;
+			FrameUtil.writeVarint(batch, length);
+			batch.writeBytes(frame, frame.readerIndex() + headerLength, length);
+			frame.release();
+			ChannelPromise promise = promises.get(i);
+			if (!promise.isVoid()) {
+				if (notify == null) {
+					notify = new ArrayList<>();
+				}
+				notify.add(promise);
+			}
+		}
+		clear();
+		if (notify == null) {
+			ctx.write(batch, ctx.voidPromise());
+		} else {
+			ctx.write(batch).addListener(new BatchListener(notify));
+		}
+	}
+
+	private void clear() {
+		frames.clear();
+		promises.clear();
+		batchBytes = 0;
+	}
+
+	/**
+	 * 释放攒下的消息
+	 * 
+	 * @param cause
+	 */
+	private void failAll(Throwable cause) {
+		for (int i = 0; i < frames.size(); ++i) {
+			frames.get(i).release();
+			ChannelPromise promise = promises.get(i);
+			if (!promise.isVoid()) {
+				promise.tryFailure(cause);
+			}
+		}
+		clear();
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		// 关闭前写出攒下的消息(如先发踢下线原因再断开)
+		writeBatch();
+		ctx.flush();
+		ctx.close(promise);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		failAll(new ClosedChannelException());
+	}
+
+	private static class BatchListener implements ChannelFutureListener {
+		private final ArrayList<ChannelPromise> promises;
+
+		private BatchListener(ArrayList<ChannelPromise> promises) {
+			this.promises = promises;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			for (ChannelPromise promise : promises) {
+				if (future.isSuccess()) {
+					promise.trySuccess();
+				} else {
+					promise.tryFailure(future.cause());
+				}
+			}
+		}
+	}
+}
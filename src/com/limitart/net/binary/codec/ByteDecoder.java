@@ -1,20 +1,120 @@
 package com.limitart.net.binary.codec;
 
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import java.util.List;
+
+import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.message.constant.WireFeature;
+import com.limitart.net.binary.util.WireFeatureUtil;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 
 /**
  * 消息解码器
+ * <p>
+ * 帧头按链接已协商的特性读取(2字节长度或varint长度)，协商了分片时把分片零拷贝地重组成一帧
  * 
  * @author Hank
  *
  */
-public class ByteDecoder extends LengthFieldBasedFrameDecoder {
+public class ByteDecoder extends ByteToMessageDecoder {
+	private static final short CHUNK_ID = InnerMessageEnum.ChunkFrame.getValue();
+	private final int dataMaxLength;
+	// 重组中的分片
+	private CompositeByteBuf chunked;
 
 	public ByteDecoder() {
 		this(1024 * 1024);
 	}
 
 	public ByteDecoder(int dataMaxLength) {
-		super(dataMaxLength, 0, 2, 0, 2);
+		this.dataMaxLength = dataMaxLength;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		int features = WireFeatureUtil.getFeatures(ctx.channel());
+		int start = in.readerIndex();
+		int length;
+		int headerLength;
+		if (WireFeature.VARINT_FRAME.isEnabled(features)) {
+			length = 0;
+			headerLength = 0;
+			for (int shift = 0;; shift += 7) {
+				if (shift > 28) {
+					throw new CorruptedFrameException("bad varint frame length");
+				}
+				if (headerLength >= in.readableBytes()) {
+					return;
+				}
+				byte b = in.getByte(start + headerLength++);
+				length |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+		} else {
+			if (in.readableBytes() < 2) {
+				return;
+			}
+			length = in.getUnsignedShort(start);
+			headerLength = 2;
+		}
+		if (length < 0 || length > dataMaxLength) {
+			in.skipBytes(in.readableBytes());
+			ctx.close();
+			throw new TooLongFrameException("frame length " + length + " exceeds " + dataMaxLength);
+		}
+		if (in.readableBytes() < headerLength + length) {
+			return;
+		}
+		in.skipBytes(headerLength);
+		if (WireFeature.CHUNKED_FRAME.isEnabled(features) && length >= 3
+				&& in.getShort(in.readerIndex()) == CHUNK_ID) {
+			readChunk(ctx, in, length - 3, out);
+			return;
+		}
+		out.add(in.readRetainedSlice(length));
+	}
+
+	/**
+	 * 分片:[short 分片id][byte 是否最后一片][数据]，第一片数据以原消息id开头
+	 * 
+	 * @param ctx
+	 * @param in
+	 * @param length
+	 * @param out
+	 * @throws Exception
+	 */
+	private void readChunk(ChannelHandlerContext ctx, ByteBuf in, int length, List<Object> out) throws Exception {
+		in.skipBytes(2);
+		boolean last = in.readByte() != 0;
+		if (chunked == null) {
+			chunked = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+		}
+		if (chunked.readableBytes() + length > dataMaxLength) {
+			in.skipBytes(in.readableBytes());
+			chunked.release();
+			chunked = null;
+			ctx.close();
+			throw new TooLongFrameException("chunked frame exceeds " + dataMaxLength);
+		}
+		chunked.addComponent(true, in.readRetainedSlice(length));
+		if (last) {
+			out.add(chunked);
+			chunked = null;
+		}
+	}
+
+	@Override
+	protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+		if (chunked != null) {
+			chunked.release();
+			chunked = null;
+		}
 	}
 }
@@ -0,0 +1,203 @@
+package com.limitart.net.binary.codec;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+
+import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.message.constant.WireFeature;
+import com.limitart.net.binary.util.FrameUtil;
+import com.limitart.net.binary.util.WireFeatureUtil;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 大消息分片写出
+ * <p>
+ * 协商了分片的链接上，超过分片大小的帧拆成分片逐片写出，上一片写完才写下一片，期间的小消息可以插到分片之间发出。
+ * 分片数据是原帧的切片，不拷贝。多个大消息按顺序依次分片。待写的分片超过上限时链接变为不可写，降到一半以下恢复
+ * 
+ * @author hank
+ *
+ */
+public class ChunkedFrameWriter extends ChannelOutboundHandlerAdapter {
+	/**
+	 * 分片大小上限(分片帧需能用2字节长度表示)
+	 */
+	public static final int MAX_CHUNK_SIZE = FrameUtil.SHORT_FRAME_MAX_LENGTH - 3;
+	private static final short CHUNK_ID = InnerMessageEnum.ChunkFrame.getValue();
+	// 占用的自定义可写标记位
+	private static final int WRITABILITY_INDEX = 1;
+	private final int chunkSize;
+	private final long maxPendingBytes;
+	private final ArrayDeque<PendingFrame> frames = new ArrayDeque<>();
+	private ChannelHandlerContext ctx;
+	// 还未写出的分片字节数
+	private long pendingBytes;
+	private boolean unwritable;
+	private final Runnable writeTask = new Runnable() {
+
+		@Override
+		public void run() {
+			writeChunk();
+			ctx.flush();
+		}
+	};
+
+	/**
+	 * @param chunkSize
+	 *            分片大小
+	 * @param maxPendingBytes
+	 *            待写分片字节上限(不宜低于单条消息上限，否则大消息期间的小消息也会被挡住)
+	 */
+	public ChunkedFrameWriter(int chunkSize, long maxPendingBytes) {
+		if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+			throw new IllegalArgumentException("chunkSize:" + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		this.maxPendingBytes = maxPendingBytes;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof ByteBuf) {
+			int features = WireFeatureUtil.getFeatures(ctx.channel());
+			if (WireFeature.CHUNKED_FRAME.isEnabled(features)) {
+				ByteBuf frame = (ByteBuf) msg;
+				int headerLength = FrameUtil.headerLength(frame, features);
+				int length = frame.readableBytes() - headerLength;
+				if (length > chunkSize) {
+					ByteBuf payload = frame.retainedSlice(frame.readerIndex() + headerLength, length);
+					frame.release();
+					frames.addLast(new PendingFrame(payload, promise, features));
+					pendingBytes += length;
+					updateWritability();
+					if (frames.size() == 1) {
+						writeChunk();
+					}
+					return;
+				}
+			}
+		}
+		ctx.write(msg, promise);
+	}
+
+	/**
+	 * 写出队首大消息的下一片
+	 */
+	private void writeChunk() {
+		PendingFrame frame = frames.peekFirst();
+		if (frame == null) {
+			return;
+		}
+		int length = Math.min(chunkSize, frame.payload.readableBytes());
+		boolean last = length == frame.payload.readableBytes();
+		ByteBuf header = ctx.alloc().ioBuffer(FrameUtil.VARINT_MAX_BYTES + 3);
+		FrameUtil.writeLength(header, length + 3, frame.features);
+		header.writeShort(CHUNK_ID);
+		header.writeByte(last ? 1 : 0);
+		CompositeByteBuf chunk = ctx.alloc().compositeDirectBuffer(2);
+		chunk.addComponents(true, header, frame.payload.readRetainedSlice(length));
+		if (last) {
+			frames.pollFirst();
+			frame.payload.release();
+		}
+		pendingBytes -= length;
+		updateWritability();
+		ctx.write(chunk).addListener(new ChunkListener(frame, last));
+	}
+
+	/**
+	 * 按待写分片字节数更新可写状态
+	 */
+	private void updateWritability() {
+		ChannelOutboundBuffer outboundBuffer = ctx.channel().unsafe().outboundBuffer();
+		if (outboundBuffer == null) {
+			return;
+		}
+		if (!unwritable && pendingBytes > maxPendingBytes) {
+			unwritable = true;
+			outboundBuffer.setUserDefinedWritability(WRITABILITY_INDEX, false);
+		} else if (unwritable && pendingBytes < maxPendingBytes / 2) {
+			unwritable = false;
+			outboundBuffer.setUserDefinedWritability(WRITABILITY_INDEX, true);
+		}
+	}
+
+	/**
+	 * 释放未写完的大消息
+	 * 
+	 * @param cause
+	 */
+	private void failAll(Throwable cause) {
+		PendingFrame frame;
+		while ((frame = frames.pollFirst()) != null) {
+			frame.payload.release();
+			frame.promise.tryFailure(cause);
+		}
+		pendingBytes = 0;
+		updateWritability();
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		failAll(new ClosedChannelException());
+		ctx.close(promise);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		failAll(new ClosedChannelException());
+	}
+
+	private class ChunkListener implements ChannelFutureListener {
+		private final PendingFrame frame;
+		private final boolean last;
+
+		private ChunkListener(PendingFrame frame, boolean last) {
+			this.frame = frame;
+			this.last = last;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if (!future.isSuccess()) {
+				if (last) {
+					frame.promise.tryFailure(future.cause());
+				}
+				failAll(future.cause());
+				return;
+			}
+			if (last) {
+				frame.promise.trySuccess();
+			}
+			// 下一片放到新任务里写，让期间排进来的小消息先写出(也避免在flush中重入flush)
+			if (!frames.isEmpty()) {
+				ctx.executor().execute(writeTask);
+			}
+		}
+	}
+
+	private static class PendingFrame {
+		private final ByteBuf payload;
+		private final ChannelPromise promise;
+		private final int features;
+
+		private PendingFrame(ByteBuf payload, ChannelPromise promise, int features) {
+			this.payload = payload;
+			this.promise = promise;
+			this.features = features;
+		}
+	}
+}
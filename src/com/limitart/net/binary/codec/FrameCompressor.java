@@ -0,0 +1,175 @@
+package com.limitart.net.binary.codec;
+
+import java.util.zip.Deflater;
+
+import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.util.FrameUtil;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * 帧压缩
+ * <p>
+ * 协商了压缩的链接上，编码后超过阈值的消息用deflate压缩成压缩帧:[short 压缩帧id][varint 原长度][deflate数据]，
+ * 压缩后没有变小则按原帧发送。Deflater按线程缓存复用，压缩在编码时进行(广播只压缩一次)
+ * 
+ * @author hank
+ *
+ */
+public class FrameCompressor {
+	private static final AttributeKey<FrameCompressor> FRAME_COMPRESSOR = AttributeKey
+			.valueOf("limitart.frameCompressor");
+	private static final short COMPRESSED_ID = InnerMessageEnum.CompressedFrame.getValue();
+	// 线程缓存的临时数组上限，更大的临时分配
+	static final int MAX_CACHED_SCRATCH = 1024 * 1024;
+	// 每个线程每个压缩级别一个Deflater
+	private static final FastThreadLocal<Deflater[]> DEFLATERS = new FastThreadLocal<Deflater[]>() {
+
+		@Override
+		protected Deflater[] initialValue() throws Exception {
+			return new Deflater[Deflater.BEST_COMPRESSION + 1];
+		}
+
+		@Override
+		protected void onRemoval(Deflater[] value) throws Exception {
+			for (Deflater deflater : value) {
+				if (deflater != null) {
+					deflater.end();
+				}
+			}
+		}
+	};
+	// 直接内存输入的拷贝区与压缩输出区
+	private static final FastThreadLocal<byte[][]> SCRATCH = new FastThreadLocal<byte[][]>() {
+
+		@Override
+		protected byte[][] initialValue() throws Exception {
+			return new byte[2][];
+		}
+	};
+	private final int threshold;
+	private final int level;
+
+	/**
+	 * @param threshold
+	 *            压缩阈值(消息id+消息体的字节数)
+	 * @param level
+	 *            deflate压缩级别(1~9)
+	 */
+	public FrameCompressor(int threshold, int level) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("threshold:" + threshold);
+		}
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("level:" + level);
+		}
+		this.threshold = threshold;
+		this.level = level;
+	}
+
+	/**
+	 * 获取链接的帧压缩(未开启时为null)
+	 * 
+	 * @param channel
+	 * @return
+	 */
+	public static FrameCompressor get(Channel channel) {
+		return channel.attr(FRAME_COMPRESSOR).get();
+	}
+
+	/**
+	 * 为链接设置帧压缩(初始化链接时调用)
+	 * 
+	 * @param channel
+	 * @param compressor
+	 */
+	public static void set(Channel channel, FrameCompressor compressor) {
+		channel.attr(FRAME_COMPRESSOR).set(compressor);
+	}
+
+	/**
+	 * 压缩已编码的消息(消息id+消息体)
+	 * 
+	 * @param payload
+	 * @param reserve
+	 *            为帧头预留的字节数
+	 * @param alloc
+	 * @return 预留了帧头的压缩帧，不到阈值或压缩后没有变小返回null
+	 */
+	public ByteBuf compress(ByteBuf payload, int reserve, ByteBufAllocator alloc) {
+		int length = payload.readableBytes();
+		if (length < threshold) {
+			return null;
+		}
+		Deflater deflater = deflater();
+		byte[][] scratch = SCRATCH.get();
+		if (payload.hasArray()) {
+			deflater.setInput(payload.array(), payload.arrayOffset() + payload.readerIndex(), length);
+		} else {
+			byte[] in = scratch(scratch, 0, length);
+			payload.getBytes(payload.readerIndex(), in, 0, length);
+			deflater.setInput(in, 0, length);
+		}
+		deflater.finish();
+		// 输出区只给原长度，写满还没压完说明不划算
+		byte[] out = scratch(scratch, 1, length);
+		int size = 0;
+		while (!deflater.finished() && size < length) {
+			size += deflater.deflate(out, size, length - size);
+		}
+		int headerLength = 2 + FrameUtil.varintSize(length);
+		if (!deflater.finished() || headerLength + size >= length) {
+			return null;
+		}
+		ByteBuf frame = alloc.ioBuffer(reserve + headerLength + size);
+		frame.writerIndex(reserve);
+		frame.writeShort(COMPRESSED_ID);
+		FrameUtil.writeVarint(frame, length);
+		frame.writeBytes(out, 0, size);
+		return frame;
+	}
+
+	private Deflater deflater() {
+		Deflater[] deflaters = DEFLATERS.get();
+		Deflater deflater = deflaters[level];
+		if (deflater == null) {
+			deflater = new Deflater(level);
+			deflaters[level] = deflater;
+		} else {
+			deflater.reset();
+		}
+		return deflater;
+	}
+
+	/**
+	 * 取线程缓存的临时数组
+	 * 
+	 * @param cache
+	 * @param index
+	 * @param size
+	 * @return
+	 */
+	static byte[] scratch(byte[][] cache, int index, int size) {
+		byte[] bytes = cache[index];
+		if (bytes != null && bytes.length >= size) {
+			return bytes;
+		}
+		bytes = new byte[size];
+		if (size <= MAX_CACHED_SCRATCH) {
+			cache[index] = bytes;
+		}
+		return bytes;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+}
@@ -0,0 +1,119 @@
+package com.limitart.net.binary.codec;
+
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.message.constant.WireFeature;
+import com.limitart.net.binary.util.FrameUtil;
+import com.limitart.net.binary.util.WireFeatureUtil;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * 帧解压
+ * <p>
+ * 放在消息解码器之后，把压缩帧还原成原帧，其他帧原样传递。无状态可共用，Inflater按线程缓存复用
+ * 
+ * @author hank
+ *
+ */
+@Sharable
+public class FrameDecompressor extends MessageToMessageDecoder<ByteBuf> {
+	private static final short COMPRESSED_ID = InnerMessageEnum.CompressedFrame.getValue();
+	private static final FastThreadLocal<Inflater> INFLATER = new FastThreadLocal<Inflater>() {
+
+		@Override
+		protected Inflater initialValue() throws Exception {
+			return new Inflater();
+		}
+
+		@Override
+		protected void onRemoval(Inflater value) throws Exception {
+			value.end();
+		}
+	};
+	// 直接内存输入的拷贝区
+	private static final FastThreadLocal<byte[][]> SCRATCH = new FastThreadLocal<byte[][]>() {
+
+		@Override
+		protected byte[][] initialValue() throws Exception {
+			return new byte[1][];
+		}
+	};
+	private final int dataMaxLength;
+
+	public FrameDecompressor(int dataMaxLength) {
+		this.dataMaxLength = dataMaxLength;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		if (msg.readableBytes() >= 3 && msg.getShort(msg.readerIndex()) == COMPRESSED_ID
+				&& WireFeatureUtil.isEnabled(ctx.channel(), WireFeature.COMPRESSED_FRAME)) {
+			out.add(inflate(ctx, msg));
+			return;
+		}
+		out.add(msg.retain());
+	}
+
+	/**
+	 * 还原压缩帧
+	 * 
+	 * @param ctx
+	 * @param msg
+	 * @return
+	 * @throws Exception
+	 */
+	private ByteBuf inflate(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+		msg.skipBytes(2);
+		int length = FrameUtil.readVarint(msg);
+		if (length < 0 || length > dataMaxLength) {
+			ctx.close();
+			throw new TooLongFrameException("compressed frame length " + length + " exceeds " + dataMaxLength);
+		}
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		int compressedLength = msg.readableBytes();
+		if (msg.hasArray()) {
+			inflater.setInput(msg.array(), msg.arrayOffset() + msg.readerIndex(), compressedLength);
+		} else {
+			byte[] in = FrameCompressor.scratch(SCRATCH.get(), 0, compressedLength);
+			msg.getBytes(msg.readerIndex(), in, 0, compressedLength);
+			inflater.setInput(in, 0, compressedLength);
+		}
+		ByteBuf frame = ctx.alloc().heapBuffer(length, length);
+		boolean success = false;
+		try {
+			byte[] array = frame.array();
+			int offset = frame.arrayOffset();
+			int size = 0;
+			while (size < length) {
+				int count = inflater.inflate(array, offset + size, length - size);
+				if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				size += count;
+			}
+			if (size != length) {
+				throw new CorruptedFrameException("compressed frame inflate " + size + " bytes,expect " + length);
+			}
+			frame.writerIndex(length);
+			success = true;
+			return frame;
+		} catch (DataFormatException e) {
+			throw new CorruptedFrameException(e);
+		} finally {
+			if (!success) {
+				frame.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.limitart.net.binary.message;
+
+import com.limitart.net.binary.message.define.MessageField;
+
+/**
+ * 由{@link MessageCodec}按{@link MessageField}字段生成编解码的二进制元数据
+ * 
+ * @author hank
+ *
+ */
+public abstract class CodecMessageMeta extends MessageMeta {
+
+	@Override
+	public void encode() throws Exception {
+		MessageCodec.get(getClass()).encode(this);
+	}
+
+	@Override
+	public void decode() throws Exception {
+		MessageCodec.get(getClass()).decode(this);
+	}
+}
@@ -3,9 +3,11 @@ package com.limitart.net.binary.message;
 import com.limitart.net.binary.client.BinaryClient;
 import com.limitart.net.binary.handler.IHandler;
 import com.limitart.net.binary.message.define.IMessage;
+import com.limitart.net.binary.outbound.constant.OutboundPriority;
 import com.limitart.net.binary.server.BinaryServer;
 
 import io.netty.channel.Channel;
+import io.netty.util.Recycler.Handle;
 
 /**
  * 消息实体
@@ -24,6 +26,8 @@ public abstract class Message extends MessageMeta implements IMessage {
 	private transient Object extra;
 	private transient Object extra1;
 	private transient IHandler handler;
+	// 对象池回收句柄(未开启回收时为null)
+	private transient Handle<Message> recycleHandle;
 
 	public BinaryClient getClient() {
 		return client;
@@ -72,4 +76,59 @@ public abstract class Message extends MessageMeta implements IMessage {
 	public void setExtra1(Object extra1) {
 		this.extra1 = extra1;
 	}
+
+	/**
+	 * 发送优先级(开启发送队列时生效)
+	 * 
+	 * @return
+	 */
+	public OutboundPriority outboundPriority() {
+		return OutboundPriority.NORMAL;
+	}
+
+	/**
+	 * 排队时的合并键，相同键只保留最新一条(如位置同步返回实体id，null为不合并)
+	 * 
+	 * @return
+	 */
+	public Object coalesceKey() {
+		return null;
+	}
+
+	void recycleHandle(Handle<Message> recycleHandle) {
+		this.recycleHandle = recycleHandle;
+	}
+
+	/**
+	 * 是否由对象池创建
+	 * 
+	 * @return
+	 */
+	public boolean isRecyclable() {
+		return this.recycleHandle != null;
+	}
+
+	/**
+	 * 回收到对象池(未开启回收的消息忽略)，回收后不能再持有此消息
+	 */
+	public void recycle() {
+		if (this.recycleHandle == null) {
+			return;
+		}
+		reset();
+		buffer(null);
+		this.channel = null;
+		this.client = null;
+		this.server = null;
+		this.extra = null;
+		this.extra1 = null;
+		this.handler = null;
+		this.recycleHandle.recycle(this);
+	}
+
+	/**
+	 * 回收前重置消息字段(有引用类型的字段时重写)
+	 */
+	protected void reset() {
+	}
 }
\ No newline at end of file
@@ -0,0 +1,647 @@
+package com.limitart.net.binary.message;
+
+import static org.objectweb.asm.Opcodes.AALOAD;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.BIPUSH;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.ICONST_0;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.SIPUSH;
+import static org.objectweb.asm.Opcodes.V1_1;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import com.limitart.collections.IntArrayList;
+import com.limitart.collections.LongArrayList;
+import com.limitart.net.binary.message.define.MessageField;
+import com.limitart.reflectasm.AccessClassLoader;
+import com.limitart.reflectasm.ConstructorAccess;
+import com.limitart.util.ReflectionUtil;
+import com.limitart.util.filter.FieldFilter;
+
+/**
+ * 二进制元数据编解码器(ASM生成)
+ * <p>
+ * 读取一次{@link MessageField}注解的字段并按其顺序排列，为每个元数据类生成专用的编解码类，省去手写encode/decode以及嵌套元数据的反射创建。
+ * 继承{@link CodecMessage}或{@link CodecMessageMeta}即可使用
+ * 
+ * @author hank
+ *
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public abstract class MessageCodec {
+	private static final String CODEC_NAME = "com/limitart/net/binary/message/MessageCodec";
+	private static final String META_NAME = "com/limitart/net/binary/message/MessageMeta";
+	private static final String META_DESC = "L" + META_NAME + ";";
+	private static final String CONSTRUCTORS_DESC = "[Lcom/limitart/reflectasm/ConstructorAccess;";
+	private static ConcurrentHashMap<Class<? extends MessageMeta>, MessageCodec> codecs = new ConcurrentHashMap<>();
+	// 每个字段的元数据类型(非元数据字段为null)
+	protected Class[] types;
+	// 每个字段的元数据构造器(非元数据字段为null)
+	protected ConstructorAccess[] constructors;
+
+	public abstract void encode(MessageMeta meta) throws Exception;
+
+	public abstract void decode(MessageMeta meta) throws Exception;
+
+	/**
+	 * 获取元数据类的编解码器
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public static MessageCodec get(Class<? extends MessageMeta> type) {
+		MessageCodec codec = codecs.get(type);
+		if (codec == null) {
+			codec = create(type);
+			MessageCodec putIfAbsent = codecs.putIfAbsent(type, codec);
+			if (putIfAbsent != null) {
+				codec = putIfAbsent;
+			}
+		}
+		return codec;
+	}
+
+	private static MessageCodec create(Class<? extends MessageMeta> type) {
+		List<Field> fields = ReflectionUtil.getFields(type, true, new FieldFilter() {
+
+			@Override
+			public boolean filter(Field field) {
+				return !isStatic(field) && field.isAnnotationPresent(MessageField.class);
+			}
+		});
+		if (fields.isEmpty()) {
+			throw new IllegalArgumentException("no @MessageField field found: " + type.getName());
+		}
+		// 反射得到的字段顺序不可靠，按注解指定的顺序编码
+		Collections.sort(fields, new Comparator<Field>() {
+
+			@Override
+			public int compare(Field o1, Field o2) {
+				return Integer.compare(o1.getAnnotation(MessageField.class).order(),
+						o2.getAnnotation(MessageField.class).order());
+			}
+		});
+		for (int i = 1; i < fields.size(); ++i) {
+			if (fields.get(i - 1).getAnnotation(MessageField.class).order() == fields.get(i)
+					.getAnnotation(MessageField.class).order()) {
+				throw new IllegalArgumentException("duplicate message field order: " + type.getName() + "."
+						+ fields.get(i - 1).getName() + "," + fields.get(i).getName());
+			}
+		}
+		Class[] types = new Class[fields.size()];
+		ConstructorAccess[] constructors = new ConstructorAccess[fields.size()];
+		String[] suffixes = new String[fields.size()];
+		for (int i = 0; i < fields.size(); ++i) {
+			Field field = fields.get(i);
+			if (FieldFilter.isPrivate(field) || Modifier.isFinal(field.getModifiers())) {
+				throw new IllegalArgumentException(
+						"message field can not be private or final: " + type.getName() + "." + field.getName());
+			}
+			Class<?> metaType = getMetaType(field);
+			if (metaType != null) {
+				types[i] = metaType;
+				constructors[i] = ConstructorAccess.get(metaType);
+			}
+			suffixes[i] = getSuffix(field);
+		}
+		String className = type.getName();
+		String codecClassName = className + "MessageCodec";
+		Class codecClass;
+		AccessClassLoader loader = AccessClassLoader.get(type);
+		try {
+			codecClass = loader.loadClass(codecClassName);
+		} catch (ClassNotFoundException ignored) {
+			synchronized (loader) {
+				try {
+					codecClass = loader.loadClass(codecClassName);
+				} catch (ClassNotFoundException ignored2) {
+					String codecClassNameInternal = codecClassName.replace('.', '/');
+					String classNameInternal = className.replace('.', '/');
+					ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+					cw.visit(V1_1, ACC_PUBLIC + ACC_SUPER, codecClassNameInternal, null, CODEC_NAME, null);
+					insertConstructor(cw);
+					insertEncode(cw, classNameInternal, fields, suffixes);
+					insertDecode(cw, classNameInternal, fields, suffixes, types);
+					cw.visitEnd();
+					codecClass = loader.defineClass(codecClassName, cw.toByteArray());
+				}
+			}
+		}
+		try {
+			MessageCodec codec = (MessageCodec) codecClass.getDeclaredConstructor().newInstance();
+			codec.types = types;
+			codec.constructors = constructors;
+			return codec;
+		} catch (Throwable t) {
+			throw new RuntimeException("Error constructing message codec class: " + codecClassName, t);
+		}
+	}
+
+	/**
+	 * 字段对应的读写方法后缀
+	 * 
+	 * @param field
+	 * @return
+	 */
+	private static String getSuffix(Field field) {
+		Class<?> type = field.getType();
+		if (type.isPrimitive()) {
+			String name = type.getName();
+			return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		} else if (type == String.class) {
+			return "String";
+		} else if (MessageMeta.class.isAssignableFrom(type)) {
+			return "MessageMeta";
+		} else if (type.isArray()) {
+			Class<?> componentType = type.getComponentType();
+			if (componentType.isPrimitive()) {
+				String name = componentType.getName();
+				return Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Array";
+			} else if (componentType == String.class) {
+				return "StringArray";
+			} else if (MessageMeta.class.isAssignableFrom(componentType)) {
+				return "MessageMetaArray";
+			}
+		} else if (type == IntArrayList.class) {
+			return "IntArrayList";
+		} else if (type == LongArrayList.class) {
+			return "LongArrayList";
+		} else if (type == List.class) {
+			Class<?> elementType = getListElementType(field);
+			if (elementType == Short.class) {
+				return "ShortList";
+			} else if (elementType == Integer.class) {
+				return "IntList";
+			} else if (elementType == Long.class) {
+				return "LongList";
+			} else if (elementType == Boolean.class) {
+				return "BooleanList";
+			} else if (elementType == Float.class) {
+				return "FloatList";
+			} else if (elementType == Double.class) {
+				return "DoubleList";
+			} else if (elementType == Character.class) {
+				return "CharList";
+			} else if (elementType == String.class) {
+				return "StringList";
+			} else if (elementType == byte[].class) {
+				return "ByteArrayList";
+			} else if (elementType != null && MessageMeta.class.isAssignableFrom(elementType)) {
+				return "MessageMetaList";
+			}
+		}
+		throw new IllegalArgumentException("message field type does not supported yet: "
+				+ field.getDeclaringClass().getName() + "." + field.getName() + "(" + field.getGenericType() + ")");
+	}
+
+	/**
+	 * 字段包含的元数据类型
+	 * 
+	 * @param field
+	 * @return
+	 */
+	private static Class<?> getMetaType(Field field) {
+		Class<?> type = field.getType();
+		if (type.isArray()) {
+			type = type.getComponentType();
+		} else if (type == List.class) {
+			type = getListElementType(field);
+		}
+		if (type != null && MessageMeta.class.isAssignableFrom(type)) {
+			return type;
+		}
+		return null;
+	}
+
+	private static Class<?> getListElementType(Field field) {
+		Type genericType = field.getGenericType();
+		if (!(genericType instanceof ParameterizedType)) {
+			return null;
+		}
+		Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+		if (elementType instanceof Class) {
+			return (Class<?>) elementType;
+		}
+		return null;
+	}
+
+	private static void insertConstructor(ClassWriter cw) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, CODEC_NAME, "<init>", "()V", false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void insertEncode(ClassWriter cw, String classNameInternal, List<Field> fields,
+			String[] suffixes) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "encode", "(" + META_DESC + ")V", null,
+				new String[] { "java/lang/Exception" });
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitTypeInsn(CHECKCAST, classNameInternal);
+		mv.visitVarInsn(ASTORE, 2);
+		for (int i = 0; i < fields.size(); ++i) {
+			Field field = fields.get(i);
+			String fieldDesc = org.objectweb.asm.Type.getDescriptor(field.getType());
+			String paramDesc;
+			switch (suffixes[i]) {
+			case "MessageMeta":
+				paramDesc = META_DESC;
+				break;
+			case "MessageMetaArray":
+				paramDesc = "[" + META_DESC;
+				break;
+			default:
+				paramDesc = fieldDesc;
+				break;
+			}
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitFieldInsn(GETFIELD, classNameInternal, field.getName(), fieldDesc);
+			mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_NAME, "put" + suffixes[i], "(" + META_DESC + paramDesc + ")V",
+					false);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void insertDecode(ClassWriter cw, String classNameInternal, List<Field> fields, String[] suffixes,
+			Class[] types) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "decode", "(" + META_DESC + ")V", null,
+				new String[] { "java/lang/Exception" });
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitTypeInsn(CHECKCAST, classNameInternal);
+		mv.visitVarInsn(ASTORE, 2);
+		for (int i = 0; i < fields.size(); ++i) {
+			Field field = fields.get(i);
+			String fieldDesc = org.objectweb.asm.Type.getDescriptor(field.getType());
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			switch (suffixes[i]) {
+			case "MessageMeta":
+				insertConstructorArg(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_NAME, "getMessageMeta",
+						"(" + META_DESC + "Lcom/limitart/reflectasm/ConstructorAccess;)" + META_DESC, false);
+				mv.visitTypeInsn(CHECKCAST, org.objectweb.asm.Type.getInternalName(types[i]));
+				break;
+			case "MessageMetaArray":
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, CODEC_NAME, "types", "[Ljava/lang/Class;");
+				insertPush(mv, i);
+				mv.visitInsn(AALOAD);
+				insertConstructorArg(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_NAME, "getMessageMetaArray",
+						"(" + META_DESC + "Ljava/lang/Class;Lcom/limitart/reflectasm/ConstructorAccess;)[" + META_DESC,
+						false);
+				mv.visitTypeInsn(CHECKCAST, fieldDesc);
+				break;
+			case "IntArrayList":
+			case "LongArrayList":
+				// 复用字段上已有的数组
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitFieldInsn(GETFIELD, classNameInternal, field.getName(), fieldDesc);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_NAME, "get" + suffixes[i],
+						"(" + META_DESC + fieldDesc + ")" + fieldDesc, false);
+				break;
+			case "MessageMetaList":
+				insertConstructorArg(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_NAME, "getMessageMetaList",
+						"(" + META_DESC + "Lcom/limitart/reflectasm/ConstructorAccess;)Ljava/util/List;", false);
+				break;
+			default:
+				mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_NAME, "get" + suffixes[i], "(" + META_DESC + ")" + fieldDesc,
+						false);
+				break;
+			}
+			mv.visitFieldInsn(PUTFIELD, classNameInternal, field.getName(), fieldDesc);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void insertConstructorArg(MethodVisitor mv, int index) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, CODEC_NAME, "constructors", CONSTRUCTORS_DESC);
+		insertPush(mv, index);
+		mv.visitInsn(AALOAD);
+	}
+
+	private static void insertPush(MethodVisitor mv, int value) {
+		if (value <= 5) {
+			mv.visitInsn(ICONST_0 + value);
+		} else if (value <= Byte.MAX_VALUE) {
+			mv.visitIntInsn(BIPUSH, value);
+		} else {
+			mv.visitIntInsn(SIPUSH, value);
+		}
+	}
+
+	protected final MessageMeta getMessageMeta(MessageMeta meta, ConstructorAccess constructor) throws Exception {
+		byte len = meta.getByte();
+		if (len == 0) {
+			return null;
+		}
+		MessageMeta newInstance = (MessageMeta) constructor.newInstance();
+		newInstance.buffer(meta.buffer());
+		newInstance.compactWire(meta.compactWire());
+		newInstance.decode();
+		return newInstance;
+	}
+
+	protected final void putMessageMeta(MessageMeta meta, MessageMeta value) throws Exception {
+		meta.putMessageMeta(value);
+	}
+
+	protected final List getMessageMetaList(MessageMeta meta, ConstructorAccess constructor) throws Exception {
+		int len = meta.getLength();
+		if (len == -1) {
+			return null;
+		}
+		List list = new ArrayList<>(len);
+		for (int i = 0; i < len; ++i) {
+			list.add(getMessageMeta(meta, constructor));
+		}
+		return list;
+	}
+
+	protected final void putMessageMetaList(MessageMeta meta, List value) throws Exception {
+		meta.putMessageMetaList(value);
+	}
+
+	protected final MessageMeta[] getMessageMetaArray(MessageMeta meta, Class type, ConstructorAccess constructor)
+			throws Exception {
+		int length = meta.getLength();
+		if (length == -1) {
+			return null;
+		}
+		MessageMeta[] result = (MessageMeta[]) Array.newInstance(type, length);
+		for (int i = 0; i < length; ++i) {
+			result[i] = getMessageMeta(meta, constructor);
+		}
+		return result;
+	}
+
+	protected final void putMessageMetaArray(MessageMeta meta, MessageMeta[] value) throws Exception {
+		meta.putMessageMetaArray(value);
+	}
+
+	protected final byte getByte(MessageMeta meta) {
+		return meta.getByte();
+	}
+
+	protected final void putByte(MessageMeta meta, byte value) {
+		meta.putByte(value);
+	}
+
+	protected final short getShort(MessageMeta meta) {
+		return meta.getShort();
+	}
+
+	protected final void putShort(MessageMeta meta, short value) {
+		meta.putShort(value);
+	}
+
+	protected final int getInt(MessageMeta meta) {
+		return meta.getInt();
+	}
+
+	protected final void putInt(MessageMeta meta, int value) {
+		meta.putInt(value);
+	}
+
+	protected final long getLong(MessageMeta meta) {
+		return meta.getLong();
+	}
+
+	protected final void putLong(MessageMeta meta, long value) {
+		meta.putLong(value);
+	}
+
+	protected final boolean getBoolean(MessageMeta meta) {
+		return meta.getBoolean();
+	}
+
+	protected final void putBoolean(MessageMeta meta, boolean value) {
+		meta.putBoolean(value);
+	}
+
+	protected final float getFloat(MessageMeta meta) {
+		return meta.getFloat();
+	}
+
+	protected final void putFloat(MessageMeta meta, float value) {
+		meta.putFloat(value);
+	}
+
+	protected final double getDouble(MessageMeta meta) {
+		return meta.getDouble();
+	}
+
+	protected final void putDouble(MessageMeta meta, double value) {
+		meta.putDouble(value);
+	}
+
+	protected final char getChar(MessageMeta meta) {
+		return meta.getChar();
+	}
+
+	protected final void putChar(MessageMeta meta, char value) {
+		meta.putChar(value);
+	}
+
+	protected final String getString(MessageMeta meta) {
+		return meta.getString();
+	}
+
+	protected final void putString(MessageMeta meta, String value) {
+		meta.putString(value);
+	}
+
+	protected final byte[] getByteArray(MessageMeta meta) {
+		return meta.getByteArray();
+	}
+
+	protected final void putByteArray(MessageMeta meta, byte[] value) {
+		meta.putByteArray(value);
+	}
+
+	protected final short[] getShortArray(MessageMeta meta) {
+		return meta.getShortArray();
+	}
+
+	protected final void putShortArray(MessageMeta meta, short[] value) {
+		meta.putShortArray(value);
+	}
+
+	protected final int[] getIntArray(MessageMeta meta) {
+		return meta.getIntArray();
+	}
+
+	protected final void putIntArray(MessageMeta meta, int[] value) {
+		meta.putIntArray(value);
+	}
+
+	protected final long[] getLongArray(MessageMeta meta) {
+		return meta.getLongArray();
+	}
+
+	protected final void putLongArray(MessageMeta meta, long[] value) {
+		meta.putLongArray(value);
+	}
+
+	protected final boolean[] getBooleanArray(MessageMeta meta) {
+		return meta.getBooleanArray();
+	}
+
+	protected final void putBooleanArray(MessageMeta meta, boolean[] value) {
+		meta.putBooleanArray(value);
+	}
+
+	protected final float[] getFloatArray(MessageMeta meta) {
+		return meta.getFloatArray();
+	}
+
+	protected final void putFloatArray(MessageMeta meta, float[] value) {
+		meta.putFloatArray(value);
+	}
+
+	protected final double[] getDoubleArray(MessageMeta meta) {
+		return meta.getDoubleArray();
+	}
+
+	protected final void putDoubleArray(MessageMeta meta, double[] value) {
+		meta.putDoubleArray(value);
+	}
+
+	protected final char[] getCharArray(MessageMeta meta) {
+		return meta.getCharArray();
+	}
+
+	protected final void putCharArray(MessageMeta meta, char[] value) {
+		meta.putCharArray(value);
+	}
+
+	protected final String[] getStringArray(MessageMeta meta) {
+		return meta.getStringArray();
+	}
+
+	protected final void putStringArray(MessageMeta meta, String[] value) {
+		meta.putStringArray(value);
+	}
+
+	protected final List getShortList(MessageMeta meta) {
+		return meta.getShortList();
+	}
+
+	protected final void putShortList(MessageMeta meta, List value) {
+		meta.putShortList(value);
+	}
+
+	protected final List getIntList(MessageMeta meta) {
+		return meta.getIntList();
+	}
+
+	protected final void putIntList(MessageMeta meta, List value) {
+		meta.putIntList(value);
+	}
+
+	protected final List getLongList(MessageMeta meta) {
+		return meta.getLongList();
+	}
+
+	protected final void putLongList(MessageMeta meta, List value) {
+		meta.putLongList(value);
+	}
+
+	protected final List getBooleanList(MessageMeta meta) {
+		return meta.getBooleanList();
+	}
+
+	protected final void putBooleanList(MessageMeta meta, List value) {
+		meta.putBooleanList(value);
+	}
+
+	protected final List getFloatList(MessageMeta meta) {
+		return meta.getFloatList();
+	}
+
+	protected final void putFloatList(MessageMeta meta, List value) {
+		meta.putFloatList(value);
+	}
+
+	protected final List getDoubleList(MessageMeta meta) {
+		return meta.getDoubleList();
+	}
+
+	protected final void putDoubleList(MessageMeta meta, List value) {
+		meta.putDoubleList(value);
+	}
+
+	protected final List getCharList(MessageMeta meta) {
+		return meta.getCharList();
+	}
+
+	protected final void putCharList(MessageMeta meta, List value) {
+		meta.putCharList(value);
+	}
+
+	protected final List getStringList(MessageMeta meta) {
+		return meta.getStringList();
+	}
+
+	protected final void putStringList(MessageMeta meta, List value) {
+		meta.putStringList(value);
+	}
+
+	protected final IntArrayList getIntArrayList(MessageMeta meta, IntArrayList reuse) {
+		return meta.getIntArrayList(reuse);
+	}
+
+	protected final void putIntArrayList(MessageMeta meta, IntArrayList value) {
+		meta.putIntArrayList(value);
+	}
+
+	protected final LongArrayList getLongArrayList(MessageMeta meta, LongArrayList reuse) {
+		return meta.getLongArrayList(reuse);
+	}
+
+	protected final void putLongArrayList(MessageMeta meta, LongArrayList value) {
+		meta.putLongArrayList(value);
+	}
+
+	protected final List getByteArrayList(MessageMeta meta) {
+		return meta.getByteArrayList();
+	}
+
+	protected final void putByteArrayList(MessageMeta meta, List value) {
+		meta.putByteArrayList(value);
+	}
+}
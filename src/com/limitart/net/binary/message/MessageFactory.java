@@ -7,9 +7,11 @@ import org.apache.logging.log4j.Logger;
 
 import com.limitart.net.binary.handler.IHandler;
 import com.limitart.net.binary.message.define.IMessagePool;
+import com.limitart.net.binary.message.constant.InnerMessageEnum;
 import com.limitart.reflectasm.ConstructorAccess;
 import com.limitart.util.ReflectionUtil;
 
+import io.netty.util.Recycler;
 import io.netty.util.collection.ShortObjectHashMap;
 
 /**
@@ -23,6 +25,8 @@ public class MessageFactory {
 	// !!这里的asm应用经测试在JAVA8下最优
 	private final ShortObjectHashMap<ConstructorAccess<? extends Message>> msgs = new ShortObjectHashMap<>();
 	private final ShortObjectHashMap<IHandler> handlers = new ShortObjectHashMap<>();
+	// 开启回收的消息对象池(每线程)
+	private final ShortObjectHashMap<Recycler<Message>> recyclers = new ShortObjectHashMap<>();
 
 	/**
 	 * 通过反射调用具有IMessagePool接口的消息构造
@@ -44,6 +48,9 @@ public class MessageFactory {
 	}
 
 	public synchronized MessageFactory registerMsg(short id, Class<? extends Message> msgClass, IHandler handler) {
+		if (InnerMessageEnum.isFrameId(id)) {
+			throw new IllegalArgumentException("message id reserved for frame:" + id + ",class:" + msgClass.getName());
+		}
 		if (msgs.containsKey(id)) {
 			Class<? extends Message> class1 = msgs.get(id).newInstance().getClass();
 			if (!class1.getName().equals(msgClass.getName())) {
@@ -68,10 +75,44 @@ public class MessageFactory {
 		return registerMsg(id, msgClass, handlerClass.newInstance());
 	}
 
+	/**
+	 * 注册消息并开启对象回收
+	 * <p>
+	 * 消息由每线程对象池创建，经{@link com.limitart.taskqueue.define.ITaskQueueHandler#MESSAGE_HANDLER}处理完后自动回收，
+	 * handler中不能再持有该消息的引用
+	 * 
+	 * @param id
+	 * @param msgClass
+	 * @param handler
+	 * @param recycle
+	 * @return
+	 */
+	public synchronized MessageFactory registerMsg(short id, Class<? extends Message> msgClass, IHandler handler,
+			boolean recycle) {
+		registerMsg(id, msgClass, handler);
+		if (recycle && !recyclers.containsKey(id)) {
+			ConstructorAccess<? extends Message> constructorAccess = msgs.get(id);
+			recyclers.put(id, new Recycler<Message>() {
+
+				@Override
+				protected Message newObject(Handle<Message> handle) {
+					Message message = constructorAccess.newInstance();
+					message.recycleHandle(handle);
+					return message;
+				}
+			});
+		}
+		return this;
+	}
+
 	public Message getMessage(short msgId) throws InstantiationException, IllegalAccessException {
 		if (!msgs.containsKey(msgId)) {
 			return null;
 		}
+		Recycler<Message> recycler = recyclers.get(msgId);
+		if (recycler != null) {
+			return recycler.get();
+		}
 		ConstructorAccess<? extends Message> constructorAccess = msgs.get(msgId);
 		return constructorAccess.newInstance();
 	}
@@ -12,10 +12,14 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.limitart.collections.IntArrayList;
+import com.limitart.collections.LongArrayList;
+import com.limitart.net.binary.util.StringInternCache;
 import com.limitart.reflectasm.ConstructorAccess;
 import com.limitart.util.StringUtil;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.util.CharsetUtil;
 
@@ -27,9 +31,10 @@ import io.netty.util.CharsetUtil;
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public abstract class MessageMeta {
-	private static final boolean COMPRESS_INT = false;
 	private static ConcurrentHashMap<Class<? extends MessageMeta>, ConstructorAccess> messageMetaCache = new ConcurrentHashMap<>();
 	private ByteBuf buffer;
+	// 紧凑模式(int、long与长度使用varint，有符号数使用zigzag)
+	private boolean compactWire;
 
 	public abstract void encode() throws Exception;
 
@@ -43,6 +48,14 @@ public abstract class MessageMeta {
 		return this.buffer;
 	}
 
+	public void compactWire(boolean compactWire) {
+		this.compactWire = compactWire;
+	}
+
+	public boolean compactWire() {
+		return this.compactWire;
+	}
+
 	/**
 	 * 写入二进制元数据
 	 * 
@@ -56,6 +69,7 @@ public abstract class MessageMeta {
 		} else {
 			putByte((byte) 1);
 			meta.buffer = this.buffer;
+			meta.compactWire = this.compactWire;
 			meta.encode();
 		}
 	}
@@ -74,6 +88,7 @@ public abstract class MessageMeta {
 		}
 		T newInstance = createInstance(clazz);
 		newInstance.buffer(this.buffer);
+		newInstance.compactWire(this.compactWire);
 		newInstance.decode();
 		return newInstance;
 	}
@@ -87,11 +102,11 @@ public abstract class MessageMeta {
 	 */
 	protected final <T extends MessageMeta> void putMessageMetaList(List<T> value) throws Exception {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (MessageMeta temp : value) {
 				putMessageMeta(temp);
 			}
@@ -107,7 +122,7 @@ public abstract class MessageMeta {
 	 * @throws Exception
 	 */
 	protected final <T extends MessageMeta> List<T> getMessageMetaList(Class<T> clazz) throws Exception {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -131,11 +146,11 @@ public abstract class MessageMeta {
 	 */
 	protected final <T extends MessageMeta> void putMessageMetaArray(T[] value) throws Exception {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (T t : value) {
 				putMessageMeta(t);
 			}
@@ -150,7 +165,7 @@ public abstract class MessageMeta {
 	 * @throws Exception
 	 */
 	protected final <T extends MessageMeta> T[] getMessageMetaArray(Class<T> clazz) throws Exception {
-		short length = getShort();
+		int length = getLength();
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -172,12 +187,20 @@ public abstract class MessageMeta {
 	 */
 	protected final void putString(String value) {
 		if (value == null) {
-			putByteArray(null);
-		} else if ("".equals(value)) {
-			putByteArray(new byte[0]);
+			putLength(-1);
+		} else if (value.isEmpty()) {
+			putLength(0);
 		} else {
-			byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
-			putByteArray(bytes);
+			// 先预留长度，直接写入UTF-8字节后回填
+			int lengthIndex = buffer.writerIndex();
+			int lengthBytes = compactWire ? varint32Size(ByteBufUtil.utf8MaxBytes(value) + 1) : 2;
+			buffer.writeZero(lengthBytes);
+			int length = buffer.writeCharSequence(value, CharsetUtil.UTF_8);
+			if (compactWire) {
+				setPaddedVarint32(lengthIndex, length + 1, lengthBytes);
+			} else {
+				buffer.setShort(lengthIndex, length);
+			}
 		}
 	}
 
@@ -188,13 +211,30 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final String getString() {
-		byte[] bytes = getByteArray();
-		if (bytes == null) {
+		int len = getLength();
+		if (len == -1) {
 			return null;
-		} else if (bytes.length == 0) {
+		} else if (len == 0) {
+			return "";
+		} else {
+			return buffer.readCharSequence(len, CharsetUtil.UTF_8).toString();
+		}
+	}
+
+	/**
+	 * 读取String类型，短字符串走线程内缓存(适合服务名、方法名等反复出现的字符串)
+	 * 
+	 * @return
+	 * @see StringInternCache
+	 */
+	protected final String getInternedString() {
+		int len = getLength();
+		if (len == -1) {
+			return null;
+		} else if (len == 0) {
 			return "";
 		} else {
-			return new String(bytes, CharsetUtil.UTF_8);
+			return StringInternCache.read(buffer, len);
 		}
 	}
 
@@ -206,11 +246,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putStringList(List<String> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (String temp : value) {
 				putString(temp);
 			}
@@ -224,7 +264,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<String> getStringList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -238,6 +278,26 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 读取String列表，短字符串走线程内缓存
+	 * 
+	 * @return
+	 */
+	protected final List<String> getInternedStringList() {
+		int len = getLength();
+		if (len == -1) {
+			return null;
+		} else if (len == 0) {
+			return new ArrayList<String>();
+		} else {
+			List<String> list = new ArrayList<String>();
+			for (int i = 0; i < len; ++i) {
+				list.add(getInternedString());
+			}
+			return list;
+		}
+	}
+
 	/**
 	 * 写入字符串数组
 	 * 
@@ -246,11 +306,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putStringArray(String[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (String temp : value) {
 				putString(temp);
 			}
@@ -264,7 +324,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final String[] getStringArray() {
-		short length = getShort();
+		int length = getLength();
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -285,7 +345,11 @@ public abstract class MessageMeta {
 	 * @param value
 	 */
 	protected final void putLong(long value) {
-		buffer.writeLong(value);
+		if (compactWire) {
+			writeRawVarint64((value << 1) ^ (value >> 63));
+		} else {
+			buffer.writeLong(value);
+		}
 	}
 
 	/**
@@ -295,7 +359,12 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final long getLong() {
-		return buffer.readLong();
+		if (compactWire) {
+			long raw = readRawVarint64();
+			return (raw >>> 1) ^ -(raw & 1);
+		} else {
+			return buffer.readLong();
+		}
 	}
 
 	/**
@@ -306,11 +375,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putLongList(List<Long> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (Long temp : value) {
 				putLong(temp);
 			}
@@ -324,7 +393,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Long> getLongList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -346,11 +415,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putLongArray(long[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (long temp : value) {
 				putLong(temp);
 			}
@@ -364,7 +433,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final long[] getLongArray() {
-		short length = getShort();
+		int length = getLength(minLongBytes());
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -378,6 +447,62 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 读取long数组，长度一致时复用传入的数组(与long数组/列表格式兼容)
+	 * 
+	 * @param reuse
+	 * @return
+	 */
+	protected final long[] getLongArray(long[] reuse) {
+		int length = getLength(minLongBytes());
+		if (length == -1) {
+			return null;
+		}
+		long[] result = reuse != null && reuse.length == length ? reuse : new long[length];
+		for (int i = 0; i < length; ++i) {
+			result[i] = getLong();
+		}
+		return result;
+	}
+
+	/**
+	 * 写入long可增长数组(与long列表格式兼容，无装箱)
+	 * 
+	 * @param value
+	 */
+	protected final void putLongArrayList(LongArrayList value) {
+		if (value == null) {
+			putLength(-1);
+		} else {
+			int size = value.size();
+			putLength(size);
+			for (int i = 0; i < size; ++i) {
+				putLong(value.get(i));
+			}
+		}
+	}
+
+	/**
+	 * 读取long可增长数组(与long列表格式兼容，无装箱)
+	 * 
+	 * @param reuse
+	 *            复用的数组(会被清空)，为null则新建
+	 * @return
+	 */
+	protected final LongArrayList getLongArrayList(LongArrayList reuse) {
+		int len = getLength(minLongBytes());
+		if (len == -1) {
+			return null;
+		}
+		LongArrayList list = reuse == null ? new LongArrayList(len) : reuse;
+		list.clear();
+		list.ensureCapacity(len);
+		for (int i = 0; i < len; ++i) {
+			list.add(getLong());
+		}
+		return list;
+	}
+
 	/**
 	 * 写入int数据
 	 * 
@@ -385,8 +510,8 @@ public abstract class MessageMeta {
 	 * @param value
 	 */
 	protected final void putInt(int value) {
-		if (COMPRESS_INT) {
-			writeRawVarint32(value);
+		if (compactWire) {
+			writeRawVarint32((value << 1) ^ (value >> 31));
 		} else {
 			this.buffer.writeInt(value);
 		}
@@ -399,8 +524,9 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final int getInt() {
-		if (COMPRESS_INT) {
-			return readRawVarint32();
+		if (compactWire) {
+			int raw = readRawVarint32();
+			return (raw >>> 1) ^ -(raw & 1);
 		} else {
 			return this.buffer.readInt();
 		}
@@ -414,11 +540,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putIntList(List<Integer> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (Integer temp : value) {
 				putInt(temp);
 			}
@@ -432,7 +558,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Integer> getIntList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -454,11 +580,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putIntArray(int[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (int temp : value) {
 				putInt(temp);
 			}
@@ -472,7 +598,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final int[] getIntArray() {
-		short length = getShort();
+		int length = getLength(minIntBytes());
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -486,6 +612,62 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 读取int数组，长度一致时复用传入的数组(与int数组/列表格式兼容)
+	 * 
+	 * @param reuse
+	 * @return
+	 */
+	protected final int[] getIntArray(int[] reuse) {
+		int length = getLength(minIntBytes());
+		if (length == -1) {
+			return null;
+		}
+		int[] result = reuse != null && reuse.length == length ? reuse : new int[length];
+		for (int i = 0; i < length; ++i) {
+			result[i] = getInt();
+		}
+		return result;
+	}
+
+	/**
+	 * 写入int可增长数组(与int列表格式兼容，无装箱)
+	 * 
+	 * @param value
+	 */
+	protected final void putIntArrayList(IntArrayList value) {
+		if (value == null) {
+			putLength(-1);
+		} else {
+			int size = value.size();
+			putLength(size);
+			for (int i = 0; i < size; ++i) {
+				putInt(value.get(i));
+			}
+		}
+	}
+
+	/**
+	 * 读取int可增长数组(与int列表格式兼容，无装箱)
+	 * 
+	 * @param reuse
+	 *            复用的数组(会被清空)，为null则新建
+	 * @return
+	 */
+	protected final IntArrayList getIntArrayList(IntArrayList reuse) {
+		int len = getLength(minIntBytes());
+		if (len == -1) {
+			return null;
+		}
+		IntArrayList list = reuse == null ? new IntArrayList(len) : reuse;
+		list.clear();
+		list.ensureCapacity(len);
+		for (int i = 0; i < len; ++i) {
+			list.add(getInt());
+		}
+		return list;
+	}
+
 	/**
 	 * 写入byte数据
 	 * 
@@ -514,11 +696,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putByteArrayList(List<byte[]> list) {
 		if (list == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (list.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) list.size());
+			putLength(list.size());
 			for (byte[] bt : list) {
 				putByteArray(bt);
 			}
@@ -532,14 +714,16 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<byte[]> getByteArrayList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
 			return new ArrayList<byte[]>();
 		} else {
 			List<byte[]> list = new ArrayList<>();
-			list.add(getByteArray());
+			for (int i = 0; i < len; ++i) {
+				list.add(getByteArray());
+			}
 			return list;
 		}
 	}
@@ -552,11 +736,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putByteArray(byte[] bytes) {
 		if (bytes == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (bytes.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) bytes.length);
+			putLength(bytes.length);
 			buffer.writeBytes(bytes);
 		}
 	}
@@ -568,7 +752,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final byte[] getByteArray() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -608,11 +792,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putBooleanList(List<Boolean> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (boolean temp : value) {
 				putBoolean(temp);
 			}
@@ -626,7 +810,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Boolean> getBooleanList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -648,11 +832,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putBooleanArray(boolean[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (boolean temp : value) {
 				putBoolean(temp);
 			}
@@ -666,7 +850,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final boolean[] getBooleanArray() {
-		short length = getShort();
+		int length = getLength();
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -708,11 +892,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putFloatList(List<Float> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (Float temp : value) {
 				putFloat(temp);
 			}
@@ -726,7 +910,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Float> getFloatList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -748,11 +932,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putFloatArray(float[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (float temp : value) {
 				putFloat(temp);
 			}
@@ -766,7 +950,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final float[] getFloatArray() {
-		short length = getShort();
+		int length = getLength(4);
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -780,6 +964,24 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 读取float数组，长度一致时复用传入的数组(与float数组/列表格式兼容)
+	 * 
+	 * @param reuse
+	 * @return
+	 */
+	protected final float[] getFloatArray(float[] reuse) {
+		int length = getLength(4);
+		if (length == -1) {
+			return null;
+		}
+		float[] result = reuse != null && reuse.length == length ? reuse : new float[length];
+		for (int i = 0; i < length; ++i) {
+			result[i] = getFloat();
+		}
+		return result;
+	}
+
 	/**
 	 * 写入double数据
 	 * 
@@ -808,11 +1010,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putDoubleList(List<Double> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (Double temp : value) {
 				putDouble(temp);
 			}
@@ -826,7 +1028,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Double> getDoubleList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -848,11 +1050,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putDoubleArray(double[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (double temp : value) {
 				putDouble(temp);
 			}
@@ -866,7 +1068,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final double[] getDoubleArray() {
-		short length = getShort();
+		int length = getLength(8);
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -880,6 +1082,24 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 读取double数组，长度一致时复用传入的数组(与double数组/列表格式兼容)
+	 * 
+	 * @param reuse
+	 * @return
+	 */
+	protected final double[] getDoubleArray(double[] reuse) {
+		int length = getLength(8);
+		if (length == -1) {
+			return null;
+		}
+		double[] result = reuse != null && reuse.length == length ? reuse : new double[length];
+		for (int i = 0; i < length; ++i) {
+			result[i] = getDouble();
+		}
+		return result;
+	}
+
 	/**
 	 * 写入short数据
 	 * 
@@ -908,11 +1128,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putShortList(List<Short> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (Short temp : value) {
 				putShort(temp);
 			}
@@ -926,7 +1146,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Short> getShortList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -948,11 +1168,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putShortArray(short[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (short temp : value) {
 				putShort(temp);
 			}
@@ -966,7 +1186,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final short[] getShortArray() {
-		short length = getShort();
+		int length = getLength(2);
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -980,6 +1200,24 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 读取short数组，长度一致时复用传入的数组(与short数组/列表格式兼容)
+	 * 
+	 * @param reuse
+	 * @return
+	 */
+	protected final short[] getShortArray(short[] reuse) {
+		int length = getLength(2);
+		if (length == -1) {
+			return null;
+		}
+		short[] result = reuse != null && reuse.length == length ? reuse : new short[length];
+		for (int i = 0; i < length; ++i) {
+			result[i] = getShort();
+		}
+		return result;
+	}
+
 	/**
 	 * 写入char数据
 	 * 
@@ -1008,11 +1246,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putCharList(List<Character> value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.isEmpty()) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.size());
+			putLength(value.size());
 			for (Character temp : value) {
 				putChar(temp);
 			}
@@ -1026,7 +1264,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final List<Character> getCharList() {
-		short len = getShort();
+		int len = getLength();
 		if (len == -1) {
 			return null;
 		} else if (len == 0) {
@@ -1048,11 +1286,11 @@ public abstract class MessageMeta {
 	 */
 	protected final void putCharArray(char[] value) {
 		if (value == null) {
-			putShort((short) -1);
+			putLength(-1);
 		} else if (value.length == 0) {
-			putShort((short) 0);
+			putLength(0);
 		} else {
-			putShort((short) value.length);
+			putLength(value.length);
 			for (char temp : value) {
 				putChar(temp);
 			}
@@ -1066,7 +1304,7 @@ public abstract class MessageMeta {
 	 * @return
 	 */
 	protected final char[] getCharArray() {
-		short length = getShort();
+		int length = getLength(2);
 		if (length == -1) {
 			return null;
 		} else if (length == 0) {
@@ -1125,32 +1363,32 @@ public abstract class MessageMeta {
 			return getCharArray();
 		} else if (type.equals("java.util.ArrayList") || type.equals("java.util.List")) {
 			List<Object> objList = new ArrayList<>();
-			short length = getShort();
+			int length = getLength();
 			if (length > 0) {
-				String listType = getString();
+				String listType = getInternedString();
 				for (int i = 0; i < length; ++i) {
 					objList.add(decodeObj(listType));
 				}
 			}
 			return objList;
 		} else if (type.equals("java.util.HashMap") || type.equals("java.util.Map")) {
-			short length = getShort();
+			int length = getLength();
 			if (length == 0) {
 				return null;
 			}
-			String keyType = getString();
-			String valueType = getString();
+			String keyType = getInternedString();
+			String valueType = getInternedString();
 			HashMap<Object, Object> map = new HashMap<>();
 			for (int i = 0; i < length; ++i) {
 				map.put(decodeObj(keyType), decodeObj(valueType));
 			}
 			return map;
 		} else if (type.equals("java.util.HashSet") || type.equals("java.util.Set")) {
-			short length = getShort();
+			int length = getLength();
 			if (length == 0) {
 				return null;
 			}
-			String setType = getString();
+			String setType = getInternedString();
 			HashSet<Object> set = new HashSet<>();
 			for (int i = 0; i < length; ++i) {
 				set.add(decodeObj(setType));
@@ -1215,9 +1453,9 @@ public abstract class MessageMeta {
 		} else if (type.equals("java.util.ArrayList") || type.equals("java.util.List")) {
 			List<Object> objs = (List<Object>) object;
 			if (objs == null || objs.isEmpty()) {
-				putShort((short) 0);
+				putLength(0);
 			} else {
-				putShort((short) objs.size());
+				putLength(objs.size());
 				String name = objs.get(0).getClass().getName();
 				putString(name);
 				for (Object obj : objs) {
@@ -1227,9 +1465,9 @@ public abstract class MessageMeta {
 		} else if (type.equals("java.util.HashMap") || type.equals("java.util.Map")) {
 			Map<Object, Object> map = (Map<Object, Object>) object;
 			if (map == null || map.isEmpty()) {
-				putShort((short) 0);
+				putLength(0);
 			} else {
-				putShort((short) map.size());
+				putLength(map.size());
 				boolean f = false;
 				Iterator<Entry<Object, Object>> iterator = map.entrySet().iterator();
 				while (iterator.hasNext()) {
@@ -1246,9 +1484,9 @@ public abstract class MessageMeta {
 		} else if (type.equals("java.util.HashSet") || type.equals("java.util.Set")) {
 			Set<Object> set = (Set<Object>) object;
 			if (set == null || set.isEmpty()) {
-				putShort((short) 0);
+				putLength(0);
 			} else {
-				putShort((short) set.size());
+				putLength(set.size());
 				boolean f = false;
 				for (Object value : set) {
 					if (!f) {
@@ -1268,6 +1506,97 @@ public abstract class MessageMeta {
 		}
 	}
 
+	/**
+	 * 写入列表、数组、字符串等的长度(-1为null)
+	 * 
+	 * @param length
+	 */
+	protected final void putLength(int length) {
+		if (compactWire) {
+			writeRawVarint32(length + 1);
+		} else {
+			buffer.writeShort(length);
+		}
+	}
+
+	/**
+	 * 读取列表、数组、字符串等的长度(-1为null)
+	 * 
+	 * @return
+	 */
+	protected final int getLength() {
+		return getLength(1);
+	}
+
+	/**
+	 * 读取列表、数组、字符串等的长度(-1为null)，并按剩余可读字节校验长度，防止对端伪造长度导致超大分配
+	 * 
+	 * @param minElementBytes
+	 *            每个元素至少占用的字节数
+	 * @return
+	 */
+	protected final int getLength(int minElementBytes) {
+		int length;
+		if (compactWire) {
+			length = readRawVarint32() - 1;
+		} else {
+			length = buffer.readShort();
+		}
+		if (length < -1) {
+			throw new CorruptedFrameException("negative length: " + length);
+		}
+		if (length > buffer.readableBytes() / minElementBytes) {
+			throw new CorruptedFrameException("length " + length + " exceeds readable bytes: " + buffer.readableBytes());
+		}
+		return length;
+	}
+
+	/**
+	 * int编码后至少占用的字节数
+	 * 
+	 * @return
+	 */
+	private int minIntBytes() {
+		return compactWire ? 1 : 4;
+	}
+
+	/**
+	 * long编码后至少占用的字节数
+	 * 
+	 * @return
+	 */
+	private int minLongBytes() {
+		return compactWire ? 1 : 8;
+	}
+
+	private static int varint32Size(int value) {
+		if ((value & 0xFFFFFF80) == 0) {
+			return 1;
+		} else if ((value & 0xFFFFC000) == 0) {
+			return 2;
+		} else if ((value & 0xFFE00000) == 0) {
+			return 3;
+		} else if ((value & 0xF0000000) == 0) {
+			return 4;
+		}
+		return 5;
+	}
+
+	/**
+	 * 回填固定字节数的varint(不足的字节以延续位补齐)
+	 * 
+	 * @param index
+	 * @param value
+	 * @param bytes
+	 */
+	private void setPaddedVarint32(int index, int value, int bytes) {
+		for (int i = 0; i < bytes - 1; ++i) {
+			this.buffer.setByte(index + i, value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		this.buffer.setByte(index + bytes - 1, value & 0x7F);
+	}
+
 	private void writeRawVarint32(int value) {
 		while (true) {
 			if ((value & 0xFFFFFF80) == 0) {
@@ -1279,52 +1608,39 @@ public abstract class MessageMeta {
 		}
 	}
 
-	private int readRawVarint32() {
-		if (!(buffer.isReadable())) {
-			return 0;
-		}
-		buffer.markReaderIndex();
-		byte tmp = buffer.readByte();
-		if (tmp >= 0) {
-			return tmp;
-		}
-		int result = tmp & 0x7F;
-		if (!(buffer.isReadable())) {
-			buffer.resetReaderIndex();
-			return 0;
+	private void writeRawVarint64(long value) {
+		while (true) {
+			if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
+				this.buffer.writeByte((int) value);
+				return;
+			}
+			this.buffer.writeByte((int) value & 0x7F | 0x80);
+			value >>>= 7;
 		}
-		if ((tmp = buffer.readByte()) >= 0) {
-			result |= tmp << 7;
-		} else {
-			result |= (tmp & 0x7F) << 7;
-			if (!(buffer.isReadable())) {
-				buffer.resetReaderIndex();
-				return 0;
+	}
+
+	private int readRawVarint32() {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte tmp = buffer.readByte();
+			result |= (tmp & 0x7F) << shift;
+			if (tmp >= 0) {
+				return result;
 			}
-			if ((tmp = buffer.readByte()) >= 0) {
-				result |= tmp << 14;
-			} else {
-				result |= (tmp & 0x7F) << 14;
-				if (!(buffer.isReadable())) {
-					buffer.resetReaderIndex();
-					return 0;
-				}
-				if ((tmp = buffer.readByte()) >= 0) {
-					result |= tmp << 21;
-				} else {
-					result |= (tmp & 0x7F) << 21;
-					if (!(buffer.isReadable())) {
-						buffer.resetReaderIndex();
-						return 0;
-					}
-					result |= (tmp = buffer.readByte()) << 28;
-					if (tmp < 0) {
-						throw new CorruptedFrameException("malformed varint.");
-					}
-				}
+		}
+		throw new CorruptedFrameException("malformed varint32.");
+	}
+
+	private long readRawVarint64() {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte tmp = buffer.readByte();
+			result |= (long) (tmp & 0x7F) << shift;
+			if (tmp >= 0) {
+				return result;
 			}
 		}
-		return result;
+		throw new CorruptedFrameException("malformed varint64.");
 	}
 
 	private <T extends MessageMeta> T createInstance(Class<T> clazz) {
@@ -0,0 +1,515 @@
+package com.limitart.net.binary.message;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按静态类型（包括泛型参数）预先生成的值编解码器，只编码值不编码类型名
+ * 
+ * @author hank
+ *
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public abstract class TypeCodec {
+	private static ConcurrentHashMap<Type, TypeCodec> codecs = new ConcurrentHashMap<>();
+
+	/**
+	 * 写入值
+	 * 
+	 * @param meta
+	 * @param value
+	 * @throws Exception
+	 */
+	public abstract void encode(MessageMeta meta, Object value) throws Exception;
+
+	/**
+	 * 读取值
+	 * 
+	 * @param meta
+	 * @return
+	 * @throws Exception
+	 */
+	public abstract Object decode(MessageMeta meta) throws Exception;
+
+	/**
+	 * 获取类型对应的编解码器，无法确定的类型（原始类型的集合、通配符等）退化为带类型名的编码
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public static TypeCodec get(Type type) {
+		TypeCodec codec = codecs.get(type);
+		if (codec == null) {
+			codec = create(type);
+			TypeCodec old = codecs.putIfAbsent(type, codec);
+			if (old != null) {
+				codec = old;
+			}
+		}
+		return codec;
+	}
+
+	private static TypeCodec create(Type type) {
+		if (type instanceof ParameterizedType) {
+			ParameterizedType pt = (ParameterizedType) type;
+			Class<?> raw = (Class<?>) pt.getRawType();
+			Type[] args = pt.getActualTypeArguments();
+			if (raw == List.class || raw == ArrayList.class) {
+				return new ListCodec(get(args[0]));
+			} else if (raw == Set.class || raw == HashSet.class) {
+				return new SetCodec(get(args[0]));
+			} else if (raw == Map.class || raw == HashMap.class) {
+				return new MapCodec(get(args[0]), get(args[1]));
+			}
+			return DynamicCodec.INSTANCE;
+		} else if (type instanceof GenericArrayType) {
+			Type component = ((GenericArrayType) type).getGenericComponentType();
+			Class<?> rawComponent = component instanceof ParameterizedType
+					? (Class<?>) ((ParameterizedType) component).getRawType() : Object.class;
+			return new ArrayCodec(rawComponent, get(component));
+		} else if (!(type instanceof Class)) {
+			return DynamicCodec.INSTANCE;
+		}
+		Class<?> clazz = (Class<?>) type;
+		if (clazz == int.class) {
+			return new IntCodec();
+		} else if (clazz == Integer.class) {
+			return new NullableCodec(new IntCodec());
+		} else if (clazz == long.class) {
+			return new LongCodec();
+		} else if (clazz == Long.class) {
+			return new NullableCodec(new LongCodec());
+		} else if (clazz == byte.class) {
+			return new ByteCodec();
+		} else if (clazz == Byte.class) {
+			return new NullableCodec(new ByteCodec());
+		} else if (clazz == short.class) {
+			return new ShortCodec();
+		} else if (clazz == Short.class) {
+			return new NullableCodec(new ShortCodec());
+		} else if (clazz == boolean.class) {
+			return new BooleanCodec();
+		} else if (clazz == Boolean.class) {
+			return new NullableCodec(new BooleanCodec());
+		} else if (clazz == float.class) {
+			return new FloatCodec();
+		} else if (clazz == Float.class) {
+			return new NullableCodec(new FloatCodec());
+		} else if (clazz == double.class) {
+			return new DoubleCodec();
+		} else if (clazz == Double.class) {
+			return new NullableCodec(new DoubleCodec());
+		} else if (clazz == char.class) {
+			return new CharCodec();
+		} else if (clazz == Character.class) {
+			return new NullableCodec(new CharCodec());
+		} else if (clazz == String.class) {
+			return new StringCodec();
+		} else if (clazz == int[].class || clazz == long[].class || clazz == byte[].class || clazz == short[].class
+				|| clazz == boolean[].class || clazz == float[].class || clazz == double[].class
+				|| clazz == char[].class || clazz == String[].class) {
+			return new PrimitiveArrayCodec(clazz);
+		} else if (MessageMeta.class.isAssignableFrom(clazz)) {
+			return new MessageMetaCodec(clazz);
+		} else if (clazz.isArray() && MessageMeta.class.isAssignableFrom(clazz.getComponentType())) {
+			return new MessageMetaArrayCodec(clazz.getComponentType());
+		} else if (clazz.isArray()) {
+			return new ArrayCodec(clazz.getComponentType(), get(clazz.getComponentType()));
+		}
+		return DynamicCodec.INSTANCE;
+	}
+
+	/**
+	 * 包装类型，先写一个字节表示是否为null
+	 */
+	private static class NullableCodec extends TypeCodec {
+		private TypeCodec valueCodec;
+
+		private NullableCodec(TypeCodec valueCodec) {
+			this.valueCodec = valueCodec;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			if (value == null) {
+				meta.putByte((byte) 0);
+				return;
+			}
+			meta.putByte((byte) 1);
+			valueCodec.encode(meta, value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			if (meta.getByte() == 0) {
+				return null;
+			}
+			return valueCodec.decode(meta);
+		}
+	}
+
+	private static class IntCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putInt((Integer) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getInt();
+		}
+	}
+
+	private static class LongCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putLong((Long) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getLong();
+		}
+	}
+
+	private static class ByteCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putByte((Byte) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getByte();
+		}
+	}
+
+	private static class ShortCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putShort((Short) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getShort();
+		}
+	}
+
+	private static class BooleanCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putBoolean((Boolean) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getBoolean();
+		}
+	}
+
+	private static class FloatCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putFloat((Float) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getFloat();
+		}
+	}
+
+	private static class DoubleCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putDouble((Double) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getDouble();
+		}
+	}
+
+	private static class CharCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putChar((Character) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getChar();
+		}
+	}
+
+	private static class StringCodec extends TypeCodec {
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putString((String) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getString();
+		}
+	}
+
+	private static class PrimitiveArrayCodec extends TypeCodec {
+		private Class<?> type;
+
+		private PrimitiveArrayCodec(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			if (type == int[].class) {
+				meta.putIntArray((int[]) value);
+			} else if (type == long[].class) {
+				meta.putLongArray((long[]) value);
+			} else if (type == byte[].class) {
+				meta.putByteArray((byte[]) value);
+			} else if (type == short[].class) {
+				meta.putShortArray((short[]) value);
+			} else if (type == boolean[].class) {
+				meta.putBooleanArray((boolean[]) value);
+			} else if (type == float[].class) {
+				meta.putFloatArray((float[]) value);
+			} else if (type == double[].class) {
+				meta.putDoubleArray((double[]) value);
+			} else if (type == char[].class) {
+				meta.putCharArray((char[]) value);
+			} else {
+				meta.putStringArray((String[]) value);
+			}
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			if (type == int[].class) {
+				return meta.getIntArray();
+			} else if (type == long[].class) {
+				return meta.getLongArray();
+			} else if (type == byte[].class) {
+				return meta.getByteArray();
+			} else if (type == short[].class) {
+				return meta.getShortArray();
+			} else if (type == boolean[].class) {
+				return meta.getBooleanArray();
+			} else if (type == float[].class) {
+				return meta.getFloatArray();
+			} else if (type == double[].class) {
+				return meta.getDoubleArray();
+			} else if (type == char[].class) {
+				return meta.getCharArray();
+			}
+			return meta.getStringArray();
+		}
+	}
+
+	private static class MessageMetaCodec extends TypeCodec {
+		private Class clazz;
+
+		private MessageMetaCodec(Class clazz) {
+			this.clazz = clazz;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putMessageMeta((MessageMeta) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getMessageMeta(clazz);
+		}
+	}
+
+	private static class MessageMetaArrayCodec extends TypeCodec {
+		private Class componentType;
+
+		private MessageMetaArrayCodec(Class componentType) {
+			this.componentType = componentType;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putMessageMetaArray((MessageMeta[]) value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.getMessageMetaArray(componentType);
+		}
+	}
+
+	private static class ArrayCodec extends TypeCodec {
+		private Class<?> componentType;
+		private TypeCodec componentCodec;
+
+		private ArrayCodec(Class<?> componentType, TypeCodec componentCodec) {
+			this.componentType = componentType;
+			this.componentCodec = componentCodec;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			if (value == null) {
+				meta.putLength(-1);
+				return;
+			}
+			int length = Array.getLength(value);
+			meta.putLength(length);
+			for (int i = 0; i < length; ++i) {
+				componentCodec.encode(meta, Array.get(value, i));
+			}
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			// 每个元素至少占1字节，getLength已按剩余字节校验，分配前不会超出实际数据量
+			int length = meta.getLength(1);
+			if (length == -1) {
+				return null;
+			}
+			Object array = Array.newInstance(componentType, length);
+			for (int i = 0; i < length; ++i) {
+				Array.set(array, i, componentCodec.decode(meta));
+			}
+			return array;
+		}
+	}
+
+	private static class ListCodec extends TypeCodec {
+		private TypeCodec elementCodec;
+
+		private ListCodec(TypeCodec elementCodec) {
+			this.elementCodec = elementCodec;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			encodeCollection(meta, (Collection) value, elementCodec);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			int length = meta.getLength(1);
+			if (length == -1) {
+				return null;
+			}
+			ArrayList<Object> list = new ArrayList<>(length);
+			for (int i = 0; i < length; ++i) {
+				list.add(elementCodec.decode(meta));
+			}
+			return list;
+		}
+	}
+
+	private static class SetCodec extends TypeCodec {
+		private TypeCodec elementCodec;
+
+		private SetCodec(TypeCodec elementCodec) {
+			this.elementCodec = elementCodec;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			encodeCollection(meta, (Collection) value, elementCodec);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			int length = meta.getLength(1);
+			if (length == -1) {
+				return null;
+			}
+			HashSet<Object> set = new HashSet<>();
+			for (int i = 0; i < length; ++i) {
+				set.add(elementCodec.decode(meta));
+			}
+			return set;
+		}
+	}
+
+	private static class MapCodec extends TypeCodec {
+		private TypeCodec keyCodec;
+		private TypeCodec valueCodec;
+
+		private MapCodec(TypeCodec keyCodec, TypeCodec valueCodec) {
+			this.keyCodec = keyCodec;
+			this.valueCodec = valueCodec;
+		}
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			if (value == null) {
+				meta.putLength(-1);
+				return;
+			}
+			Map<Object, Object> map = (Map<Object, Object>) value;
+			meta.putLength(map.size());
+			for (Entry<Object, Object> entry : map.entrySet()) {
+				keyCodec.encode(meta, entry.getKey());
+				valueCodec.encode(meta, entry.getValue());
+			}
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			// 每个键值对至少占2字节
+			int length = meta.getLength(2);
+			if (length == -1) {
+				return null;
+			}
+			HashMap<Object, Object> map = new HashMap<>();
+			for (int i = 0; i < length; ++i) {
+				map.put(keyCodec.decode(meta), valueCodec.decode(meta));
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * 静态类型不足以确定编码方式时，带类型名编码
+	 */
+	private static class DynamicCodec extends TypeCodec {
+		private static final DynamicCodec INSTANCE = new DynamicCodec();
+
+		@Override
+		public void encode(MessageMeta meta, Object value) throws Exception {
+			meta.putString(value == null ? null : value.getClass().getName());
+			meta.encodeObj(value);
+		}
+
+		@Override
+		public Object decode(MessageMeta meta) throws Exception {
+			return meta.decodeObj(meta.getInternedString());
+		}
+	}
+
+	private static void encodeCollection(MessageMeta meta, Collection collection, TypeCodec elementCodec)
+			throws Exception {
+		if (collection == null) {
+			meta.putLength(-1);
+			return;
+		}
+		meta.putLength(collection.size());
+		for (Object obj : collection) {
+			elementCodec.encode(meta, obj);
+		}
+	}
+}
@@ -19,7 +19,20 @@ public enum InnerMessageEnum {
 	/**
 	 * 验证链接成功服务器
 	 */
-	ConnectionValidateSuccessServerMessage((short)3),;
+	ConnectionValidateSuccessServerMessage((short)3),
+	// 以下为帧结构使用的Id，取short最小值附近，避开业务与其他模块(-101...)使用的Id
+	/**
+	 * 大消息分片(由解码器重组，不会分发)
+	 */
+	ChunkFrame(Short.MIN_VALUE),
+	/**
+	 * 压缩帧(由解压器还原，不会分发)
+	 */
+	CompressedFrame((short) (Short.MIN_VALUE + 1)),
+	/**
+	 * 多条消息的合并帧(由接收方拆开依次分发)
+	 */
+	BatchFrame((short) (Short.MIN_VALUE + 2)),;
 
 	private short messageId;
 
@@ -31,6 +44,16 @@ public enum InnerMessageEnum {
 		return this.messageId;
 	}
 
+	/**
+	 * 是否为帧结构保留的Id(分片、压缩、合并帧)，不能注册为消息
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static boolean isFrameId(short value) {
+		return value == ChunkFrame.messageId || value == CompressedFrame.messageId || value == BatchFrame.messageId;
+	}
+
 	public static InnerMessageEnum getTypeByValue(short value) {
 		for (InnerMessageEnum type : InnerMessageEnum.values()) {
 			if (type.getValue() == value) {
@@ -0,0 +1,44 @@
+package com.limitart.net.binary.message.constant;
+
+/**
+ * 链接验证时协商的传输特性(按位组合)
+ * 
+ * @author hank
+ *
+ */
+public enum WireFeature {
+	/**
+	 * 紧凑编码(int、long与长度使用varint，有符号数使用zigzag)
+	 */
+	COMPACT_WIRE(1),
+	/**
+	 * 帧长度使用varint(1~5字节，突破2字节长度的64K上限)
+	 */
+	VARINT_FRAME(2),
+	/**
+	 * 超过阈值的帧拆成分片发送，与小消息交错传输
+	 */
+	CHUNKED_FRAME(4),
+	/**
+	 * 超过阈值的帧压缩后发送
+	 */
+	COMPRESSED_FRAME(8),
+	/**
+	 * 同一轮事件循环内的小消息合并成一帧发送
+	 */
+	BATCH_FRAME(16),;
+
+	private int mask;
+
+	private WireFeature(int mask) {
+		this.mask = mask;
+	}
+
+	public int getValue() {
+		return this.mask;
+	}
+
+	public boolean isEnabled(int features) {
+		return (features & this.mask) != 0;
+	}
+}
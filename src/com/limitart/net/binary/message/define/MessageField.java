@@ -0,0 +1,23 @@
+package com.limitart.net.binary.message.define;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 消息字段注解，由编解码器自动生成编码与解码(字段不能为private)
+ * 
+ * @author hank
+ * @see com.limitart.net.binary.message.MessageCodec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface MessageField {
+	/**
+	 * 字段在消息中的顺序(同一个类及其父类中不能重复)，按从小到大编码
+	 * 
+	 * @return
+	 */
+	int order();
+}
@@ -5,6 +5,8 @@ import com.limitart.net.binary.message.constant.InnerMessageEnum;
 
 public class ConnectionValidateClientMessage extends Message {
 	private int validateRandom;
+	// 客户端选用的传输特性
+	private int wireFeatures;
 
 	public int getValidateRandom() {
 		return validateRandom;
@@ -14,6 +16,14 @@ public class ConnectionValidateClientMessage extends Message {
 		this.validateRandom = validateRandom;
 	}
 
+	public int getWireFeatures() {
+		return wireFeatures;
+	}
+
+	public void setWireFeatures(int wireFeatures) {
+		this.wireFeatures = wireFeatures;
+	}
+
 	@Override
 	public short getMessageId() {
 		return InnerMessageEnum.ConnectionValidateClientMessage.getValue();
@@ -22,10 +32,17 @@ public class ConnectionValidateClientMessage extends Message {
 	@Override
 	public void encode() throws Exception {
 		putInt(this.validateRandom);
+		putInt(this.wireFeatures);
 	}
 
 	@Override
 	public void decode() throws Exception {
 		this.validateRandom = getInt();
+		// 旧版本对端不发送传输特性，按不支持任何特性协商
+		if (buffer().isReadable()) {
+			this.wireFeatures = getInt();
+		} else {
+			this.wireFeatures = 0;
+		}
 	}
 }
@@ -5,6 +5,8 @@ import com.limitart.net.binary.message.constant.InnerMessageEnum;
 
 public class ConnectionValidateServerMessage extends Message {
 	private String validateStr;
+	// 服务器支持的传输特性
+	private int wireFeatures;
 
 	public String getValidateStr() {
 		return validateStr;
@@ -14,6 +16,14 @@ public class ConnectionValidateServerMessage extends Message {
 		this.validateStr = validateStr;
 	}
 
+	public int getWireFeatures() {
+		return wireFeatures;
+	}
+
+	public void setWireFeatures(int wireFeatures) {
+		this.wireFeatures = wireFeatures;
+	}
+
 	@Override
 	public short getMessageId() {
 		return InnerMessageEnum.ConnectionValidateServerMessage.getValue();
@@ -22,10 +32,17 @@ public class ConnectionValidateServerMessage extends Message {
 	@Override
 	public void encode() throws Exception {
 		putString(this.validateStr);
+		putInt(this.wireFeatures);
 	}
 
 	@Override
 	public void decode() throws Exception {
 		this.validateStr = getString();
+		// 旧版本对端不发送传输特性，按不支持任何特性协商
+		if (buffer().isReadable()) {
+			this.wireFeatures = getInt();
+		} else {
+			this.wireFeatures = 0;
+		}
 	}
 }
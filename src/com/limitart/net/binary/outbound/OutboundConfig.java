@@ -0,0 +1,126 @@
+package com.limitart.net.binary.outbound;
+
+import com.limitart.net.binary.outbound.constant.OverflowPolicy;
+
+/**
+ * 链接发送队列配置
+ * 
+ * @author hank
+ *
+ */
+public final class OutboundConfig {
+	// netty发送缓冲低水位(降到此值以下恢复可写)
+	private int lowWaterMark;
+	// netty发送缓冲高水位(超过此值变为不可写，消息开始排队)
+	private int highWaterMark;
+	// 排队消息最大字节数
+	private int maxQueuedBytes;
+	// 溢出策略
+	private OverflowPolicy[] overflowPolicies;
+
+	private OutboundConfig(OutboundConfigBuilder builder) {
+		this.lowWaterMark = builder.lowWaterMark;
+		this.highWaterMark = builder.highWaterMark;
+		this.maxQueuedBytes = builder.maxQueuedBytes;
+		this.overflowPolicies = builder.overflowPolicies;
+	}
+
+	public int getLowWaterMark() {
+		return lowWaterMark;
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public int getMaxQueuedBytes() {
+		return maxQueuedBytes;
+	}
+
+	public OverflowPolicy[] getOverflowPolicies() {
+		return overflowPolicies.clone();
+	}
+
+	/**
+	 * 是否使用了某溢出策略
+	 * 
+	 * @param policy
+	 * @return
+	 */
+	public boolean hasPolicy(OverflowPolicy policy) {
+		for (OverflowPolicy p : overflowPolicies) {
+			if (p == policy) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static class OutboundConfigBuilder {
+		private int lowWaterMark;
+		private int highWaterMark;
+		private int maxQueuedBytes;
+		private OverflowPolicy[] overflowPolicies;
+
+		public OutboundConfigBuilder() {
+			this.lowWaterMark = 32 * 1024;
+			this.highWaterMark = 64 * 1024;
+			this.maxQueuedBytes = 1024 * 1024;
+			this.overflowPolicies = new OverflowPolicy[] { OverflowPolicy.COALESCE_LATEST,
+					OverflowPolicy.DROP_OLDEST_DROPPABLE, OverflowPolicy.DISCONNECT };
+		}
+
+		/**
+		 * 构建配置
+		 * 
+		 * @return
+		 */
+		public OutboundConfig build() {
+			if (lowWaterMark > highWaterMark) {
+				throw new IllegalArgumentException("lowWaterMark > highWaterMark");
+			}
+			return new OutboundConfig(this);
+		}
+
+		/**
+		 * 发送缓冲水位
+		 * 
+		 * @param lowWaterMark
+		 * @param highWaterMark
+		 * @return
+		 */
+		public OutboundConfigBuilder waterMark(int lowWaterMark, int highWaterMark) {
+			if (lowWaterMark >= 0 && highWaterMark > 0) {
+				this.lowWaterMark = lowWaterMark;
+				this.highWaterMark = highWaterMark;
+			}
+			return this;
+		}
+
+		/**
+		 * 排队消息最大字节数
+		 * 
+		 * @param maxQueuedBytes
+		 * @return
+		 */
+		public OutboundConfigBuilder maxQueuedBytes(int maxQueuedBytes) {
+			if (maxQueuedBytes > 0) {
+				this.maxQueuedBytes = maxQueuedBytes;
+			}
+			return this;
+		}
+
+		/**
+		 * 溢出策略(依次尝试，都不能腾出空间时新消息发送失败)
+		 * 
+		 * @param overflowPolicies
+		 * @return
+		 */
+		public OutboundConfigBuilder overflowPolicies(OverflowPolicy... overflowPolicies) {
+			if (overflowPolicies != null) {
+				this.overflowPolicies = overflowPolicies.clone();
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package com.limitart.net.binary.outbound;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.limitart.net.binary.outbound.constant.OutboundPriority;
+import com.limitart.net.binary.outbound.constant.OverflowPolicy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.AttributeKey;
+
+/**
+ * 链接发送队列
+ * <p>
+ * 链接可写时直接写出，超过高水位变为不可写后按优先级分道排队，恢复可写时关键、普通、可丢弃依次发出(同一优先级内保持顺序)。
+ * 排队字节数有上限，超出时按配置的溢出策略合并、丢弃或断开链接。所有排队操作都在链接的EventLoop中执行
+ * 
+ * @author hank
+ *
+ */
+public class OutboundQueue extends ChannelInboundHandlerAdapter {
+	private static Logger log = LogManager.getLogger();
+	private static final AttributeKey<OutboundQueue> OUTBOUND_QUEUE = AttributeKey.valueOf("limitart.outboundQueue");
+	private final OutboundConfig config;
+	private final boolean coalesce;
+	private final boolean dropDroppable;
+	private final boolean disconnect;
+	private final Lane[] lanes;
+	// 合并键->排队中的最新消息
+	private final HashMap<Object, Entry> coalesceEntries = new HashMap<>();
+	private Channel channel;
+	private boolean drainScheduled;
+	private final Runnable drainTask = new Runnable() {
+
+		@Override
+		public void run() {
+			drainScheduled = false;
+			drain();
+		}
+	};
+	// 以下统计只在EventLoop中修改
+	private volatile int queuedBytes;
+	private volatile int queuedCount;
+	private volatile int peakQueuedBytes;
+	private volatile long droppedCount;
+	private volatile long coalescedCount;
+	private volatile long rejectedCount;
+
+	public OutboundQueue(OutboundConfig config) {
+		if (config == null) {
+			throw new NullPointerException("OutboundConfig");
+		}
+		this.config = config;
+		this.coalesce = config.hasPolicy(OverflowPolicy.COALESCE_LATEST);
+		this.dropDroppable = config.hasPolicy(OverflowPolicy.DROP_OLDEST_DROPPABLE);
+		this.disconnect = config.hasPolicy(OverflowPolicy.DISCONNECT);
+		this.lanes = new Lane[OutboundPriority.values().length];
+		for (int i = 0; i < lanes.length; ++i) {
+			lanes[i] = new Lane();
+		}
+	}
+
+	/**
+	 * 获取链接的发送队列(未开启时为null)
+	 * 
+	 * @param channel
+	 * @return
+	 */
+	public static OutboundQueue get(Channel channel) {
+		return channel.attr(OUTBOUND_QUEUE).get();
+	}
+
+	/**
+	 * 发送已编码的消息(任意线程调用)
+	 * 
+	 * @param buffer
+	 *            完整的帧，由队列负责释放
+	 * @param priority
+	 * @param coalesceKey
+	 *            合并键(null为不合并)
+	 * @param listener
+	 *            写出结果(可为null)
+	 */
+	public void offer(ByteBuf buffer, OutboundPriority priority, Object coalesceKey, ChannelFutureListener listener) {
+		if (channel.eventLoop().inEventLoop()) {
+			offer0(buffer, priority, coalesceKey, listener);
+			return;
+		}
+		try {
+			channel.eventLoop().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					offer0(buffer, priority, coalesceKey, listener);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			fail(buffer, listener, "event loop shutdown");
+		}
+	}
+
+	private void offer0(ByteBuf buffer, OutboundPriority priority, Object coalesceKey,
+			ChannelFutureListener listener) {
+		if (!channel.isActive()) {
+			fail(buffer, listener, "closed");
+			return;
+		}
+		if (queuedCount == 0 && channel.isWritable()) {
+			if (listener == null) {
+				channel.writeAndFlush(buffer, channel.voidPromise());
+			} else {
+				channel.writeAndFlush(buffer).addListener(listener);
+			}
+			return;
+		}
+		int size = buffer.readableBytes();
+		if (coalesce && coalesceKey != null) {
+			Entry old = coalesceEntries.get(coalesceKey);
+			if (old != null && old.priority == priority) {
+				// 原位替换，不改变发送顺序
+				fail(old.buffer, old.listener, "coalesced");
+				queuedBytes += size - old.size;
+				old.buffer = buffer;
+				old.listener = listener;
+				old.size = size;
+				++coalescedCount;
+				updatePeak();
+				drain();
+				return;
+			}
+		}
+		if (queuedBytes + size > config.getMaxQueuedBytes() && !makeRoom(size)) {
+			++rejectedCount;
+			if (disconnect && priority != OutboundPriority.DROPPABLE) {
+				log.error(channel.remoteAddress() + " outbound queue overflow,queued bytes:" + queuedBytes
+						+ ",disconnect!");
+				fail(buffer, listener, "overflow,disconnect");
+				channel.close();
+			} else {
+				fail(buffer, listener, "overflow");
+			}
+			return;
+		}
+		Entry entry = new Entry(buffer, priority, coalesceKey, listener, size);
+		lanes[priority.ordinal()].addLast(entry);
+		if (coalesce && coalesceKey != null) {
+			coalesceEntries.put(coalesceKey, entry);
+		}
+		queuedBytes += size;
+		++queuedCount;
+		updatePeak();
+		drain();
+	}
+
+	/**
+	 * 丢弃最早的可丢弃消息腾出空间
+	 * 
+	 * @param size
+	 * @return
+	 */
+	private boolean makeRoom(int size) {
+		if (!dropDroppable || size > config.getMaxQueuedBytes()) {
+			return false;
+		}
+		ArrayDeque<Entry> droppable = lanes[OutboundPriority.DROPPABLE.ordinal()];
+		int droppableBytes = 0;
+		for (Entry entry : droppable) {
+			droppableBytes += entry.size;
+		}
+		// 丢完也放不下就一条都不丢
+		if (queuedBytes - droppableBytes + size > config.getMaxQueuedBytes()) {
+			return false;
+		}
+		while (queuedBytes + size > config.getMaxQueuedBytes()) {
+			Entry entry = droppable.pollFirst();
+			removed(entry);
+			++droppedCount;
+			fail(entry.buffer, entry.listener, "dropped");
+		}
+		return true;
+	}
+
+	/**
+	 * 链接可写时按优先级写出排队的消息
+	 */
+	private void drain() {
+		if (queuedCount == 0) {
+			return;
+		}
+		boolean wrote = false;
+		while (channel.isWritable()) {
+			Entry entry = poll();
+			if (entry == null) {
+				break;
+			}
+			if (entry.listener == null) {
+				channel.write(entry.buffer, channel.voidPromise());
+			} else {
+				channel.write(entry.buffer).addListener(entry.listener);
+			}
+			wrote = true;
+		}
+		if (wrote) {
+			channel.flush();
+		}
+	}
+
+	private Entry poll() {
+		for (ArrayDeque<Entry> lane : lanes) {
+			Entry entry = lane.pollFirst();
+			if (entry != null) {
+				removed(entry);
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private void removed(Entry entry) {
+		queuedBytes -= entry.size;
+		--queuedCount;
+		if (entry.coalesceKey != null && coalesceEntries.get(entry.coalesceKey) == entry) {
+			coalesceEntries.remove(entry.coalesceKey);
+		}
+	}
+
+	private void updatePeak() {
+		if (queuedBytes > peakQueuedBytes) {
+			peakQueuedBytes = queuedBytes;
+		}
+	}
+
+	/**
+	 * 释放所有排队消息
+	 * 
+	 * @param reason
+	 */
+	private void clear(String reason) {
+		for (ArrayDeque<Entry> lane : lanes) {
+			Entry entry;
+			while ((entry = lane.pollFirst()) != null) {
+				fail(entry.buffer, entry.listener, reason);
+			}
+		}
+		coalesceEntries.clear();
+		queuedBytes = 0;
+		queuedCount = 0;
+	}
+
+	private void fail(ByteBuf buffer, ChannelFutureListener listener, String reason) {
+		buffer.release();
+		if (listener != null) {
+			channel.newFailedFuture(
+					new IOException(" channel " + channel.remoteAddress() + " outbound message " + reason))
+					.addListener(listener);
+		}
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.channel = ctx.channel();
+		this.channel.attr(OUTBOUND_QUEUE).set(this);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		this.channel.attr(OUTBOUND_QUEUE).set(null);
+		clear("closed");
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		// 可写事件可能在flush过程中触发，放到下一个任务里写出，避免在flush中重入flush
+		if (ctx.channel().isWritable() && queuedCount > 0 && !drainScheduled) {
+			drainScheduled = true;
+			ctx.executor().execute(drainTask);
+		}
+		ctx.fireChannelWritabilityChanged();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		clear("closed");
+		ctx.fireChannelInactive();
+	}
+
+	/**
+	 * 排队中的字节数
+	 * 
+	 * @return
+	 */
+	public int getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * 排队中的消息数
+	 * 
+	 * @return
+	 */
+	public int getQueuedCount() {
+		return queuedCount;
+	}
+
+	/**
+	 * 排队字节数峰值
+	 * 
+	 * @return
+	 */
+	public int getPeakQueuedBytes() {
+		return peakQueuedBytes;
+	}
+
+	/**
+	 * 待发送的总字节数(排队中+netty发送缓冲中)
+	 * 
+	 * @return
+	 */
+	public long getPendingBytes() {
+		ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+		return queuedBytes + (outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes());
+	}
+
+	/**
+	 * 溢出时丢弃的可丢弃消息数
+	 * 
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * 被更新消息合并掉的消息数
+	 * 
+	 * @return
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * 因溢出发送失败的消息数
+	 * 
+	 * @return
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * 一个优先级的排队
+	 */
+	private static class Lane extends ArrayDeque<Entry> {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class Entry {
+		private ByteBuf buffer;
+		private final OutboundPriority priority;
+		private final Object coalesceKey;
+		private ChannelFutureListener listener;
+		private int size;
+
+		private Entry(ByteBuf buffer, OutboundPriority priority, Object coalesceKey, ChannelFutureListener listener,
+				int size) {
+			this.buffer = buffer;
+			this.priority = priority;
+			this.coalesceKey = coalesceKey;
+			this.listener = listener;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.limitart.net.binary.outbound.constant;
+
+/**
+ * 发送优先级(链接写不动时排队，高优先级先发出)
+ * 
+ * @author hank
+ *
+ */
+public enum OutboundPriority {
+	/**
+	 * 关键消息(不会为其他消息让出空间)
+	 */
+	CRITICAL,
+	/**
+	 * 普通消息
+	 */
+	NORMAL,
+	/**
+	 * 可丢弃消息(表现类，溢出时最先丢弃)
+	 */
+	DROPPABLE,;
+}
@@ -0,0 +1,22 @@
+package com.limitart.net.binary.outbound.constant;
+
+/**
+ * 发送队列溢出策略(按配置顺序依次尝试)
+ * 
+ * @author hank
+ *
+ */
+public enum OverflowPolicy {
+	/**
+	 * 排队时相同合并键的消息只保留最新一条(如位置同步)
+	 */
+	COALESCE_LATEST,
+	/**
+	 * 丢弃最早排队的可丢弃消息腾出空间
+	 */
+	DROP_OLDEST_DROPPABLE,
+	/**
+	 * 仍放不下时断开链接
+	 */
+	DISCONNECT,;
+}
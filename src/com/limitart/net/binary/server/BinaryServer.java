@@ -13,18 +13,29 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.limitart.math.util.RandomUtil;
+import com.limitart.net.binary.codec.BatchFrameWriter;
 import com.limitart.net.binary.codec.ByteDecoder;
+import com.limitart.net.binary.codec.ChunkedFrameWriter;
+import com.limitart.net.binary.codec.FrameCompressor;
+import com.limitart.net.binary.codec.FrameDecompressor;
 import com.limitart.net.binary.handler.IHandler;
 import com.limitart.net.binary.listener.SendMessageListener;
 import com.limitart.net.binary.message.Message;
 import com.limitart.net.binary.message.MessageFactory;
 import com.limitart.net.binary.message.constant.InnerMessageEnum;
+import com.limitart.net.binary.message.constant.WireFeature;
 import com.limitart.net.binary.message.impl.validate.ConnectionValidateClientMessage;
 import com.limitart.net.binary.message.impl.validate.ConnectionValidateServerMessage;
 import com.limitart.net.binary.message.impl.validate.ConnectionValidateSuccessServerMessage;
+import com.limitart.net.binary.outbound.OutboundConfig;
+import com.limitart.net.binary.outbound.OutboundQueue;
 import com.limitart.net.binary.server.config.BinaryServerConfig;
 import com.limitart.net.binary.server.listener.BinaryServerEventListener;
+import com.limitart.net.binary.transport.TransportConfig;
+import com.limitart.net.binary.util.FrameUtil;
 import com.limitart.net.binary.util.SendMessageUtil;
+import com.limitart.net.binary.util.TransportUtil;
+import com.limitart.net.binary.util.WireFeatureUtil;
 import com.limitart.util.SymmetricEncryptionUtil;
 
 import io.netty.bootstrap.ServerBootstrap;
@@ -39,12 +50,10 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.flush.FlushConsolidationHandler;
 
 /**
  * 二进制通信服务器
@@ -55,24 +64,21 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
 @Sharable
 public class BinaryServer extends ChannelInboundHandlerAdapter {
 	private static Logger log = LogManager.getLogger();
+	private static final short BATCH_ID = InnerMessageEnum.BatchFrame.getValue();
 	private ServerBootstrap boot;
 	private Channel channel;
-	private static EventLoopGroup bossGroup;
-	private static EventLoopGroup workerGroup;
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
 	private BinaryServerConfig config;
 	protected MessageFactory messageFactory;
 	protected BinaryServerEventListener serverEventListener;
 	private ConcurrentHashMap<String, SessionValidateData> tempChannels = new ConcurrentHashMap<>();
 	private SymmetricEncryptionUtil encrypUtil;
-	static {
-		if (Epoll.isAvailable()) {
-			bossGroup = new EpollEventLoopGroup();
-			workerGroup = new EpollEventLoopGroup();
-		} else {
-			bossGroup = new NioEventLoopGroup();
-			workerGroup = new NioEventLoopGroup();
-		}
-	}
+	// 服务器支持的传输特性
+	private int wireFeatures;
+	// 帧压缩与解压(未开启压缩时为null)
+	private FrameCompressor compressor;
+	private FrameDecompressor decompressor;
 
 	public BinaryServer(BinaryServerConfig config, BinaryServerEventListener serverEventListener,
 			MessageFactory msgFactory) {
@@ -87,6 +93,23 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 		}
 		this.serverEventListener = serverEventListener;
 		this.config = config;
+		if (config.isCompactWire()) {
+			this.wireFeatures |= WireFeature.COMPACT_WIRE.getValue();
+		}
+		if (config.isVarintFrame()) {
+			this.wireFeatures |= WireFeature.VARINT_FRAME.getValue();
+		}
+		if (config.getChunkSize() > 0) {
+			this.wireFeatures |= WireFeature.CHUNKED_FRAME.getValue();
+		}
+		if (config.getBatchSize() > 0) {
+			this.wireFeatures |= WireFeature.BATCH_FRAME.getValue();
+		}
+		if (config.getCompressThreshold() > 0) {
+			this.wireFeatures |= WireFeature.COMPRESSED_FRAME.getValue();
+			this.compressor = new FrameCompressor(config.getCompressThreshold(), config.getCompressLevel());
+			this.decompressor = new FrameDecompressor(config.getDataMaxLength());
+		}
 		// 初始化内部消息
 		this.messageFactory = msgFactory.registerMsg(InnerMessageEnum.ConnectionValidateClientMessage.getValue(),
 				ConnectionValidateClientMessage.class, new ConnectionValidateClientHandler());
@@ -98,21 +121,20 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 				| InvalidAlgorithmParameterException e) {
 			log.error(e, e);
 		}
+		TransportConfig transport = config.getTransport();
+		bossGroup = TransportUtil.bossGroup(transport, config.getServerName());
+		workerGroup = TransportUtil.workerGroup(transport, config.getServerName());
 		boot = new ServerBootstrap();
-		if (Epoll.isAvailable()) {
-			bossGroup = new EpollEventLoopGroup();
-			workerGroup = new EpollEventLoopGroup();
-			boot.option(ChannelOption.SO_BACKLOG, 1024).channel(EpollServerSocketChannel.class)
-					.childOption(ChannelOption.SO_LINGER, 0).childOption(ChannelOption.SO_REUSEADDR, true)
-					.childOption(ChannelOption.SO_KEEPALIVE, true).childOption(ChannelOption.SO_SNDBUF, 32 * 1024)
-					.childOption(ChannelOption.SO_RCVBUF, 32 * 1024);
-			log.info(config.getServerName() + " epoll init");
-		} else {
-			bossGroup = new NioEventLoopGroup();
-			workerGroup = new NioEventLoopGroup();
-			boot.channel(NioServerSocketChannel.class);
-			log.info(config.getServerName() + " nio init");
+		TransportUtil.configure(boot, transport);
+		boot.childOption(ChannelOption.SO_LINGER, 0).childOption(ChannelOption.SO_REUSEADDR, true)
+				.childOption(ChannelOption.SO_KEEPALIVE, true);
+		OutboundConfig outbound = config.getOutbound();
+		if (outbound != null) {
+			boot.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+					new WriteBufferWaterMark(outbound.getLowWaterMark(), outbound.getHighWaterMark()));
 		}
+		log.info(config.getServerName() + (TransportUtil.isEpoll(transport) ? " epoll init" : " nio init")
+				+ (transport.isSharedLoop() ? ",shared loop" : ""));
 		boot.group(bossGroup, workerGroup).option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
 				.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
 				.childOption(ChannelOption.TCP_NODELAY, true).childHandler(new ChannelInitializerImpl(this));
@@ -153,8 +175,8 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 				} catch (InterruptedException e) {
 					log.error(e, e);
 				} finally {
-					bossGroup.shutdownGracefully();
-					workerGroup.shutdownGracefully();
+					TransportUtil.shutdown(config.getTransport(), bossGroup);
+					TransportUtil.shutdown(config.getTransport(), workerGroup);
 				}
 			}
 		}, config.getServerName() + "-Binder").start();
@@ -169,13 +191,31 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 
 		@Override
 		protected void initChannel(SocketChannel ch) throws Exception {
-			ch.pipeline().addLast(new ByteDecoder(config.getDataMaxLength())).addLast(this.server);
+			if (config.getChunkSize() > 0) {
+				ch.pipeline().addLast(new ChunkedFrameWriter(config.getChunkSize(), config.getDataMaxLength()));
+			}
+			if (config.getFlushConsolidationAfterFlushes() > 0) {
+				// 合并同一轮事件循环内的flush(广播时每个链接只触发一次系统调用)
+				ch.pipeline().addLast(new FlushConsolidationHandler(config.getFlushConsolidationAfterFlushes(), true));
+			}
+			if (config.getBatchSize() > 0) {
+				ch.pipeline().addLast(new BatchFrameWriter(config.getBatchSize()));
+			}
+			if (config.getOutbound() != null) {
+				ch.pipeline().addLast(new OutboundQueue(config.getOutbound()));
+			}
+			ch.pipeline().addLast(new ByteDecoder(config.getDataMaxLength()));
+			if (compressor != null) {
+				FrameCompressor.set(ch, compressor);
+				ch.pipeline().addLast(decompressor);
+			}
+			ch.pipeline().addLast(this.server);
 		}
 	}
 
 	public BinaryServer stop() {
-		bossGroup.shutdownGracefully();
-		workerGroup.shutdownGracefully();
+		TransportUtil.shutdown(config.getTransport(), bossGroup);
+		TransportUtil.shutdown(config.getTransport(), workerGroup);
 		if (channel != null) {
 			channel.close();
 		}
@@ -205,6 +245,7 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 			return;
 		}
 		msg.setValidateStr(encode);
+		msg.setWireFeatures(this.wireFeatures);
 		try {
 			SendMessageUtil.sendMessage(channel, msg, new SendMessageListener() {
 
@@ -251,8 +292,10 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 	 * 
 	 * @param context
 	 * @param validateRandom
+	 * @param wireFeatures
+	 *            客户端选用的传输特性
 	 */
-	private void onClientConnectionValidate(Channel channel, int validateRandom) {
+	private void onClientConnectionValidate(Channel channel, int validateRandom, int wireFeatures) {
 		// 查找临时缓存
 		String asLongText = channel.id().asLongText();
 		SessionValidateData sessionValidateData = tempChannels.get(asLongText);
@@ -278,6 +321,8 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 		} catch (Exception e) {
 			log.error(e, e);
 		}
+		// 成功消息按原格式发出后再启用协商的特性
+		WireFeatureUtil.setFeatures(channel, wireFeatures & this.wireFeatures);
 		this.serverEventListener.onConnectionEffective(channel);
 	}
 
@@ -285,32 +330,65 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 	public void channelRead(ChannelHandlerContext ctx, Object arg) throws Exception {
 		ByteBuf buffer = (ByteBuf) arg;
 		try {
-			// 消息id
-			short messageId = buffer.readShort();
-			Message msg = messageFactory.getMessage(messageId);
-			if (msg == null) {
-				throw new Exception(config.getServerName() + " message empty,id:" + messageId);
-			}
-			msg.buffer(buffer);
-			msg.decode();
-			IHandler handler = messageFactory.getHandler(messageId);
-			if (handler == null) {
-				throw new Exception(config.getServerName() + " can not find handler for message,id:" + messageId);
-			}
-			msg.setHandler(handler);
-			msg.setChannel(ctx.channel());
-			msg.setServer(this);
-			// 如果是内部消息，则自己消化
-			if (InnerMessageEnum.getTypeByValue(messageId) != null) {
-				handler.handle(msg);
+			if (buffer.readableBytes() >= 2 && buffer.getShort(buffer.readerIndex()) == BATCH_ID
+					&& WireFeatureUtil.isEnabled(ctx.channel(), WireFeature.BATCH_FRAME)) {
+				readBatch(ctx, buffer);
 			} else {
-				this.serverEventListener.dispatchMessage(msg);
+				readMessage(ctx, buffer);
 			}
 		} finally {
 			buffer.release();
 		}
 	}
 
+	/**
+	 * 依次分发合并帧中的消息，每条消息使用各自的切片，单条出错不影响后续消息
+	 * 
+	 * @param ctx
+	 * @param buffer
+	 * @throws Exception
+	 */
+	private void readBatch(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
+		buffer.skipBytes(2);
+		while (buffer.isReadable()) {
+			int length = FrameUtil.readVarint(buffer);
+			if (length > buffer.readableBytes()) {
+				throw new CorruptedFrameException(config.getServerName() + " bad batch frame,length:" + length);
+			}
+			try {
+				readMessage(ctx, buffer.slice(buffer.readerIndex(), length));
+			} catch (Exception e) {
+				exceptionCaught(ctx, e);
+			}
+			buffer.skipBytes(length);
+		}
+	}
+
+	private void readMessage(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
+		// 消息id
+		short messageId = buffer.readShort();
+		Message msg = messageFactory.getMessage(messageId);
+		if (msg == null) {
+			throw new Exception(config.getServerName() + " message empty,id:" + messageId);
+		}
+		msg.buffer(buffer);
+		msg.compactWire(WireFeatureUtil.isEnabled(ctx.channel(), WireFeature.COMPACT_WIRE));
+		msg.decode();
+		IHandler handler = messageFactory.getHandler(messageId);
+		if (handler == null) {
+			throw new Exception(config.getServerName() + " can not find handler for message,id:" + messageId);
+		}
+		msg.setHandler(handler);
+		msg.setChannel(ctx.channel());
+		msg.setServer(this);
+		// 如果是内部消息，则自己消化
+		if (InnerMessageEnum.getTypeByValue(messageId) != null) {
+			handler.handle(msg);
+		} else {
+			this.serverEventListener.dispatchMessage(msg);
+		}
+	}
+
 	@Override
 	public void channelActive(ChannelHandlerContext ctx) throws Exception {
 		this.serverEventListener.onChannelActive(ctx.channel());
@@ -356,7 +434,7 @@ public class BinaryServer extends ChannelInboundHandlerAdapter {
 		public void handle(Message message) {
 			ConnectionValidateClientMessage msg = (ConnectionValidateClientMessage) message;
 			int validateRandom = msg.getValidateRandom();
-			msg.getServer().onClientConnectionValidate(message.getChannel(), validateRandom);
+			msg.getServer().onClientConnectionValidate(message.getChannel(), validateRandom, msg.getWireFeatures());
 		}
 	}
 }
@@ -1,5 +1,13 @@
 package com.limitart.net.binary.server.config;
 
+import java.util.zip.Deflater;
+
+import com.limitart.net.binary.codec.BatchFrameWriter;
+import com.limitart.net.binary.codec.ChunkedFrameWriter;
+import com.limitart.net.binary.outbound.OutboundConfig;
+import com.limitart.net.binary.transport.TransportConfig;
+import com.limitart.net.binary.transport.TransportConfig.TransportConfigBuilder;
+
 /**
  * 二进制服务器配置
  * 
@@ -12,6 +20,15 @@ public final class BinaryServerConfig {
 	private int dataMaxLength;
 	private String connectionPass;
 	private int connectionValidateTimeInSec;
+	private boolean compactWire;
+	private boolean varintFrame;
+	private int chunkSize;
+	private int compressThreshold;
+	private int compressLevel;
+	private int batchSize;
+	private int flushConsolidationAfterFlushes;
+	private TransportConfig transport;
+	private OutboundConfig outbound;
 
 	private BinaryServerConfig(BinaryServerConfigBuilder builder) {
 		this.serverName = builder.serverName;
@@ -19,6 +36,15 @@ public final class BinaryServerConfig {
 		this.dataMaxLength = builder.dataMaxLength;
 		this.connectionPass = builder.connectionPass;
 		this.connectionValidateTimeInSec = builder.connectionValidateTimeInSec;
+		this.compactWire = builder.compactWire;
+		this.varintFrame = builder.varintFrame;
+		this.chunkSize = builder.chunkSize;
+		this.compressThreshold = builder.compressThreshold;
+		this.compressLevel = builder.compressLevel;
+		this.batchSize = builder.batchSize;
+		this.flushConsolidationAfterFlushes = builder.flushConsolidationAfterFlushes;
+		this.transport = builder.transport;
+		this.outbound = builder.outbound;
 	}
 
 	public String getServerName() {
@@ -41,19 +67,69 @@ public final class BinaryServerConfig {
 		return dataMaxLength;
 	}
 
+	public boolean isCompactWire() {
+		return compactWire;
+	}
+
+	public boolean isVarintFrame() {
+		return varintFrame;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	public int getCompressLevel() {
+		return compressLevel;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getFlushConsolidationAfterFlushes() {
+		return flushConsolidationAfterFlushes;
+	}
+
+	public TransportConfig getTransport() {
+		return transport;
+	}
+
+	public OutboundConfig getOutbound() {
+		return outbound;
+	}
+
 	public static class BinaryServerConfigBuilder {
 		private String serverName;
 		private int port;
 		private int dataMaxLength;
 		private String connectionPass;
 		private int connectionValidateTimeInSec;
+		private boolean compactWire;
+		private boolean varintFrame;
+		private int chunkSize;
+		private int compressThreshold;
+		private int compressLevel;
+		private int batchSize;
+		private int flushConsolidationAfterFlushes;
+		private TransportConfig transport;
+		private OutboundConfig outbound;
 
 		public BinaryServerConfigBuilder() {
 			this.serverName = "Binary-Server";
 			this.port = 8888;
 			this.dataMaxLength = 20 * 1024 * 1024;
 			this.connectionPass = "limitart-core";
+			this.varintFrame = true;
+			this.compressLevel = Deflater.BEST_SPEED;
 			this.connectionValidateTimeInSec = 20;
+			this.flushConsolidationAfterFlushes = 256;
+			this.transport = new TransportConfigBuilder().sendBufferSize(32 * 1024).receiveBufferSize(32 * 1024)
+					.build();
 		}
 
 		/**
@@ -115,5 +191,111 @@ public final class BinaryServerConfig {
 			this.connectionValidateTimeInSec = connectionValidateTimeInSec;
 			return this;
 		}
+
+		/**
+		 * 是否允许紧凑编码(varint/zigzag)，需客户端同样开启
+		 * 
+		 * @param compactWire
+		 * @return
+		 */
+		public BinaryServerConfigBuilder compactWire(boolean compactWire) {
+			this.compactWire = compactWire;
+			return this;
+		}
+
+		/**
+		 * 同一轮事件循环内合并flush，最多合并多少次后强制flush(小于等于0则不合并)
+		 * 
+		 * @param flushConsolidationAfterFlushes
+		 * @return
+		 */
+		public BinaryServerConfigBuilder flushConsolidationAfterFlushes(int flushConsolidationAfterFlushes) {
+			this.flushConsolidationAfterFlushes = flushConsolidationAfterFlushes;
+			return this;
+		}
+
+		/**
+		 * 是否允许varint帧长度(突破64K)，需对端同样开启
+		 * 
+		 * @param varintFrame
+		 * @return
+		 */
+		public BinaryServerConfigBuilder varintFrame(boolean varintFrame) {
+			this.varintFrame = varintFrame;
+			return this;
+		}
+
+		/**
+		 * 大消息分片大小，超过此大小的消息分片发送(小于等于0则不分片，默认不分片)，需对端同样开启。
+		 * 开启后分片之间可能插入较小的消息，大消息与小消息的先后顺序不再保证
+		 * 
+		 * @param chunkSize
+		 * @return
+		 */
+		public BinaryServerConfigBuilder chunkSize(int chunkSize) {
+			this.chunkSize = Math.min(chunkSize, ChunkedFrameWriter.MAX_CHUNK_SIZE);
+			return this;
+		}
+
+		/**
+		 * 压缩阈值，编码后超过此大小的消息压缩发送(小于等于0则不压缩，默认不压缩)，需对端同样开启。
+		 * 开启后会增加两端CPU开销，可从4K左右开始尝试
+		 * 
+		 * @param compressThreshold
+		 * @return
+		 */
+		public BinaryServerConfigBuilder compressThreshold(int compressThreshold) {
+			this.compressThreshold = compressThreshold;
+			return this;
+		}
+
+		/**
+		 * deflate压缩级别(1~9，越大压缩率越高越耗CPU)
+		 * 
+		 * @param compressLevel
+		 * @return
+		 */
+		public BinaryServerConfigBuilder compressLevel(int compressLevel) {
+			if (compressLevel >= Deflater.BEST_SPEED && compressLevel <= Deflater.BEST_COMPRESSION) {
+				this.compressLevel = compressLevel;
+			}
+			return this;
+		}
+
+		/**
+		 * 合并帧大小，同一轮事件循环内不超过此大小的小消息合并成一帧发送(小于等于0则不合并，默认不合并)，需对端同样开启。
+		 * 开启后flush推迟到当前事件循环已排队的任务之后，可从4K左右开始尝试
+		 * 
+		 * @param batchSize
+		 * @return
+		 */
+		public BinaryServerConfigBuilder batchSize(int batchSize) {
+			this.batchSize = Math.min(batchSize, BatchFrameWriter.MAX_BATCH_SIZE);
+			return this;
+		}
+
+		/**
+		 * 传输配置(事件循环线程、epoll、缓冲区)
+		 * 
+		 * @param transport
+		 * @return
+		 */
+		public BinaryServerConfigBuilder transport(TransportConfig transport) {
+			if (transport != null) {
+				this.transport = transport;
+			}
+			return this;
+		}
+
+		/**
+		 * 链接发送队列(水位、优先级与溢出策略)，null为不排队(不可写时直接发送失败)
+		 * 
+		 * @param outbound
+		 * @return
+		 */
+		public BinaryServerConfigBuilder outbound(OutboundConfig outbound) {
+			this.outbound = outbound;
+			return this;
+		}
 	}
 }
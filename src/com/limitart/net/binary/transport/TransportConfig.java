@@ -0,0 +1,217 @@
+package com.limitart.net.binary.transport;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 网络传输配置(事件循环线程与套接字参数)
+ * 
+ * @author hank
+ *
+ */
+public final class TransportConfig {
+	// 是否使用进程内共享的事件循环(否则每个服务器/客户端独占)
+	private boolean sharedLoop;
+	// 接收链接线程数(仅服务器，0为netty默认)
+	private int bossThreads;
+	// IO线程数(0为netty默认:CPU核数*2)
+	private int workerThreads;
+	// 可用时使用epoll
+	private boolean nativeTransport;
+	// epoll边缘触发(否则水平触发)
+	private boolean edgeTriggered;
+	// 自定义线程工厂(用于绑定CPU等)
+	private ThreadFactory threadFactory;
+	// 套接字发送缓冲区(0为系统默认)
+	private int sendBufferSize;
+	// 套接字接收缓冲区(0为系统默认)
+	private int receiveBufferSize;
+	// 等待接受的链接队列长度(仅服务器)
+	private int backlog;
+
+	private TransportConfig(TransportConfigBuilder builder) {
+		this.sharedLoop = builder.sharedLoop;
+		this.bossThreads = builder.bossThreads;
+		this.workerThreads = builder.workerThreads;
+		this.nativeTransport = builder.nativeTransport;
+		this.edgeTriggered = builder.edgeTriggered;
+		this.threadFactory = builder.threadFactory;
+		this.sendBufferSize = builder.sendBufferSize;
+		this.receiveBufferSize = builder.receiveBufferSize;
+		this.backlog = builder.backlog;
+	}
+
+	public boolean isSharedLoop() {
+		return sharedLoop;
+	}
+
+	public int getBossThreads() {
+		return bossThreads;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public boolean isNativeTransport() {
+		return nativeTransport;
+	}
+
+	public boolean isEdgeTriggered() {
+		return edgeTriggered;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public static class TransportConfigBuilder {
+		private boolean sharedLoop;
+		private int bossThreads;
+		private int workerThreads;
+		private boolean nativeTransport;
+		private boolean edgeTriggered;
+		private ThreadFactory threadFactory;
+		private int sendBufferSize;
+		private int receiveBufferSize;
+		private int backlog;
+
+		public TransportConfigBuilder() {
+			this.sharedLoop = false;
+			this.bossThreads = 1;
+			this.workerThreads = 0;
+			this.nativeTransport = true;
+			this.edgeTriggered = true;
+			this.backlog = 1024;
+		}
+
+		/**
+		 * 构建配置
+		 * 
+		 * @return
+		 */
+		public TransportConfig build() {
+			return new TransportConfig(this);
+		}
+
+		/**
+		 * 使用进程内共享的事件循环(线程数以第一个创建者为准，停止时不关闭)
+		 * 
+		 * @param sharedLoop
+		 * @return
+		 */
+		public TransportConfigBuilder sharedLoop(boolean sharedLoop) {
+			this.sharedLoop = sharedLoop;
+			return this;
+		}
+
+		/**
+		 * 接收链接线程数(仅服务器)
+		 * 
+		 * @param bossThreads
+		 * @return
+		 */
+		public TransportConfigBuilder bossThreads(int bossThreads) {
+			if (bossThreads >= 0) {
+				this.bossThreads = bossThreads;
+			}
+			return this;
+		}
+
+		/**
+		 * IO线程数(0为netty默认)
+		 * 
+		 * @param workerThreads
+		 * @return
+		 */
+		public TransportConfigBuilder workerThreads(int workerThreads) {
+			if (workerThreads >= 0) {
+				this.workerThreads = workerThreads;
+			}
+			return this;
+		}
+
+		/**
+		 * 可用时使用epoll
+		 * 
+		 * @param nativeTransport
+		 * @return
+		 */
+		public TransportConfigBuilder nativeTransport(boolean nativeTransport) {
+			this.nativeTransport = nativeTransport;
+			return this;
+		}
+
+		/**
+		 * epoll边缘触发(默认)，关闭则为水平触发
+		 * 
+		 * @param edgeTriggered
+		 * @return
+		 */
+		public TransportConfigBuilder edgeTriggered(boolean edgeTriggered) {
+			this.edgeTriggered = edgeTriggered;
+			return this;
+		}
+
+		/**
+		 * 事件循环的线程工厂，需要绑定CPU时传入带亲和性设置的工厂
+		 * 
+		 * @param threadFactory
+		 * @return
+		 */
+		public TransportConfigBuilder threadFactory(ThreadFactory threadFactory) {
+			this.threadFactory = threadFactory;
+			return this;
+		}
+
+		/**
+		 * 套接字发送缓冲区(0为系统默认)
+		 * 
+		 * @param sendBufferSize
+		 * @return
+		 */
+		public TransportConfigBuilder sendBufferSize(int sendBufferSize) {
+			if (sendBufferSize >= 0) {
+				this.sendBufferSize = sendBufferSize;
+			}
+			return this;
+		}
+
+		/**
+		 * 套接字接收缓冲区(0为系统默认)
+		 * 
+		 * @param receiveBufferSize
+		 * @return
+		 */
+		public TransportConfigBuilder receiveBufferSize(int receiveBufferSize) {
+			if (receiveBufferSize >= 0) {
+				this.receiveBufferSize = receiveBufferSize;
+			}
+			return this;
+		}
+
+		/**
+		 * 等待接受的链接队列长度(仅服务器)
+		 * 
+		 * @param backlog
+		 * @return
+		 */
+		public TransportConfigBuilder backlog(int backlog) {
+			if (backlog > 0) {
+				this.backlog = backlog;
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.limitart.net.binary.util;
+
+import java.io.IOException;
+
+import com.limitart.net.binary.message.constant.WireFeature;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * 帧头读写(2字节长度或协商后的varint长度)
+ * 
+ * @author hank
+ *
+ */
+public class FrameUtil {
+	/**
+	 * 2字节长度帧的最大长度
+	 */
+	public static final int SHORT_FRAME_MAX_LENGTH = 0xFFFF;
+	/**
+	 * varint长度最多占用的字节数
+	 */
+	public static final int VARINT_MAX_BYTES = 5;
+
+	/**
+	 * 编码前为帧头预留的字节数
+	 * 
+	 * @param features
+	 * @return
+	 */
+	public static int headerReserve(int features) {
+		return WireFeature.VARINT_FRAME.isEnabled(features) ? VARINT_MAX_BYTES : 2;
+	}
+
+	/**
+	 * 在预留位置回填帧头，varint帧头靠右对齐并移动读指针到帧头起点
+	 * 
+	 * @param buffer
+	 * @param start
+	 *            预留区起点
+	 * @param features
+	 * @throws IOException
+	 */
+	public static void writeHeader(ByteBuf buffer, int start, int features) throws IOException {
+		int reserve = headerReserve(features);
+		int length = buffer.writerIndex() - start - reserve;
+		if (WireFeature.VARINT_FRAME.isEnabled(features)) {
+			int headerStart = start + reserve - varintSize(length);
+			int index = headerStart;
+			while ((length & ~0x7F) != 0) {
+				buffer.setByte(index++, (length & 0x7F) | 0x80);
+				length >>>= 7;
+			}
+			buffer.setByte(index, length);
+			buffer.readerIndex(headerStart);
+			return;
+		}
+		if (length > SHORT_FRAME_MAX_LENGTH) {
+			// 分片发送时原帧头不会写出，由分片重新组帧
+			if (!WireFeature.CHUNKED_FRAME.isEnabled(features)) {
+				throw new IOException("frame length " + length + " exceeds " + SHORT_FRAME_MAX_LENGTH
+						+ ",peer not support varint frame or chunked frame");
+			}
+			length = 0;
+		}
+		buffer.setShort(start, length);
+	}
+
+	/**
+	 * 追加写入帧长度
+	 * 
+	 * @param buffer
+	 * @param length
+	 * @param features
+	 */
+	public static void writeLength(ByteBuf buffer, int length, int features) {
+		if (WireFeature.VARINT_FRAME.isEnabled(features)) {
+			writeVarint(buffer, length);
+		} else {
+			buffer.writeShort(length);
+		}
+	}
+
+	/**
+	 * 追加写入varint
+	 * 
+	 * @param buffer
+	 * @param value
+	 */
+	public static void writeVarint(ByteBuf buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer.writeByte(value);
+	}
+
+	/**
+	 * 读取完整帧内的varint
+	 * 
+	 * @param buffer
+	 * @return
+	 */
+	public static int readVarint(ByteBuf buffer) {
+		int value = 0;
+		for (int shift = 0; shift <= 28; shift += 7) {
+			if (!buffer.isReadable()) {
+				break;
+			}
+			byte b = buffer.readByte();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new CorruptedFrameException("bad varint");
+	}
+
+	/**
+	 * 已编码帧的帧头长度
+	 * 
+	 * @param frame
+	 * @param features
+	 * @return
+	 */
+	public static int headerLength(ByteBuf frame, int features) {
+		if (!WireFeature.VARINT_FRAME.isEnabled(features)) {
+			return 2;
+		}
+		int index = frame.readerIndex();
+		while (frame.getByte(index) < 0) {
+			++index;
+		}
+		return index - frame.readerIndex() + 1;
+	}
+
+	/**
+	 * varint占用的字节数
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static int varintSize(int value) {
+		if ((value & (0xffffffff << 7)) == 0) {
+			return 1;
+		}
+		if ((value & (0xffffffff << 14)) == 0) {
+			return 2;
+		}
+		if ((value & (0xffffffff << 21)) == 0) {
+			return 3;
+		}
+		if ((value & (0xffffffff << 28)) == 0) {
+			return 4;
+		}
+		return 5;
+	}
+}
@@ -1,26 +1,54 @@
 package com.limitart.net.binary.util;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.Collection;
 
+import com.limitart.net.binary.codec.FrameCompressor;
 import com.limitart.net.binary.listener.SendMessageListener;
 import com.limitart.net.binary.message.Message;
+import com.limitart.net.binary.message.constant.WireFeature;
+import com.limitart.net.binary.outbound.OutboundQueue;
+import com.limitart.net.binary.outbound.constant.OutboundPriority;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 
 public class SendMessageUtil {
+	// 影响编码结果的特性
+	private static final int ENCODE_FEATURES = WireFeature.COMPACT_WIRE.getValue()
+			| WireFeature.VARINT_FRAME.getValue() | WireFeature.CHUNKED_FRAME.getValue()
+			| WireFeature.COMPRESSED_FRAME.getValue();
+	private static final int ENCODE_MODES = 16;
+
 	public static void sendMessage(Channel channel, Message msg, SendMessageListener listener) throws Exception {
+		sendMessage(channel, msg, msg.outboundPriority(), msg.coalesceKey(), listener);
+	}
+
+	/**
+	 * 按指定优先级发送消息(链接未开启发送队列时优先级与合并键无效)
+	 * 
+	 * @param channel
+	 * @param msg
+	 * @param priority
+	 * @param coalesceKey
+	 *            排队时的合并键(null为不合并)
+	 * @param listener
+	 * @throws Exception
+	 */
+	public static void sendMessage(Channel channel, Message msg, OutboundPriority priority, Object coalesceKey,
+			SendMessageListener listener) throws Exception {
 		if (channel == null) {
 			if (listener != null) {
 				listener.onComplete(false, new NullPointerException("channel"), channel);
 			}
 			return;
 		}
-		if (!channel.isWritable()) {
+		OutboundQueue queue = OutboundQueue.get(channel);
+		if (queue == null && !channel.isWritable()) {
 			if (listener != null) {
 				listener.onComplete(false, new IOException(" channel " + channel.remoteAddress() + " is unwritable"),
 						channel);
@@ -28,63 +56,154 @@ public class SendMessageUtil {
 			return;
 		}
 		ByteBuf buffer = channel.alloc().ioBuffer();
-		buffer.writeShort(0);
-		buffer.writeShort(msg.getMessageId());
-		msg.buffer(buffer);
-		msg.encode();
-		msg.buffer(null);
-		int sumLen = buffer.readableBytes() - 2;
-		buffer.setShort(0, sumLen);
-		ChannelFuture writeAndFlush = channel.writeAndFlush(buffer);
-		writeAndFlush.addListener(new ChannelFutureListener() {
-
-			@Override
-			public void operationComplete(ChannelFuture arg0) throws Exception {
-				if (listener != null) {
-					listener.onComplete(arg0.isSuccess(), arg0.cause(), arg0.channel());
-				}
-			}
-		});
+		try {
+			buffer = encode(buffer, msg, WireFeatureUtil.getFeatures(channel), FrameCompressor.get(channel),
+					channel.alloc());
+		} catch (Exception e) {
+			buffer.release();
+			throw e;
+		}
+		if (queue != null) {
+			queue.offer(buffer, priority, coalesceKey, listener == null ? null : new ListenerAdapter(listener));
+		} else if (listener == null) {
+			channel.writeAndFlush(buffer, channel.voidPromise());
+		} else {
+			channel.writeAndFlush(buffer).addListener(new ListenerAdapter(listener));
+		}
 	}
 
-	public static void sendMessage(List<Channel> channels, Message msg, SendMessageListener listener) throws Exception {
+	/**
+	 * 广播消息
+	 * <p>
+	 * 消息只编码一次(每种编码模式)到池化缓冲区，各链接共享该缓冲区并由各自的EventLoop写出，
+	 * 配合服务器管线中的FlushConsolidationHandler在同一轮事件循环内合并flush。所有链接共用一个结果监听。
+	 * 开启了发送队列的链接按消息的优先级与合并键排队。压缩也只做一次，使用该模式下第一个链接的压缩配置
+	 * 
+	 * @param channels
+	 * @param msg
+	 * @param listener
+	 * @throws Exception
+	 */
+	public static void sendMessage(Collection<Channel> channels, Message msg, SendMessageListener listener)
+			throws Exception {
 		if (channels == null || channels.isEmpty()) {
 			if (listener != null) {
 				listener.onComplete(false, new IOException(" channel list  is null"), null);
 			}
 			return;
 		}
-		ByteBuf buffer = Unpooled.directBuffer(256);
-		buffer.writeShort(0);
+		ChannelFutureListener futureListener = listener == null ? null : new ListenerAdapter(listener);
+		// 每种编码模式只编码一次
+		ByteBuf[] encoded = new ByteBuf[ENCODE_MODES];
+		try {
+			for (Channel channel : channels) {
+				OutboundQueue queue = OutboundQueue.get(channel);
+				if (queue == null && !channel.isWritable()) {
+					if (listener != null) {
+						listener.onComplete(false,
+								new IOException(" channel " + channel.remoteAddress() + " is unwritable"), channel);
+					}
+					continue;
+				}
+				int features = WireFeatureUtil.getFeatures(channel) & ENCODE_FEATURES;
+				int mode = encodeMode(features);
+				ByteBuf buffer = encoded[mode];
+				if (buffer == null) {
+					buffer = PooledByteBufAllocator.DEFAULT.directBuffer(256);
+					encoded[mode] = buffer;
+					buffer = encode(buffer, msg, features, FrameCompressor.get(channel),
+							PooledByteBufAllocator.DEFAULT);
+					encoded[mode] = buffer;
+				}
+				if (queue != null) {
+					queue.offer(buffer.retainedDuplicate(), msg.outboundPriority(), msg.coalesceKey(), futureListener);
+				} else if (futureListener == null) {
+					channel.writeAndFlush(buffer.retainedDuplicate(), channel.voidPromise());
+				} else {
+					channel.writeAndFlush(buffer.retainedDuplicate()).addListener(futureListener);
+				}
+			}
+		} finally {
+			for (ByteBuf buffer : encoded) {
+				if (buffer != null) {
+					buffer.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 影响编码结果的特性对应的编码模式
+	 * 
+	 * @param features
+	 * @return
+	 */
+	private static int encodeMode(int features) {
+		return (WireFeature.COMPACT_WIRE.isEnabled(features) ? 1 : 0)
+				| (WireFeature.VARINT_FRAME.isEnabled(features) ? 2 : 0)
+				| (WireFeature.CHUNKED_FRAME.isEnabled(features) ? 4 : 0)
+				| (WireFeature.COMPRESSED_FRAME.isEnabled(features) ? 8 : 0);
+	}
+
+	/**
+	 * 编码消息(帧头+2字节消息id+消息体)
+	 * 
+	 * @param buffer
+	 * @param msg
+	 * @param features
+	 *            链接已协商的特性
+	 * @param compressor
+	 *            链接的帧压缩(可为null)
+	 * @param alloc
+	 * @return 编码结果，压缩时为新的缓冲区(原缓冲区已释放)，异常时原缓冲区仍由调用者释放
+	 * @throws Exception
+	 */
+	private static ByteBuf encode(ByteBuf buffer, Message msg, int features, FrameCompressor compressor,
+			ByteBufAllocator alloc) throws Exception {
+		int start = buffer.writerIndex();
+		int reserve = FrameUtil.headerReserve(features);
+		// 先预留帧头，编码完再回填长度
+		buffer.writerIndex(start + reserve);
 		buffer.writeShort(msg.getMessageId());
 		msg.buffer(buffer);
+		msg.compactWire(WireFeature.COMPACT_WIRE.isEnabled(features));
 		msg.encode();
 		msg.buffer(null);
-		int sumLen = buffer.readableBytes() - 2;
-		// 替换长度的值
-		buffer.setShort(0, sumLen);
-		for (int i = 0; i < channels.size(); ++i) {
-			Channel channel = channels.get(i);
-			if (!channel.isWritable()) {
-				if (listener != null) {
-					listener.onComplete(false,
-							new IOException(" channel " + channel.remoteAddress() + " is unwritable"), channel);
+		if (compressor != null && WireFeature.COMPRESSED_FRAME.isEnabled(features)) {
+			int payloadStart = start + reserve;
+			ByteBuf compressed = compressor
+					.compress(buffer.slice(payloadStart, buffer.writerIndex() - payloadStart), reserve, alloc);
+			if (compressed != null) {
+				try {
+					FrameUtil.writeHeader(compressed, 0, features);
+				} catch (Exception e) {
+					compressed.release();
+					throw e;
 				}
-				continue;
-			}
-			ChannelFuture writeAndFlush = channel.writeAndFlush(buffer.retainedSlice());
-			if (listener != null) {
-				writeAndFlush.addListener(new ChannelFutureListener() {
-
-					@Override
-					public void operationComplete(ChannelFuture arg0) throws Exception {
-						listener.onComplete(arg0.isSuccess(), arg0.cause(), arg0.channel());
-					}
-				});
-			}
-			if (i == channels.size() - 1) {
 				buffer.release();
+				return compressed;
 			}
 		}
+		FrameUtil.writeHeader(buffer, start, features);
+		return buffer;
+	}
+
+	/**
+	 * 将写出结果转交给发送监听
+	 * 
+	 * @author hank
+	 * 
+	 */
+	private static class ListenerAdapter implements ChannelFutureListener {
+		private SendMessageListener listener;
+
+		private ListenerAdapter(SendMessageListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			listener.onComplete(future.isSuccess(), future.cause(), future.channel());
+		}
 	}
 }
@@ -0,0 +1,76 @@
+package com.limitart.net.binary.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * 解码端的短字符串缓存(每线程直接映射表)
+ * <p>
+ * 适用于服务名、方法名、类型名等反复出现的短字符串，命中时直接比较缓冲区字节，不产生任何分配
+ * 
+ * @author hank
+ *
+ */
+public final class StringInternCache {
+	// 缓存的最大字节数
+	private static final int MAX_LENGTH = 64;
+	// 槽数量(2的幂)
+	private static final int SIZE = 1024;
+	private static final FastThreadLocal<StringInternCache> CACHE = new FastThreadLocal<StringInternCache>() {
+
+		@Override
+		protected StringInternCache initialValue() throws Exception {
+			return new StringInternCache();
+		}
+	};
+	private final byte[][] keys = new byte[SIZE][];
+	private final String[] values = new String[SIZE];
+
+	private StringInternCache() {
+	}
+
+	/**
+	 * 从缓冲区读取UTF-8字符串，短字符串优先从缓存中取
+	 * 
+	 * @param buffer
+	 * @param length
+	 *            字节数
+	 * @return
+	 */
+	public static String read(ByteBuf buffer, int length) {
+		if (length > MAX_LENGTH) {
+			return buffer.readCharSequence(length, CharsetUtil.UTF_8).toString();
+		}
+		return CACHE.get().read0(buffer, length);
+	}
+
+	private String read0(ByteBuf buffer, int length) {
+		int index = buffer.readerIndex();
+		int hash = length;
+		for (int i = 0; i < length; ++i) {
+			hash = 31 * hash + buffer.getByte(index + i);
+		}
+		int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+		byte[] key = keys[slot];
+		if (key != null && key.length == length && equals(buffer, index, key)) {
+			buffer.skipBytes(length);
+			return values[slot];
+		}
+		byte[] bytes = new byte[length];
+		buffer.readBytes(bytes);
+		String value = new String(bytes, CharsetUtil.UTF_8);
+		keys[slot] = bytes;
+		values[slot] = value;
+		return value;
+	}
+
+	private static boolean equals(ByteBuf buffer, int index, byte[] key) {
+		for (int i = 0; i < key.length; ++i) {
+			if (buffer.getByte(index + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,209 @@
+package com.limitart.net.binary.util;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.limitart.net.binary.transport.TransportConfig;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 按传输配置创建事件循环和通道
+ * 
+ * @author hank
+ *
+ */
+public final class TransportUtil {
+	private static Logger log = LogManager.getLogger();
+	// 进程内共享的事件循环(epoll和nio各一套，不关闭，按第一个使用者的配置创建)
+	private static SharedGroup sharedEpollBossGroup;
+	private static SharedGroup sharedEpollWorkerGroup;
+	private static SharedGroup sharedNioBossGroup;
+	private static SharedGroup sharedNioWorkerGroup;
+
+	private TransportUtil() {
+	}
+
+	/**
+	 * 是否使用epoll
+	 * 
+	 * @param config
+	 * @return
+	 */
+	public static boolean isEpoll(TransportConfig config) {
+		return config.isNativeTransport() && Epoll.isAvailable();
+	}
+
+	/**
+	 * 接收链接的事件循环
+	 * 
+	 * @param config
+	 * @param name
+	 *            独占时的线程名
+	 * @return
+	 */
+	public static synchronized EventLoopGroup bossGroup(TransportConfig config, String name) {
+		if (!config.isSharedLoop()) {
+			return newGroup(config, config.getBossThreads(), name + "-Boss");
+		}
+		if (isEpoll(config)) {
+			if (sharedEpollBossGroup == null) {
+				sharedEpollBossGroup = new SharedGroup(config, config.getBossThreads(), "Shared-Boss");
+			}
+			return sharedEpollBossGroup.get(config, config.getBossThreads(), name);
+		}
+		if (sharedNioBossGroup == null) {
+			sharedNioBossGroup = new SharedGroup(config, config.getBossThreads(), "Shared-Boss");
+		}
+		return sharedNioBossGroup.get(config, config.getBossThreads(), name);
+	}
+
+	/**
+	 * IO事件循环
+	 * 
+	 * @param config
+	 * @param name
+	 *            独占时的线程名
+	 * @return
+	 */
+	public static synchronized EventLoopGroup workerGroup(TransportConfig config, String name) {
+		if (!config.isSharedLoop()) {
+			return newGroup(config, config.getWorkerThreads(), name + "-Worker");
+		}
+		if (isEpoll(config)) {
+			if (sharedEpollWorkerGroup == null) {
+				sharedEpollWorkerGroup = new SharedGroup(config, config.getWorkerThreads(), "Shared-Worker");
+			}
+			return sharedEpollWorkerGroup.get(config, config.getWorkerThreads(), name);
+		}
+		if (sharedNioWorkerGroup == null) {
+			sharedNioWorkerGroup = new SharedGroup(config, config.getWorkerThreads(), "Shared-Worker");
+		}
+		return sharedNioWorkerGroup.get(config, config.getWorkerThreads(), name);
+	}
+
+	/**
+	 * 关闭事件循环(共享的不关闭)
+	 * 
+	 * @param config
+	 * @param group
+	 */
+	public static void shutdown(TransportConfig config, EventLoopGroup group) {
+		if (group != null && !config.isSharedLoop()) {
+			group.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * 设置服务器通道类型和参数
+	 * 
+	 * @param boot
+	 * @param config
+	 */
+	public static void configure(ServerBootstrap boot, TransportConfig config) {
+		Class<? extends ServerChannel> channelClass;
+		if (isEpoll(config)) {
+			channelClass = EpollServerSocketChannel.class;
+			EpollMode mode = config.isEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+			boot.option(EpollChannelOption.EPOLL_MODE, mode).childOption(EpollChannelOption.EPOLL_MODE, mode);
+		} else {
+			channelClass = NioServerSocketChannel.class;
+		}
+		boot.channel(channelClass).option(ChannelOption.SO_BACKLOG, config.getBacklog());
+		if (config.getSendBufferSize() > 0) {
+			boot.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+		}
+		if (config.getReceiveBufferSize() > 0) {
+			boot.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+		}
+	}
+
+	/**
+	 * 设置客户端通道类型和参数
+	 * 
+	 * @param bootstrap
+	 * @param config
+	 */
+	public static void configure(Bootstrap bootstrap, TransportConfig config) {
+		Class<? extends SocketChannel> channelClass;
+		if (isEpoll(config)) {
+			channelClass = EpollSocketChannel.class;
+			bootstrap.option(EpollChannelOption.EPOLL_MODE,
+					config.isEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+		} else {
+			channelClass = NioSocketChannel.class;
+		}
+		bootstrap.channel(channelClass);
+		if (config.getSendBufferSize() > 0) {
+			bootstrap.option(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+		}
+		if (config.getReceiveBufferSize() > 0) {
+			bootstrap.option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+		}
+	}
+
+	private static EventLoopGroup newGroup(TransportConfig config, int threads, String name) {
+		ThreadFactory threadFactory = config.getThreadFactory();
+		if (threadFactory == null) {
+			threadFactory = new DefaultThreadFactory(name);
+		}
+		if (isEpoll(config)) {
+			return new EpollEventLoopGroup(threads, threadFactory);
+		}
+		return new NioEventLoopGroup(threads, threadFactory);
+	}
+
+	/**
+	 * 共享的事件循环，记录创建时的线程数与线程工厂
+	 * 
+	 * @author hank
+	 *
+	 */
+	private static class SharedGroup {
+		private final EventLoopGroup group;
+		private final String name;
+		private final int threads;
+		private final ThreadFactory threadFactory;
+
+		private SharedGroup(TransportConfig config, int threads, String name) {
+			this.group = newGroup(config, threads, name);
+			this.name = name;
+			this.threads = threads;
+			this.threadFactory = config.getThreadFactory();
+		}
+
+		/**
+		 * 获取共享的事件循环，配置与创建时不同则告警(不会按新配置重建)
+		 * 
+		 * @param config
+		 * @param threads
+		 * @param user
+		 * @return
+		 */
+		private EventLoopGroup get(TransportConfig config, int threads, String user) {
+			if (threads != this.threads || config.getThreadFactory() != this.threadFactory) {
+				log.warn(user + " asks " + name + " for threads:" + threads + ",threadFactory:"
+						+ config.getThreadFactory() + ",but it was created with threads:" + this.threads
+						+ ",threadFactory:" + this.threadFactory + ",use sharedLoop(false) for a dedicated loop");
+			}
+			return group;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.limitart.net.binary.util;
+
+import com.limitart.net.binary.message.constant.WireFeature;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * 链接已协商的传输特性
+ * 
+ * @author hank
+ *
+ */
+public class WireFeatureUtil {
+	private static final AttributeKey<Integer> WIRE_FEATURES = AttributeKey.valueOf("limitart.wireFeatures");
+
+	/**
+	 * 获取链接已协商的特性
+	 * 
+	 * @param channel
+	 * @return
+	 */
+	public static int getFeatures(Channel channel) {
+		Integer features = channel.attr(WIRE_FEATURES).get();
+		return features == null ? 0 : features;
+	}
+
+	/**
+	 * 设置链接已协商的特性(验证成功后调用)
+	 * 
+	 * @param channel
+	 * @param features
+	 */
+	public static void setFeatures(Channel channel, int features) {
+		Attribute<Integer> attr = channel.attr(WIRE_FEATURES);
+		attr.set(features);
+	}
+
+	/**
+	 * 链接是否启用了某特性
+	 * 
+	 * @param channel
+	 * @param feature
+	 * @return
+	 */
+	public static boolean isEnabled(Channel channel, WireFeature feature) {
+		return feature.isEnabled(getFeatures(channel));
+	}
+}
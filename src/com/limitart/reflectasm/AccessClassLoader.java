@@ -5,7 +5,7 @@ import java.lang.reflect.Method;
 import java.security.ProtectionDomain;
 import java.util.WeakHashMap;
 
-class AccessClassLoader extends ClassLoader {
+public class AccessClassLoader extends ClassLoader {
 	// Weak-references to class loaders, to avoid perm gen memory leaks, for example in app servers/web containters if the
 	// reflectasm library (including this class) is loaded outside the deployed applications (WAR/EAR) using ReflectASM/Kryo (exts,
 	// user classpath, etc).
@@ -19,7 +19,7 @@ class AccessClassLoader extends ClassLoader {
 	static private volatile Method defineClassMethod;
 
 	@SuppressWarnings("rawtypes")
-	static AccessClassLoader get (Class type) {
+	public static AccessClassLoader get (Class type) {
 		ClassLoader parent = getParentClassLoader(type);
 		// 1. fast-path:
 		if (selfContextParentClassLoader.equals(parent)) {
@@ -79,7 +79,7 @@ class AccessClassLoader extends ClassLoader {
 		return super.loadClass(name, resolve);
 	}
 
-	Class<?> defineClass (String name, byte[] bytes) throws ClassFormatError {
+	public Class<?> defineClass (String name, byte[] bytes) throws ClassFormatError {
 		try {
 			// Attempt to load the access class in the same loader, which makes protected and default access members accessible.
 			return (Class<?>)getDefineClassMethod().invoke(getParent(), new Object[] {name, bytes, Integer.valueOf(0), Integer.valueOf(bytes.length),
@@ -9,10 +9,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,11 +37,13 @@ import com.limitart.rpcx.consumerx.listener.IConsumerListener;
 import com.limitart.rpcx.consumerx.selector.define.IProviderSelector;
 import com.limitart.rpcx.consumerx.struct.ProviderRemote;
 import com.limitart.rpcx.consumerx.struct.RemoteFuture;
+import com.limitart.rpcx.consumerx.struct.RemoteServiceDispatch;
 import com.limitart.rpcx.define.ServiceX;
 import com.limitart.rpcx.exception.ServiceError;
 import com.limitart.rpcx.exception.ServiceXExecuteException;
 import com.limitart.rpcx.exception.ServiceXIOException;
 import com.limitart.rpcx.exception.ServiceXProxyException;
+import com.limitart.rpcx.exception.ServiceXRejectedException;
 import com.limitart.rpcx.message.constant.RpcMessageEnum;
 import com.limitart.rpcx.message.service.DirectFetchProviderServicesMessage;
 import com.limitart.rpcx.message.service.DirectFetchProviderServicesResultMessage;
@@ -48,12 +54,18 @@ import com.limitart.rpcx.message.service.SubscribeServiceFromServiceCenterConsum
 import com.limitart.rpcx.message.service.SubscribeServiceResultServiceCenterMessage;
 import com.limitart.rpcx.message.service.meta.ProviderHostMeta;
 import com.limitart.rpcx.message.service.meta.ProviderServiceMeta;
+import com.limitart.rpcx.message.service.meta.ServiceDispatchMeta;
+import com.limitart.rpcx.struct.RpcMethodCodec;
 import com.limitart.rpcx.struct.RpcProviderName;
 import com.limitart.rpcx.util.RpcUtil;
 import com.limitart.util.ReflectionUtil;
 import com.limitart.util.StringUtil;
 
 import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * RPC客户端
@@ -73,11 +85,16 @@ public class ConsumerX implements BinaryClientEventListener {
 	private HashMap<String, Class<?>> serviceProxyClasses = new HashMap<>();
 	// 服务对应的服务器ID集合
 	private ConcurrentHashMap<String, ConcurrentHashSet<Integer>> serviceServers = new ConcurrentHashMap<>();
+	// 服务器ID对应的服务调用表
+	private ConcurrentHashMap<Integer, HashMap<String, RemoteServiceDispatch>> dispatchTables = new ConcurrentHashMap<>();
 	// RequestId生成器
 	private AtomicInteger requestIdCreater = new AtomicInteger(0);
 	// RPC调用回调集合
 	private ConcurrentHashMap<Integer, RemoteFuture> futures = new ConcurrentHashMap<>();
 	private LongAdder dropNum = new LongAdder();
+	// 异步调用超时时间轮
+	private HashedWheelTimer timeoutTimer = new HashedWheelTimer(new DefaultThreadFactory("RPC-Consumer-Timeout", true),
+			10, TimeUnit.MILLISECONDS);
 
 	private IConsumerListener listener;
 	private boolean isDirectLink = false;
@@ -125,6 +142,21 @@ public class ConsumerX implements BinaryClientEventListener {
 		}
 	}
 
+	public void stop() {
+		if (serviceCenterClient != null) {
+			serviceCenterClient.disConnect();
+		}
+		for (BinaryClient client : clients.values()) {
+			client.disConnect();
+		}
+		timeoutTimer.stop();
+		for (RemoteFuture future : futures.values()) {
+			if (futures.remove(future.getRequestId(), future)) {
+				future.completeExceptionally(new ServiceXExecuteException("ConsumerX已停止"));
+			}
+		}
+	}
+
 	private class serviceCenterListener implements BinaryClientEventListener {
 		private ConsumerX client;
 
@@ -212,10 +244,8 @@ public class ConsumerX implements BinaryClientEventListener {
 
 	@Override
 	public void onConnectionEffective(BinaryClient client) {
-		if (isDirectLink) {
-			// 当链接生效时，拉取对应服务器服务列表
-			directFetchProverServices(client);
-		}
+		// 当链接生效时，拉取对应服务器服务列表和调用表
+		directFetchProverServices(client);
 		if (this.listener != null) {
 			this.listener.onConsumerConnected(client);
 		}
@@ -247,7 +277,17 @@ public class ConsumerX implements BinaryClientEventListener {
 	 * 
 	 * @param services
 	 */
-	private void onDirectFetchProviderServices(BinaryClient bc, int providerId, List<String> services) {
+	private void onDirectFetchProviderServices(BinaryClient bc, int providerId, List<String> services,
+			List<ServiceDispatchMeta> dispatchTable) {
+		HashMap<String, RemoteServiceDispatch> dispatches = new HashMap<>();
+		for (ServiceDispatchMeta meta : dispatchTable) {
+			dispatches.put(meta.getServiceName(), new RemoteServiceDispatch(meta.getServiceId(), meta.getMethods()));
+		}
+		dispatchTables.put(providerId, dispatches);
+		if (!isDirectLink) {
+			// 服务中心模式下服务列表由服务中心推送
+			return;
+		}
 		// 检查服务是否完全匹配
 		HashSet<String> notMatchList = new HashSet<>(serviceProxyClasses.keySet());
 		for (String remoteService : services) {
@@ -351,6 +391,7 @@ public class ConsumerX implements BinaryClientEventListener {
 			BinaryClient otherClient = next.getValue();
 			if (client.channelLongID().equals(otherClient.channelLongID())) {
 				iterator.remove();
+				dispatchTables.remove(providerId);
 				log.info("RPC服务器断开链接，providerId:" + providerId + "，地址：" + client.remoteAddress());
 				// 删除服务
 				for (Entry<String, ConcurrentHashSet<Integer>> entry : serviceServers.entrySet()) {
@@ -365,6 +406,13 @@ public class ConsumerX implements BinaryClientEventListener {
 						}
 					}
 				}
+				// 等待此服务器回应的调用直接失败
+				for (RemoteFuture future : futures.values()) {
+					if (future.getProviderId() == providerId && futures.remove(future.getRequestId(), future)) {
+						future.completeExceptionally(new ServiceXIOException("RPC服务器：" + providerId + "断开链接，方法："
+								+ future.getMethodOverloadName() + "，id：" + future.getRequestId()));
+					}
+				}
 			}
 		}
 	}
@@ -398,7 +446,7 @@ public class ConsumerX implements BinaryClientEventListener {
 	}
 
 	/**
-	 * 远程异步调用
+	 * 远程调用，callback不为空时为异步调用，直接返回null
 	 * 
 	 * @param providerName
 	 * @param serviceClass
@@ -414,8 +462,44 @@ public class ConsumerX implements BinaryClientEventListener {
 	public Object remoteCall(RpcProviderName providerName, Class<?> serviceClass, Method method, Object[] args,
 			IProviderSelector providerSelector, IServiceAsyncCallback callback)
 			throws ServiceXExecuteException, ServiceXIOException, InterruptedException, ServiceXProxyException {
-		return proxyExecute(RpcUtil.getServiceName(providerName, serviceClass), null, method.getName(),
-				ReflectionUtil.getMethodOverloadName(method), args, providerSelector, callback);
+		if (callback == null) {
+			return proxyExecute(RpcUtil.getServiceName(providerName, serviceClass), RpcMethodCodec.get(method), args,
+					providerSelector);
+		}
+		remoteCallAsync(providerName, serviceClass, method, args, providerSelector)
+				.whenComplete(new BiConsumer<Object, Throwable>() {
+
+					@Override
+					public void accept(Object returnVal, Throwable cause) {
+						try {
+							if (cause == null) {
+								callback.action(returnVal);
+							} else {
+								callback.onError(cause);
+							}
+						} catch (Exception e) {
+							log.error(e, e);
+						}
+					}
+				});
+		return null;
+	}
+
+	/**
+	 * 远程异步调用，超时、网络错误或服务器错误码都会使Future异常完成
+	 * 
+	 * @param providerName
+	 * @param serviceClass
+	 * @param method
+	 * @param args
+	 * @param providerSelector
+	 * @return
+	 * @throws ServiceXProxyException
+	 */
+	public CompletableFuture<Object> remoteCallAsync(RpcProviderName providerName, Class<?> serviceClass,
+			Method method, Object[] args, IProviderSelector providerSelector) throws ServiceXProxyException {
+		return proxyExecuteAsync(RpcUtil.getServiceName(providerName, serviceClass), RpcMethodCodec.get(method),
+				args, providerSelector);
 	}
 
 	/**
@@ -486,11 +570,11 @@ public class ConsumerX implements BinaryClientEventListener {
 					}
 				}
 				// 检查返回参数是否合法
-				Class<?> returnType = method.getReturnType();
+				Class<?> returnType = RpcUtil.getActualReturnType(method);
 				if (!RpcUtil.checkParamType(returnType)) {
 					throw new ServiceXProxyException("类" + clazz.getName() + "的方法" + methodOverloadName + "的返回"
 							+ returnType.getName() + "必须是基础类型（包括其数组）或" + MessageMeta.class.getName()
-							+ "的子类，或者为上述类型的java.util.List或java.util.ArrayList");
+							+ "的子类，或者为上述类型的java.util.List或java.util.ArrayList（可用CompletableFuture包装）");
 				}
 				// 异常抛出检查
 				Class<?>[] exceptionTypes = method.getExceptionTypes();
@@ -508,15 +592,23 @@ public class ConsumerX implements BinaryClientEventListener {
 					throw new ServiceXProxyException("类" + clazz.getName() + "的方法" + methodOverloadName + "的异常抛出必须有："
 							+ Exception.class.getName());
 				}
+				// 预先生成方法签名编解码器
+				RpcMethodCodec.get(method);
 			}
 			// 创建动态代理类
 			Object newProxyInstance = ReflectionUtil.newProxy(clazz, new InvocationHandler() {
 
 				@Override
 				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-					return proxyExecute(serviceName, proxy, method.getName(),
-							ReflectionUtil.getMethodOverloadName(method), args, ConsumerX.this.config.getSelector(),
-							null);
+					// Object的方法在本地处理，不走远程调用
+					if (method.getDeclaringClass() == Object.class) {
+						return proxyObjectMethod(proxy, method, args);
+					}
+					RpcMethodCodec codec = RpcMethodCodec.get(method);
+					if (RpcUtil.isAsyncMethod(method)) {
+						return proxyExecuteAsync(serviceName, codec, args, ConsumerX.this.config.getSelector());
+					}
+					return proxyExecute(serviceName, codec, args, ConsumerX.this.config.getSelector());
 				}
 			});
 			if (serviceProxyClasses.containsKey(serviceName)) {
@@ -529,57 +621,76 @@ public class ConsumerX implements BinaryClientEventListener {
 	}
 
 	/**
-	 * rpc动态代理方法
+	 * 动态代理的equals、hashCode、toString
 	 * 
 	 * @param proxy
 	 * @param method
 	 * @param args
+	 * @return
+	 */
+	private static Object proxyObjectMethod(Object proxy, Method method, Object[] args) {
+		String methodName = method.getName();
+		if ("equals".equals(methodName)) {
+			return proxy == args[0];
+		} else if ("hashCode".equals(methodName)) {
+			return System.identityHashCode(proxy);
+		} else if ("toString".equals(methodName)) {
+			return proxy.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+		}
+		throw new UnsupportedOperationException(methodName);
+	}
+
+	/**
+	 * rpc动态代理方法（同步等待结果）
+	 * 
+	 * @param serviceName
+	 * @param codec
+	 * @param args
+	 * @param providerSelector
 	 * @throws RPCIOException
 	 * @throws InterruptedException
 	 * @throws ServiceXIOException
 	 */
-	private Object proxyExecute(String serviceName, Object proxy, String methodName, String methodOverloadName,
-			Object[] args, IProviderSelector providerSelector, IServiceAsyncCallback callback)
+	private Object proxyExecute(String serviceName, RpcMethodCodec codec, Object[] args,
+			IProviderSelector providerSelector)
 			throws ServiceXExecuteException, InterruptedException, ServiceXIOException {
-		if (proxy != null) {
-			if ("equals".equals(methodName)) {
-				return proxy == args[0];
-			} else if ("hashCode".equals(methodName)) {
-				return System.identityHashCode(proxy);
-			} else if ("toString".equals(methodName)) {
-				return proxy.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
-			}
-		}
-		if (futures.size() > ConsumerX.this.config.getRpcCallBackMaxLength()) {
-			dropNum.increment();
-			throw new ServiceXExecuteException("回调列表超过限制：" + ConsumerX.this.config.getRpcCallBackMaxLength()
-					+ ",不进行任何处理！,已抛弃数量：" + dropNum.longValue());
-		}
-		RemoteFuture future = rpcSend(serviceName, methodOverloadName, args, providerSelector);
-		future.setCallback(callback);
-		int providerId = future.getProviderId();
-		if (future.getResponseResult() == null) {
-			// 无条件线程等待
-			boolean await = future.getCountDownLatch().await(ConsumerX.this.config.getRpcExecuteTimeoutInMills(),
+		String methodOverloadName = codec.getOverloadName();
+		RemoteFuture future = rpcSend(serviceName, codec, args, providerSelector, false);
+		try {
+			return future.getPromise().get(ConsumerX.this.config.getRpcExecuteTimeoutInMills(),
 					TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
 			futures.remove(future.getRequestId());
-			if (!await) {
-				throw new ServiceXExecuteException(
-						"动态代理方法：" + methodOverloadName + "，服务器：" + providerId + "超时，回调ID：" + future.getRequestId());
+			throw new ServiceXExecuteException("动态代理方法：" + methodOverloadName + "，服务器：" + future.getProviderId()
+					+ "超时，回调ID：" + future.getRequestId());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ServiceXExecuteException) {
+				throw (ServiceXExecuteException) cause;
+			} else if (cause instanceof ServiceXIOException) {
+				throw (ServiceXIOException) cause;
 			}
+			throw new ServiceXExecuteException("动态代理方法：" + methodOverloadName + "执行失败", cause);
 		}
-		// 等待完成设置回调完成，服务器处理完毕后就不用唤醒此线程
-		RpcResultServerMessage response = future.getResponseResult();
-		int errorCode = response.getErrorCode();
-		if (errorCode == ServiceError.SUCCESS) {
-			return response.getReturnVal();
-		} else if (errorCode == ServiceError.SERVER_HAS_NO_MODULE) {
-			throw new ServiceXExecuteException("服务器：" + providerId + "没有服务名为：" + serviceName);
-		} else if (errorCode == ServiceError.SERVER_HAS_NO_METHOD) {
-			throw new ServiceXExecuteException(
-					"服务器：" + providerId + "没有服务名为：" + serviceName + "的" + methodOverloadName + "方法！");
-		} else {
-			throw new ServiceXExecuteException("服务器：" + providerId + "服务名：" + serviceName + "返回未知错误码！");
+	}
+
+	/**
+	 * rpc动态代理方法（异步），请求在同一链接上流水线发送，超时由时间轮驱动
+	 * 
+	 * @param serviceName
+	 * @param codec
+	 * @param args
+	 * @param providerSelector
+	 * @return
+	 */
+	private CompletableFuture<Object> proxyExecuteAsync(String serviceName, RpcMethodCodec codec, Object[] args,
+			IProviderSelector providerSelector) {
+		try {
+			return rpcSend(serviceName, codec, args, providerSelector, true).getPromise();
+		} catch (Exception e) {
+			CompletableFuture<Object> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
 		}
 	}
 
@@ -587,13 +698,21 @@ public class ConsumerX implements BinaryClientEventListener {
 	 * 发送到RPC请求到服务器
 	 * 
 	 * @param serviceName
-	 * @param methodOverloadName
+	 * @param codec
 	 * @param args
+	 * @param async
+	 *            异步调用由时间轮负责超时
 	 * @return
 	 * @throws Exception
 	 */
-	private RemoteFuture rpcSend(String serviceName, String methodOverloadName, Object[] args,
-			IProviderSelector providerSelector) throws ServiceXIOException {
+	private RemoteFuture rpcSend(String serviceName, RpcMethodCodec codec, Object[] args,
+			IProviderSelector providerSelector, boolean async) throws ServiceXIOException {
+		String methodOverloadName = codec.getOverloadName();
+		if (futures.size() > ConsumerX.this.config.getRpcCallBackMaxLength()) {
+			dropNum.increment();
+			throw new ServiceXExecuteException("回调列表超过限制：" + ConsumerX.this.config.getRpcCallBackMaxLength()
+					+ ",不进行任何处理！,已抛弃数量：" + dropNum.longValue());
+		}
 		ConcurrentHashSet<Integer> list = serviceServers.get(serviceName);
 		if (list == null) {
 			throw new ServiceXIOException("服务：" + serviceName + "找不到可用服务器列表");
@@ -607,30 +726,39 @@ public class ConsumerX implements BinaryClientEventListener {
 		if (binaryClient == null) {
 			throw new ServiceXIOException("严重错误，找不到服务提供者：" + selectServer + "的链接实例！");
 		}
+		HashMap<String, RemoteServiceDispatch> dispatches = dispatchTables.get(selectServer);
+		RemoteServiceDispatch dispatch = dispatches == null ? null : dispatches.get(serviceName);
+		if (dispatch == null) {
+			throw new ServiceXIOException("服务提供者：" + selectServer + "尚未同步服务：" + serviceName + "的调用表");
+		}
+		int methodId = dispatch.getMethodId(methodOverloadName);
+		if (methodId < 0) {
+			throw new ServiceXExecuteException("服务器：" + selectServer + "没有服务名为：" + serviceName + "的"
+					+ methodOverloadName + "方法！");
+		}
 		// 开始构造消息
 		RpcExecuteClientMessage msg = new RpcExecuteClientMessage();
 		msg.setRequestId(requestIdCreater.incrementAndGet());
-		msg.setModuleName(serviceName);
-		msg.setMethodName(methodOverloadName);
-		if (args != null && args.length > 0) {
-			for (Object obj : args) {
-				if (obj == null) {
-					msg.getParamTypes().add(null);
-					msg.getParams().add(null);
-				} else {
-					msg.getParamTypes().add(obj.getClass().getName());
-					msg.getParams().add(obj);
-				}
-			}
-		}
+		msg.setServiceId(dispatch.getServiceId());
+		msg.setMethodId(methodId);
+		msg.setParams(args);
+		msg.setCodec(codec);
 		RemoteFuture future = new RemoteFuture();
 		future.setProviderId(selectServer);
 		future.setRequestId(msg.getRequestId());
+		future.setServiceName(serviceName);
+		future.setMethodOverloadName(methodOverloadName);
+		future.setCodec(codec);
 		futures.put(msg.getRequestId(), future);
 		if (futures.size() > 100) {
 			log.error("警告！开始动态代理方法：" + methodOverloadName + "，服务器：" + selectServer + "，回调列表长度：" + futures.size()
 					+ "(并发量)，id：" + msg.getRequestId());
 		}
+		if (async) {
+			// 先注册超时，避免回应先于超时注册到达
+			future.setTimeout(timeoutTimer.newTimeout(new RpcTimeoutTask(future),
+					ConsumerX.this.config.getRpcExecuteTimeoutInMills(), TimeUnit.MILLISECONDS));
+		}
 		// 发送消息
 		try {
 			SendMessageUtil.sendMessage(binaryClient.channel(), msg, new SendMessageListener() {
@@ -638,23 +766,57 @@ public class ConsumerX implements BinaryClientEventListener {
 				@Override
 				public void onComplete(boolean isSuccess, Throwable cause, Channel channel) {
 					if (!isSuccess) {
-						futures.remove(msg.getRequestId());
-						try {
-							throw new ServiceXIOException("动态代理方法：" + methodOverloadName + "，服务器：" + selectServer
-									+ "失败！网络未连接！" + "，id：" + msg.getRequestId());
-						} catch (ServiceXIOException e) {
-							log.error(e, e);
-							log.error(cause, cause);
-						}
+						onSendFailed(future, cause);
 					}
 				}
 			});
 		} catch (Exception e) {
-			log.error(e, e);
+			onSendFailed(future, e);
 		}
 		return future;
 	}
 
+	/**
+	 * 请求发送失败
+	 * 
+	 * @param future
+	 * @param cause
+	 */
+	private void onSendFailed(RemoteFuture future, Throwable cause) {
+		if (!futures.remove(future.getRequestId(), future)) {
+			return;
+		}
+		ServiceXIOException e = new ServiceXIOException("动态代理方法：" + future.getMethodOverloadName() + "，服务器："
+				+ future.getProviderId() + "失败！网络未连接！" + "，id：" + future.getRequestId());
+		if (cause != null) {
+			e.initCause(cause);
+		}
+		log.error(e, e);
+		future.completeExceptionally(e);
+	}
+
+	/**
+	 * 异步调用超时
+	 * 
+	 * @author hank
+	 * 
+	 */
+	private class RpcTimeoutTask implements TimerTask {
+		private RemoteFuture future;
+
+		private RpcTimeoutTask(RemoteFuture future) {
+			this.future = future;
+		}
+
+		@Override
+		public void run(Timeout timeout) throws Exception {
+			if (futures.remove(future.getRequestId(), future)) {
+				future.completeExceptionally(new ServiceXExecuteException("动态代理方法：" + future.getMethodOverloadName()
+						+ "，服务器：" + future.getProviderId() + "超时，回调ID：" + future.getRequestId()));
+			}
+		}
+	}
+
 	/**
 	 * 当RPC服务器回应RPC服务结果
 	 * 
@@ -665,22 +827,46 @@ public class ConsumerX implements BinaryClientEventListener {
 	 */
 	private void onRPCResonse(RpcResultServerMessage msg) {
 		int requestId = msg.getRequestId();
-		RemoteFuture rpcFuture = futures.get(requestId);
+		RemoteFuture rpcFuture = futures.remove(requestId);
 		if (rpcFuture == null) {
-			log.error(new ServiceXExecuteException("requestId:" + requestId + "找不到回调！"));
+			msg.releaseReturnVal();
+			log.error(new ServiceXExecuteException("requestId:" + requestId + "找不到回调（可能已超时）！"));
 			return;
 		}
-		rpcFuture.setResponseResult(msg);
-		// 不是异步回调
-		if (rpcFuture.getCallback() == null) {
-			// 唤醒线程
-			rpcFuture.getCountDownLatch().countDown();
-		} else {
-			futures.remove(requestId);
-			int errorCode = msg.getErrorCode();
-			if (errorCode == ServiceError.SUCCESS) {
-				rpcFuture.getCallback().action(msg.getReturnVal());
+		int errorCode = msg.getErrorCode();
+		int providerId = rpcFuture.getProviderId();
+		String serviceName = rpcFuture.getServiceName();
+		if (errorCode != ServiceError.SUCCESS) {
+			msg.releaseReturnVal();
+		}
+		if (errorCode == ServiceError.SUCCESS) {
+			Object returnVal;
+			try {
+				returnVal = msg.decodeReturnVal(rpcFuture.getCodec());
+			} catch (Exception e) {
+				rpcFuture.completeExceptionally(new ServiceXExecuteException(
+						"服务器：" + providerId + "返回值解码失败，方法：" + rpcFuture.getMethodOverloadName(), e));
+				return;
 			}
+			rpcFuture.complete(returnVal);
+		} else if (errorCode == ServiceError.SERVER_HAS_NO_MODULE) {
+			rpcFuture.completeExceptionally(
+					new ServiceXExecuteException("服务器：" + providerId + "没有服务名为：" + serviceName));
+		} else if (errorCode == ServiceError.SERVER_HAS_NO_METHOD) {
+			rpcFuture.completeExceptionally(new ServiceXExecuteException("服务器：" + providerId + "没有服务名为：" + serviceName
+					+ "的" + rpcFuture.getMethodOverloadName() + "方法！"));
+		} else if (errorCode == ServiceError.SERVER_BUSY) {
+			rpcFuture.completeExceptionally(new ServiceXRejectedException(
+					"服务器：" + providerId + "繁忙，拒绝执行：" + serviceName + "的" + rpcFuture.getMethodOverloadName() + "方法！"));
+		} else if (errorCode == ServiceError.SERVER_EXECUTE_ERROR) {
+			rpcFuture.completeExceptionally(new ServiceXExecuteException(
+					"服务器：" + providerId + "执行：" + serviceName + "的" + rpcFuture.getMethodOverloadName() + "方法出错！"));
+		} else if (errorCode == ServiceError.SERVER_ENCODE_ERROR) {
+			rpcFuture.completeExceptionally(new ServiceXExecuteException(
+					"服务器：" + providerId + "编码：" + serviceName + "的" + rpcFuture.getMethodOverloadName() + "方法返回值出错！"));
+		} else {
+			rpcFuture.completeExceptionally(
+					new ServiceXExecuteException("服务器：" + providerId + "服务名：" + serviceName + "返回未知错误码：" + errorCode));
 		}
 	}
 
@@ -701,7 +887,8 @@ public class ConsumerX implements BinaryClientEventListener {
 			DirectFetchProviderServicesResultMessage msg = (DirectFetchProviderServicesResultMessage) message;
 			int providerId = msg.getProviderId();
 			List<String> services = msg.getServices();
-			((ConsumerX) message.getExtra()).onDirectFetchProviderServices(message.getClient(), providerId, services);
+			((ConsumerX) message.getExtra()).onDirectFetchProviderServices(message.getClient(), providerId, services,
+					msg.getDispatchTable());
 		}
 	}
 
@@ -10,4 +10,11 @@ public interface IServiceAsyncCallback {
 
 	public void action(Object returnVal);
 
+	/**
+	 * 调用失败（超时、网络错误或服务器返回错误码）
+	 * 
+	 * @param cause
+	 */
+	public default void onError(Throwable cause) {
+	}
 }
@@ -1,10 +1,10 @@
 package com.limitart.rpcx.consumerx.struct;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 
-import com.limitart.rpcx.consumerx.define.IServiceAsyncCallback;
-import com.limitart.rpcx.message.service.RpcResultServerMessage;
+import com.limitart.rpcx.struct.RpcMethodCodec;
 
+import io.netty.util.Timeout;
 
 /**
  * 远程调用回调
@@ -15,9 +15,14 @@ import com.limitart.rpcx.message.service.RpcResultServerMessage;
 public class RemoteFuture {
 	private int requestId;
 	private int providerId;
-	private volatile RpcResultServerMessage responseResult;
-	private IServiceAsyncCallback callback;
-	private CountDownLatch countDownLatch = new CountDownLatch(1);
+	private String serviceName;
+	private String methodOverloadName;
+	// 解码返回值用的方法签名
+	private RpcMethodCodec codec;
+	// 调用结果，同步调用等待它，异步调用直接返回给调用者
+	private CompletableFuture<Object> promise = new CompletableFuture<>();
+	// 异步调用的超时任务
+	private volatile Timeout timeout;
 
 	public int getRequestId() {
 		return requestId;
@@ -27,14 +32,6 @@ public class RemoteFuture {
 		this.requestId = requestId;
 	}
 
-	public RpcResultServerMessage getResponseResult() {
-		return responseResult;
-	}
-
-	public void setResponseResult(RpcResultServerMessage responseResult) {
-		this.responseResult = responseResult;
-	}
-
 	public int getProviderId() {
 		return providerId;
 	}
@@ -43,20 +40,68 @@ public class RemoteFuture {
 		this.providerId = providerId;
 	}
 
-	public IServiceAsyncCallback getCallback() {
-		return callback;
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	public void setServiceName(String serviceName) {
+		this.serviceName = serviceName;
+	}
+
+	public String getMethodOverloadName() {
+		return methodOverloadName;
+	}
+
+	public void setMethodOverloadName(String methodOverloadName) {
+		this.methodOverloadName = methodOverloadName;
 	}
 
-	public void setCallback(IServiceAsyncCallback callback) {
-		this.callback = callback;
+	public RpcMethodCodec getCodec() {
+		return codec;
 	}
 
-	public CountDownLatch getCountDownLatch() {
-		return countDownLatch;
+	public void setCodec(RpcMethodCodec codec) {
+		this.codec = codec;
 	}
 
-	public void setCountDownLatch(CountDownLatch countDownLatch) {
-		this.countDownLatch = countDownLatch;
+	public CompletableFuture<Object> getPromise() {
+		return promise;
 	}
 
+	public Timeout getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * 正常完成
+	 * 
+	 * @param returnVal
+	 * @return
+	 */
+	public boolean complete(Object returnVal) {
+		cancelTimeout();
+		return promise.complete(returnVal);
+	}
+
+	/**
+	 * 异常完成
+	 * 
+	 * @param cause
+	 * @return
+	 */
+	public boolean completeExceptionally(Throwable cause) {
+		cancelTimeout();
+		return promise.completeExceptionally(cause);
+	}
+
+	private void cancelTimeout() {
+		Timeout t = this.timeout;
+		if (t != null) {
+			t.cancel();
+		}
+	}
 }
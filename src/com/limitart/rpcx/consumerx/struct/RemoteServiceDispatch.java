@@ -0,0 +1,37 @@
+package com.limitart.rpcx.consumerx.struct;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 远程服务调用表（由提供者在握手时下发）
+ * 
+ * @author hank
+ *
+ */
+public class RemoteServiceDispatch {
+	private int serviceId;
+	private HashMap<String, Integer> methodIds = new HashMap<>();
+
+	public RemoteServiceDispatch(int serviceId, List<String> methods) {
+		this.serviceId = serviceId;
+		for (int i = 0; i < methods.size(); ++i) {
+			methodIds.put(methods.get(i), i);
+		}
+	}
+
+	public int getServiceId() {
+		return serviceId;
+	}
+
+	/**
+	 * 获取方法Id
+	 * 
+	 * @param methodOverloadName
+	 * @return 没有此方法返回-1
+	 */
+	public int getMethodId(String methodOverloadName) {
+		Integer methodId = methodIds.get(methodOverloadName);
+		return methodId == null ? -1 : methodId;
+	}
+}
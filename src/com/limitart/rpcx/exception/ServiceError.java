@@ -19,4 +19,16 @@ public class ServiceError {
 	 * 没有方法
 	 */
 	public static int SERVER_HAS_NO_METHOD = 2;
+	/**
+	 * 服务方法执行异常
+	 */
+	public static int SERVER_EXECUTE_ERROR = 3;
+	/**
+	 * 执行队列已满，拒绝执行
+	 */
+	public static int SERVER_BUSY = 4;
+	/**
+	 * 返回值编码失败
+	 */
+	public static int SERVER_ENCODE_ERROR = 5;
 }
@@ -12,4 +12,8 @@ public class ServiceXExecuteException extends RuntimeException {
 	public ServiceXExecuteException(String info) {
 		super(info);
 	}
+
+	public ServiceXExecuteException(String info, Throwable cause) {
+		super(info, cause);
+	}
 }
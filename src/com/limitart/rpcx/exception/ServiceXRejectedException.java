@@ -0,0 +1,15 @@
+package com.limitart.rpcx.exception;
+
+/**
+ * 服务提供者执行队列已满，拒绝执行
+ * 
+ * @author Hank
+ *
+ */
+public class ServiceXRejectedException extends ServiceXExecuteException {
+	private static final long serialVersionUID = 1L;
+
+	public ServiceXRejectedException(String info) {
+		super(info);
+	}
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import com.limitart.net.binary.message.Message;
 import com.limitart.rpcx.message.constant.RpcMessageEnum;
+import com.limitart.rpcx.message.service.meta.ServiceDispatchMeta;
 
 /**
  * RPC服务器服务列表拉取结果
@@ -15,6 +16,8 @@ import com.limitart.rpcx.message.constant.RpcMessageEnum;
 public class DirectFetchProviderServicesResultMessage extends Message {
 	private int providerId;
 	private List<String> services = new ArrayList<>();
+	// 服务和方法的数字Id
+	private List<ServiceDispatchMeta> dispatchTable = new ArrayList<>();
 
 	public int getProviderId() {
 		return providerId;
@@ -32,6 +35,14 @@ public class DirectFetchProviderServicesResultMessage extends Message {
 		this.services = services;
 	}
 
+	public List<ServiceDispatchMeta> getDispatchTable() {
+		return dispatchTable;
+	}
+
+	public void setDispatchTable(List<ServiceDispatchMeta> dispatchTable) {
+		this.dispatchTable = dispatchTable;
+	}
+
 	@Override
 	public short getMessageId() {
 		return RpcMessageEnum.DirectFetchProviderServicesResultMessage.getValue();
@@ -41,11 +52,13 @@ public class DirectFetchProviderServicesResultMessage extends Message {
 	public void encode() throws Exception {
 		putInt(this.providerId);
 		putStringList(this.services);
+		putMessageMetaList(this.dispatchTable);
 	}
 
 	@Override
 	public void decode() throws Exception {
 		this.providerId = getInt();
 		this.services = getStringList();
+		this.dispatchTable = getMessageMetaList(ServiceDispatchMeta.class);
 	}
 }
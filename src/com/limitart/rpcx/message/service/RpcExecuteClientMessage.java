@@ -1,21 +1,24 @@
 package com.limitart.rpcx.message.service;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import com.limitart.net.binary.message.Message;
 import com.limitart.rpcx.message.constant.RpcMessageEnum;
+import com.limitart.rpcx.struct.RpcMethodCodec;
+
+import io.netty.buffer.ByteBuf;
 
 public class RpcExecuteClientMessage extends Message {
 	private int requestId;
-	private String moduleName;
-	private String methodName;
-	private List<String> paramTypes = new ArrayList<>();
-	private List<Object> params = new ArrayList<>();
+	private int serviceId;
+	private int methodId;
+	private Object[] params;
+	// 编码参数用的方法签名
+	private transient RpcMethodCodec codec;
+	// 解码时尚未确定方法，先保留参数部分，由提供者按方法签名解码
+	private transient ByteBuf paramsBuffer;
 
 	@Override
 	public String toString() {
-		return moduleName + "@" + methodName;
+		return serviceId + "@" + methodId;
 	}
 
 	public int getRequestId() {
@@ -26,36 +29,61 @@ public class RpcExecuteClientMessage extends Message {
 		this.requestId = requestId;
 	}
 
-	public String getModuleName() {
-		return moduleName;
+	public int getServiceId() {
+		return serviceId;
 	}
 
-	public void setModuleName(String moduleName) {
-		this.moduleName = moduleName;
+	public void setServiceId(int serviceId) {
+		this.serviceId = serviceId;
 	}
 
-	public String getMethodName() {
-		return methodName;
+	public int getMethodId() {
+		return methodId;
 	}
 
-	public void setMethodName(String methodName) {
-		this.methodName = methodName;
+	public void setMethodId(int methodId) {
+		this.methodId = methodId;
 	}
 
-	public List<Object> getParams() {
+	public Object[] getParams() {
 		return params;
 	}
 
-	public void setParams(List<Object> params) {
+	public void setParams(Object[] params) {
 		this.params = params;
 	}
 
-	public List<String> getParamTypes() {
-		return paramTypes;
+	public void setCodec(RpcMethodCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * 按方法签名解码参数，解码后释放保留的参数部分
+	 * 
+	 * @param codec
+	 * @return
+	 * @throws Exception
+	 */
+	public Object[] decodeParams(RpcMethodCodec codec) throws Exception {
+		ByteBuf old = buffer();
+		buffer(this.paramsBuffer);
+		try {
+			this.params = codec.decodeParams(this);
+			return this.params;
+		} finally {
+			buffer(old);
+			releaseParams();
+		}
 	}
 
-	public void setParamTypes(List<String> paramTypes) {
-		this.paramTypes = paramTypes;
+	/**
+	 * 释放保留的参数部分
+	 */
+	public void releaseParams() {
+		if (this.paramsBuffer != null) {
+			this.paramsBuffer.release();
+			this.paramsBuffer = null;
+		}
 	}
 
 	@Override
@@ -66,25 +94,16 @@ public class RpcExecuteClientMessage extends Message {
 	@Override
 	public void encode() throws Exception {
 		putInt(this.requestId);
-		putString(this.moduleName);
-		putString(this.methodName);
-		putStringList(this.paramTypes);
-		if (this.paramTypes != null) {
-			for (Object object : params) {
-				encodeObj(object);
-			}
-		}
+		putInt(this.serviceId);
+		putInt(this.methodId);
+		this.codec.encodeParams(this, this.params);
 	}
 
 	@Override
 	public void decode() throws Exception {
 		this.requestId = getInt();
-		this.moduleName = getString();
-		this.methodName = getString();
-		this.paramTypes = getStringList();
-		// 这里特殊处理，因为服务器要知道参数类型去寻找具体的类
-		for (String type : this.paramTypes) {
-			this.params.add(decodeObj(type));
-		}
+		this.serviceId = getInt();
+		this.methodId = getInt();
+		this.paramsBuffer = buffer().readRetainedSlice(buffer().readableBytes());
 	}
 }
@@ -2,12 +2,18 @@ package com.limitart.rpcx.message.service;
 
 import com.limitart.net.binary.message.Message;
 import com.limitart.rpcx.message.constant.RpcMessageEnum;
+import com.limitart.rpcx.struct.RpcMethodCodec;
+
+import io.netty.buffer.ByteBuf;
 
 public class RpcResultServerMessage extends Message {
 	private int requestId;
 	private int errorCode;
-	private String returnType;
 	private Object returnVal;
+	// 编码返回值用的方法签名
+	private transient RpcMethodCodec codec;
+	// 解码时尚未确定方法，先保留返回值部分，由消费者按方法签名解码
+	private transient ByteBuf returnBuffer;
 
 	public int getRequestId() {
 		return requestId;
@@ -25,14 +31,6 @@ public class RpcResultServerMessage extends Message {
 		this.errorCode = errorCode;
 	}
 
-	public String getReturnType() {
-		return returnType;
-	}
-
-	public void setReturnType(String returnType) {
-		this.returnType = returnType;
-	}
-
 	public Object getReturnVal() {
 		return returnVal;
 	}
@@ -41,6 +39,39 @@ public class RpcResultServerMessage extends Message {
 		this.returnVal = returnVal;
 	}
 
+	public void setCodec(RpcMethodCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * 按方法签名解码返回值，解码后释放保留的返回值部分
+	 * 
+	 * @param codec
+	 * @return
+	 * @throws Exception
+	 */
+	public Object decodeReturnVal(RpcMethodCodec codec) throws Exception {
+		ByteBuf old = buffer();
+		buffer(this.returnBuffer);
+		try {
+			this.returnVal = codec.decodeReturnVal(this);
+			return this.returnVal;
+		} finally {
+			buffer(old);
+			releaseReturnVal();
+		}
+	}
+
+	/**
+	 * 释放保留的返回值部分
+	 */
+	public void releaseReturnVal() {
+		if (this.returnBuffer != null) {
+			this.returnBuffer.release();
+			this.returnBuffer = null;
+		}
+	}
+
 	@Override
 	public short getMessageId() {
 		return RpcMessageEnum.RpcResultServerMessage.getValue();
@@ -50,15 +81,16 @@ public class RpcResultServerMessage extends Message {
 	public void encode() throws Exception {
 		putInt(this.requestId);
 		putInt(this.errorCode);
-		putString(this.returnType);
-		encodeObj(this.returnVal);
+		// 出错时没有返回值
+		if (this.codec != null && this.errorCode == 0) {
+			this.codec.encodeReturnVal(this, this.returnVal);
+		}
 	}
 
 	@Override
 	public void decode() throws Exception {
 		this.requestId = getInt();
 		this.errorCode = getInt();
-		this.returnType = getString();
-		this.returnVal = decodeObj(this.returnType);
+		this.returnBuffer = buffer().readRetainedSlice(buffer().readableBytes());
 	}
 }
@@ -0,0 +1,56 @@
+package com.limitart.rpcx.message.service.meta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.limitart.net.binary.message.MessageMeta;
+
+/**
+ * 服务调用表，方法Id即为方法在列表中的下标
+ * 
+ * @author hank
+ *
+ */
+public class ServiceDispatchMeta extends MessageMeta {
+	private int serviceId;
+	private String serviceName;
+	private List<String> methods = new ArrayList<>();
+
+	public int getServiceId() {
+		return serviceId;
+	}
+
+	public void setServiceId(int serviceId) {
+		this.serviceId = serviceId;
+	}
+
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	public void setServiceName(String serviceName) {
+		this.serviceName = serviceName;
+	}
+
+	public List<String> getMethods() {
+		return methods;
+	}
+
+	public void setMethods(List<String> methods) {
+		this.methods = methods;
+	}
+
+	@Override
+	public void encode() throws Exception {
+		putInt(this.serviceId);
+		putString(this.serviceName);
+		putStringList(this.methods);
+	}
+
+	@Override
+	public void decode() throws Exception {
+		this.serviceId = getInt();
+		this.serviceName = getInternedString();
+		this.methods = getInternedStringList();
+	}
+}
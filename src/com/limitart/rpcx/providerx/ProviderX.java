@@ -2,9 +2,12 @@ package com.limitart.rpcx.providerx;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,6 +24,7 @@ import com.limitart.net.binary.server.BinaryServer;
 import com.limitart.net.binary.server.config.BinaryServerConfig.BinaryServerConfigBuilder;
 import com.limitart.net.binary.server.listener.BinaryServerEventListener;
 import com.limitart.net.binary.util.SendMessageUtil;
+import com.limitart.reflectasm.MethodAccess;
 import com.limitart.rpcx.define.ServiceX;
 import com.limitart.rpcx.exception.ServiceError;
 import com.limitart.rpcx.exception.ServiceXExecuteException;
@@ -33,10 +37,14 @@ import com.limitart.rpcx.message.service.DirectFetchProviderServicesResultMessag
 import com.limitart.rpcx.message.service.PushServiceToServiceCenterProviderMessage;
 import com.limitart.rpcx.message.service.RpcExecuteClientMessage;
 import com.limitart.rpcx.message.service.RpcResultServerMessage;
+import com.limitart.rpcx.message.service.meta.ServiceDispatchMeta;
 import com.limitart.rpcx.providerx.config.ProviderXConfig;
+import com.limitart.rpcx.providerx.executor.define.IExecuteKeySelector;
+import com.limitart.rpcx.providerx.executor.define.IProviderExecutor;
 import com.limitart.rpcx.providerx.listener.IProviderListener;
 import com.limitart.rpcx.providerx.schedule.ProviderJob;
 import com.limitart.rpcx.providerx.struct.RpcServiceInstance;
+import com.limitart.rpcx.struct.RpcMethodCodec;
 import com.limitart.rpcx.struct.RpcProviderName;
 import com.limitart.rpcx.util.RpcUtil;
 import com.limitart.util.ReflectionUtil;
@@ -57,6 +65,8 @@ public class ProviderX implements BinaryServerEventListener {
 	private IProviderListener providerListener;
 	private ProviderXConfig config;
 	private HashMap<String, RpcServiceInstance> services = new HashMap<>();
+	// 服务Id对应的服务
+	private RpcServiceInstance[] serviceTable = new RpcServiceInstance[0];
 	// 定时任务回调列表
 	private HashMap<String, ProviderJob> scheduleJobs = new HashMap<>();
 
@@ -140,6 +150,9 @@ public class ProviderX implements BinaryServerEventListener {
 
 	public void bind() throws Exception {
 		initAllServices();
+		for (IProviderExecutor executor : this.config.getExecutors()) {
+			executor.start();
+		}
 		if (serviceCenterClient != null) {
 			serviceCenterClient.connect();
 		}
@@ -153,6 +166,9 @@ public class ProviderX implements BinaryServerEventListener {
 		if (server != null) {
 			server.stop();
 		}
+		for (IProviderExecutor executor : this.config.getExecutors()) {
+			executor.stop();
+		}
 	}
 
 	@Override
@@ -243,11 +259,11 @@ public class ProviderX implements BinaryServerEventListener {
 					}
 				}
 				// 检查返回参数是否合法
-				Class<?> returnType = method.getReturnType();
+				Class<?> returnType = RpcUtil.getActualReturnType(method);
 				if (!RpcUtil.checkParamType(returnType)) {
 					throw new ServiceXProxyException("类" + clazz.getName() + "的方法" + methodOverloadName + "的返回"
 							+ returnType.getName() + "必须是基础类型（包括其数组）或" + MessageMeta.class.getName()
-							+ "的子类，或者为上述类型的java.util.List或java.util.ArrayList");
+							+ "的子类，或者为上述类型的java.util.List或java.util.ArrayList（可用CompletableFuture包装）");
 				}
 				// 异常抛出检查
 				Class<?>[] exceptionTypes = method.getExceptionTypes();
@@ -305,6 +321,8 @@ public class ProviderX implements BinaryServerEventListener {
 					RpcServiceInstance data = new RpcServiceInstance();
 					data.setInstance(instance);
 					Class<?> value = entry.getValue();
+					data.setServiceClass(value);
+					data.setServiceName(serviceName);
 					data.getMethods().putAll(rpcInterfaces.get(value));
 					services.put(serviceName, data);
 					log.info("发现服务：" + serviceName + "，实例名称："
@@ -312,47 +330,163 @@ public class ProviderX implements BinaryServerEventListener {
 				}
 			}
 		}
+		buildDispatchTable();
+	}
+
+	/**
+	 * 按名称排序分配服务Id和方法Id，并预先生成MethodAccess下标、方法签名编解码器和执行器
+	 */
+	private void buildDispatchTable() {
+		List<String> serviceNames = new ArrayList<>(services.keySet());
+		Collections.sort(serviceNames);
+		RpcServiceInstance[] table = new RpcServiceInstance[serviceNames.size()];
+		for (int serviceId = 0; serviceId < table.length; ++serviceId) {
+			RpcServiceInstance data = services.get(serviceNames.get(serviceId));
+			MethodAccess access = MethodAccess.get(data.getServiceClass());
+			List<String> methodNames = new ArrayList<>(data.getMethods().keySet());
+			Collections.sort(methodNames);
+			int[] indexes = new int[methodNames.size()];
+			RpcMethodCodec[] methodCodecs = new RpcMethodCodec[indexes.length];
+			IProviderExecutor[] methodExecutors = new IProviderExecutor[indexes.length];
+			for (int methodId = 0; methodId < indexes.length; ++methodId) {
+				Method method = data.getMethods().get(methodNames.get(methodId));
+				indexes[methodId] = access.getIndex(method.getName(), method.getParameterTypes());
+				methodCodecs[methodId] = RpcMethodCodec.get(method);
+				methodExecutors[methodId] = this.config.getExecutor(data.getServiceClass(), method.getName());
+			}
+			data.setServiceId(serviceId);
+			data.setMethodNames(methodNames.toArray(new String[0]));
+			data.setMethodIndexes(indexes);
+			data.setMethodCodecs(methodCodecs);
+			data.setMethodExecutors(methodExecutors);
+			data.setMethodAccess(access);
+			table[serviceId] = data;
+		}
+		serviceTable = table;
 	}
 
 	/**
 	 * 执行RPC消费者请求的方法
 	 * 
-	 * @param context
-	 * @param requestId
-	 * @param moduleName
-	 * @param methodName
-	 * @param params
+	 * @param channel
+	 * @param request
 	 */
-	private void executeRPC(Channel channel, int requestId, String moduleName, String methodName, List<Object> params) {
+	private void executeRPC(Channel channel, RpcExecuteClientMessage request) {
+		int serviceId = request.getServiceId();
+		int methodId = request.getMethodId();
 		RpcResultServerMessage msg = new RpcResultServerMessage();
-		msg.setRequestId(requestId);
+		msg.setRequestId(request.getRequestId());
 		msg.setErrorCode(0);
-		RpcServiceInstance serviceInstanceData = services.get(moduleName);
-		if (serviceInstanceData == null) {
-			log.error(new ServiceXExecuteException("RPC消费者：" + channel.remoteAddress() + "发送了未知的服务名：" + moduleName));
+		RpcServiceInstance[] table = this.serviceTable;
+		RpcServiceInstance serviceInstanceData = null;
+		if (serviceId < 0 || serviceId >= table.length) {
+			log.error(new ServiceXExecuteException("RPC消费者：" + channel.remoteAddress() + "发送了未知的服务Id：" + serviceId));
 			msg.setErrorCode(ServiceError.SERVER_HAS_NO_MODULE);
+		} else {
+			serviceInstanceData = table[serviceId];
+			if (methodId < 0 || methodId >= serviceInstanceData.getMethodIndexes().length) {
+				log.error(new ServiceXExecuteException("RPC消费者：" + channel.remoteAddress() + "发送了未知的方法Id：" + methodId
+						+ "，服务Id为：" + serviceId));
+				msg.setErrorCode(ServiceError.SERVER_HAS_NO_METHOD);
+			}
 		}
-		Method method = serviceInstanceData.getMethods().get(methodName);
-		if (method == null) {
-			log.error(new ServiceXExecuteException(
-					"RPC消费者：" + channel.remoteAddress() + "发送了未知的方法名：" + methodName + "，服务名为：" + moduleName));
-			msg.setErrorCode(ServiceError.SERVER_HAS_NO_METHOD);
+		if (msg.getErrorCode() != 0) {
+			request.releaseParams();
+			sendRpcResult(channel, msg);
+			return;
 		}
-		if (msg.getErrorCode() == 0) {
-			try {
-				Object result = method.invoke(serviceInstanceData.self(), params.toArray());
-				if (result != null) {
-					msg.setReturnType(result.getClass().getName());
-					msg.setReturnVal(result);
-				}
-			} catch (Exception e) {
-				log.error(e, e);
+		// 参数在网络线程解码，尽早释放缓冲区
+		Object[] params;
+		RpcMethodCodec codec = serviceInstanceData.getMethodCodecs()[methodId];
+		msg.setCodec(codec);
+		try {
+			params = request.decodeParams(codec);
+		} catch (Exception e) {
+			log.error(e, e);
+			msg.setErrorCode(ServiceError.SERVER_EXECUTE_ERROR);
+			sendRpcResult(channel, msg);
+			return;
+		}
+		IProviderExecutor executor = serviceInstanceData.getMethodExecutors()[methodId];
+		if (executor == null) {
+			invokeRPC(channel, msg, serviceInstanceData, methodId, params);
+			return;
+		}
+		Object key = null;
+		IExecuteKeySelector keySelector = this.config.getExecuteKeySelector();
+		if (keySelector != null) {
+			key = keySelector.selectKey(serviceInstanceData.getServiceName(),
+					serviceInstanceData.getMethodNames()[methodId], params);
+		}
+		RpcServiceInstance data = serviceInstanceData;
+		boolean accepted = executor.execute(key, new Runnable() {
+
+			@Override
+			public void run() {
+				invokeRPC(channel, msg, data, methodId, params);
 			}
+		});
+		if (!accepted) {
+			log.warn("RPC执行队列已满，拒绝执行：" + data.getServiceName() + "的" + data.getMethodNames()[methodId] + "，消费者："
+					+ channel.remoteAddress());
+			msg.setErrorCode(ServiceError.SERVER_BUSY);
+			sendRpcResult(channel, msg);
 		}
+	}
+
+	/**
+	 * 执行服务方法并回应结果
+	 * 
+	 * @param channel
+	 * @param msg
+	 * @param serviceInstanceData
+	 * @param methodId
+	 * @param params
+	 */
+	private void invokeRPC(Channel channel, RpcResultServerMessage msg, RpcServiceInstance serviceInstanceData,
+			int methodId, Object[] params) {
+		try {
+			Object result = serviceInstanceData.invoke(methodId, params);
+			if (result instanceof CompletableFuture) {
+				// 异步服务，完成时再回应
+				((CompletableFuture<?>) result).whenComplete(new BiConsumer<Object, Throwable>() {
+
+					@Override
+					public void accept(Object returnVal, Throwable cause) {
+						if (cause != null) {
+							log.error(cause, cause);
+							msg.setErrorCode(ServiceError.SERVER_EXECUTE_ERROR);
+						} else {
+							msg.setReturnVal(returnVal);
+						}
+						sendRpcResult(channel, msg);
+					}
+				});
+				return;
+			}
+			msg.setReturnVal(result);
+		} catch (Exception e) {
+			log.error(e, e);
+			msg.setErrorCode(ServiceError.SERVER_EXECUTE_ERROR);
+		}
+		sendRpcResult(channel, msg);
+	}
+
+	private void sendRpcResult(Channel channel, RpcResultServerMessage msg) {
 		try {
 			SendMessageUtil.sendMessage(channel, msg, null);
 		} catch (Exception e) {
 			log.error(e, e);
+			if (msg.getErrorCode() != ServiceError.SUCCESS) {
+				return;
+			}
+			// 返回值编码失败，回应错误码让调用方立即失败而不是等到超时
+			msg.setErrorCode(ServiceError.SERVER_ENCODE_ERROR);
+			try {
+				SendMessageUtil.sendMessage(channel, msg, null);
+			} catch (Exception e1) {
+				log.error(e1, e1);
+			}
 		}
 	}
 
@@ -365,6 +499,13 @@ public class ProviderX implements BinaryServerEventListener {
 		DirectFetchProviderServicesResultMessage msg = new DirectFetchProviderServicesResultMessage();
 		msg.setProviderId(this.config.getProviderUID());
 		msg.getServices().addAll(services.keySet());
+		for (RpcServiceInstance data : serviceTable) {
+			ServiceDispatchMeta meta = new ServiceDispatchMeta();
+			meta.setServiceId(data.getServiceId());
+			meta.setServiceName(data.getServiceName());
+			Collections.addAll(meta.getMethods(), data.getMethodNames());
+			msg.getDispatchTable().add(meta);
+		}
 		try {
 			SendMessageUtil.sendMessage(channel, msg, null);
 		} catch (Exception e) {
@@ -468,11 +609,7 @@ public class ProviderX implements BinaryServerEventListener {
 		@Override
 		public void handle(Message message) {
 			RpcExecuteClientMessage msg = (RpcExecuteClientMessage) message;
-			int requestId = msg.getRequestId();
-			String moduleName = msg.getModuleName();
-			String methodName = msg.getMethodName();
-			List<Object> params = msg.getParams();
-			((ProviderX) message.getExtra()).executeRPC(msg.getChannel(), requestId, moduleName, methodName, params);
+			((ProviderX) message.getExtra()).executeRPC(msg.getChannel(), msg);
 		}
 	}
 
@@ -1,8 +1,13 @@
 package com.limitart.rpcx.providerx.config;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Set;
 
+import com.limitart.rpcx.providerx.executor.define.IExecuteKeySelector;
+import com.limitart.rpcx.providerx.executor.define.IProviderExecutor;
 import com.limitart.util.StringUtil;
 
 /**
@@ -19,6 +24,11 @@ public final class ProviderXConfig {
 	private int providerUID;
 	private String[] servicePackages;
 	private String serviceImplPackages;
+	// 为空时在网络线程直接执行
+	private IProviderExecutor defaultExecutor;
+	private HashMap<Class<?>, IProviderExecutor> serviceExecutors;
+	private HashMap<String, IProviderExecutor> methodExecutors;
+	private IExecuteKeySelector executeKeySelector;
 
 	private ProviderXConfig(ProviderXConfigBuilder builder) {
 		this.myIp = builder.myIp;
@@ -31,6 +41,10 @@ public final class ProviderXConfig {
 		this.providerUID = builder.providerUID;
 		this.servicePackages = builder.servicePackage.toArray(new String[0]);
 		this.serviceImplPackages = builder.serviceImplPackages;
+		this.defaultExecutor = builder.defaultExecutor;
+		this.serviceExecutors = new HashMap<>(builder.serviceExecutors);
+		this.methodExecutors = new HashMap<>(builder.methodExecutors);
+		this.executeKeySelector = builder.executeKeySelector;
 	}
 
 	public int getProviderUID() {
@@ -61,6 +75,43 @@ public final class ProviderXConfig {
 		return serviceImplPackages;
 	}
 
+	/**
+	 * 获取方法的执行器，优先级：方法、服务、默认
+	 * 
+	 * @param serviceClass
+	 * @param methodName
+	 * @return 为空时在网络线程直接执行
+	 */
+	public IProviderExecutor getExecutor(Class<?> serviceClass, String methodName) {
+		IProviderExecutor executor = methodExecutors.get(serviceClass.getName() + "#" + methodName);
+		if (executor == null) {
+			executor = serviceExecutors.get(serviceClass);
+		}
+		if (executor == null) {
+			executor = defaultExecutor;
+		}
+		return executor;
+	}
+
+	/**
+	 * 获取所有配置的执行器（去重）
+	 * 
+	 * @return
+	 */
+	public Set<IProviderExecutor> getExecutors() {
+		Set<IProviderExecutor> executors = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (defaultExecutor != null) {
+			executors.add(defaultExecutor);
+		}
+		executors.addAll(serviceExecutors.values());
+		executors.addAll(methodExecutors.values());
+		return executors;
+	}
+
+	public IExecuteKeySelector getExecuteKeySelector() {
+		return executeKeySelector;
+	}
+
 	public static class ProviderXConfigBuilder {
 		private String myIp;
 		private int myPort;
@@ -69,6 +120,10 @@ public final class ProviderXConfig {
 		private int providerUID;
 		private Set<String> servicePackage = new HashSet<>();
 		private String serviceImplPackages;
+		private IProviderExecutor defaultExecutor;
+		private HashMap<Class<?>, IProviderExecutor> serviceExecutors = new HashMap<>();
+		private HashMap<String, IProviderExecutor> methodExecutors = new HashMap<>();
+		private IExecuteKeySelector executeKeySelector;
 
 		public ProviderXConfigBuilder() {
 		}
@@ -129,5 +184,68 @@ public final class ProviderXConfig {
 			this.serviceImplPackages = serviceImplPackages;
 			return this;
 		}
+
+		/**
+		 * 所有服务默认的执行器
+		 * 
+		 * @param executor
+		 * @return
+		 */
+		public ProviderXConfigBuilder defaultExecutor(IProviderExecutor executor) {
+			this.defaultExecutor = executor;
+			return this;
+		}
+
+		/**
+		 * 服务的执行器
+		 * 
+		 * @param serviceClass
+		 * @param executor
+		 * @return
+		 */
+		public ProviderXConfigBuilder serviceExecutor(Class<?> serviceClass, IProviderExecutor executor) {
+			if (serviceClass == null) {
+				throw new NullPointerException("serviceClass");
+			}
+			if (executor == null) {
+				throw new NullPointerException("executor");
+			}
+			this.serviceExecutors.put(serviceClass, executor);
+			return this;
+		}
+
+		/**
+		 * 方法的执行器（同名重载方法共用）
+		 * 
+		 * @param serviceClass
+		 * @param methodName
+		 * @param executor
+		 * @return
+		 */
+		public ProviderXConfigBuilder methodExecutor(Class<?> serviceClass, String methodName,
+				IProviderExecutor executor) {
+			if (serviceClass == null) {
+				throw new NullPointerException("serviceClass");
+			}
+			if (StringUtil.isEmptyOrNull(methodName)) {
+				throw new NullPointerException("methodName");
+			}
+			if (executor == null) {
+				throw new NullPointerException("executor");
+			}
+			this.methodExecutors.put(serviceClass.getName() + "#" + methodName, executor);
+			return this;
+		}
+
+		/**
+		 * 执行顺序Key选择器，配合{@link com.limitart.rpcx.providerx.executor.impl.DisruptorProviderExecutor}使用
+		 * 
+		 * @param executeKeySelector
+		 * @return
+		 */
+		public ProviderXConfigBuilder executeKeySelector(IExecuteKeySelector executeKeySelector) {
+			this.executeKeySelector = executeKeySelector;
+			return this;
+		}
 	}
 }
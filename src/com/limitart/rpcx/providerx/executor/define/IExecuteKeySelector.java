@@ -0,0 +1,11 @@
+package com.limitart.rpcx.providerx.executor.define;
+
+/**
+ * RPC执行顺序Key选择器，相同Key的调用在同一执行线程上按顺序执行
+ * 
+ * @author hank
+ *
+ */
+public interface IExecuteKeySelector {
+	public Object selectKey(String serviceName, String methodOverloadName, Object[] args);
+}
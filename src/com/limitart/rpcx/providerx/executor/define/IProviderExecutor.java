@@ -0,0 +1,29 @@
+package com.limitart.rpcx.providerx.executor.define;
+
+/**
+ * RPC服务执行器
+ * 
+ * @author hank
+ *
+ */
+public interface IProviderExecutor {
+	/**
+	 * 启动
+	 */
+	public void start();
+
+	/**
+	 * 停止
+	 */
+	public void stop();
+
+	/**
+	 * 提交任务，队列已满时不等待
+	 * 
+	 * @param key
+	 *            相同key的任务按提交顺序执行，为空时不保证顺序
+	 * @param task
+	 * @return 被拒绝返回false
+	 */
+	public boolean execute(Object key, Runnable task);
+}
@@ -0,0 +1,64 @@
+package com.limitart.rpcx.providerx.executor.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.limitart.rpcx.providerx.executor.define.IProviderExecutor;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 有界线程池执行器，不保证顺序（忽略Key），需要按Key顺序执行请使用{@link DisruptorProviderExecutor}
+ * 
+ * @author hank
+ *
+ */
+public class BoundedPoolProviderExecutor implements IProviderExecutor {
+	private String name;
+	private int threadCount;
+	private int queueSize;
+	private ThreadPoolExecutor pool;
+
+	public BoundedPoolProviderExecutor(String name, int threadCount, int queueSize) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException("threadCount must greater than 0");
+		}
+		if (queueSize <= 0) {
+			throw new IllegalArgumentException("queueSize must greater than 0");
+		}
+		this.name = name;
+		this.threadCount = threadCount;
+		this.queueSize = queueSize;
+	}
+
+	@Override
+	public void start() {
+		pool = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new DefaultThreadFactory(name),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Override
+	public void stop() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	@Override
+	public boolean execute(Object key, Runnable task) {
+		ThreadPoolExecutor p = this.pool;
+		if (p == null) {
+			return false;
+		}
+		try {
+			p.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.limitart.rpcx.providerx.executor.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.limitart.rpcx.providerx.executor.define.IProviderExecutor;
+import com.limitart.taskqueue.DisruptorTaskQueue;
+import com.limitart.taskqueue.define.ITaskQueueHandler;
+import com.limitart.taskqueue.exception.TaskQueueException;
+
+/**
+ * 基于{@link DisruptorTaskQueue}的执行器，相同Key的任务固定在同一队列
+ * 
+ * @author hank
+ *
+ */
+public class DisruptorProviderExecutor implements IProviderExecutor {
+	private static Logger log = LogManager.getLogger();
+	private DisruptorTaskQueue<Runnable>[] queues;
+	private AtomicInteger roundRobin = new AtomicInteger(0);
+
+	public DisruptorProviderExecutor(String name, int threadCount) {
+		this(name, threadCount, 2048);
+	}
+
+	/**
+	 * 构造函数
+	 * 
+	 * @param name
+	 * @param threadCount
+	 * @param bufferSize
+	 *            每个队列RingBuffer的大小（2的幂）
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public DisruptorProviderExecutor(String name, int threadCount, int bufferSize) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException("threadCount must greater than 0");
+		}
+		queues = new DisruptorTaskQueue[threadCount];
+		for (int i = 0; i < threadCount; ++i) {
+			queues[i] = new DisruptorTaskQueue<>(name + "-" + i, bufferSize, new ITaskQueueHandler<Runnable>() {
+
+				@Override
+				public boolean intercept(Runnable t) {
+					return false;
+				}
+
+				@Override
+				public void handle(Runnable t) {
+					try {
+						t.run();
+					} catch (Exception e) {
+						log.error(e, e);
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void start() {
+		for (DisruptorTaskQueue<Runnable> queue : queues) {
+			queue.startServer();
+		}
+	}
+
+	@Override
+	public void stop() {
+		for (DisruptorTaskQueue<Runnable> queue : queues) {
+			queue.stopServer();
+		}
+	}
+
+	@Override
+	public boolean execute(Object key, Runnable task) {
+		int index;
+		if (key == null) {
+			index = roundRobin.getAndIncrement() & Integer.MAX_VALUE;
+		} else {
+			int h = key.hashCode();
+			index = (h ^ (h >>> 16)) & Integer.MAX_VALUE;
+		}
+		try {
+			return queues[index % queues.length].tryAddCommand(task);
+		} catch (TaskQueueException e) {
+			log.error(e, e);
+			return false;
+		}
+	}
+}
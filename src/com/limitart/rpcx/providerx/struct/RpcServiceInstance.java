@@ -3,6 +3,10 @@ package com.limitart.rpcx.providerx.struct;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 
+import com.limitart.reflectasm.MethodAccess;
+import com.limitart.rpcx.providerx.executor.define.IProviderExecutor;
+import com.limitart.rpcx.struct.RpcMethodCodec;
+
 /**
  * RPC服务实现类
  * 
@@ -12,6 +16,18 @@ import java.util.HashMap;
 public class RpcServiceInstance {
 	private Object instance;
 	private HashMap<String, Method> methods = new HashMap<>();
+	private Class<?> serviceClass;
+	private String serviceName;
+	private int serviceId;
+	// 方法Id对应的方法名
+	private String[] methodNames;
+	// 方法Id对应的MethodAccess下标
+	private int[] methodIndexes;
+	private MethodAccess methodAccess;
+	// 方法Id对应的签名编解码器
+	private RpcMethodCodec[] methodCodecs;
+	// 方法Id对应的执行器，为空时在网络线程直接执行
+	private IProviderExecutor[] methodExecutors;
 
 	public Object self() {
 		return instance;
@@ -28,4 +44,79 @@ public class RpcServiceInstance {
 	public void setMethods(HashMap<String, Method> methods) {
 		this.methods = methods;
 	}
+
+	public Class<?> getServiceClass() {
+		return serviceClass;
+	}
+
+	public void setServiceClass(Class<?> serviceClass) {
+		this.serviceClass = serviceClass;
+	}
+
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	public void setServiceName(String serviceName) {
+		this.serviceName = serviceName;
+	}
+
+	public int getServiceId() {
+		return serviceId;
+	}
+
+	public void setServiceId(int serviceId) {
+		this.serviceId = serviceId;
+	}
+
+	public String[] getMethodNames() {
+		return methodNames;
+	}
+
+	public void setMethodNames(String[] methodNames) {
+		this.methodNames = methodNames;
+	}
+
+	public int[] getMethodIndexes() {
+		return methodIndexes;
+	}
+
+	public void setMethodIndexes(int[] methodIndexes) {
+		this.methodIndexes = methodIndexes;
+	}
+
+	public MethodAccess getMethodAccess() {
+		return methodAccess;
+	}
+
+	public void setMethodAccess(MethodAccess methodAccess) {
+		this.methodAccess = methodAccess;
+	}
+
+	public RpcMethodCodec[] getMethodCodecs() {
+		return methodCodecs;
+	}
+
+	public void setMethodCodecs(RpcMethodCodec[] methodCodecs) {
+		this.methodCodecs = methodCodecs;
+	}
+
+	public IProviderExecutor[] getMethodExecutors() {
+		return methodExecutors;
+	}
+
+	public void setMethodExecutors(IProviderExecutor[] methodExecutors) {
+		this.methodExecutors = methodExecutors;
+	}
+
+	/**
+	 * 执行方法
+	 * 
+	 * @param methodId
+	 * @param args
+	 * @return
+	 */
+	public Object invoke(int methodId, Object... args) {
+		return methodAccess.invoke(instance, methodIndexes[methodId], args);
+	}
 }
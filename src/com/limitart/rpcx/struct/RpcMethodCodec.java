@@ -0,0 +1,120 @@
+package com.limitart.rpcx.struct;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.limitart.net.binary.message.MessageMeta;
+import com.limitart.net.binary.message.TypeCodec;
+import com.limitart.rpcx.util.RpcUtil;
+import com.limitart.util.ReflectionUtil;
+
+/**
+ * RPC方法签名编解码器，按接口声明的参数和返回类型只编码值
+ * 
+ * @author hank
+ *
+ */
+public class RpcMethodCodec {
+	private static ConcurrentHashMap<Method, RpcMethodCodec> codecs = new ConcurrentHashMap<>();
+	private String overloadName;
+	private TypeCodec[] paramCodecs;
+	// 无返回值时为空
+	private TypeCodec returnCodec;
+
+	private RpcMethodCodec(Method method) {
+		this.overloadName = ReflectionUtil.getMethodOverloadName(method);
+		Type[] paramTypes = method.getGenericParameterTypes();
+		this.paramCodecs = new TypeCodec[paramTypes.length];
+		for (int i = 0; i < paramTypes.length; ++i) {
+			this.paramCodecs[i] = TypeCodec.get(paramTypes[i]);
+		}
+		Type returnType = method.getGenericReturnType();
+		if (RpcUtil.isAsyncMethod(method)) {
+			returnType = returnType instanceof ParameterizedType
+					? ((ParameterizedType) returnType).getActualTypeArguments()[0] : Object.class;
+		}
+		if (returnType != void.class && returnType != Void.class) {
+			this.returnCodec = TypeCodec.get(returnType);
+		}
+	}
+
+	/**
+	 * 获取方法的编解码器
+	 * 
+	 * @param method
+	 * @return
+	 */
+	public static RpcMethodCodec get(Method method) {
+		RpcMethodCodec codec = codecs.get(method);
+		if (codec == null) {
+			codec = new RpcMethodCodec(method);
+			RpcMethodCodec old = codecs.putIfAbsent(method, codec);
+			if (old != null) {
+				codec = old;
+			}
+		}
+		return codec;
+	}
+
+	public String getOverloadName() {
+		return overloadName;
+	}
+
+	/**
+	 * 写入参数
+	 * 
+	 * @param meta
+	 * @param params
+	 * @throws Exception
+	 */
+	public void encodeParams(MessageMeta meta, Object[] params) throws Exception {
+		int length = params == null ? 0 : params.length;
+		if (length != paramCodecs.length) {
+			throw new IllegalArgumentException(overloadName + " params length:" + length);
+		}
+		for (int i = 0; i < length; ++i) {
+			paramCodecs[i].encode(meta, params[i]);
+		}
+	}
+
+	/**
+	 * 读取参数
+	 * 
+	 * @param meta
+	 * @return
+	 * @throws Exception
+	 */
+	public Object[] decodeParams(MessageMeta meta) throws Exception {
+		Object[] params = new Object[paramCodecs.length];
+		for (int i = 0; i < params.length; ++i) {
+			params[i] = paramCodecs[i].decode(meta);
+		}
+		return params;
+	}
+
+	/**
+	 * 写入返回值
+	 * 
+	 * @param meta
+	 * @param returnVal
+	 * @throws Exception
+	 */
+	public void encodeReturnVal(MessageMeta meta, Object returnVal) throws Exception {
+		if (returnCodec != null) {
+			returnCodec.encode(meta, returnVal);
+		}
+	}
+
+	/**
+	 * 读取返回值
+	 * 
+	 * @param meta
+	 * @return
+	 * @throws Exception
+	 */
+	public Object decodeReturnVal(MessageMeta meta) throws Exception {
+		return returnCodec == null ? null : returnCodec.decode(meta);
+	}
+}
@@ -1,11 +1,15 @@
 package com.limitart.rpcx.util;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import com.limitart.net.binary.message.MessageMeta;
 import com.limitart.rpcx.define.ServiceX;
@@ -55,4 +59,38 @@ public class RpcUtil {
 		}
 		return true;
 	}
+
+	/**
+	 * 是否为异步方法（返回CompletableFuture）
+	 * 
+	 * @param method
+	 * @return
+	 */
+	public static boolean isAsyncMethod(Method method) {
+		return method.getReturnType() == CompletableFuture.class;
+	}
+
+	/**
+	 * 获取方法实际返回的类型，异步方法取CompletableFuture的泛型参数
+	 * 
+	 * @param method
+	 * @return
+	 */
+	public static Class<?> getActualReturnType(Method method) {
+		if (!isAsyncMethod(method)) {
+			return method.getReturnType();
+		}
+		Type genericType = method.getGenericReturnType();
+		if (!(genericType instanceof ParameterizedType)) {
+			return Object.class;
+		}
+		Type arg = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+		if (arg instanceof ParameterizedType) {
+			arg = ((ParameterizedType) arg).getRawType();
+		}
+		if (!(arg instanceof Class)) {
+			return Object.class;
+		}
+		return arg == Void.class ? void.class : (Class<?>) arg;
+	}
 }
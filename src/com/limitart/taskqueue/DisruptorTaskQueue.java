@@ -103,6 +103,17 @@ public class DisruptorTaskQueue<T> implements ITaskQueue<T> {
 		this.traslator.onData(t);
 	}
 
+	@Override
+	public boolean tryAddCommand(T t) throws TaskQueueException {
+		if (t == null) {
+			throw new NullPointerException("t");
+		}
+		if (this.disruptor == null) {
+			throw new TaskQueueException(getThreadName() + " has not start yet!");
+		}
+		return this.traslator.tryOnData(t);
+	}
+
 	@Override
 	public String getThreadName() {
 		if (handlerThread == null) {
@@ -134,6 +145,10 @@ public class DisruptorTaskQueue<T> implements ITaskQueue<T> {
 		public void onData(T t) {
 			ringBuffer.publishEvent(translatorOneArg, t);
 		}
+
+		public boolean tryOnData(T t) {
+			return ringBuffer.tryPublishEvent(translatorOneArg, t);
+		}
 	}
 
 	private class TaskQueueEventHandler implements EventHandler<DisruptorTaskQueueEvent> {
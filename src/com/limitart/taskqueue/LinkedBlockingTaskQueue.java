@@ -55,6 +55,14 @@ public class LinkedBlockingTaskQueue<T> extends Thread implements ITaskQueue<T>
 		queue.offer(t);
 	}
 
+	@Override
+	public boolean tryAddCommand(T t) {
+		if (t == null) {
+			throw new NullPointerException("t");
+		}
+		return queue.offer(t);
+	}
+
 	@Override
 	public void stopServer() {
 		start = false;
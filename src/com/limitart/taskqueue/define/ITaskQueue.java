@@ -9,6 +9,18 @@ public interface ITaskQueue<T> {
 
 	void addCommand(T t) throws TaskQueueException;
 
+	/**
+	 * 尝试添加任务，队列已满时不等待直接返回false(默认实现直接调用addCommand，有界队列应重写)
+	 * 
+	 * @param t
+	 * @return
+	 * @throws TaskQueueException
+	 */
+	default boolean tryAddCommand(T t) throws TaskQueueException {
+		addCommand(t);
+		return true;
+	}
+
 	String getThreadName();
 
 }
\ No newline at end of file
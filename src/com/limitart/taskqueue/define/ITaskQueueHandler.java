@@ -22,6 +22,9 @@ public interface ITaskQueueHandler<T> {
 				handler.handle(t);
 			} catch (Exception e) {
 				log.error(e, e);
+			} finally {
+				// 开启回收的消息处理完即归还对象池
+				t.recycle();
 			}
 			now = System.currentTimeMillis() - now;
 			if (now > 100) {
@@ -1,19 +1,39 @@
 package com.limitart.taskqueuegroup;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.limitart.collections.ConcurrentHashSet;
+import com.limitart.taskqueue.define.ITaskQueue;
+import com.limitart.taskqueue.define.ITaskQueueHandler;
 import com.limitart.taskqueue.exception.TaskQueueException;
+import com.limitart.taskqueuegroup.define.IAutoGrowthBalancePolicy;
+import com.limitart.taskqueuegroup.define.IAutoGrowthTaskQueueFactory;
 import com.limitart.taskqueuegroup.define.ITaskQueueFactory;
 import com.limitart.taskqueuegroup.struct.AutoGrowthEntity;
+import com.limitart.taskqueuegroup.struct.AutoGrowthMigration;
 import com.limitart.taskqueuegroup.struct.AutoGrowthSegment;
+import com.limitart.taskqueuegroup.struct.AutoGrowthTask;
 
 /**
  * 自动增长消息线程组
  * 
+ * 注册不加全局锁；统计每个线程的排队数和处理耗时，按均衡策略把实体从繁忙线程迁到空闲线程
+ * 
+ * 迁移时先向源线程投递屏障，期间到达的任务暂存，源线程处理到屏障后再按序转入目标线程，保证同一实体的任务顺序执行
+ * 
+ * 使用ITaskQueueFactory创建时队列自带处理器，线程组无法统计负载，不支持均衡与迁移
+ * 
  * @author Hank
  *
  */
@@ -21,18 +41,64 @@ public class AutoGrowthTaskQueueGroup<T> {
 	private static Logger log = LogManager.getLogger();
 	private AtomicInteger threadId = new AtomicInteger(0);
 	private ConcurrentHashMap<Integer, AutoGrowthSegment<T>> threads = new ConcurrentHashMap<>();
+	// 已创建和正在创建的线程数
+	private AtomicInteger threadCount = new AtomicInteger(0);
 	private int entityCountPerThread;
 	private int initThreadCount;
 	private int coreThreadCount;
 	private int maxThreadCount;
-	private ITaskQueueFactory<T> taskQueueFactory;
+	private IAutoGrowthTaskQueueFactory<T> taskQueueFactory;
+	private ITaskQueueHandler<T> handler;
+	// 兼容旧的创建方式(队列自带处理器)
+	private ITaskQueueFactory<T> legacyFactory;
+	// 迁移中的实体
+	private ConcurrentHashSet<AutoGrowthEntity> migratingEntities = new ConcurrentHashSet<>();
+	private volatile IAutoGrowthBalancePolicy<T> balancePolicy;
+	private ScheduledThreadPoolExecutor balanceTimer;
 
+	/**
+	 * 队列自带处理器(不支持均衡与迁移，调用{@link #startBalance(IAutoGrowthBalancePolicy, long)}会抛出
+	 * {@link IllegalStateException})
+	 * 
+	 * @param entityCountPerThread
+	 * @param coreThreadCount
+	 * @param initThreadCount
+	 * @param maxThreadCount
+	 * @param taskQueueFactory
+	 */
 	public AutoGrowthTaskQueueGroup(int entityCountPerThread, int coreThreadCount, int initThreadCount,
 			int maxThreadCount, ITaskQueueFactory<T> taskQueueFactory) {
-		if (taskQueueFactory == null) {
+		this(entityCountPerThread, coreThreadCount, initThreadCount, maxThreadCount, null, taskQueueFactory, null);
+	}
+
+	/**
+	 * 处理器由线程组持有(支持均衡与迁移)
+	 * 
+	 * @param entityCountPerThread
+	 * @param coreThreadCount
+	 * @param initThreadCount
+	 * @param maxThreadCount
+	 * @param taskQueueFactory
+	 * @param handler
+	 */
+	public AutoGrowthTaskQueueGroup(int entityCountPerThread, int coreThreadCount, int initThreadCount,
+			int maxThreadCount, IAutoGrowthTaskQueueFactory<T> taskQueueFactory, ITaskQueueHandler<T> handler) {
+		this(entityCountPerThread, coreThreadCount, initThreadCount, maxThreadCount, taskQueueFactory, null,
+				handler);
+	}
+
+	private AutoGrowthTaskQueueGroup(int entityCountPerThread, int coreThreadCount, int initThreadCount,
+			int maxThreadCount, IAutoGrowthTaskQueueFactory<T> taskQueueFactory, ITaskQueueFactory<T> legacyFactory,
+			ITaskQueueHandler<T> handler) {
+		if (taskQueueFactory == null && legacyFactory == null) {
 			throw new NullPointerException("taskQueueFactory");
 		}
+		if (taskQueueFactory != null && handler == null) {
+			throw new NullPointerException("handler");
+		}
 		this.taskQueueFactory = taskQueueFactory;
+		this.legacyFactory = legacyFactory;
+		this.handler = handler;
 		this.maxThreadCount = maxThreadCount;
 		this.initThreadCount = Math.min(initThreadCount, this.maxThreadCount);
 		this.entityCountPerThread = entityCountPerThread;
@@ -52,77 +118,420 @@ public class AutoGrowthTaskQueueGroup<T> {
 		}
 	}
 
-	public synchronized void registerEntity(AutoGrowthEntity entity) throws TaskQueueException {
-		if (entity.getThreadIndex() > 0) {
+	public void registerEntity(AutoGrowthEntity entity) throws TaskQueueException {
+		if (entity.getThreadIndex() > 0 || entity.getMigrateIndex() > 0) {
 			throw new TaskQueueException("entity has already registered!");
 		}
-		AutoGrowthSegment<T> thread = null;
-		if (threads.size() >= maxThreadCount && maxThreadCount > 0) {
+		for (;;) {
+			AutoGrowthSegment<T> thread = null;
+			AutoGrowthSegment<T> least = null;
 			int min = Integer.MAX_VALUE;
 			for (AutoGrowthSegment<T> temp : threads.values()) {
-				int size = temp.getEntities().size();
+				int size = temp.getEntityCount();
+				if (size < 0) {
+					continue;
+				}
+				if (size < entityCountPerThread) {
+					thread = temp;
+					break;
+				}
 				if (size < min) {
 					min = size;
-					thread = temp;
+					least = temp;
 				}
 			}
-		} else {
-			for (AutoGrowthSegment<T> temp : threads.values()) {
-				if (temp.getEntities().size() < entityCountPerThread) {
-					thread = temp;
-					break;
+			int limit = entityCountPerThread;
+			if (thread == null) {
+				thread = newGrowthThread();
+				if (thread == null) {
+					if (threads.size() < threadCount.get()) {
+						// 其他注册正在创建线程
+						Thread.yield();
+						continue;
+					}
+					// 线程已达上限，放到实体最少的线程
+					thread = least;
+					limit = Integer.MAX_VALUE;
+					if (thread == null) {
+						continue;
+					}
 				}
 			}
+			if (!thread.acquireEntity(limit)) {
+				continue;
+			}
+			thread.getEntities().add(entity);
+			if (!entity.compareAndSetThreadIndex(0, thread.getThreadIndex())) {
+				thread.getEntities().remove(entity);
+				releaseEntity(thread);
+				throw new TaskQueueException("entity has already registered!");
+			}
+			return;
 		}
-		if (thread == null) {
-			thread = newGrowthThread();
-		}
-		thread.getEntities().add(entity);
-		entity.setThreadIndex(thread.getThreadIndex());
 	}
 
 	public void addCommand(AutoGrowthEntity entity, T t) throws TaskQueueException {
-		if (entity.getThreadIndex() == 0) {
-			throw new TaskQueueException("entity does not register!");
+		if (t == null) {
+			throw new NullPointerException("t");
+		}
+		AutoGrowthTask<T> task = new AutoGrowthTask<>(entity, t);
+		for (;;) {
+			synchronized (entity.getLock()) {
+				int threadIndex = entity.getThreadIndex();
+				if (threadIndex == 0) {
+					throw new TaskQueueException("entity does not register!");
+				}
+				if (entity.getMigrateIndex() > 0 && !flushMigration(entity)) {
+					entity.getMigrateBuffer().add(task);
+					return;
+				}
+				AutoGrowthSegment<T> thread = this.threads.get(threadIndex);
+				if (legacyFactory != null) {
+					// 旧队列看不到任务处理，不统计排队数
+					if (thread.getThread().tryAddCommand(task)) {
+						return;
+					}
+				} else {
+					thread.incrementPending();
+					if (thread.getThread().tryAddCommand(task)) {
+						return;
+					}
+					thread.decrementPending();
+				}
+			}
+			// 队列已满，放开锁等待(源线程处理迁移屏障时也要拿这把锁)
+			LockSupport.parkNanos(100000);
 		}
-		this.threads.get(entity.getThreadIndex()).getThread().addCommand(t);
 	}
 
-	public synchronized void unregisterEntity(AutoGrowthEntity entity) throws TaskQueueException {
-		int threadIndex = entity.getThreadIndex();
-		if (threadIndex == 0) {
+	public void unregisterEntity(AutoGrowthEntity entity) throws TaskQueueException {
+		AutoGrowthSegment<T> thread;
+		synchronized (entity.getLock()) {
+			int threadIndex = entity.getThreadIndex();
+			if (threadIndex == 0) {
+				return;
+			}
+			thread = threads.get(threadIndex);
+			if (thread == null) {
+				throw new TaskQueueException("thread " + threadIndex + " already destroyed！");
+			}
+			if (!thread.getEntities().contains(entity)) {
+				throw new TaskQueueException("entity in thread " + threadIndex + " already destroyed！");
+			}
+			// 注销线程引用
+			if (!thread.getEntities().remove(entity)) {
+				throw new TaskQueueException("entity in thread " + threadIndex + " destroy failed！");
+			}
+			entity.setThreadIndex(0);
+			if (entity.getMigrateIndex() > 0) {
+				// 迁移中暂存的任务照常执行
+				flushMigration(entity);
+			}
+		}
+		log.info(thread.getThread().getThreadName() + " unregistered entity:" + entity);
+		releaseEntity(thread);
+	}
+
+	/**
+	 * 设置均衡策略并定时均衡
+	 * 
+	 * @param policy
+	 * @param intervalMillis
+	 * @throws IllegalStateException
+	 *             使用{@link ITaskQueueFactory}构造时
+	 */
+	public synchronized void startBalance(IAutoGrowthBalancePolicy<T> policy, long intervalMillis) {
+		if (policy == null) {
+			throw new NullPointerException("policy");
+		}
+		if (legacyFactory != null) {
+			throw new IllegalStateException("balance needs IAutoGrowthTaskQueueFactory");
+		}
+		this.balancePolicy = policy;
+		if (balanceTimer != null) {
+			balanceTimer.shutdown();
+		}
+		balanceTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r);
+				thread.setName("AutoGrowthTaskQueueGroup-Balance");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		balanceTimer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					balance();
+				} catch (Exception e) {
+					log.error(e, e);
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopBalance() {
+		if (balanceTimer != null) {
+			balanceTimer.shutdown();
+			balanceTimer = null;
+		}
+	}
+
+	/**
+	 * 采样各线程负载并按策略迁移实体(也可以由外部定时器调用)
+	 */
+	public synchronized void balance() {
+		// 补转目标线程曾经满了的暂存任务
+		for (AutoGrowthEntity entity : migratingEntities) {
+			synchronized (entity.getLock()) {
+				flushMigration(entity);
+			}
+		}
+		List<AutoGrowthSegment<T>> segments = new ArrayList<>(threads.values());
+		for (AutoGrowthSegment<T> segment : segments) {
+			segment.sample();
+			for (AutoGrowthEntity entity : segment.getEntities()) {
+				entity.sample();
+			}
+		}
+		IAutoGrowthBalancePolicy<T> policy = this.balancePolicy;
+		if (policy == null || segments.size() < 2) {
 			return;
 		}
-		if (!threads.containsKey(threadIndex)) {
-			throw new TaskQueueException("thread " + threadIndex + " already destroyed！");
+		List<AutoGrowthMigration<T>> migrations = policy.balance(segments, entityCountPerThread);
+		if (migrations == null) {
+			return;
 		}
-		AutoGrowthSegment<T> thread = threads.get(threadIndex);
-		if (!thread.getEntities().contains(entity)) {
-			throw new TaskQueueException("entity in thread " + threadIndex + " already destroyed！");
+		for (AutoGrowthMigration<T> migration : migrations) {
+			if (migrate(migration.getEntity(), migration.getFrom(), migration.getTo())) {
+				log.info("migrate " + migration);
+			}
 		}
-		// 注销线程引用
-		if (!thread.getEntities().remove(entity)) {
-			throw new TaskQueueException("entity in thread " + threadIndex + " destroy failed！");
+	}
+
+	/**
+	 * 开始迁移实体
+	 * 
+	 * @param entity
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public boolean migrate(AutoGrowthEntity entity, AutoGrowthSegment<T> from, AutoGrowthSegment<T> to) {
+		if (from == to || legacyFactory != null) {
+			return false;
 		}
-		entity.setThreadIndex(0);
-		log.info(thread.getThread().getThreadName() + " unregistered entity:" + entity);
-		if (thread.getEntities().size() <= 0) {
-			if (threads.size() > this.coreThreadCount) {
-				AutoGrowthSegment<T> remove = threads.remove(threadIndex);
-				if (remove != null) {
-					remove.getThread().stopServer();
+		// 预留目标线程名额(不超过每个线程的实体上限)，迁移结束前目标线程不会被关闭
+		if (!to.acquireEntity(entityCountPerThread)) {
+			return false;
+		}
+		synchronized (entity.getLock()) {
+			if (entity.getThreadIndex() == from.getThreadIndex() && entity.getMigrateIndex() == 0) {
+				from.incrementPending();
+				try {
+					if (from.getThread().tryAddCommand(new AutoGrowthTask<T>(entity, null, to.getThreadIndex()))) {
+						entity.setMigrateIndex(to.getThreadIndex());
+						entity.setBarrierPassed(false);
+						entity.setMigrateBuffer(new ArrayDeque<>());
+						migratingEntities.add(entity);
+						return true;
+					}
+				} catch (TaskQueueException e) {
+					log.error(e, e);
 				}
+				from.decrementPending();
+			}
+		}
+		releaseEntity(to);
+		return false;
+	}
+
+	public int getThreadCount() {
+		return threads.size();
+	}
+
+	/**
+	 * 源线程处理到屏障，实体之前的任务都已处理完，转到目标线程
+	 * 
+	 * @param entity
+	 * @param from
+	 * @param migrateIndex
+	 */
+	private void onBarrier(AutoGrowthEntity entity, AutoGrowthSegment<T> from, int migrateIndex) {
+		boolean release = false;
+		synchronized (entity.getLock()) {
+			AutoGrowthSegment<T> to = threads.get(migrateIndex);
+			if (entity.getThreadIndex() == from.getThreadIndex()) {
+				// 预留的名额转为正式名额
+				from.getEntities().remove(entity);
+				to.getEntities().add(entity);
+				entity.setThreadIndex(migrateIndex);
+				release = true;
+			}
+			// 迁移期间已注销的，预留名额在暂存任务转完后归还
+			entity.setBarrierPassed(true);
+			flushMigration(entity);
+		}
+		if (release) {
+			releaseEntity(from);
+		}
+	}
+
+	/**
+	 * 把暂存任务转入目标线程(持有实体锁，不阻塞)
+	 * 
+	 * @param entity
+	 * @return 迁移是否已结束
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean flushMigration(AutoGrowthEntity entity) {
+		int migrateIndex = entity.getMigrateIndex();
+		if (migrateIndex == 0) {
+			return true;
+		}
+		if (!entity.isBarrierPassed()) {
+			return false;
+		}
+		AutoGrowthSegment<T> to = threads.get(migrateIndex);
+		ArrayDeque<Object> buffer = entity.getMigrateBuffer();
+		while (!buffer.isEmpty()) {
+			to.incrementPending();
+			boolean success;
+			try {
+				success = to.getThread().tryAddCommand((AutoGrowthTask<T>) buffer.peek());
+			} catch (TaskQueueException e) {
+				log.error(e, e);
+				success = false;
+			}
+			if (!success) {
+				to.decrementPending();
+				return false;
+			}
+			buffer.poll();
+		}
+		entity.setMigrateIndex(0);
+		entity.setBarrierPassed(false);
+		entity.setMigrateBuffer(null);
+		migratingEntities.remove(entity);
+		if (entity.getThreadIndex() != migrateIndex) {
+			// 迁移期间已注销，归还预留名额
+			releaseEntity(to);
+		}
+		return true;
+	}
+
+	/**
+	 * 归还名额，超过核心线程数的空线程回收
+	 * 
+	 * @param thread
+	 */
+	private void releaseEntity(AutoGrowthSegment<T> thread) {
+		if (thread.releaseEntity() > 0) {
+			return;
+		}
+		if (threads.size() > this.coreThreadCount && thread.tryClose()) {
+			AutoGrowthSegment<T> remove = threads.remove(thread.getThreadIndex());
+			if (remove != null) {
+				threadCount.decrementAndGet();
+				remove.getThread().stopServer();
 			}
 		}
 	}
 
 	private AutoGrowthSegment<T> newGrowthThread() {
+		for (;;) {
+			int count = threadCount.get();
+			if (maxThreadCount > 0 && count >= maxThreadCount) {
+				return null;
+			}
+			if (threadCount.compareAndSet(count, count + 1)) {
+				break;
+			}
+		}
 		int id = threadId.incrementAndGet();
-		AutoGrowthSegment<T> data = new AutoGrowthSegment<>();
-		data.setThread(this.taskQueueFactory.newTaskQueue(id));
+		final AutoGrowthSegment<T> data = new AutoGrowthSegment<>();
+		if (legacyFactory != null) {
+			data.setThread(new LegacyTaskQueue<>(legacyFactory.newTaskQueue(id)));
+			data.setThreadIndex(id);
+			data.getThread().startServer();
+			this.threads.put(data.getThreadIndex(), data);
+			return data;
+		}
+		data.setThread(this.taskQueueFactory.newTaskQueue(id, new ITaskQueueHandler<AutoGrowthTask<T>>() {
+
+			@Override
+			public boolean intercept(AutoGrowthTask<T> task) {
+				return false;
+			}
+
+			@Override
+			public void handle(AutoGrowthTask<T> task) {
+				data.decrementPending();
+				if (task.isBarrier()) {
+					onBarrier(task.getEntity(), data, task.getMigrateIndex());
+					return;
+				}
+				if (handler.intercept(task.getCommand())) {
+					return;
+				}
+				long now = System.nanoTime();
+				try {
+					handler.handle(task.getCommand());
+				} catch (Exception e) {
+					log.error(e, e);
+				}
+				now = System.nanoTime() - now;
+				data.addHandleNanos(now);
+				task.getEntity().addHandleNanos(now);
+			}
+		}));
 		data.setThreadIndex(id);
 		data.getThread().startServer();
 		this.threads.put(data.getThreadIndex(), data);
 		return data;
 	}
+
+	/**
+	 * 旧创建方式的队列(只转交任务，排队数等统计不可用)
+	 * 
+	 * @author hank
+	 * 
+	 * @param <T>
+	 */
+	private static class LegacyTaskQueue<T> implements ITaskQueue<AutoGrowthTask<T>> {
+		private final ITaskQueue<T> queue;
+
+		private LegacyTaskQueue(ITaskQueue<T> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void startServer() {
+			queue.startServer();
+		}
+
+		@Override
+		public void stopServer() {
+			queue.stopServer();
+		}
+
+		@Override
+		public void addCommand(AutoGrowthTask<T> t) throws TaskQueueException {
+			queue.addCommand(t.getCommand());
+		}
+
+		@Override
+		public boolean tryAddCommand(AutoGrowthTask<T> t) throws TaskQueueException {
+			return queue.tryAddCommand(t.getCommand());
+		}
+
+		@Override
+		public String getThreadName() {
+			return queue.getThreadName();
+		}
+	}
 }
@@ -0,0 +1,109 @@
+package com.limitart.taskqueuegroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.limitart.taskqueuegroup.define.IAutoGrowthBalancePolicy;
+import com.limitart.taskqueuegroup.struct.AutoGrowthEntity;
+import com.limitart.taskqueuegroup.struct.AutoGrowthMigration;
+import com.limitart.taskqueuegroup.struct.AutoGrowthSegment;
+
+/**
+ * 按负载均衡(默认策略)
+ * 
+ * 线程负载=周期内处理耗时+排队数*平均任务耗时，最忙线程超过最闲线程一定倍数时，把最忙线程里负载不超过差值一半的最重实体迁给最闲线程。
+ * 只迁给实体数未达上限的线程
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public class LoadBalancePolicy<T> implements IAutoGrowthBalancePolicy<T> {
+	// 最忙线程负载超过最闲线程多少倍才迁移
+	private double imbalanceRatio;
+	// 最忙线程负载低于此值(纳秒)不迁移
+	private long minLoadNanos;
+	// 每次均衡最多迁移几个实体
+	private int maxMigrations;
+
+	public LoadBalancePolicy() {
+		this(1.5, 10000000L, 2);
+	}
+
+	public LoadBalancePolicy(double imbalanceRatio, long minLoadNanos, int maxMigrations) {
+		this.imbalanceRatio = imbalanceRatio;
+		this.minLoadNanos = minLoadNanos;
+		this.maxMigrations = maxMigrations;
+	}
+
+	@Override
+	public List<AutoGrowthMigration<T>> balance(List<AutoGrowthSegment<T>> segments, int entityCountPerThread) {
+		HashMap<AutoGrowthSegment<T>, Long> loads = new HashMap<>();
+		// 计入本次迁移后的实体数
+		HashMap<AutoGrowthSegment<T>, Integer> counts = new HashMap<>();
+		for (AutoGrowthSegment<T> segment : segments) {
+			int count = segment.getEntityCount();
+			if (count >= 0) {
+				loads.put(segment, load(segment));
+				counts.put(segment, count);
+			}
+		}
+		List<AutoGrowthMigration<T>> result = new ArrayList<>();
+		List<AutoGrowthEntity> moved = new ArrayList<>();
+		for (int i = 0; i < maxMigrations; ++i) {
+			AutoGrowthSegment<T> hottest = null;
+			AutoGrowthSegment<T> coolest = null;
+			for (AutoGrowthSegment<T> segment : loads.keySet()) {
+				if (hottest == null || loads.get(segment) > loads.get(hottest)) {
+					hottest = segment;
+				}
+				if (counts.get(segment) < entityCountPerThread
+						&& (coolest == null || loads.get(segment) < loads.get(coolest))) {
+					coolest = segment;
+				}
+			}
+			// 没有线程能再接收实体
+			if (hottest == null || coolest == null || hottest == coolest) {
+				break;
+			}
+			long hot = loads.get(hottest);
+			long cool = loads.get(coolest);
+			if (hot < minLoadNanos || hot < cool * imbalanceRatio) {
+				break;
+			}
+			long gap = (hot - cool) / 2;
+			AutoGrowthEntity best = null;
+			for (AutoGrowthEntity entity : hottest.getEntities()) {
+				long load = entity.getRecentHandleNanos();
+				if (load <= 0 || load > gap || entity.getMigrateIndex() > 0 || moved.contains(entity)) {
+					continue;
+				}
+				if (best == null || load > best.getRecentHandleNanos()) {
+					best = entity;
+				}
+			}
+			if (best == null) {
+				// 单个实体就占满了线程，迁走也不会更均衡
+				break;
+			}
+			moved.add(best);
+			result.add(new AutoGrowthMigration<>(best, hottest, coolest));
+			loads.put(hottest, hot - best.getRecentHandleNanos());
+			loads.put(coolest, cool + best.getRecentHandleNanos());
+			counts.put(hottest, counts.get(hottest) - 1);
+			counts.put(coolest, counts.get(coolest) + 1);
+		}
+		return result;
+	}
+
+	private long load(AutoGrowthSegment<T> segment) {
+		long nanos = segment.getRecentHandleNanos();
+		long count = segment.getRecentHandledCount();
+		if (count <= 0) {
+			return nanos;
+		}
+		// 排队的任务按平均耗时计入
+		return nanos + segment.getPendingCount() * (nanos / count);
+	}
+}
@@ -0,0 +1,26 @@
+package com.limitart.taskqueuegroup.define;
+
+import java.util.List;
+
+import com.limitart.taskqueuegroup.struct.AutoGrowthMigration;
+import com.limitart.taskqueuegroup.struct.AutoGrowthSegment;
+
+/**
+ * 线程组负载均衡策略
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public interface IAutoGrowthBalancePolicy<T> {
+	/**
+	 * 根据各线程最近一个周期的负载决定迁移哪些实体
+	 * 
+	 * @param segments
+	 *            各线程(统计已采样)
+	 * @param entityCountPerThread
+	 *            每个线程的实体上限，迁入后超过上限的迁移不会执行
+	 * @return 迁移列表，不需要迁移时返回null或空列表
+	 */
+	public List<AutoGrowthMigration<T>> balance(List<AutoGrowthSegment<T>> segments, int entityCountPerThread);
+}
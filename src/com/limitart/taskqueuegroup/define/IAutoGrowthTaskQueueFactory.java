@@ -0,0 +1,26 @@
+package com.limitart.taskqueuegroup.define;
+
+import com.limitart.taskqueue.define.ITaskQueue;
+import com.limitart.taskqueue.define.ITaskQueueHandler;
+import com.limitart.taskqueuegroup.struct.AutoGrowthTask;
+
+/**
+ * 线程组的队列工厂
+ * 
+ * 队列使用线程组提供的处理器，线程组因此可以统计负载、迁移实体
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public interface IAutoGrowthTaskQueueFactory<T> {
+	/**
+	 * 创建线程队列
+	 * 
+	 * @param threadId
+	 * @param handler
+	 *            线程组提供的处理器(统计耗时、处理迁移)，队列必须使用它
+	 * @return
+	 */
+	public ITaskQueue<AutoGrowthTask<T>> newTaskQueue(int threadId, ITaskQueueHandler<AutoGrowthTask<T>> handler);
+}
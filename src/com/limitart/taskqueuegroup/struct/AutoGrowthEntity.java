@@ -1,6 +1,8 @@
 package com.limitart.taskqueuegroup.struct;
 
+import java.util.ArrayDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 自动增长触发单位
@@ -10,6 +12,18 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class AutoGrowthEntity {
 	private transient AtomicInteger threadIndex = new AtomicInteger(0);
+	// 投递和迁移时锁定(不占用实体自身的监视器)
+	private transient final Object lock = new Object();
+	// 迁移目标线程(0为未迁移)
+	private transient volatile int migrateIndex;
+	// 源线程是否已处理到迁移屏障
+	private transient boolean barrierPassed;
+	// 迁移期间到达的任务，源线程处理完存量后按序转入目标线程
+	private transient ArrayDeque<Object> migrateBuffer;
+	// 累计处理耗时(纳秒)
+	private transient AtomicLong handleNanos = new AtomicLong();
+	private transient long lastHandleNanos;
+	private transient long recentHandleNanos;
 
 	public int getThreadIndex() {
 		return threadIndex.get();
@@ -18,4 +32,62 @@ public class AutoGrowthEntity {
 	public void setThreadIndex(int threadIndex) {
 		this.threadIndex.set(threadIndex);
 	}
+
+	public boolean compareAndSetThreadIndex(int expect, int update) {
+		return this.threadIndex.compareAndSet(expect, update);
+	}
+
+	public Object getLock() {
+		return lock;
+	}
+
+	public int getMigrateIndex() {
+		return migrateIndex;
+	}
+
+	public void setMigrateIndex(int migrateIndex) {
+		this.migrateIndex = migrateIndex;
+	}
+
+	public boolean isBarrierPassed() {
+		return barrierPassed;
+	}
+
+	public void setBarrierPassed(boolean barrierPassed) {
+		this.barrierPassed = barrierPassed;
+	}
+
+	public ArrayDeque<Object> getMigrateBuffer() {
+		return migrateBuffer;
+	}
+
+	public void setMigrateBuffer(ArrayDeque<Object> migrateBuffer) {
+		this.migrateBuffer = migrateBuffer;
+	}
+
+	public void addHandleNanos(long nanos) {
+		handleNanos.addAndGet(nanos);
+	}
+
+	public long getHandleNanos() {
+		return handleNanos.get();
+	}
+
+	/**
+	 * 最近一个均衡周期的处理耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getRecentHandleNanos() {
+		return recentHandleNanos;
+	}
+
+	/**
+	 * 采样一个均衡周期的统计(均衡线程调用)
+	 */
+	public void sample() {
+		long now = handleNanos.get();
+		recentHandleNanos = now - lastHandleNanos;
+		lastHandleNanos = now;
+	}
 }
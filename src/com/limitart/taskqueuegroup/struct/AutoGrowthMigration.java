@@ -0,0 +1,38 @@
+package com.limitart.taskqueuegroup.struct;
+
+/**
+ * 一次实体迁移
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public class AutoGrowthMigration<T> {
+	private AutoGrowthEntity entity;
+	private AutoGrowthSegment<T> from;
+	private AutoGrowthSegment<T> to;
+
+	public AutoGrowthMigration(AutoGrowthEntity entity, AutoGrowthSegment<T> from, AutoGrowthSegment<T> to) {
+		this.entity = entity;
+		this.from = from;
+		this.to = to;
+	}
+
+	public AutoGrowthEntity getEntity() {
+		return entity;
+	}
+
+	public AutoGrowthSegment<T> getFrom() {
+		return from;
+	}
+
+	public AutoGrowthSegment<T> getTo() {
+		return to;
+	}
+
+	@Override
+	public String toString() {
+		return "AutoGrowthMigration [entity=" + entity + ", from=" + from.getThreadIndex() + ", to="
+				+ to.getThreadIndex() + "]";
+	}
+}
@@ -1,5 +1,8 @@
 package com.limitart.taskqueuegroup.struct;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.limitart.collections.ConcurrentHashSet;
 import com.limitart.taskqueue.define.ITaskQueue;
 
@@ -11,8 +14,19 @@ import com.limitart.taskqueue.define.ITaskQueue;
  */
 public class AutoGrowthSegment<T> {
 	private int threadIndex;
-	private ITaskQueue<T> thread;
+	private ITaskQueue<AutoGrowthTask<T>> thread;
 	private ConcurrentHashSet<AutoGrowthEntity> entities = new ConcurrentHashSet<>();
+	// 实体数(含迁移中预留的名额)，-1表示线程已关闭
+	private AtomicInteger entityCount = new AtomicInteger();
+	// 队列中未处理的任务数
+	private AtomicInteger pendingCount = new AtomicInteger();
+	// 累计处理耗时(纳秒)和任务数
+	private AtomicLong handleNanos = new AtomicLong();
+	private AtomicLong handledCount = new AtomicLong();
+	private long lastHandleNanos;
+	private long lastHandledCount;
+	private long recentHandleNanos;
+	private long recentHandledCount;
 
 	public ConcurrentHashSet<AutoGrowthEntity> getEntities() {
 		return entities;
@@ -30,12 +44,113 @@ public class AutoGrowthSegment<T> {
 		this.threadIndex = threadIndex;
 	}
 
-	public ITaskQueue<T> getThread() {
+	public ITaskQueue<AutoGrowthTask<T>> getThread() {
 		return thread;
 	}
 
-	public void setThread(ITaskQueue<T> thread) {
+	public void setThread(ITaskQueue<AutoGrowthTask<T>> thread) {
 		this.thread = thread;
 	}
 
+	/**
+	 * 占用一个实体名额
+	 * 
+	 * @param limit
+	 *            名额上限
+	 * @return 线程已关闭或已满返回false
+	 */
+	public boolean acquireEntity(int limit) {
+		for (;;) {
+			int count = entityCount.get();
+			if (count < 0 || count >= limit) {
+				return false;
+			}
+			if (entityCount.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 归还一个实体名额
+	 * 
+	 * @return 剩余名额
+	 */
+	public int releaseEntity() {
+		return entityCount.decrementAndGet();
+	}
+
+	/**
+	 * 没有实体时标记关闭，之后不能再占用名额
+	 * 
+	 * @return
+	 */
+	public boolean tryClose() {
+		return entityCount.compareAndSet(0, -1);
+	}
+
+	public int getEntityCount() {
+		return entityCount.get();
+	}
+
+	public void incrementPending() {
+		pendingCount.incrementAndGet();
+	}
+
+	public void decrementPending() {
+		pendingCount.decrementAndGet();
+	}
+
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	public void addHandleNanos(long nanos) {
+		handleNanos.addAndGet(nanos);
+		handledCount.incrementAndGet();
+	}
+
+	public long getHandleNanos() {
+		return handleNanos.get();
+	}
+
+	public long getHandledCount() {
+		return handledCount.get();
+	}
+
+	/**
+	 * 最近一个均衡周期的处理耗时(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getRecentHandleNanos() {
+		return recentHandleNanos;
+	}
+
+	/**
+	 * 最近一个均衡周期处理的任务数
+	 * 
+	 * @return
+	 */
+	public long getRecentHandledCount() {
+		return recentHandledCount;
+	}
+
+	/**
+	 * 采样一个均衡周期的统计(均衡线程调用)
+	 */
+	public void sample() {
+		long nanos = handleNanos.get();
+		long count = handledCount.get();
+		recentHandleNanos = nanos - lastHandleNanos;
+		recentHandledCount = count - lastHandledCount;
+		lastHandleNanos = nanos;
+		lastHandledCount = count;
+	}
+
+	@Override
+	public String toString() {
+		return "AutoGrowthSegment [threadIndex=" + threadIndex + ", entityCount=" + entityCount + ", pendingCount="
+				+ pendingCount + ", recentHandleNanos=" + recentHandleNanos + "]";
+	}
 }
@@ -0,0 +1,46 @@
+package com.limitart.taskqueuegroup.struct;
+
+/**
+ * 线程组投递到队列的任务
+ * 
+ * @author hank
+ *
+ * @param <T>
+ */
+public class AutoGrowthTask<T> {
+	private final AutoGrowthEntity entity;
+	private final T command;
+	// 迁移屏障的目标线程(普通任务为0)
+	private final int migrateIndex;
+
+	public AutoGrowthTask(AutoGrowthEntity entity, T command) {
+		this(entity, command, 0);
+	}
+
+	public AutoGrowthTask(AutoGrowthEntity entity, T command, int migrateIndex) {
+		this.entity = entity;
+		this.command = command;
+		this.migrateIndex = migrateIndex;
+	}
+
+	public AutoGrowthEntity getEntity() {
+		return entity;
+	}
+
+	public T getCommand() {
+		return command;
+	}
+
+	public int getMigrateIndex() {
+		return migrateIndex;
+	}
+
+	/**
+	 * 是否为迁移屏障(源线程处理到这里时实体之前的任务都已处理完)
+	 * 
+	 * @return
+	 */
+	public boolean isBarrier() {
+		return migrateIndex > 0;
+	}
+}
@@ -227,7 +227,7 @@ public class ReflectionUtil {
 	 * @return
 	 */
 	public static <T> T newProxy(Class<T> interfaceType, InvocationHandler handler) {
-		if (interfaceType.isInterface()) {
+		if (!interfaceType.isInterface()) {
 			throw new IllegalArgumentException("need interface");
 		}
 		Object object = Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[] { interfaceType },